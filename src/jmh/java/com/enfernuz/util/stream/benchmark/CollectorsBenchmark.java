@@ -0,0 +1,338 @@
+package com.enfernuz.util.stream.benchmark;
+
+import com.google.common.collect.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.enfernuz.util.dense.DenseSetMultimap;
+import com.enfernuz.util.dense.DenseTable;
+import com.enfernuz.util.stream.Collectors;
+import com.enfernuz.util.stream.Streams;
+
+/**
+ *
+ * Compares the collectors of {@link com.enfernuz.util.stream.Collectors} with the JDK collectors
+ * of {@link java.util.stream.Collectors} and with the Guava way of getting the same immutable
+ * result (a JDK collector followed by a {@code copyOf} call), both on sequential and parallel
+ * streams.
+ *
+ * Run the allocation-aware comparison with:
+ * {@code java -jar target/benchmarks.jar CollectorsBenchmark -prof gc}
+ * and narrow the sizes with e.g. {@code -p size=1000,1000000}.
+ *
+ * Created by A. Nerushev
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class CollectorsBenchmark {
+
+    private static final int KEY_SPACE = 1 << 10;
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000", "100000000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private Integer[] elements;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        elements = IntStream.range(0, size).boxed().toArray(Integer[]::new);
+    }
+
+    private Stream<Integer> stream() {
+
+        final Stream<Integer> stream = Arrays.stream(elements);
+        return parallel ? stream.parallel() : stream;
+    }
+
+    private static Integer row(Integer i) {
+        return i & (KEY_SPACE - 1);
+    }
+
+    private static Integer column(Integer i) {
+        return i >>> 10;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Collections
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public ImmutableCollection<Integer> toImmutableCollection() {
+        return stream().collect( Collectors.toImmutableCollection(ImmutableList::<Integer>builder) );
+    }
+
+    @Benchmark
+    public ImmutableList<Integer> toImmutableList() {
+        return stream().collect( Collectors.toImmutableList() );
+    }
+
+    @Benchmark
+    public List<Integer> jdkToList() {
+        return stream().collect( java.util.stream.Collectors.toList() );
+    }
+
+    @Benchmark
+    public ImmutableList<Integer> guavaToImmutableList() {
+        return ImmutableList.copyOf( stream().collect(java.util.stream.Collectors.toList()) );
+    }
+
+    @Benchmark
+    public ImmutableSet<Integer> toImmutableSet() {
+        return stream().collect( Collectors.toImmutableSet() );
+    }
+
+    @Benchmark
+    public ImmutableSet<Integer> toImmutableSetPresized() {
+        return Streams.collectPresized( stream(), Collectors::<Integer>toImmutableSet );
+    }
+
+    @Benchmark
+    public Set<Integer> jdkToSet() {
+        return stream().collect( java.util.stream.Collectors.toSet() );
+    }
+
+    @Benchmark
+    public ImmutableSet<Integer> guavaToImmutableSet() {
+        return ImmutableSet.copyOf( stream().collect(java.util.stream.Collectors.toSet()) );
+    }
+
+    @Benchmark
+    public ImmutableSortedSet<Integer> toImmutableSortedSet() {
+        return stream().collect( Collectors.toImmutableSortedSet(Comparator.<Integer>naturalOrder()) );
+    }
+
+    @Benchmark
+    public ImmutableSortedSet<Integer> toImmutableSortedSetBySorting() {
+        return stream().collect( Collectors.toImmutableSortedSetBySorting(Comparator.<Integer>naturalOrder()) );
+    }
+
+    @Benchmark
+    public TreeSet<Integer> jdkToSortedSet() {
+        return stream().collect( java.util.stream.Collectors.toCollection(TreeSet::new) );
+    }
+
+    @Benchmark
+    public ImmutableSortedSet<Integer> guavaToImmutableSortedSet() {
+        return ImmutableSortedSet.copyOf( stream().collect(java.util.stream.Collectors.toList()) );
+    }
+
+    @Benchmark
+    public ImmutableList<Integer> topK() {
+        return stream().collect( Collectors.topK(100, Comparator.<Integer>reverseOrder()) );
+    }
+
+    @Benchmark
+    public ImmutableList<Integer> sortedSetHead() {
+        return stream().collect(
+                Collectors.toImmutableSortedSet(Comparator.<Integer>reverseOrder())
+        ).asList().subList(0, Math.min(100, size));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Maps
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public ImmutableMap<Integer, Integer> toImmutableMap() {
+        return stream().collect( Collectors.toImmutableMap(Function.identity(), Function.identity()) );
+    }
+
+    @Benchmark
+    public ImmutableMap<Integer, Integer> toImmutableMapPresized() {
+        return Streams.collectPresized( 
+                stream(), size -> Collectors.toImmutableMap(Function.<Integer>identity(), Function.<Integer>identity(), size) 
+        );
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> jdkToMap() {
+        return stream().collect(
+                java.util.stream.Collectors.toMap(Function.identity(), Function.identity())
+        );
+    }
+
+    @Benchmark
+    public ImmutableMap<Integer, Integer> guavaToImmutableMap() {
+        return ImmutableMap.copyOf( jdkToMap() );
+    }
+
+    @Benchmark
+    public ImmutableBiMap<Integer, Integer> toImmutableBiMap() {
+        return stream().collect(
+                Collectors.toImmutableBiMap(Function.identity(), Function.identity())
+        );
+    }
+
+    @Benchmark
+    public ImmutableBiMap<Integer, Integer> guavaToImmutableBiMap() {
+        return ImmutableBiMap.copyOf( jdkToMap() );
+    }
+
+    @Benchmark
+    public ImmutableSortedMap<Integer, Integer> toImmutableSortedMap() {
+        return stream().collect(
+                Collectors.toImmutableSortedMap(
+                        Function.identity(), Function.identity(), Comparator.<Integer>naturalOrder()
+                )
+        );
+    }
+
+    @Benchmark
+    public ImmutableSortedMap<Integer, Integer> toImmutableSortedMapBySorting() {
+        return stream().collect(
+                Collectors.toImmutableSortedMapBySorting(
+                        Function.identity(), Function.identity(), Comparator.<Integer>naturalOrder()
+                )
+        );
+    }
+
+    @Benchmark
+    public TreeMap<Integer, Integer> jdkToSortedMap() {
+        return stream().collect(
+                java.util.stream.Collectors.toMap(
+                        Function.identity(), Function.identity(), (v1, v2) -> v2, TreeMap::new
+                )
+        );
+    }
+
+    @Benchmark
+    public ImmutableSortedMap<Integer, Integer> guavaToImmutableSortedMap() {
+        return ImmutableSortedMap.copyOf( jdkToMap() );
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Multimaps
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public Multimap<Integer, Integer> toMultimap() {
+        return stream().collect(
+                Collectors.toMultimap(
+                        CollectorsBenchmark::row, Function.identity(), ArrayListMultimap::create
+                )
+        );
+    }
+
+    @Benchmark
+    public ImmutableListMultimap<Integer, Integer> toImmutableListMultimap() {
+        return stream().collect(
+                Collectors.toImmutableListMultimap(CollectorsBenchmark::row, Function.identity())
+        );
+    }
+
+    @Benchmark
+    public Map<Integer, List<Integer>> jdkGroupingByToList() {
+        return stream().collect( java.util.stream.Collectors.groupingBy(CollectorsBenchmark::row) );
+    }
+
+    @Benchmark
+    public ImmutableListMultimap<Integer, Integer> guavaToImmutableListMultimap() {
+        return Multimaps.index(
+                stream().collect(java.util.stream.Collectors.toList()), CollectorsBenchmark::row
+        );
+    }
+
+    @Benchmark
+    public ImmutableSetMultimap<Integer, Integer> toImmutableSetMultimap() {
+        return stream().collect(
+                Collectors.toImmutableSetMultimap(CollectorsBenchmark::row, Function.identity())
+        );
+    }
+
+    @Benchmark
+    public DenseSetMultimap<Integer, Integer> toDenseSetMultimap() {
+        return stream().collect(
+                Collectors.toDenseSetMultimap(CollectorsBenchmark::row, Function.identity())
+        );
+    }
+
+    @Benchmark
+    public Map<Integer, Set<Integer>> jdkGroupingByToSet() {
+        return stream().collect(
+                java.util.stream.Collectors.groupingBy(
+                        CollectorsBenchmark::row, java.util.stream.Collectors.toSet()
+                )
+        );
+    }
+
+    @Benchmark
+    public ImmutableSetMultimap<Integer, Integer> guavaToImmutableSetMultimap() {
+
+        final SetMultimap<Integer, Integer> multimap = HashMultimap.create();
+        jdkGroupingByToSet().forEach(multimap::putAll);
+
+        return ImmutableSetMultimap.copyOf(multimap);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Tables
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark
+    public Table<Integer, Integer, Integer> toTable() {
+        return stream().collect(
+                Collectors.toTable(
+                        CollectorsBenchmark::row,
+                        CollectorsBenchmark::column,
+                        Function.identity(),
+                        HashBasedTable::create
+                )
+        );
+    }
+
+    @Benchmark
+    public ImmutableTable<Integer, Integer, Integer> toImmutableTable() {
+        return stream().collect(
+                Collectors.toImmutableTable(
+                        CollectorsBenchmark::row,
+                        CollectorsBenchmark::column,
+                        Function.identity(),
+                        HashBasedTable::create
+                )
+        );
+    }
+
+    @Benchmark
+    public DenseTable<Integer, Integer, Integer> toDenseTable() {
+        return stream().collect(
+                Collectors.toDenseTable(
+                        CollectorsBenchmark::row,
+                        CollectorsBenchmark::column,
+                        Function.identity()
+                )
+        );
+    }
+
+    @Benchmark
+    public Map<Integer, Map<Integer, Integer>> jdkGroupingByToMap() {
+        return stream().collect(
+                java.util.stream.Collectors.groupingBy(
+                        CollectorsBenchmark::row,
+                        java.util.stream.Collectors.toMap(CollectorsBenchmark::column, Function.identity())
+                )
+        );
+    }
+
+    @Benchmark
+    public ImmutableTable<Integer, Integer, Integer> guavaToImmutableTable() {
+
+        final Table<Integer, Integer, Integer> table = HashBasedTable.create();
+        jdkGroupingByToMap().forEach( (row, columns) -> table.row(row).putAll(columns) );
+
+        return ImmutableTable.copyOf(table);
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.enfernuz.util.stream.benchmark;
+
+import com.google.common.collect.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collector;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.enfernuz.util.stream.Collectors;
+
+/**
+ *
+ * Compares the table collectors of {@link com.enfernuz.util.stream.Collectors}, which merge the
+ * smaller factory table into the larger one, and the dense table collector with the previous
+ * implementation, which always merged the later factory table into the earlier one with
+ * {@code Table.putAll}.
+ *
+ * Created by A. Nerushev
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class TableCollectorsBenchmark {
+
+    private static final int COLUMNS = 16;
+
+    @Param({"100000", "1000000", "20000000"})
+    public int size;
+
+    @Param({"100", "10000"})
+    public int rows;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private Integer[] elements;
+    private ImmutableList<Integer> rowKeys;
+    private ImmutableList<Integer> columnKeys;
+
+    @Setup(Level.Trial)
+    public void setup() {
+
+        elements = IntStream.range(0, size).boxed().toArray(Integer[]::new);
+        rowKeys = ImmutableList.copyOf( IntStream.range(0, rows).boxed().iterator() );
+        columnKeys = ImmutableList.copyOf( IntStream.range(0, COLUMNS).boxed().iterator() );
+    }
+
+    private Stream<Integer> stream() {
+
+        final Stream<Integer> stream = Arrays.stream(elements);
+        return parallel ? stream.parallel() : stream;
+    }
+
+    private Integer row(Integer i) {
+        return i % rows;
+    }
+
+    private static Integer column(Integer i) {
+        return i & (COLUMNS - 1);
+    }
+
+    // the implementation of Collectors.toImmutableTable before the size-aware merges
+    private static <T, R, C, V> Collector<T, ?, ImmutableTable<R, C, V>> legacyToImmutableTable(
+            Function<? super T, R> rowMapper,
+            Function<? super T, C> columnMapper,
+            Function<? super T, V> valueMapper) {
+
+        return Collector.of(
+                HashBasedTable::<R, C, V>create,
+                (table, t) -> table.put( rowMapper.apply(t), columnMapper.apply(t), valueMapper.apply(t) ),
+                (table1, table2) -> { table1.putAll(table2); return table1; },
+                ImmutableTable::<R, C, V>copyOf
+        );
+    }
+
+    @Benchmark
+    public ImmutableTable<Integer, Integer, Integer> legacyToImmutableTable() {
+        return stream().collect(
+                legacyToImmutableTable(this::row, TableCollectorsBenchmark::column, Function.identity())
+        );
+    }
+
+    @Benchmark
+    public Table<Integer, Integer, Integer> toTable() {
+        return stream().collect(
+                Collectors.toTable(
+                        this::row, TableCollectorsBenchmark::column, Function.identity(), HashBasedTable::create
+                )
+        );
+    }
+
+    @Benchmark
+    public ImmutableTable<Integer, Integer, Integer> toImmutableTable() {
+        return stream().collect(
+                Collectors.toImmutableTable(
+                        this::row, TableCollectorsBenchmark::column, Function.identity(), HashBasedTable::create
+                )
+        );
+    }
+
+    @Benchmark
+    public ArrayTable<Integer, Integer, Integer> toArrayTable() {
+        return stream().collect(
+                Collectors.toArrayTable(
+                        this::row, TableCollectorsBenchmark::column, Function.identity(), rowKeys, columnKeys
+                )
+        );
+    }
+
+}
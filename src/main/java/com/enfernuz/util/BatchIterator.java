@@ -0,0 +1,24 @@
+package com.enfernuz.util;
+
+import java.util.Iterator;
+
+/**
+ *
+ * An iterator which is also able to hand out its elements in batches, saving the per-element
+ * {@code hasNext()}/{@code next()} calls in tight loops.
+ *
+ * Created by A. Nerushev
+ */
+public interface BatchIterator<T> extends Iterator<T> {
+    
+    /**
+     * Copies the next elements of the iteration into the given array, starting at its index 0, 
+     * until either the array is full or the iteration has no more elements.
+     * @param destination an array to be filled with the next elements of the iteration
+     * @return the number of elements copied into the array; less than the length of the array 
+     * only if the iteration has no more elements
+     * @throws NullPointerException if the passed argument is a null reference
+     */
+    int nextBatch(T[] destination) throws NullPointerException;
+    
+}
@@ -1,10 +1,15 @@
 package com.enfernuz.util;
 
-import java.util.Iterator;
+import java.util.*;
+import java.util.function.Consumer;
 
 import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableCollection;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
 
 import static java.util.Objects.requireNonNull;
 
@@ -12,9 +17,31 @@ import static java.util.Objects.requireNonNull;
  *
  * The iterator which skips null values.
  *
+ * The instances created by the constructors work over any iterator. For arrays, random access 
+ * lists and sized collections, the {@code of} factory methods return iterators specialized for 
+ * the source, which scan it directly and skip the state machine of this class. The size of a 
+ * collection is only trusted for the non-concurrent JDK collections and the immutable Guava ones, 
+ * as the size of a concurrent collection may change while it is iterated over.
+ *
  * Created by A. Nerushev on Mar 13, 2016
  */
-public final class SkipNullsIterator<T> extends AbstractIterator<T> {
+public final class SkipNullsIterator<T> extends AbstractIterator<T> implements BatchIterator<T> {
+    
+    // the exact classes of the random access lists which are indexed up to the size taken up front
+    private static final Set<Class<?>> SIZE_STABLE_LIST_TYPES = ImmutableSet.<Class<?>>of(
+            ArrayList.class, 
+            Arrays.asList().getClass()
+    );
+    
+    // the exact classes of the collections which are iterated over by the size taken up front
+    private static final Set<Class<?>> SIZE_STABLE_COLLECTION_TYPES = ImmutableSet.<Class<?>>builder()
+            .addAll(SIZE_STABLE_LIST_TYPES)
+            .add(LinkedList.class, ArrayDeque.class, PriorityQueue.class)
+            .add(HashSet.class, LinkedHashSet.class, TreeSet.class)
+            .add( mapViewTypes( new HashMap<>() ) )
+            .add( mapViewTypes( new LinkedHashMap<>() ) )
+            .add( mapViewTypes( new TreeMap<>() ) )
+            .build();
     
     private final Iterator<? extends T> nullFriendlyIterator;
     
@@ -48,6 +75,86 @@ public final class SkipNullsIterator<T> extends AbstractIterator<T> {
         this.nullFriendlyIterator = iterator;
     }
 
+    /**
+     * Creates a null-skipping iterator over an array.
+     * @param <T> the type of the array elements
+     * @param array an array which may contain nulls
+     * @return a null-skipping iterator over the array
+     * @throws NullPointerException if the passed argument is a null reference
+     */
+    public static <T> BatchIterator<T> of(T[] array) throws NullPointerException {
+        return new ArrayIterator<>(array, 0, array.length);
+    }
+    
+    /**
+     * Creates a null-skipping iterator over a range of an array.
+     * @param <T> the type of the array elements
+     * @param array an array which may contain nulls
+     * @param fromIndex the index of the first element of the range, inclusive
+     * @param toIndex the index of the last element of the range, exclusive
+     * @return a null-skipping iterator over the array range
+     * @throws NullPointerException if the passed array is a null reference
+     * @throws IndexOutOfBoundsException if the range is out of the array bounds
+     */
+    public static <T> BatchIterator<T> of(T[] array, int fromIndex, int toIndex) 
+            throws NullPointerException, IndexOutOfBoundsException {
+        
+        checkPositionIndexes(fromIndex, toIndex, array.length);
+        
+        return new ArrayIterator<>(array, fromIndex, toIndex);
+    }
+    
+    /**
+     * Creates a null-skipping iterator over an iterable instance. The elements of array lists and 
+     * immutable Guava lists are accessed by their indices, the iteration over other non-concurrent 
+     * JDK collections and immutable Guava collections relies on their sizes instead of 
+     * {@code hasNext()} calls. Any other iterable, concurrent collections included, is iterated over 
+     * as by {@link #SkipNullsIterator(Iterable)}.
+     * @param <T> the type of the iterable elements
+     * @param nullFriendlyIterable an iterable instance
+     * @return a null-skipping iterator over the iterable instance
+     * @throws NullPointerException if the passed argument is a null reference
+     * @throws IllegalArgumentException if the iterator of the passed iterable argument is null
+     */
+    public static <T> BatchIterator<T> of(Iterable<? extends T> nullFriendlyIterable) 
+            throws NullPointerException, IllegalArgumentException {
+        
+        if ( nullFriendlyIterable instanceof ImmutableList 
+                || SIZE_STABLE_LIST_TYPES.contains( nullFriendlyIterable.getClass() ) ) {
+            return new RandomAccessListIterator<>( (List<? extends T>) nullFriendlyIterable );
+        }
+        
+        if ( nullFriendlyIterable instanceof ImmutableCollection 
+                || nullFriendlyIterable instanceof EnumSet 
+                || SIZE_STABLE_COLLECTION_TYPES.contains( nullFriendlyIterable.getClass() ) ) {
+            
+            final Collection<? extends T> collection = (Collection<? extends T>) nullFriendlyIterable;
+            final Iterator<? extends T> iterator = collection.iterator();
+            checkArgument(iterator != null, "The iterator of the iterable parameter must not be null.");
+            
+            return new SizedIterator<>( iterator, collection.size() );
+        }
+        
+        return new SkipNullsIterator<>(nullFriendlyIterable);
+    }
+    
+    private static Class<?>[] mapViewTypes(Map<?, ?> map) {
+        return new Class<?>[] { map.keySet().getClass(), map.values().getClass(), map.entrySet().getClass() };
+    }
+    
+    @Override
+    public int nextBatch(T[] destination) throws NullPointerException {
+        
+        requireNonNull(destination);
+        
+        int count = 0;
+        while ( count < destination.length && hasNext() ) {
+            destination[count++] = next();
+        }
+        
+        return count;
+    }
+    
     @Override
     protected T computeNext() {
         
@@ -62,4 +169,199 @@ public final class SkipNullsIterator<T> extends AbstractIterator<T> {
         return endOfData();
     }
 
+    private static final class ArrayIterator<T> implements BatchIterator<T> {
+        
+        private final T[] array;
+        private int index;
+        private final int fence;
+        
+        ArrayIterator(T[] array, int index, int fence) {
+            this.array = array;
+            this.index = index;
+            this.fence = fence;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            
+            int i = index;
+            while (i < fence && array[i] == null) {
+                i++;
+            }
+            index = i;
+            
+            return i < fence;
+        }
+        
+        @Override
+        public T next() {
+            
+            if ( !hasNext() ) {
+                throw new NoSuchElementException();
+            }
+            
+            return array[index++];
+        }
+        
+        @Override
+        public int nextBatch(T[] destination) throws NullPointerException {
+            
+            final int length = destination.length;
+            int count = 0;
+            int i = index;
+            while (i < fence && count < length) {
+                final T element = array[i++];
+                if (element != null) {
+                    destination[count++] = element;
+                }
+            }
+            index = i;
+            
+            return count;
+        }
+        
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            
+            requireNonNull(action);
+            
+            final int hi = fence;
+            int i = index;
+            index = hi;
+            for (; i < hi; i++) {
+                final T element = array[i];
+                if (element != null) {
+                    action.accept(element);
+                }
+            }
+        }
+    }
+    
+    private static final class RandomAccessListIterator<T> implements BatchIterator<T> {
+        
+        private final List<? extends T> list;
+        private int index;
+        private final int fence;
+        
+        RandomAccessListIterator(List<? extends T> list) {
+            this.list = list;
+            this.fence = list.size();
+        }
+        
+        @Override
+        public boolean hasNext() {
+            
+            int i = index;
+            while (i < fence && list.get(i) == null) {
+                i++;
+            }
+            index = i;
+            
+            return i < fence;
+        }
+        
+        @Override
+        public T next() {
+            
+            if ( !hasNext() ) {
+                throw new NoSuchElementException();
+            }
+            
+            return list.get(index++);
+        }
+        
+        @Override
+        public int nextBatch(T[] destination) throws NullPointerException {
+            
+            final int length = destination.length;
+            int count = 0;
+            int i = index;
+            while (i < fence && count < length) {
+                final T element = list.get(i++);
+                if (element != null) {
+                    destination[count++] = element;
+                }
+            }
+            index = i;
+            
+            return count;
+        }
+        
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            
+            requireNonNull(action);
+            
+            final int hi = fence;
+            int i = index;
+            index = hi;
+            for (; i < hi; i++) {
+                final T element = list.get(i);
+                if (element != null) {
+                    action.accept(element);
+                }
+            }
+        }
+    }
+    
+    // Iterates over a collection of a known size, counting the remaining elements down instead of 
+    // asking the underlying iterator whether it has more.
+    private static final class SizedIterator<T> implements BatchIterator<T> {
+        
+        private final Iterator<? extends T> iterator;
+        private int remaining;
+        private T pending;
+        
+        SizedIterator(Iterator<? extends T> iterator, int size) {
+            this.iterator = iterator;
+            this.remaining = size;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            
+            while (pending == null && remaining > 0) {
+                pending = iterator.next();
+                remaining--;
+            }
+            
+            return pending != null;
+        }
+        
+        @Override
+        public T next() {
+            
+            if ( !hasNext() ) {
+                throw new NoSuchElementException();
+            }
+            
+            final T next = pending;
+            pending = null;
+            
+            return next;
+        }
+        
+        @Override
+        public int nextBatch(T[] destination) throws NullPointerException {
+            
+            final int length = destination.length;
+            int count = 0;
+            
+            if (pending != null && length > 0) {
+                destination[count++] = pending;
+                pending = null;
+            }
+            
+            while (remaining > 0 && count < length) {
+                final T element = iterator.next();
+                remaining--;
+                if (element != null) {
+                    destination[count++] = element;
+                }
+            }
+            
+            return count;
+        }
+    }
+    
 }
@@ -0,0 +1,345 @@
+package com.enfernuz.util;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *
+ * The spliterator which skips null values.
+ *
+ * Unlike a stream over a {@link SkipNullsIterator}, the spliterators created by the factory
+ * methods of this class split their source: arrays and random access lists are split into halves
+ * of their index ranges, other sources are split the way their own spliterators are. The nulls
+ * are filtered out in bulk by {@link #forEachRemaining(Consumer)}, so null-dense inputs get the
+ * parallel speedup of the underlying source.
+ *
+ * The number of non-null elements is not known in advance, so the spliterators are never
+ * {@link Spliterator#SIZED}; their size estimate is the number of the remaining source elements.
+ *
+ * Created by A. Nerushev
+ */
+public abstract class SkipNullsSpliterator<T> implements Spliterator<T> {
+
+    // sources are not split below this number of elements
+    private static final int MIN_SPLIT_SIZE = 1 << 10;
+
+    private SkipNullsSpliterator() {
+        super();
+    }
+
+    /**
+     * Creates a null-skipping spliterator over an array.
+     * @param <T> the type of the array elements
+     * @param array an array which may contain nulls
+     * @return a null-skipping spliterator over the array
+     * @throws NullPointerException if the passed argument is a null reference
+     */
+    public static <T> SkipNullsSpliterator<T> of(T[] array) throws NullPointerException {
+        return new ArraySpliterator<>(array, 0, array.length);
+    }
+
+    /**
+     * Creates a null-skipping spliterator over a range of an array.
+     * @param <T> the type of the array elements
+     * @param array an array which may contain nulls
+     * @param fromIndex the index of the first element of the range, inclusive
+     * @param toIndex the index of the last element of the range, exclusive
+     * @return a null-skipping spliterator over the array range
+     * @throws NullPointerException if the passed array is a null reference
+     * @throws IndexOutOfBoundsException if the range is out of the array bounds
+     */
+    public static <T> SkipNullsSpliterator<T> of(T[] array, int fromIndex, int toIndex)
+            throws NullPointerException, IndexOutOfBoundsException {
+
+        checkPositionIndexes(fromIndex, toIndex, array.length);
+
+        return new ArraySpliterator<>(array, fromIndex, toIndex);
+    }
+
+    /**
+     * Creates a null-skipping spliterator over a collection. The elements of
+     * {@link java.util.RandomAccess} lists are accessed by their indices.
+     * @param <T> the type of the collection elements
+     * @param collection a collection which may contain nulls
+     * @return a null-skipping spliterator over the collection
+     * @throws NullPointerException if the passed argument is a null reference
+     */
+    public static <T> SkipNullsSpliterator<T> of(Collection<? extends T> collection)
+            throws NullPointerException {
+
+        if (collection instanceof List && collection instanceof RandomAccess) {
+            final List<? extends T> list = (List<? extends T>) collection;
+            return new RandomAccessListSpliterator<>(list, 0, list.size());
+        }
+
+        return of( collection.spliterator() );
+    }
+
+    /**
+     * Creates a null-skipping spliterator over another spliterator.
+     * @param <T> the type of elements
+     * @param spliterator a spliterator which may return nulls
+     * @return a null-skipping spliterator over the given spliterator
+     * @throws NullPointerException if the passed argument is a null reference
+     */
+    public static <T> SkipNullsSpliterator<T> of(Spliterator<? extends T> spliterator)
+            throws NullPointerException {
+        return new WrappingSpliterator<>( requireNonNull(spliterator) );
+    }
+
+    /**
+     * Creates a stream of the non-null elements of an array.
+     * @param <T> the type of the array elements
+     * @param array an array which may contain nulls
+     * @param parallel {@code true} for a parallel stream, {@code false} for a sequential one
+     * @return a stream of the non-null elements of the array
+     * @throws NullPointerException if the passed array is a null reference
+     */
+    public static <T> Stream<T> stream(T[] array, boolean parallel) throws NullPointerException {
+        return StreamSupport.stream( of(array), parallel );
+    }
+
+    /**
+     * Creates a stream of the non-null elements of a collection.
+     * @param <T> the type of the collection elements
+     * @param collection a collection which may contain nulls
+     * @param parallel {@code true} for a parallel stream, {@code false} for a sequential one
+     * @return a stream of the non-null elements of the collection
+     * @throws NullPointerException if the passed collection is a null reference
+     */
+    public static <T> Stream<T> stream(Collection<? extends T> collection, boolean parallel)
+            throws NullPointerException {
+        return StreamSupport.stream( of(collection), parallel );
+    }
+
+    /**
+     * Creates a stream of the non-null elements of a spliterator.
+     * @param <T> the type of elements
+     * @param spliterator a spliterator which may return nulls
+     * @param parallel {@code true} for a parallel stream, {@code false} for a sequential one
+     * @return a stream of the non-null elements of the spliterator
+     * @throws NullPointerException if the passed spliterator is a null reference
+     */
+    public static <T> Stream<T> stream(Spliterator<? extends T> spliterator, boolean parallel)
+            throws NullPointerException {
+        return StreamSupport.stream( of(spliterator), parallel );
+    }
+
+    @Override
+    public abstract SkipNullsSpliterator<T> trySplit();
+
+    private static final class ArraySpliterator<T> extends SkipNullsSpliterator<T> {
+
+        private final T[] array;
+        private int index;
+        private final int fence;
+
+        ArraySpliterator(T[] array, int index, int fence) {
+            this.array = array;
+            this.index = index;
+            this.fence = fence;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+
+            requireNonNull(action);
+
+            while (index < fence) {
+                final T element = array[index++];
+                if (element != null) {
+                    action.accept(element);
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+
+            requireNonNull(action);
+
+            final T[] a = array;
+            final int hi = fence;
+            int i = index;
+            index = hi;
+            for (; i < hi; i++) {
+                final T element = a[i];
+                if (element != null) {
+                    action.accept(element);
+                }
+            }
+        }
+
+        @Override
+        public SkipNullsSpliterator<T> trySplit() {
+
+            final int lo = index;
+            final int mid = (lo + fence) >>> 1;
+            if (mid - lo < MIN_SPLIT_SIZE) {
+                return null;
+            }
+
+            index = mid;
+            return new ArraySpliterator<>(array, lo, mid);
+        }
+
+        @Override
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+    }
+
+    private static final class RandomAccessListSpliterator<T> extends SkipNullsSpliterator<T> {
+
+        private final List<? extends T> list;
+        private int index;
+        private final int fence;
+
+        RandomAccessListSpliterator(List<? extends T> list, int index, int fence) {
+            this.list = list;
+            this.index = index;
+            this.fence = fence;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+
+            requireNonNull(action);
+
+            while (index < fence) {
+                final T element = list.get(index++);
+                if (element != null) {
+                    action.accept(element);
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+
+            requireNonNull(action);
+
+            final List<? extends T> l = list;
+            final int hi = fence;
+            int i = index;
+            index = hi;
+            for (; i < hi; i++) {
+                final T element = l.get(i);
+                if (element != null) {
+                    action.accept(element);
+                }
+            }
+        }
+
+        @Override
+        public SkipNullsSpliterator<T> trySplit() {
+
+            final int lo = index;
+            final int mid = (lo + fence) >>> 1;
+            if (mid - lo < MIN_SPLIT_SIZE) {
+                return null;
+            }
+
+            index = mid;
+            return new RandomAccessListSpliterator<>(list, lo, mid);
+        }
+
+        @Override
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+    }
+
+    private static final class WrappingSpliterator<T> extends SkipNullsSpliterator<T>
+            implements Consumer<T> {
+
+        private final Spliterator<? extends T> source;
+        private T current;
+
+        WrappingSpliterator(Spliterator<? extends T> source) {
+            this.source = source;
+        }
+
+        // receives the elements of the source in tryAdvance
+        @Override
+        public void accept(T element) {
+            current = element;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+
+            requireNonNull(action);
+
+            while ( source.tryAdvance(this) ) {
+                final T element = current;
+                current = null;
+                if (element != null) {
+                    action.accept(element);
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+
+            requireNonNull(action);
+
+            source.forEachRemaining(element -> {
+                if (element != null) {
+                    action.accept(element);
+                }
+            });
+        }
+
+        @Override
+        public SkipNullsSpliterator<T> trySplit() {
+
+            final Spliterator<? extends T> prefix = source.trySplit();
+
+            return prefix == null ? null : new WrappingSpliterator<>(prefix);
+        }
+
+        @Override
+        public long estimateSize() {
+            return source.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return ( source.characteristics() & ~(SIZED | SUBSIZED) ) | NONNULL;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Comparator<? super T> getComparator() {
+            return (Comparator<? super T>) source.getComparator();
+        }
+    }
+
+}
@@ -0,0 +1,197 @@
+package com.enfernuz.util.dense;
+
+import java.util.Arrays;
+
+/**
+ *
+ * The accumulation buffer of the dense builders: the dictionary-encoded cells in the order they
+ * have been put, as parallel arrays of row indices, column indices and, optionally, values.
+ *
+ * A cell put more than once is kept as many times, as putting a cell is then just three array
+ * stores; the duplicates are dropped when the buffer is compressed, the value of the cell put last
+ * winning. Whenever the buffer is full, it is compressed first and only grows if it is still more
+ * than half full, so a stream of few distinct cells is accumulated in memory bounded by their
+ * number rather than by the length of the stream.
+ *
+ * Instances are not thread-safe.
+ *
+ * Created by A. Nerushev
+ */
+final class CellBuffer {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] rows = new int[INITIAL_CAPACITY];
+    private int[] columns = new int[INITIAL_CAPACITY];
+    private Object[] values;
+    private int size;
+
+    // the numbers of the distinct row and column indices put, as they are handed out in order
+    private int rowCount;
+    private int columnCount;
+
+    /**
+     * Constructs an empty buffer.
+     * @param withValues whether the cells have values, or are just present or absent
+     */
+    CellBuffer(boolean withValues) {
+        this.values = withValues ? new Object[INITIAL_CAPACITY] : null;
+    }
+
+    /**
+     * Puts a cell into the buffer.
+     * @param row the row index of the cell
+     * @param column the column index of the cell
+     * @param value the value of the cell, ignored if the cells have no values
+     */
+    void add(int row, int column, Object value) {
+
+        if (size == rows.length) {
+            compact();
+            if (size > rows.length >> 1) {
+                grow();
+            }
+        }
+
+        rows[size] = row;
+        columns[size] = column;
+        if (values != null) {
+            values[size] = value;
+        }
+        size++;
+
+        rowCount = Math.max(rowCount, row + 1);
+        columnCount = Math.max(columnCount, column + 1);
+    }
+
+    /**
+     * Puts all the cells of the given buffer into this one, as if they were put after the cells
+     * of this buffer.
+     * @param other a buffer
+     * @param rowRemapping the mapping of the row indices of the given buffer to the ones of this
+     * buffer
+     * @param columnRemapping the mapping of the column indices of the given buffer to the ones of
+     * this buffer
+     */
+    void addAll(CellBuffer other, int[] rowRemapping, int[] columnRemapping) {
+
+        for (int i = 0; i < other.size; i++) {
+            add(
+                    rowRemapping[ other.rows[i] ],
+                    columnRemapping[ other.columns[i] ],
+                    other.values == null ? null : other.values[i]
+            );
+        }
+    }
+
+    /**
+     * Groups the cells by rows, drops the duplicates and sorts the cells of each row by the
+     * column indices.
+     * @return the compressed cells
+     */
+    Compressed compress() {
+
+        // a counting sort of the cells by rows, which keeps the order of the puts within a row
+        final int[] rowStarts = new int[rowCount + 1];
+        for (int i = 0; i < size; i++) {
+            rowStarts[ rows[i] + 1 ]++;
+        }
+        for (int r = 0; r < rowCount; r++) {
+            rowStarts[r + 1] += rowStarts[r];
+        }
+
+        final int[] order = new int[size];
+        final int[] next = Arrays.copyOf(rowStarts, rowCount);
+        for (int i = 0; i < size; i++) {
+            order[ next[ rows[i] ]++ ] = i;
+        }
+
+        // the row a column has last been seen in (plus one) and the last put of the column there
+        final int[] seenInRow = new int[columnCount];
+        final int[] lastPut = new int[columnCount];
+
+        final int[] offsets = new int[rowCount + 1];
+        final int[] compressedColumns = new int[size];
+        final Object[] compressedValues = values == null ? null : new Object[size];
+
+        int count = 0;
+        for (int r = 0; r < rowCount; r++) {
+
+            final int rowStart = count;
+            for (int p = rowStarts[r]; p < rowStarts[r + 1]; p++) {
+
+                final int i = order[p];
+                final int column = columns[i];
+                if (seenInRow[column] != r + 1) {
+                    seenInRow[column] = r + 1;
+                    compressedColumns[count++] = column;
+                }
+                lastPut[column] = i;
+            }
+
+            Arrays.sort(compressedColumns, rowStart, count);
+            if (compressedValues != null) {
+                for (int q = rowStart; q < count; q++) {
+                    compressedValues[q] = values[ lastPut[ compressedColumns[q] ] ];
+                }
+            }
+            offsets[r + 1] = count;
+        }
+
+        return new Compressed(
+                offsets,
+                count == size ? compressedColumns : Arrays.copyOf(compressedColumns, count),
+                compressedValues == null || count == size ? compressedValues : Arrays.copyOf(compressedValues, count)
+        );
+    }
+
+    private void compact() {
+
+        final Compressed compressed = compress();
+
+        int i = 0;
+        for (int r = 0; r < rowCount; r++) {
+            for (int q = compressed.offsets[r]; q < compressed.offsets[r + 1]; q++, i++) {
+                rows[i] = r;
+                columns[i] = compressed.columns[q];
+                if (values != null) {
+                    values[i] = compressed.values[q];
+                }
+            }
+        }
+
+        if (values != null) {
+            Arrays.fill(values, i, size, null);
+        }
+        size = i;
+    }
+
+    private void grow() {
+
+        final int newCapacity = rows.length << 1;
+        rows = Arrays.copyOf(rows, newCapacity);
+        columns = Arrays.copyOf(columns, newCapacity);
+        if (values != null) {
+            values = Arrays.copyOf(values, newCapacity);
+        }
+    }
+
+    /**
+     * The cells of a buffer in the compressed sparse row layout: the cells of the row {@code r}
+     * are at the positions from {@code offsets[r]} inclusive to {@code offsets[r + 1]} exclusive
+     * of the other arrays, sorted by the column indices.
+     */
+    static final class Compressed {
+
+        final int[] offsets;
+        final int[] columns;
+        final Object[] values;
+
+        private Compressed(int[] offsets, int[] columns, Object[] values) {
+            this.offsets = offsets;
+            this.columns = columns;
+            this.values = values;
+        }
+    }
+
+}
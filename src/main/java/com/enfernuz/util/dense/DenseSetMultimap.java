@@ -0,0 +1,520 @@
+package com.enfernuz.util.dense;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.SetMultimap;
+
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *
+ * An immutable set multimap, the keys and values of which are dictionary-encoded to ints, meant
+ * for the multimaps of low-cardinality keys and values, like enum constants or codes.
+ *
+ * The entries are stored in the compressed sparse row layout: a flat array of the value indices,
+ * sorted by keys and by values within a key, plus the offset of each key. An entry takes an
+ * {@code int}, instead of an entry of a hash set per key, and scanning the multimap walks a single
+ * array in order. Looking an entry up is a hash lookup of the key and of the value and a binary
+ * search within the values of the key.
+ *
+ * The keys are iterated in the order they have first been put into the {@link Builder}, and the
+ * values of a key in the order the values have first been put at all. Neither null keys nor null
+ * values are permitted. The views of the multimap are read-only. Instances are immutable and thus
+ * safe to be read by many threads at once, without any locking.
+ *
+ * Created by A. Nerushev
+ */
+public final class DenseSetMultimap<K, V> implements SetMultimap<K, V> {
+
+    private static final DenseSetMultimap<Object, Object> EMPTY =
+            new DenseSetMultimap<>( ImmutableList.of(), ImmutableList.of(), new int[1], new int[0] );
+
+    private final ImmutableList<K> keyList;
+    private final ImmutableMap<K, Integer> keyIndices;
+    private final ImmutableList<V> valueList;
+    private final ImmutableMap<V, Integer> valueIndices;
+
+    private final int[] keyOffsets;
+    private final int[] entryValues;
+
+    private DenseSetMultimap(ImmutableList<K> keyList, ImmutableList<V> valueList, int[] keyOffsets, int[] entryValues) {
+        this.keyList = keyList;
+        this.keyIndices = Dictionary.indicesOf(keyList);
+        this.valueList = valueList;
+        this.valueIndices = Dictionary.indicesOf(valueList);
+        this.keyOffsets = keyOffsets;
+        this.entryValues = entryValues;
+    }
+
+    /**
+     * Returns the empty multimap.
+     * @param <K> the type of the keys
+     * @param <V> the type of the values
+     * @return the empty multimap
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> DenseSetMultimap<K, V> of() {
+        return (DenseSetMultimap<K, V>) EMPTY;
+    }
+
+    /**
+     * Returns a dense multimap of the entries of the given multimap.
+     * @param <K> the type of the keys
+     * @param <V> the type of the values
+     * @param multimap a multimap
+     * @return a dense multimap of the entries of the multimap, which is the given multimap if it
+     * is a dense multimap
+     * @throws NullPointerException if the passed argument is a null reference or contains a null
+     * key or value
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> DenseSetMultimap<K, V> copyOf(Multimap<? extends K, ? extends V> multimap)
+            throws NullPointerException {
+
+        if (multimap instanceof DenseSetMultimap) {
+            return (DenseSetMultimap<K, V>) multimap;
+        }
+
+        return DenseSetMultimap.<K, V>builder().putAll(multimap).build();
+    }
+
+    /**
+     * Creates a builder of a multimap.
+     * @param <K> the type of the keys
+     * @param <V> the type of the values
+     * @return a new builder
+     */
+    public static <K, V> Builder<K, V> builder() {
+        return new Builder<>();
+    }
+
+    @Override
+    public int size() {
+        return entryValues.length;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return entryValues.length == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return keyIndices.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return valueIndices.containsKey(value);
+    }
+
+    @Override
+    public boolean containsEntry(Object key, Object value) {
+
+        final Integer k = keyIndices.get(key);
+
+        return k != null && positionOf(k, value) >= 0;
+    }
+
+    @Override
+    public Set<V> get(K key) {
+
+        final Integer k = keyIndices.get(key);
+
+        return k == null ? ImmutableSet.of() : new ValueSet(k);
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return keyIndices.keySet();
+    }
+
+    @Override
+    public Multiset<K> keys() {
+
+        final ImmutableMultiset.Builder<K> keys = ImmutableMultiset.builder();
+        for (int k = 0; k < keyList.size(); k++) {
+            keys.addCopies( keyList.get(k), keyOffsets[k + 1] - keyOffsets[k] );
+        }
+
+        return keys.build();
+    }
+
+    @Override
+    public Collection<V> values() {
+
+        return new AbstractCollection<V>() {
+
+            @Override
+            public int size() {
+                return entryValues.length;
+            }
+
+            @Override
+            public boolean contains(Object obj) {
+                return containsValue(obj);
+            }
+
+            @Override
+            public Iterator<V> iterator() {
+
+                return new Iterator<V>() {
+
+                    private int position;
+
+                    @Override
+                    public boolean hasNext() {
+                        return position < entryValues.length;
+                    }
+
+                    @Override
+                    public V next() {
+
+                        if ( !hasNext() ) {
+                            throw new NoSuchElementException();
+                        }
+
+                        return valueList.get( entryValues[position++] );
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entries() {
+
+        return new AbstractSet<Map.Entry<K, V>>() {
+
+            @Override
+            public int size() {
+                return entryValues.length;
+            }
+
+            @Override
+            public boolean contains(Object obj) {
+
+                if ( !(obj instanceof Map.Entry) ) {
+                    return false;
+                }
+
+                final Map.Entry<?, ?> entry = (Map.Entry<?, ?>) obj;
+
+                return containsEntry( entry.getKey(), entry.getValue() );
+            }
+
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+
+                return new Iterator<Map.Entry<K, V>>() {
+
+                    private int key;
+                    private int position;
+
+                    @Override
+                    public boolean hasNext() {
+                        return position < entryValues.length;
+                    }
+
+                    @Override
+                    public Map.Entry<K, V> next() {
+
+                        if ( !hasNext() ) {
+                            throw new NoSuchElementException();
+                        }
+
+                        while (keyOffsets[key + 1] <= position) {
+                            key++;
+                        }
+
+                        return Maps.immutableEntry( keyList.get(key), valueList.get( entryValues[position++] ) );
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public Map<K, Collection<V>> asMap() {
+
+        return new IndexedMap<K, Collection<V>>() {
+
+            @Override
+            K keyAt(int position) {
+                return keyList.get(position);
+            }
+
+            @Override
+            Collection<V> valueAt(int position) {
+                return new ValueSet(position);
+            }
+
+            @Override
+            int positionOf(Object key) {
+
+                final Integer k = keyIndices.get(key);
+
+                return k == null ? -1 : k;
+            }
+
+            @Override
+            public int size() {
+                return keyList.size();
+            }
+        };
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the multimap unmodified.
+     * @throws UnsupportedOperationException always
+     * @deprecated Unsupported operation.
+     */
+    @Deprecated
+    @Override
+    public boolean put(K key, V value) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the multimap unmodified.
+     * @throws UnsupportedOperationException always
+     * @deprecated Unsupported operation.
+     */
+    @Deprecated
+    @Override
+    public boolean remove(Object key, Object value) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the multimap unmodified.
+     * @throws UnsupportedOperationException always
+     * @deprecated Unsupported operation.
+     */
+    @Deprecated
+    @Override
+    public boolean putAll(K key, Iterable<? extends V> values) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the multimap unmodified.
+     * @throws UnsupportedOperationException always
+     * @deprecated Unsupported operation.
+     */
+    @Deprecated
+    @Override
+    public boolean putAll(Multimap<? extends K, ? extends V> multimap) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the multimap unmodified.
+     * @throws UnsupportedOperationException always
+     * @deprecated Unsupported operation.
+     */
+    @Deprecated
+    @Override
+    public Set<V> replaceValues(K key, Iterable<? extends V> values) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the multimap unmodified.
+     * @throws UnsupportedOperationException always
+     * @deprecated Unsupported operation.
+     */
+    @Deprecated
+    @Override
+    public Set<V> removeAll(Object key) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the multimap unmodified.
+     * @throws UnsupportedOperationException always
+     * @deprecated Unsupported operation.
+     */
+    @Deprecated
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+
+        if (obj == this) {
+            return true;
+        }
+
+        return obj instanceof Multimap && asMap().equals( ((Multimap<?, ?>) obj).asMap() );
+    }
+
+    @Override
+    public int hashCode() {
+        return asMap().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return asMap().toString();
+    }
+
+    private int positionOf(int key, Object value) {
+
+        final Integer v = valueIndices.get(value);
+        if (v == null) {
+            return -1;
+        }
+
+        final int position = Arrays.binarySearch(entryValues, keyOffsets[key], keyOffsets[key + 1], v);
+
+        return position < 0 ? -1 : position;
+    }
+
+    // A read-only view of the values of a key.
+    private final class ValueSet extends AbstractSet<V> {
+
+        private final int key;
+
+        ValueSet(int key) {
+            this.key = key;
+        }
+
+        @Override
+        public int size() {
+            return keyOffsets[key + 1] - keyOffsets[key];
+        }
+
+        @Override
+        public boolean contains(Object obj) {
+            return positionOf(key, obj) >= 0;
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+
+            return new Iterator<V>() {
+
+                private int position = keyOffsets[key];
+
+                @Override
+                public boolean hasNext() {
+                    return position < keyOffsets[key + 1];
+                }
+
+                @Override
+                public V next() {
+
+                    if ( !hasNext() ) {
+                        throw new NoSuchElementException();
+                    }
+
+                    return valueList.get( entryValues[position++] );
+                }
+            };
+        }
+    }
+
+    /**
+     * A builder of a dense multimap. An entry put more than once is kept once.
+     *
+     * The builder encodes the keys and values with dictionaries of its own and buffers the entries
+     * in put order, so a put is two hash lookups and a couple of array stores; the entries are
+     * sorted and the duplicates dropped when the multimap is built, or earlier, whenever the
+     * buffer fills up. Builders are not thread-safe; for parallel accumulation, use one builder
+     * per worker and join them with {@link #putAll(Builder)}.
+     */
+    public static final class Builder<K, V> {
+
+        private final Dictionary<K> keys = new Dictionary<>();
+        private final Dictionary<V> values = new Dictionary<>();
+        private final CellBuffer entries = new CellBuffer(false);
+
+        private Builder() {
+        }
+
+        /**
+         * Puts an entry into the multimap being built.
+         * @param key a key
+         * @param value a value
+         * @return this builder
+         * @throws NullPointerException if either of the passed arguments is a null reference
+         */
+        public Builder<K, V> put(K key, V value) throws NullPointerException {
+
+            requireNonNull(key);
+            requireNonNull(value);
+
+            entries.add( keys.encode(key), values.encode(value), null );
+
+            return this;
+        }
+
+        /**
+         * Puts all the entries of the given multimap into the multimap being built.
+         * @param multimap a multimap
+         * @return this builder
+         * @throws NullPointerException if the passed argument is a null reference or contains a
+         * null key or value
+         */
+        public Builder<K, V> putAll(Multimap<? extends K, ? extends V> multimap) throws NullPointerException {
+
+            for (Map.Entry<? extends K, ? extends V> entry : multimap.entries()) {
+                put( entry.getKey(), entry.getValue() );
+            }
+
+            return this;
+        }
+
+        /**
+         * Puts all the entries of the given builder into the multimap being built, as if they were
+         * put after the entries of this builder. The keys and values of the given builder are
+         * remapped onto the dictionaries of this one, so joining two builders costs a lookup per
+         * distinct key and value and an array copy of the entries.
+         * @param other a builder
+         * @return this builder
+         * @throws NullPointerException if the passed argument is a null reference
+         */
+        public Builder<K, V> putAll(Builder<? extends K, ? extends V> other) throws NullPointerException {
+
+            if (requireNonNull(other) != this) {
+                entries.addAll( other.entries, keys.encodeAll(other.keys), values.encodeAll(other.values) );
+            }
+
+            return this;
+        }
+
+        /**
+         * Returns a dense multimap of the entries put into the builder. The builder may be used
+         * afterwards.
+         * @return a dense multimap
+         */
+        public DenseSetMultimap<K, V> build() {
+
+            if (keys.size() == 0) {
+                return of();
+            }
+
+            final CellBuffer.Compressed compressed = entries.compress();
+
+            return new DenseSetMultimap<>( keys.keys(), values.keys(), compressed.offsets, compressed.columns );
+        }
+    }
+
+}
@@ -0,0 +1,563 @@
+package com.enfernuz.util.dense;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Table;
+import com.google.common.collect.Tables;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *
+ * An immutable table, the row and column keys of which are dictionary-encoded to ints, meant for
+ * the tables of low-cardinality keys, like enum constants or codes.
+ *
+ * The cells are stored in the compressed sparse row layout: a flat array of the column indices and
+ * a parallel one of the values, sorted by rows and by columns within a row, plus the offset of each
+ * row. A cell takes an {@code int} and a reference, instead of the map entries of a row map and of
+ * a column map of a hash-based table, and scanning the table walks two arrays in order. Looking a
+ * cell up is a hash lookup of each key and a binary search within the row; a column is gathered by
+ * searching each row.
+ *
+ * The rows and columns are iterated in the order their keys have first been put into the
+ * {@link Builder}, and so are the cells of a row. Neither null keys nor null values are permitted.
+ * The views of the table are read-only. Instances are immutable and thus safe to be read by many
+ * threads at once, without any locking.
+ *
+ * Created by A. Nerushev
+ */
+public final class DenseTable<R, C, V> implements Table<R, C, V> {
+
+    private static final DenseTable<Object, Object, Object> EMPTY =
+            new DenseTable<>( ImmutableList.of(), ImmutableList.of(), new int[1], new int[0], new Object[0] );
+
+    private final ImmutableList<R> rowKeys;
+    private final ImmutableMap<R, Integer> rowIndices;
+    private final ImmutableList<C> columnKeys;
+    private final ImmutableMap<C, Integer> columnIndices;
+
+    private final int[] rowOffsets;
+    private final int[] columns;
+    private final Object[] values;
+
+    private DenseTable(ImmutableList<R> rowKeys, ImmutableList<C> columnKeys, int[] rowOffsets, int[] columns, Object[] values) {
+        this.rowKeys = rowKeys;
+        this.rowIndices = Dictionary.indicesOf(rowKeys);
+        this.columnKeys = columnKeys;
+        this.columnIndices = Dictionary.indicesOf(columnKeys);
+        this.rowOffsets = rowOffsets;
+        this.columns = columns;
+        this.values = values;
+    }
+
+    /**
+     * Returns the empty table.
+     * @param <R> the type of the row keys
+     * @param <C> the type of the column keys
+     * @param <V> the type of the values
+     * @return the empty table
+     */
+    @SuppressWarnings("unchecked")
+    public static <R, C, V> DenseTable<R, C, V> of() {
+        return (DenseTable<R, C, V>) EMPTY;
+    }
+
+    /**
+     * Returns a dense table of the cells of the given table.
+     * @param <R> the type of the row keys
+     * @param <C> the type of the column keys
+     * @param <V> the type of the values
+     * @param table a table
+     * @return a dense table of the cells of the table, which is the given table if it is a dense
+     * table
+     * @throws NullPointerException if the passed argument is a null reference or contains a null
+     * key or value
+     */
+    @SuppressWarnings("unchecked")
+    public static <R, C, V> DenseTable<R, C, V> copyOf(Table<? extends R, ? extends C, ? extends V> table)
+            throws NullPointerException {
+
+        if (table instanceof DenseTable) {
+            return (DenseTable<R, C, V>) table;
+        }
+
+        return DenseTable.<R, C, V>builder().putAll(table).build();
+    }
+
+    /**
+     * Creates a builder of a table.
+     * @param <R> the type of the row keys
+     * @param <C> the type of the column keys
+     * @param <V> the type of the values
+     * @return a new builder
+     */
+    public static <R, C, V> Builder<R, C, V> builder() {
+        return new Builder<>();
+    }
+
+    @Override
+    public boolean contains(Object rowKey, Object columnKey) {
+        return positionOf(rowKey, columnKey) >= 0;
+    }
+
+    @Override
+    public boolean containsRow(Object rowKey) {
+        return rowIndices.containsKey(rowKey);
+    }
+
+    @Override
+    public boolean containsColumn(Object columnKey) {
+        return columnIndices.containsKey(columnKey);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+
+        if (value != null) {
+            for (Object v : values) {
+                if ( v.equals(value) ) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object rowKey, Object columnKey) {
+
+        final int position = positionOf(rowKey, columnKey);
+
+        return position < 0 ? null : (V) values[position];
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return values.length == 0;
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the table unmodified.
+     * @throws UnsupportedOperationException always
+     * @deprecated Unsupported operation.
+     */
+    @Deprecated
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the table unmodified.
+     * @throws UnsupportedOperationException always
+     * @deprecated Unsupported operation.
+     */
+    @Deprecated
+    @Override
+    public V put(R rowKey, C columnKey, V value) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the table unmodified.
+     * @throws UnsupportedOperationException always
+     * @deprecated Unsupported operation.
+     */
+    @Deprecated
+    @Override
+    public void putAll(Table<? extends R, ? extends C, ? extends V> table) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the table unmodified.
+     * @throws UnsupportedOperationException always
+     * @deprecated Unsupported operation.
+     */
+    @Deprecated
+    @Override
+    public V remove(Object rowKey, Object columnKey) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Map<C, V> row(R rowKey) {
+
+        final Integer row = rowIndices.get(rowKey);
+
+        return row == null ? ImmutableMap.of() : rowView(row);
+    }
+
+    @Override
+    public Map<R, V> column(C columnKey) {
+
+        final Integer column = columnIndices.get(columnKey);
+
+        return column == null ? ImmutableMap.of() : columnView(column);
+    }
+
+    @Override
+    public Set<Cell<R, C, V>> cellSet() {
+
+        return new AbstractSet<Cell<R, C, V>>() {
+
+            @Override
+            public int size() {
+                return values.length;
+            }
+
+            @Override
+            public boolean contains(Object obj) {
+
+                if ( !(obj instanceof Cell) ) {
+                    return false;
+                }
+
+                final Cell<?, ?, ?> cell = (Cell<?, ?, ?>) obj;
+                final int position = positionOf( cell.getRowKey(), cell.getColumnKey() );
+
+                return position >= 0 && values[position].equals( cell.getValue() );
+            }
+
+            @Override
+            public Iterator<Cell<R, C, V>> iterator() {
+
+                return new Iterator<Cell<R, C, V>>() {
+
+                    private int row;
+                    private int position;
+
+                    @Override
+                    public boolean hasNext() {
+                        return position < values.length;
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Cell<R, C, V> next() {
+
+                        if ( !hasNext() ) {
+                            throw new NoSuchElementException();
+                        }
+
+                        while (rowOffsets[row + 1] <= position) {
+                            row++;
+                        }
+
+                        final Cell<R, C, V> cell = Tables.immutableCell(
+                                rowKeys.get(row),
+                                columnKeys.get( columns[position] ),
+                                (V) values[position]
+                        );
+                        position++;
+
+                        return cell;
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public Set<R> rowKeySet() {
+        return rowIndices.keySet();
+    }
+
+    @Override
+    public Set<C> columnKeySet() {
+        return columnIndices.keySet();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Collection<V> values() {
+        return Collections.unmodifiableList( (List<V>) Arrays.asList(values) );
+    }
+
+    @Override
+    public Map<R, Map<C, V>> rowMap() {
+
+        return new IndexedMap<R, Map<C, V>>() {
+
+            @Override
+            R keyAt(int position) {
+                return rowKeys.get(position);
+            }
+
+            @Override
+            Map<C, V> valueAt(int position) {
+                return rowView(position);
+            }
+
+            @Override
+            int positionOf(Object key) {
+
+                final Integer row = rowIndices.get(key);
+
+                return row == null ? -1 : row;
+            }
+
+            @Override
+            public int size() {
+                return rowKeys.size();
+            }
+        };
+    }
+
+    @Override
+    public Map<C, Map<R, V>> columnMap() {
+
+        return new IndexedMap<C, Map<R, V>>() {
+
+            @Override
+            C keyAt(int position) {
+                return columnKeys.get(position);
+            }
+
+            @Override
+            Map<R, V> valueAt(int position) {
+                return columnView(position);
+            }
+
+            @Override
+            int positionOf(Object key) {
+
+                final Integer column = columnIndices.get(key);
+
+                return column == null ? -1 : column;
+            }
+
+            @Override
+            public int size() {
+                return columnKeys.size();
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+
+        if (obj == this) {
+            return true;
+        }
+
+        return obj instanceof Table && cellSet().equals( ((Table<?, ?, ?>) obj).cellSet() );
+    }
+
+    @Override
+    public int hashCode() {
+        return cellSet().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return rowMap().toString();
+    }
+
+    private int positionOf(Object rowKey, Object columnKey) {
+
+        final Integer row = rowIndices.get(rowKey);
+
+        return row == null ? -1 : positionInRow(row, columnKey);
+    }
+
+    private int positionInRow(int row, Object columnKey) {
+
+        final Integer column = columnIndices.get(columnKey);
+        if (column == null) {
+            return -1;
+        }
+
+        final int position = Arrays.binarySearch(columns, rowOffsets[row], rowOffsets[row + 1], column);
+
+        return position < 0 ? -1 : position;
+    }
+
+    private Map<C, V> rowView(int row) {
+
+        final int start = rowOffsets[row];
+        final int size = rowOffsets[row + 1] - start;
+
+        return new IndexedMap<C, V>() {
+
+            @Override
+            C keyAt(int position) {
+                return columnKeys.get( columns[start + position] );
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            V valueAt(int position) {
+                return (V) values[start + position];
+            }
+
+            @Override
+            int positionOf(Object key) {
+
+                final int position = positionInRow(row, key);
+
+                return position < 0 ? -1 : position - start;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private Map<R, V> columnView(int column) {
+
+        // the rows having a cell in the column, in order, and the positions of the cells
+        final int[] cellRows = new int[ rowKeys.size() ];
+        final int[] cellPositions = new int[ rowKeys.size() ];
+        int count = 0;
+        for (int row = 0; row < rowKeys.size(); row++) {
+            final int position = Arrays.binarySearch(columns, rowOffsets[row], rowOffsets[row + 1], column);
+            if (position >= 0) {
+                cellRows[count] = row;
+                cellPositions[count++] = position;
+            }
+        }
+        final int size = count;
+
+        return new IndexedMap<R, V>() {
+
+            @Override
+            R keyAt(int position) {
+                return rowKeys.get( cellRows[position] );
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            V valueAt(int position) {
+                return (V) values[ cellPositions[position] ];
+            }
+
+            @Override
+            int positionOf(Object key) {
+
+                final Integer row = rowIndices.get(key);
+                if (row == null) {
+                    return -1;
+                }
+
+                final int position = Arrays.binarySearch(cellRows, 0, size, row);
+
+                return position < 0 ? -1 : position;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * A builder of a dense table. A cell put more than once holds the value put last.
+     *
+     * The builder encodes the keys with dictionaries of its own and buffers the cells in put
+     * order, so a put is two hash lookups and a few array stores; the cells are sorted and the
+     * duplicates dropped when the table is built. Builders are not thread-safe; for parallel
+     * accumulation, use one builder per worker and join them with {@link #putAll(Builder)}.
+     */
+    public static final class Builder<R, C, V> {
+
+        private final Dictionary<R> rows = new Dictionary<>();
+        private final Dictionary<C> columns = new Dictionary<>();
+        private final CellBuffer cells = new CellBuffer(true);
+
+        private Builder() {
+        }
+
+        /**
+         * Puts a value into a cell of the table being built.
+         * @param rowKey the row key of the cell
+         * @param columnKey the column key of the cell
+         * @param value a value
+         * @return this builder
+         * @throws NullPointerException if either of the passed arguments is a null reference
+         */
+        public Builder<R, C, V> put(R rowKey, C columnKey, V value) throws NullPointerException {
+
+            requireNonNull(rowKey);
+            requireNonNull(columnKey);
+            requireNonNull(value);
+
+            cells.add( rows.encode(rowKey), columns.encode(columnKey), value );
+
+            return this;
+        }
+
+        /**
+         * Puts all the cells of the given table into the table being built.
+         * @param table a table
+         * @return this builder
+         * @throws NullPointerException if the passed argument is a null reference or contains a
+         * null key or value
+         */
+        public Builder<R, C, V> putAll(Table<? extends R, ? extends C, ? extends V> table)
+                throws NullPointerException {
+
+            for (Cell<? extends R, ? extends C, ? extends V> cell : table.cellSet()) {
+                put( cell.getRowKey(), cell.getColumnKey(), cell.getValue() );
+            }
+
+            return this;
+        }
+
+        /**
+         * Puts all the cells of the given builder into the table being built, as if they were put
+         * after the cells of this builder. The keys of the given builder are remapped onto the
+         * dictionaries of this one, so joining two builders costs a lookup per distinct key and
+         * an array copy of the cells.
+         * @param other a builder
+         * @return this builder
+         * @throws NullPointerException if the passed argument is a null reference
+         */
+        public Builder<R, C, V> putAll(Builder<? extends R, ? extends C, ? extends V> other)
+                throws NullPointerException {
+
+            if (requireNonNull(other) != this) {
+                cells.addAll( other.cells, rows.encodeAll(other.rows), columns.encodeAll(other.columns) );
+            }
+
+            return this;
+        }
+
+        /**
+         * Returns a dense table of the cells put into the builder. The builder may be used
+         * afterwards.
+         * @return a dense table
+         */
+        public DenseTable<R, C, V> build() {
+
+            if (rows.size() == 0) {
+                return of();
+            }
+
+            final CellBuffer.Compressed compressed = cells.compress();
+
+            return new DenseTable<>( rows.keys(), columns.keys(), compressed.offsets, compressed.columns, compressed.values );
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.enfernuz.util.dense;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *
+ * A dictionary encoding of the keys of a dense collection: each distinct key is given the next
+ * free index, in the order the keys have first been encoded.
+ *
+ * A builder keeps a dictionary of its own, so the builders of a parallel reduction never share
+ * one; when two builders are joined, the dictionary of the later one is remapped onto the one of
+ * the earlier, which keeps the indices in the order of the first occurrence of the keys.
+ *
+ * Instances are not thread-safe.
+ *
+ * Created by A. Nerushev
+ */
+final class Dictionary<E> {
+
+    private final HashMap<E, Integer> indices = new HashMap<>();
+    private final ArrayList<E> keys = new ArrayList<>();
+
+    /**
+     * Returns the index of the given key, giving it the next free index if it is a new key.
+     * @param key a key
+     * @return the index of the key
+     * @throws NullPointerException if the passed argument is a null reference
+     */
+    int encode(E key) throws NullPointerException {
+
+        final Integer index = indices.get( requireNonNull(key) );
+        if (index != null) {
+            return index;
+        }
+
+        final int newIndex = keys.size();
+        indices.put(key, newIndex);
+        keys.add(key);
+
+        return newIndex;
+    }
+
+    /**
+     * Encodes all the keys of the given dictionary, in the order of their indices.
+     * @param other a dictionary
+     * @return an array mapping the indices of the given dictionary to the indices of this one
+     */
+    int[] encodeAll(Dictionary<? extends E> other) {
+
+        final int[] remapping = new int[other.keys.size()];
+        for (int i = 0; i < remapping.length; i++) {
+            remapping[i] = encode( other.keys.get(i) );
+        }
+
+        return remapping;
+    }
+
+    /**
+     * Returns the number of the keys in the dictionary.
+     * @return the number of the keys
+     */
+    int size() {
+        return keys.size();
+    }
+
+    /**
+     * Returns the keys of the dictionary, in the order of their indices.
+     * @return an immutable list of the keys
+     */
+    ImmutableList<E> keys() {
+        return ImmutableList.copyOf(keys);
+    }
+
+    /**
+     * Maps the given keys to their positions in the list.
+     * @param <E> the type of the keys
+     * @param keys distinct keys
+     * @return an immutable map of the keys to their positions, iterated in the order of the list
+     */
+    static <E> ImmutableMap<E, Integer> indicesOf(ImmutableList<E> keys) {
+
+        final ImmutableMap.Builder<E, Integer> indices = ImmutableMap.builder();
+        for (int i = 0; i < keys.size(); i++) {
+            indices.put(keys.get(i), i);
+        }
+
+        return indices.build();
+    }
+
+}
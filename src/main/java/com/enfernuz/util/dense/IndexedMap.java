@@ -0,0 +1,97 @@
+package com.enfernuz.util.dense;
+
+import com.google.common.collect.Maps;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ *
+ * A read-only map view over the positions {@code 0 .. size() - 1}, the keys and values of which
+ * are looked up by position, and a key by its index. Nothing is copied, so the views of the dense
+ * collections cost an object each.
+ *
+ * Created by A. Nerushev
+ */
+abstract class IndexedMap<K, V> extends AbstractMap<K, V> {
+
+    /**
+     * Returns the key at the given position.
+     * @param position a position
+     * @return the key at the position
+     */
+    abstract K keyAt(int position);
+
+    /**
+     * Returns the value at the given position.
+     * @param position a position
+     * @return the value at the position
+     */
+    abstract V valueAt(int position);
+
+    /**
+     * Returns the position of the given key.
+     * @param key a key
+     * @return the position of the key, or a negative number if the map does not contain it
+     */
+    abstract int positionOf(Object key);
+
+    @Override
+    public abstract int size();
+
+    @Override
+    public boolean containsKey(Object key) {
+        return positionOf(key) >= 0;
+    }
+
+    @Override
+    public V get(Object key) {
+
+        final int position = positionOf(key);
+
+        return position < 0 ? null : valueAt(position);
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+
+        return new AbstractSet<Map.Entry<K, V>>() {
+
+            @Override
+            public int size() {
+                return IndexedMap.this.size();
+            }
+
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+
+                return new Iterator<Map.Entry<K, V>>() {
+
+                    private int position;
+
+                    @Override
+                    public boolean hasNext() {
+                        return position < IndexedMap.this.size();
+                    }
+
+                    @Override
+                    public Map.Entry<K, V> next() {
+
+                        if ( !hasNext() ) {
+                            throw new NoSuchElementException();
+                        }
+
+                        final int current = position++;
+
+                        return Maps.immutableEntry( keyAt(current), valueAt(current) );
+                    }
+                };
+            }
+        };
+    }
+
+}
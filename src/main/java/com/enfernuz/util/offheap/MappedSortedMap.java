@@ -0,0 +1,241 @@
+package com.enfernuz.util.offheap;
+
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *
+ * A read-only sorted map over a memory-mapped sorted snapshot file, so that reopening a sorted map
+ * costs a few {@code mmap} calls instead of a rebuild.
+ *
+ * The snapshot holds the serialized entries in the key order plus an index of their addresses;
+ * keys are looked up by a binary search over the index, with {@code O(log n)} key reads. The
+ * keys and the values are deserialized anew on each access. The comparator is not stored in the
+ * snapshot, so a snapshot has to be opened with the comparator it has been written with. The range
+ * views share the mapping of the map and are read-only as well.
+ *
+ * Instances are safe to be read by many threads at once.
+ *
+ * Created by A. Nerushev
+ */
+public final class MappedSortedMap<K, V> extends AbstractMap<K, V> implements SortedMap<K, V> {
+
+    private final SortedRecords<K> records;
+    private final Serializer<V> valueSerializer;
+    private final long from;
+    private final long to;
+
+    private Set<Map.Entry<K, V>> entrySet;
+
+    private MappedSortedMap(SortedRecords<K> records, Serializer<V> valueSerializer, long from, long to) {
+        this.records = records;
+        this.valueSerializer = valueSerializer;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Writes the entries of a sorted map into a sorted snapshot file.
+     * @param <K> the type of the keys
+     * @param <V> the type of the values
+     * @param map a sorted map
+     * @param keySerializer a serializer of the keys
+     * @param valueSerializer a serializer of the values
+     * @param file a file to be created or overwritten
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     * @throws IllegalArgumentException if an entry is serialized into more than 1 GiB
+     * @throws IOException if an I/O error occurs
+     */
+    public static <K, V> void write(
+            SortedMap<K, ? extends V> map,
+            Serializer<? super K> keySerializer,
+            Serializer<? super V> valueSerializer,
+            Path file) throws NullPointerException, IllegalArgumentException, IOException {
+
+        requireNonNull(map);
+        requireNonNull(keySerializer);
+        requireNonNull(valueSerializer);
+        requireNonNull(file);
+
+        SnapshotFile.writeSorted(map.entrySet(), keySerializer, valueSerializer, file);
+    }
+
+    /**
+     * Opens a sorted snapshot file as a read-only sorted map.
+     * @param <K> the type of the keys
+     * @param <V> the type of the values
+     * @param file a sorted snapshot file
+     * @param keySerializer a serializer of the keys
+     * @param valueSerializer a serializer of the values
+     * @param comparator the comparator the snapshot has been written with
+     * @return a sorted map over the mapped file
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     * @throws IOException if an I/O error occurs or the file is not a sorted snapshot
+     */
+    public static <K, V> MappedSortedMap<K, V> open(
+            Path file,
+            Serializer<K> keySerializer,
+            Serializer<V> valueSerializer,
+            Comparator<? super K> comparator) throws NullPointerException, IOException {
+
+        requireNonNull(keySerializer);
+        requireNonNull(valueSerializer);
+        requireNonNull(comparator);
+
+        final SnapshotFile.Mapping mapping = SnapshotFile.map( requireNonNull(file), SnapshotFile.SORTED );
+
+        return new MappedSortedMap<>(
+                new SortedRecords<>(mapping, keySerializer, comparator), valueSerializer, 0, mapping.size
+        );
+    }
+
+    @Override
+    public int size() {
+        return Ints.saturatedCast(to - from);
+    }
+
+    /**
+     * Returns the number of entries in the map, which may exceed {@code Integer.MAX_VALUE}.
+     * @return the number of entries in the map
+     */
+    public long sizeAsLong() {
+        return to - from;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) >= 0;
+    }
+
+    @Override
+    public V get(Object key) {
+
+        final long position = find(key);
+
+        return position < 0 ? null : records.readValue(position, valueSerializer);
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return records.comparator();
+    }
+
+    @Override
+    public MappedSortedMap<K, V> subMap(K fromKey, K toKey) throws NullPointerException, IllegalArgumentException {
+
+        checkArgument(
+                comparator().compare(fromKey, toKey) <= 0,
+                "The range of [%s, %s) is reversed.", fromKey, toKey
+        );
+
+        return new MappedSortedMap<>(
+                records, valueSerializer, records.lowerBound(fromKey, from, to), records.lowerBound(toKey, from, to)
+        );
+    }
+
+    @Override
+    public MappedSortedMap<K, V> headMap(K toKey) throws NullPointerException {
+        return new MappedSortedMap<>( records, valueSerializer, from, records.lowerBound(toKey, from, to) );
+    }
+
+    @Override
+    public MappedSortedMap<K, V> tailMap(K fromKey) throws NullPointerException {
+        return new MappedSortedMap<>( records, valueSerializer, records.lowerBound(fromKey, from, to), to );
+    }
+
+    @Override
+    public K firstKey() throws NoSuchElementException {
+
+        if (from == to) {
+            throw new NoSuchElementException();
+        }
+
+        return records.readKey(from);
+    }
+
+    @Override
+    public K lastKey() throws NoSuchElementException {
+
+        if (from == to) {
+            throw new NoSuchElementException();
+        }
+
+        return records.readKey(to - 1);
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+
+        Set<Map.Entry<K, V>> result = entrySet;
+        if (result == null) {
+            entrySet = result = new AbstractSet<Map.Entry<K, V>>() {
+
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+
+                    return new Iterator<Map.Entry<K, V>>() {
+
+                        private long position = from;
+
+                        @Override
+                        public boolean hasNext() {
+                            return position < to;
+                        }
+
+                        @Override
+                        public Map.Entry<K, V> next() {
+
+                            if ( !hasNext() ) {
+                                throw new NoSuchElementException();
+                            }
+
+                            final long current = position++;
+
+                            return Maps.immutableEntry(
+                                    records.readKey(current), records.readValue(current, valueSerializer)
+                            );
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return MappedSortedMap.this.size();
+                }
+            };
+        }
+
+        return result;
+    }
+
+    // keys of foreign types are reported to be missing
+    @SuppressWarnings("unchecked")
+    private long find(Object key) {
+
+        if (key == null) {
+            return -1;
+        }
+
+        try {
+            return records.find( (K) key, from, to );
+        } catch (ClassCastException foreignKey) {
+            return -1;
+        }
+    }
+
+}
@@ -0,0 +1,191 @@
+package com.enfernuz.util.offheap;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *
+ * A read-only sorted set over a memory-mapped sorted snapshot file, so that reopening a sorted set
+ * costs a few {@code mmap} calls instead of a rebuild.
+ *
+ * The set is a {@link MappedSortedMap} without values: the elements are looked up by a binary
+ * search over the index of the snapshot and deserialized anew on each access. The snapshot has to
+ * be opened with the comparator it has been written with.
+ *
+ * Instances are safe to be read by many threads at once.
+ *
+ * Created by A. Nerushev
+ */
+public final class MappedSortedSet<E> extends AbstractSet<E> implements SortedSet<E> {
+
+    private final SortedRecords<E> records;
+    private final long from;
+    private final long to;
+
+    private MappedSortedSet(SortedRecords<E> records, long from, long to) {
+        this.records = records;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Writes the elements of a sorted set into a sorted snapshot file.
+     * @param <E> the type of the elements
+     * @param set a sorted set
+     * @param serializer a serializer of the elements
+     * @param file a file to be created or overwritten
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     * @throws IllegalArgumentException if an element is serialized into more than 1 GiB
+     * @throws IOException if an I/O error occurs
+     */
+    public static <E> void write(SortedSet<E> set, Serializer<? super E> serializer, Path file)
+            throws NullPointerException, IllegalArgumentException, IOException {
+
+        requireNonNull(set);
+        requireNonNull(serializer);
+        requireNonNull(file);
+
+        SnapshotFile.writeSorted(
+                Iterables.transform( set, element -> Maps.immutableEntry(element, Boolean.TRUE) ),
+                serializer,
+                Serializers.NO_VALUE,
+                file
+        );
+    }
+
+    /**
+     * Opens a sorted snapshot file as a read-only sorted set.
+     * @param <E> the type of the elements
+     * @param file a sorted snapshot file
+     * @param serializer a serializer of the elements
+     * @param comparator the comparator the snapshot has been written with
+     * @return a sorted set over the mapped file
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     * @throws IOException if an I/O error occurs or the file is not a sorted snapshot
+     */
+    public static <E> MappedSortedSet<E> open(Path file, Serializer<E> serializer, Comparator<? super E> comparator)
+            throws NullPointerException, IOException {
+
+        requireNonNull(serializer);
+        requireNonNull(comparator);
+
+        final SnapshotFile.Mapping mapping = SnapshotFile.map( requireNonNull(file), SnapshotFile.SORTED );
+
+        return new MappedSortedSet<>( new SortedRecords<>(mapping, serializer, comparator), 0, mapping.size );
+    }
+
+    @Override
+    public int size() {
+        return Ints.saturatedCast(to - from);
+    }
+
+    /**
+     * Returns the number of elements in the set, which may exceed {@code Integer.MAX_VALUE}.
+     * @return the number of elements in the set
+     */
+    public long sizeAsLong() {
+        return to - from;
+    }
+
+    // elements of foreign types are reported to be missing
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object element) {
+
+        if (element == null) {
+            return false;
+        }
+
+        try {
+            return records.find( (E) element, from, to ) >= 0;
+        } catch (ClassCastException foreignElement) {
+            return false;
+        }
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+
+        return new Iterator<E>() {
+
+            private long position = from;
+
+            @Override
+            public boolean hasNext() {
+                return position < to;
+            }
+
+            @Override
+            public E next() {
+
+                if ( !hasNext() ) {
+                    throw new NoSuchElementException();
+                }
+
+                return records.readKey(position++);
+            }
+        };
+    }
+
+    @Override
+    public Comparator<? super E> comparator() {
+        return records.comparator();
+    }
+
+    @Override
+    public MappedSortedSet<E> subSet(E fromElement, E toElement) throws NullPointerException, IllegalArgumentException {
+
+        checkArgument(
+                comparator().compare(fromElement, toElement) <= 0,
+                "The range of [%s, %s) is reversed.", fromElement, toElement
+        );
+
+        return new MappedSortedSet<>(
+                records, records.lowerBound(fromElement, from, to), records.lowerBound(toElement, from, to)
+        );
+    }
+
+    @Override
+    public MappedSortedSet<E> headSet(E toElement) throws NullPointerException {
+        return new MappedSortedSet<>( records, from, records.lowerBound(toElement, from, to) );
+    }
+
+    @Override
+    public MappedSortedSet<E> tailSet(E fromElement) throws NullPointerException {
+        return new MappedSortedSet<>( records, records.lowerBound(fromElement, from, to), to );
+    }
+
+    @Override
+    public E first() throws NoSuchElementException {
+
+        if (from == to) {
+            throw new NoSuchElementException();
+        }
+
+        return records.readKey(from);
+    }
+
+    @Override
+    public E last() throws NoSuchElementException {
+
+        if (from == to) {
+            throw new NoSuchElementException();
+        }
+
+        return records.readKey(to - 1);
+    }
+
+}
@@ -0,0 +1,262 @@
+package com.enfernuz.util.offheap;
+
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *
+ * A read-only map, the entries of which are serialized into direct memory, so that neither the
+ * keys nor the values add to the heap however many of them there are.
+ *
+ * The entries are kept in an open-addressing hash table of serialized records. Keys are compared
+ * by their serialized bytes, so the key serializer has to be canonical. The keys and the values
+ * are deserialized anew on each access; the views of the map are read-only and the order of
+ * their iteration is unspecified. The direct memory of the map is released when the map becomes
+ * unreachable, so the maximum direct memory size of the JVM (see
+ * {@code -XX:MaxDirectMemorySize}) has to accommodate the serialized entries plus 16 bytes per
+ * entry for the hash table.
+ *
+ * Instances are safe to be read by many threads at once.
+ *
+ * Created by A. Nerushev
+ */
+public final class OffHeapMap<K, V> extends AbstractMap<K, V> {
+
+    private final OffHeapTable table;
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+
+    private Set<Map.Entry<K, V>> entrySet;
+
+    private OffHeapMap(OffHeapTable table, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+        this.table = table;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+    }
+
+    /**
+     * Creates a builder of an off-heap map.
+     * @param <K> the type of the keys
+     * @param <V> the type of the values
+     * @param keySerializer a canonical serializer of the keys
+     * @param valueSerializer a serializer of the values
+     * @return a new builder
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    public static <K, V> Builder<K, V> builder(Serializer<K> keySerializer, Serializer<V> valueSerializer)
+            throws NullPointerException {
+        return new Builder<>( requireNonNull(keySerializer), requireNonNull(valueSerializer) );
+    }
+
+    /**
+     * Opens a hashed snapshot file, written by {@link #writeTo(Path)}, as a read-only map over the
+     * memory-mapped file. The hash table of the snapshot is mapped as it is, so nothing is rebuilt.
+     * @param <K> the type of the keys
+     * @param <V> the type of the values
+     * @param file a hashed snapshot file
+     * @param keySerializer the serializer of the keys the snapshot has been written with
+     * @param valueSerializer the serializer of the values the snapshot has been written with
+     * @return a map over the mapped file
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     * @throws IOException if an I/O error occurs or the file is not a hashed snapshot
+     */
+    public static <K, V> OffHeapMap<K, V> open(Path file, Serializer<K> keySerializer, Serializer<V> valueSerializer)
+            throws NullPointerException, IOException {
+
+        requireNonNull(keySerializer);
+        requireNonNull(valueSerializer);
+
+        return new OffHeapMap<>( SnapshotFile.openHashed( requireNonNull(file) ), keySerializer, valueSerializer );
+    }
+
+    /**
+     * Writes the map into a hashed snapshot file, to be reopened by
+     * {@link #open(Path, Serializer, Serializer)}. The entries shadowed by later puts of the same
+     * keys are left out.
+     * @param file a file to be created or overwritten
+     * @throws NullPointerException if the passed argument is a null reference
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(Path file) throws NullPointerException, IOException {
+        SnapshotFile.writeHashed( table, requireNonNull(file) );
+    }
+
+    @Override
+    public int size() {
+        return Ints.saturatedCast( table.size() );
+    }
+
+    /**
+     * Returns the number of entries in the map, which may exceed {@code Integer.MAX_VALUE}.
+     * @return the number of entries in the map
+     */
+    public long sizeAsLong() {
+        return table.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) >= 0;
+    }
+
+    @Override
+    public V get(Object key) {
+
+        final long address = find(key);
+
+        return address < 0 ? null : table.readValue(address, valueSerializer);
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+
+        Set<Map.Entry<K, V>> result = entrySet;
+        if (result == null) {
+            entrySet = result = new AbstractSet<Map.Entry<K, V>>() {
+
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+
+                    final PrimitiveIterator.OfLong addresses = table.addresses();
+
+                    return new Iterator<Map.Entry<K, V>>() {
+
+                        @Override
+                        public boolean hasNext() {
+                            return addresses.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<K, V> next() {
+
+                            final long address = addresses.nextLong();
+
+                            return Maps.immutableEntry(
+                                    table.readKey(address, keySerializer),
+                                    table.readValue(address, valueSerializer)
+                            );
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return OffHeapMap.this.size();
+                }
+            };
+        }
+
+        return result;
+    }
+
+    // keys of foreign types are reported to be missing, just as HashMap does
+    @SuppressWarnings("unchecked")
+    private long find(Object key) {
+
+        if (key == null) {
+            return -1;
+        }
+
+        final ByteBuffer serializedKey;
+        try {
+            serializedKey = serialize( (K) key, keySerializer );
+        } catch (ClassCastException foreignKey) {
+            return -1;
+        }
+
+        return table.find( serializedKey, 0, serializedKey.capacity() );
+    }
+
+    static <T> ByteBuffer serialize(T value, Serializer<T> serializer) {
+
+        final ByteBuffer buffer = ByteBuffer.allocate( serializer.serializedSize(value) );
+        serializer.write(value, buffer, 0);
+
+        return buffer;
+    }
+
+    /**
+     * A builder of an off-heap map. The entries are serialized into direct memory as they are
+     * put; whenever a key is put more than once, the last put value wins.
+     *
+     * Instances are not thread-safe.
+     */
+    public static final class Builder<K, V> {
+
+        private final Serializer<K> keySerializer;
+        private final Serializer<V> valueSerializer;
+        private RecordPages records = new RecordPages();
+
+        private Builder(Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+            this.keySerializer = keySerializer;
+            this.valueSerializer = valueSerializer;
+        }
+
+        /**
+         * Puts an entry into the map being built.
+         * @param key a key
+         * @param value a value
+         * @return this builder
+         * @throws NullPointerException if either of the passed arguments is a null reference
+         * @throws IllegalStateException if the map has already been built
+         */
+        public Builder<K, V> put(K key, V value) throws NullPointerException, IllegalStateException {
+
+            records().append(key, keySerializer, value, valueSerializer);
+
+            return this;
+        }
+
+        /**
+         * Moves all the entries of the given builder into this builder, as if they were put after
+         * the entries of this builder. The given builder cannot be used afterwards.
+         * @param later a builder
+         * @return this builder
+         * @throws NullPointerException if the passed argument is a null reference
+         * @throws IllegalStateException if either of the maps has already been built
+         */
+        public Builder<K, V> combine(Builder<K, V> later) throws NullPointerException, IllegalStateException {
+
+            records().append( later.records() );
+            later.records = null;
+
+            return this;
+        }
+
+        /**
+         * Builds the map. The builder cannot be used afterwards, as the map takes over its
+         * direct memory.
+         * @return an off-heap map of the entries put into the builder
+         * @throws IllegalStateException if the map has already been built
+         */
+        public OffHeapMap<K, V> build() throws IllegalStateException {
+
+            final OffHeapTable table = OffHeapTable.build( records() );
+            records = null;
+
+            return new OffHeapMap<>(table, keySerializer, valueSerializer);
+        }
+
+        private RecordPages records() throws IllegalStateException {
+
+            if (records == null) {
+                throw new IllegalStateException("The builder has already been used up.");
+            }
+
+            return records;
+        }
+    }
+
+}
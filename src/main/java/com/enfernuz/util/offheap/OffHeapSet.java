@@ -0,0 +1,197 @@
+package com.enfernuz.util.offheap;
+
+import com.google.common.primitives.Ints;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.PrimitiveIterator;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *
+ * A read-only set, the elements of which are serialized into direct memory, so that they do not
+ * add to the heap however many of them there are.
+ *
+ * The set is an {@link OffHeapMap} without values: the elements are kept in an open-addressing
+ * hash table of serialized records and compared by their serialized bytes, so the serializer has
+ * to be canonical. The elements are deserialized anew on each access and the order of the
+ * iteration is unspecified.
+ *
+ * Instances are safe to be read by many threads at once.
+ *
+ * Created by A. Nerushev
+ */
+public final class OffHeapSet<E> extends AbstractSet<E> {
+
+    private final OffHeapTable table;
+    private final Serializer<E> serializer;
+
+    private OffHeapSet(OffHeapTable table, Serializer<E> serializer) {
+        this.table = table;
+        this.serializer = serializer;
+    }
+
+    /**
+     * Creates a builder of an off-heap set.
+     * @param <E> the type of the elements
+     * @param serializer a canonical serializer of the elements
+     * @return a new builder
+     * @throws NullPointerException if the passed argument is a null reference
+     */
+    public static <E> Builder<E> builder(Serializer<E> serializer) throws NullPointerException {
+        return new Builder<>( requireNonNull(serializer) );
+    }
+
+    /**
+     * Opens a hashed snapshot file, written by {@link #writeTo(Path)}, as a read-only set over the
+     * memory-mapped file. The hash table of the snapshot is mapped as it is, so nothing is rebuilt.
+     * @param <E> the type of the elements
+     * @param file a hashed snapshot file
+     * @param serializer the serializer of the elements the snapshot has been written with
+     * @return a set over the mapped file
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     * @throws IOException if an I/O error occurs or the file is not a hashed snapshot
+     */
+    public static <E> OffHeapSet<E> open(Path file, Serializer<E> serializer) throws NullPointerException, IOException {
+
+        requireNonNull(serializer);
+
+        return new OffHeapSet<>( SnapshotFile.openHashed( requireNonNull(file) ), serializer );
+    }
+
+    /**
+     * Writes the set into a hashed snapshot file, to be reopened by
+     * {@link #open(Path, Serializer)}.
+     * @param file a file to be created or overwritten
+     * @throws NullPointerException if the passed argument is a null reference
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(Path file) throws NullPointerException, IOException {
+        SnapshotFile.writeHashed( table, requireNonNull(file) );
+    }
+
+    @Override
+    public int size() {
+        return Ints.saturatedCast( table.size() );
+    }
+
+    /**
+     * Returns the number of elements in the set, which may exceed {@code Integer.MAX_VALUE}.
+     * @return the number of elements in the set
+     */
+    public long sizeAsLong() {
+        return table.size();
+    }
+
+    // elements of foreign types are reported to be missing, just as HashSet does
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object element) {
+
+        if (element == null) {
+            return false;
+        }
+
+        final ByteBuffer serializedElement;
+        try {
+            serializedElement = OffHeapMap.serialize( (E) element, serializer );
+        } catch (ClassCastException foreignElement) {
+            return false;
+        }
+
+        return table.find( serializedElement, 0, serializedElement.capacity() ) >= 0;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+
+        final PrimitiveIterator.OfLong addresses = table.addresses();
+
+        return new Iterator<E>() {
+
+            @Override
+            public boolean hasNext() {
+                return addresses.hasNext();
+            }
+
+            @Override
+            public E next() {
+                return table.readKey( addresses.nextLong(), serializer );
+            }
+        };
+    }
+
+    /**
+     * A builder of an off-heap set. The elements are serialized into direct memory as they are
+     * added.
+     *
+     * Instances are not thread-safe.
+     */
+    public static final class Builder<E> {
+
+        private final Serializer<E> serializer;
+        private RecordPages records = new RecordPages();
+
+        private Builder(Serializer<E> serializer) {
+            this.serializer = serializer;
+        }
+
+        /**
+         * Adds an element to the set being built.
+         * @param element an element
+         * @return this builder
+         * @throws NullPointerException if the passed argument is a null reference
+         * @throws IllegalStateException if the set has already been built
+         */
+        public Builder<E> add(E element) throws NullPointerException, IllegalStateException {
+
+            records().append(element, serializer, Boolean.TRUE, Serializers.NO_VALUE);
+
+            return this;
+        }
+
+        /**
+         * Moves all the elements of the given builder into this builder. The given builder cannot
+         * be used afterwards.
+         * @param other a builder
+         * @return this builder
+         * @throws NullPointerException if the passed argument is a null reference
+         * @throws IllegalStateException if either of the sets has already been built
+         */
+        public Builder<E> combine(Builder<E> other) throws NullPointerException, IllegalStateException {
+
+            records().append( other.records() );
+            other.records = null;
+
+            return this;
+        }
+
+        /**
+         * Builds the set. The builder cannot be used afterwards, as the set takes over its direct
+         * memory.
+         * @return an off-heap set of the elements added to the builder
+         * @throws IllegalStateException if the set has already been built
+         */
+        public OffHeapSet<E> build() throws IllegalStateException {
+
+            final OffHeapTable table = OffHeapTable.build( records() );
+            records = null;
+
+            return new OffHeapSet<>(table, serializer);
+        }
+
+        private RecordPages records() throws IllegalStateException {
+
+            if (records == null) {
+                throw new IllegalStateException("The builder has already been used up.");
+            }
+
+            return records;
+        }
+    }
+
+}
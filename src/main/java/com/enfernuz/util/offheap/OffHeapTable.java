@@ -0,0 +1,293 @@
+package com.enfernuz.util.offheap;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ *
+ * A read-only open-addressing hash table over the records of a {@link RecordPages} log, both the
+ * records and the slots of the table being kept in direct memory: either in the direct pages of
+ * the log or in the windows of a memory-mapped snapshot file (see {@link SnapshotFile}).
+ *
+ * A slot holds the address of a record plus one, 0 marking a free slot; the address of a record
+ * is the index of its page in the upper 32 bits and its offset in the page in the lower ones. The
+ * table is built once, with linear probing at the load factor of at most 1/2; whenever a key
+ * occurs in more than one record, the slot ends up pointing at the last of them. Keys are
+ * compared by their serialized bytes.
+ *
+ * Instances are safe to be read by many threads at once.
+ *
+ * Created by A. Nerushev
+ */
+final class OffHeapTable {
+
+    // 2^17 slots of 8 bytes make a page of 1 MiB
+    private static final int SLOT_PAGE_SHIFT = 17;
+
+    private final ByteBuffer[] pages;
+    private final ByteBuffer[] slotPages;
+    private final int slotPageShift;
+    private final int slotPageMask;
+    private final long mask;
+    private final long size;
+
+    private OffHeapTable(ByteBuffer[] pages, ByteBuffer[] slotPages, int slotPageShift, long mask, long size) {
+        this.pages = pages;
+        this.slotPages = slotPages;
+        this.slotPageShift = slotPageShift;
+        this.slotPageMask = (1 << slotPageShift) - 1;
+        this.mask = mask;
+        this.size = size;
+    }
+
+    /**
+     * Wraps the already built pages and slots of a table.
+     * @param pages the pages of the records
+     * @param slotPages the pages of the slots, each but the last one holding
+     * {@code 2^slotPageShift} slots
+     * @param slotPageShift the base 2 logarithm of the number of slots per page
+     * @param capacity the number of slots, a power of two
+     * @param size the number of the distinct keys
+     * @return a table over the given pages
+     */
+    static OffHeapTable of(ByteBuffer[] pages, ByteBuffer[] slotPages, int slotPageShift, long capacity, long size) {
+        return new OffHeapTable(pages, slotPages, slotPageShift, capacity - 1, size);
+    }
+
+    /**
+     * Builds a table over the records of the given log. The log must not be used afterwards.
+     * @param records a log of records
+     * @return a new table
+     */
+    static OffHeapTable build(RecordPages records) {
+
+        final List<RecordPages.Page> recordPages = records.pages();
+        final ByteBuffer[] pages = new ByteBuffer[ recordPages.size() ];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = recordPages.get(i).buffer;
+        }
+
+        final long capacity = Math.max( 1L << 2, Long.highestOneBit( Math.max(1L, 2 * records.count() - 1) ) << 1 );
+        final int slotPageCount = (int) ( (capacity - 1 >>> SLOT_PAGE_SHIFT) + 1 );
+        final ByteBuffer[] slotPages = new ByteBuffer[slotPageCount];
+        for (int i = 0; i < slotPageCount; i++) {
+            slotPages[i] = ByteBuffer.allocateDirect( (int) Math.min(capacity, 1L << SLOT_PAGE_SHIFT) * Long.BYTES );
+        }
+
+        final OffHeapTable table = new OffHeapTable(pages, slotPages, SLOT_PAGE_SHIFT, capacity - 1, 0);
+
+        long size = 0;
+        for (int i = 0; i < pages.length; i++) {
+            final ByteBuffer page = pages[i];
+            final int used = recordPages.get(i).used;
+            for (int offset = 0; offset < used; ) {
+                if ( table.insert( address(i, offset) ) ) {
+                    size++;
+                }
+                offset += RecordPages.recordSize(page, offset);
+            }
+        }
+
+        return new OffHeapTable(pages, slotPages, SLOT_PAGE_SHIFT, capacity - 1, size);
+    }
+
+    /**
+     * Returns the number of the distinct keys in the table.
+     * @return the number of the distinct keys
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of the slots of the table.
+     * @return the capacity of the table
+     */
+    long capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Returns the address of the record a slot points at.
+     * @param index the index of the slot
+     * @return the address of the record, or -1 if the slot is free
+     */
+    long addressAt(long index) {
+        return slot(index) - 1;
+    }
+
+    /**
+     * Looks up the record of the given serialized key.
+     * @param key a buffer holding the serialized key
+     * @param offset the absolute offset of the key
+     * @param length the length of the key
+     * @return the address of the record, or -1 if there is no record of the key
+     */
+    long find(ByteBuffer key, int offset, int length) {
+
+        final int hash = RecordPages.hash(key, offset, length);
+        for (long i = hash & mask; ; i = (i + 1) & mask) {
+
+            final long slot = slot(i);
+            if (slot == 0) {
+                return -1;
+            }
+
+            final long address = slot - 1;
+            final ByteBuffer page = page(address);
+            final int recordOffset = offset(address);
+            if ( page.getInt(recordOffset + RecordPages.HASH_OFFSET) == hash
+                    && page.getInt(recordOffset + RecordPages.KEY_LENGTH_OFFSET) == length
+                    && bytesEqual(page, recordOffset + RecordPages.HEADER_SIZE, key, offset, length) ) {
+                return address;
+            }
+        }
+    }
+
+    /**
+     * Reads the key of a record.
+     * @param <K> the type of the key
+     * @param address the address of the record
+     * @param serializer a serializer of the key
+     * @return the key of the record
+     */
+    <K> K readKey(long address, Serializer<K> serializer) {
+        return RecordPages.readKey( page(address), offset(address), serializer );
+    }
+
+    /**
+     * Reads the value of a record.
+     * @param <V> the type of the value
+     * @param address the address of the record
+     * @param serializer a serializer of the value
+     * @return the value of the record
+     */
+    <V> V readValue(long address, Serializer<V> serializer) {
+        return RecordPages.readValue( page(address), offset(address), serializer );
+    }
+
+    /**
+     * Returns an iterator over the addresses of the records of the distinct keys, in the order of
+     * the slots.
+     * @return an iterator over the record addresses
+     */
+    PrimitiveIterator.OfLong addresses() {
+
+        return new PrimitiveIterator.OfLong() {
+
+            private long index = nextOccupied(0);
+
+            @Override
+            public boolean hasNext() {
+                return index <= mask;
+            }
+
+            @Override
+            public long nextLong() {
+
+                if ( !hasNext() ) {
+                    throw new NoSuchElementException();
+                }
+
+                final long address = slot(index) - 1;
+                index = nextOccupied(index + 1);
+
+                return address;
+            }
+        };
+    }
+
+    // puts the record into its slot, telling whether its key has not been in the table yet
+    private boolean insert(long address) {
+
+        final ByteBuffer page = page(address);
+        final int offset = offset(address);
+        final int hash = page.getInt(offset + RecordPages.HASH_OFFSET);
+        final int keyLength = page.getInt(offset + RecordPages.KEY_LENGTH_OFFSET);
+        final int keyOffset = offset + RecordPages.HEADER_SIZE;
+
+        for (long i = hash & mask; ; i = (i + 1) & mask) {
+
+            final long slot = slot(i);
+            if (slot == 0) {
+                setSlot(i, address + 1);
+                return true;
+            }
+
+            final long otherAddress = slot - 1;
+            final ByteBuffer otherPage = page(otherAddress);
+            final int otherOffset = offset(otherAddress);
+            if ( otherPage.getInt(otherOffset + RecordPages.HASH_OFFSET) == hash
+                    && otherPage.getInt(otherOffset + RecordPages.KEY_LENGTH_OFFSET) == keyLength
+                    && bytesEqual(otherPage, otherOffset + RecordPages.HEADER_SIZE, page, keyOffset, keyLength) ) {
+                setSlot(i, address + 1);
+                return false;
+            }
+        }
+    }
+
+    private long nextOccupied(long index) {
+
+        while (index <= mask && slot(index) == 0) {
+            index++;
+        }
+
+        return index;
+    }
+
+    /**
+     * Returns the page holding a record.
+     * @param address the address of the record
+     * @return the page of the record
+     */
+    ByteBuffer page(long address) {
+        return pages[ (int) (address >>> Integer.SIZE) ];
+    }
+
+    /**
+     * Returns the offset of a record in its page.
+     * @param address the address of the record
+     * @return the offset of the record
+     */
+    static int offset(long address) {
+        return (int) address;
+    }
+
+    /**
+     * Composes the address of a record.
+     * @param pageIndex the index of the page of the record
+     * @param offset the offset of the record in its page
+     * @return the address of the record
+     */
+    static long address(int pageIndex, int offset) {
+        return ((long) pageIndex << Integer.SIZE) | offset;
+    }
+
+    private long slot(long index) {
+        return slotPages[ (int) (index >>> slotPageShift) ].getLong( ((int) index & slotPageMask) << 3 );
+    }
+
+    private void setSlot(long index, long value) {
+        slotPages[ (int) (index >>> slotPageShift) ].putLong( ((int) index & slotPageMask) << 3, value );
+    }
+
+    static boolean bytesEqual(ByteBuffer buffer1, int offset1, ByteBuffer buffer2, int offset2, int length) {
+
+        int i = 0;
+        for (; i + Long.BYTES <= length; i += Long.BYTES) {
+            if ( buffer1.getLong(offset1 + i) != buffer2.getLong(offset2 + i) ) {
+                return false;
+            }
+        }
+        for (; i < length; i++) {
+            if ( buffer1.get(offset1 + i) != buffer2.get(offset2 + i) ) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+}
@@ -0,0 +1,205 @@
+package com.enfernuz.util.offheap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *
+ * An append-only log of serialized key-value records in direct memory, used as the accumulation
+ * container of the off-heap collections.
+ *
+ * The records are appended to a chain of direct pages of {@link #PAGE_SIZE} bytes; a record never
+ * straddles two pages, a record larger than a page gets a page of its own. Each record is laid out
+ * as {@code [hash][key length][value length][key bytes][value bytes]}, the first three fields
+ * being {@code int}s. Two logs are concatenated in constant time by linking their page chains.
+ *
+ * Instances are not thread-safe.
+ *
+ * Created by A. Nerushev
+ */
+final class RecordPages {
+
+    static final int PAGE_SIZE = 1 << 20;
+    static final int HEADER_SIZE = 3 * Integer.BYTES;
+
+    static final int HASH_OFFSET = 0;
+    static final int KEY_LENGTH_OFFSET = Integer.BYTES;
+    static final int VALUE_LENGTH_OFFSET = 2 * Integer.BYTES;
+
+    /** A page of records, {@code used} bytes of which are taken. */
+    static final class Page {
+
+        final ByteBuffer buffer;
+        int used;
+
+        Page(int capacity) {
+            this.buffer = ByteBuffer.allocateDirect(capacity);
+        }
+    }
+
+    private final List<Page> pages = new ArrayList<>();
+    private Page current;
+    private long count;
+
+    /**
+     * Appends a record to the log.
+     * @param <K> the type of the key
+     * @param <V> the type of the value
+     * @param key a key
+     * @param keySerializer a serializer of the key
+     * @param value a value
+     * @param valueSerializer a serializer of the value
+     * @throws NullPointerException if either the key or the value is a null reference
+     * @throws IllegalArgumentException if the serialized size of the record exceeds
+     * {@code Integer.MAX_VALUE} bytes
+     */
+    <K, V> void append(K key, Serializer<? super K> keySerializer, V value, Serializer<? super V> valueSerializer)
+            throws NullPointerException, IllegalArgumentException {
+
+        requireNonNull(key);
+        requireNonNull(value);
+
+        final int keyLength = keySerializer.serializedSize(key);
+        final int valueLength = valueSerializer.serializedSize(value);
+        final long recordSize = (long) HEADER_SIZE + keyLength + valueLength;
+        checkArgument(
+                keyLength >= 0 && valueLength >= 0 && recordSize <= Integer.MAX_VALUE,
+                "The record of %s=%s is too large.", key, value
+        );
+
+        final Page page = pageFor( (int) recordSize );
+        final ByteBuffer buffer = page.buffer;
+        final int offset = page.used;
+        final int keyOffset = offset + HEADER_SIZE;
+
+        keySerializer.write(key, buffer, keyOffset);
+        valueSerializer.write(value, buffer, keyOffset + keyLength);
+        buffer.putInt( offset + HASH_OFFSET, hash(buffer, keyOffset, keyLength) );
+        buffer.putInt(offset + KEY_LENGTH_OFFSET, keyLength);
+        buffer.putInt(offset + VALUE_LENGTH_OFFSET, valueLength);
+
+        page.used += (int) recordSize;
+        count++;
+    }
+
+    /**
+     * Moves all the records of the given log to the end of this log. The given log must not be
+     * used afterwards.
+     * @param later a log to be appended to this log
+     * @return this log
+     */
+    RecordPages append(RecordPages later) {
+
+        if (later.current != null) {
+            pages.addAll(later.pages);
+            current = later.current;
+            count += later.count;
+        }
+
+        return this;
+    }
+
+    /**
+     * Returns the number of the records in the log.
+     * @return the number of the records
+     */
+    long count() {
+        return count;
+    }
+
+    /**
+     * Returns the pages of the log, in the append order.
+     * @return the pages of the log
+     */
+    List<Page> pages() {
+        return pages;
+    }
+
+    /**
+     * Returns the total size of a record.
+     * @param page a page holding the record
+     * @param offset the absolute offset of the record
+     * @return the size of the record, its header included
+     */
+    static int recordSize(ByteBuffer page, int offset) {
+
+        return HEADER_SIZE
+                + page.getInt(offset + KEY_LENGTH_OFFSET)
+                + page.getInt(offset + VALUE_LENGTH_OFFSET);
+    }
+
+    /**
+     * Reads the key of a record.
+     * @param <K> the type of the key
+     * @param page a page holding the record
+     * @param offset the absolute offset of the record
+     * @param serializer a serializer of the key
+     * @return the key of the record
+     */
+    static <K> K readKey(ByteBuffer page, int offset, Serializer<K> serializer) {
+        return serializer.read( page, offset + HEADER_SIZE, page.getInt(offset + KEY_LENGTH_OFFSET) );
+    }
+
+    /**
+     * Reads the value of a record.
+     * @param <V> the type of the value
+     * @param page a page holding the record
+     * @param offset the absolute offset of the record
+     * @param serializer a serializer of the value
+     * @return the value of the record
+     */
+    static <V> V readValue(ByteBuffer page, int offset, Serializer<V> serializer) {
+
+        return serializer.read(
+                page,
+                offset + HEADER_SIZE + page.getInt(offset + KEY_LENGTH_OFFSET),
+                page.getInt(offset + VALUE_LENGTH_OFFSET)
+        );
+    }
+
+    /**
+     * Hashes a serialized key: 64-bit FNV-1a over the 8-byte words of the key, followed by the
+     * MurmurHash3 finalizer.
+     * @param buffer a buffer holding the key
+     * @param offset the absolute offset of the key
+     * @param length the length of the key
+     * @return the hash of the key
+     */
+    static int hash(ByteBuffer buffer, int offset, int length) {
+
+        long h = 0xcbf29ce484222325L ^ length;
+
+        final int end = offset + length;
+        int i = offset;
+        for (; i + Long.BYTES <= end; i += Long.BYTES) {
+            h = (h ^ buffer.getLong(i)) * 0x100000001b3L;
+        }
+        for (; i < end; i++) {
+            h = (h ^ buffer.get(i)) * 0x100000001b3L;
+        }
+
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+
+        return (int) h;
+    }
+
+    private Page pageFor(int recordSize) {
+
+        if (current == null || current.buffer.capacity() - current.used < recordSize) {
+            current = new Page( Math.max(PAGE_SIZE, recordSize) );
+            pages.add(current);
+        }
+
+        return current;
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.enfernuz.util.offheap;
+
+import java.nio.ByteBuffer;
+
+/**
+ *
+ * A serializer of the keys and values stored in the off-heap collections.
+ *
+ * The off-heap collections compare keys by their serialized bytes, so a key serializer has to be
+ * canonical: two keys must be serialized into the same bytes if and only if they are equal. All
+ * the methods address the buffers absolutely and must not change their positions or limits, so
+ * that a buffer can be read by many threads at once.
+ *
+ * Created by A. Nerushev
+ */
+public interface Serializer<T> {
+
+    /**
+     * Returns the number of bytes the given value is serialized into.
+     * @param value a non-null value
+     * @return the serialized size of the value
+     */
+    int serializedSize(T value);
+
+    /**
+     * Writes the given value into the buffer, starting from the given offset. Exactly
+     * {@link #serializedSize(Object)} bytes are written.
+     * @param value a non-null value
+     * @param target a buffer to write the value into
+     * @param offset the absolute offset of the first byte to be written
+     */
+    void write(T value, ByteBuffer target, int offset);
+
+    /**
+     * Reads a value from the buffer.
+     * @param source a buffer to read the value from
+     * @param offset the absolute offset of the first byte of the value
+     * @param length the serialized size of the value
+     * @return the value
+     */
+    T read(ByteBuffer source, int offset, int length);
+
+}
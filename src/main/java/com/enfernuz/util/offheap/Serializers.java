@@ -0,0 +1,126 @@
+package com.enfernuz.util.offheap;
+
+import com.google.common.base.Utf8;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ *
+ * A collection of {@link Serializer} factory methods for the common key and value types.
+ *
+ * Created by A. Nerushev
+ */
+public final class Serializers {
+
+    // the values of the records of the sets take no bytes
+    static final Serializer<Object> NO_VALUE = new Serializer<Object>() {
+
+        @Override
+        public int serializedSize(Object value) {
+            return 0;
+        }
+
+        @Override
+        public void write(Object value, ByteBuffer target, int offset) {
+        }
+
+        @Override
+        public Object read(ByteBuffer source, int offset, int length) {
+            return Boolean.TRUE;
+        }
+    };
+
+    private static final Serializer<Long> LONGS = new Serializer<Long>() {
+
+        @Override
+        public int serializedSize(Long value) {
+            return Long.BYTES;
+        }
+
+        @Override
+        public void write(Long value, ByteBuffer target, int offset) {
+            target.putLong(offset, value);
+        }
+
+        @Override
+        public Long read(ByteBuffer source, int offset, int length) {
+            return source.getLong(offset);
+        }
+    };
+
+    private static final Serializer<Integer> INTEGERS = new Serializer<Integer>() {
+
+        @Override
+        public int serializedSize(Integer value) {
+            return Integer.BYTES;
+        }
+
+        @Override
+        public void write(Integer value, ByteBuffer target, int offset) {
+            target.putInt(offset, value);
+        }
+
+        @Override
+        public Integer read(ByteBuffer source, int offset, int length) {
+            return source.getInt(offset);
+        }
+    };
+
+    private static final Serializer<String> STRINGS = new Serializer<String>() {
+
+        @Override
+        public int serializedSize(String value) {
+            return Utf8.encodedLength(value);
+        }
+
+        @Override
+        public void write(String value, ByteBuffer target, int offset) {
+
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < bytes.length; i++) {
+                target.put(offset + i, bytes[i]);
+            }
+        }
+
+        @Override
+        public String read(ByteBuffer source, int offset, int length) {
+
+            final byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = source.get(offset + i);
+            }
+
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    private Serializers() {
+        throw new AssertionError("The class is uninstantiable.");
+    }
+
+    /**
+     * Returns a serializer of {@code Long} values, each taking 8 bytes.
+     * @return a serializer of {@code Long} values
+     */
+    public static Serializer<Long> longs() {
+        return LONGS;
+    }
+
+    /**
+     * Returns a serializer of {@code Integer} values, each taking 4 bytes.
+     * @return a serializer of {@code Integer} values
+     */
+    public static Serializer<Integer> integers() {
+        return INTEGERS;
+    }
+
+    /**
+     * Returns a serializer of {@code String} values, which are encoded in UTF-8.
+     * @return a serializer of {@code String} values
+     */
+    public static Serializer<String> strings() {
+        return STRINGS;
+    }
+
+}
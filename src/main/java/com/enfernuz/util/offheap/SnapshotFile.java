@@ -0,0 +1,369 @@
+package com.enfernuz.util.offheap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ *
+ * The binary format of the snapshot files of the off-heap collections, which are opened as
+ * read-only memory-mapped views, so that reopening a snapshot costs a few {@code mmap} calls
+ * instead of a rebuild.
+ *
+ * A snapshot file consists of a header of {@link #HEADER_SIZE} bytes, a region of records and an
+ * 8-byte aligned index region of {@code long}s. The records have the layout of
+ * {@link RecordPages}; the region is mapped in windows of {@link #WINDOW_SIZE} bytes, and a record
+ * never straddles two windows, the end of a window being padded instead. A record address is
+ * therefore the index of its window in the upper 32 bits and its offset in the window in the
+ * lower ones, just as in a {@link RecordPages} log. The index region is either the slot table of
+ * an {@link OffHeapTable}, for hashed snapshots, or the record addresses in the key order, for
+ * sorted snapshots. All the numbers are big-endian.
+ *
+ * The header holds, in this order: the magic number, the format version and the kind of the
+ * snapshot ({@code int}s, followed by 4 reserved bytes), then the number of the distinct keys,
+ * the length of the record region, the offset of the index region and the number of its
+ * {@code long}s (all {@code long}s); the rest of the header is reserved.
+ *
+ * Created by A. Nerushev
+ */
+final class SnapshotFile {
+
+    static final int MAGIC = 0x454E4653; // "ENFS"
+    static final int VERSION = 1;
+
+    static final int HASHED = 1;
+    static final int SORTED = 2;
+
+    static final int HEADER_SIZE = 64;
+    static final int WINDOW_SIZE = 1 << 30;
+
+    // 2^27 longs make an index window of 1 GiB
+    static final int INDEX_WINDOW_SHIFT = 27;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private SnapshotFile() {
+        throw new AssertionError("The class is uninstantiable.");
+    }
+
+    /** The mapped regions of a snapshot file. */
+    static final class Mapping {
+
+        final long size;
+        final ByteBuffer[] windows;
+        final ByteBuffer[] indexWindows;
+        final long indexLength;
+
+        Mapping(long size, ByteBuffer[] windows, ByteBuffer[] indexWindows, long indexLength) {
+            this.size = size;
+            this.windows = windows;
+            this.indexWindows = indexWindows;
+            this.indexLength = indexLength;
+        }
+
+        /**
+         * Returns a {@code long} of the index region.
+         * @param index the index of the {@code long}
+         * @return the {@code long} of the index region
+         */
+        long index(long index) {
+
+            return indexWindows[ (int) (index >>> INDEX_WINDOW_SHIFT) ]
+                    .getLong( ((int) index & ((1 << INDEX_WINDOW_SHIFT) - 1)) << 3 );
+        }
+    }
+
+    /**
+     * Writes the records and the slots of a table into a hashed snapshot file, leaving out the
+     * records shadowed by later records of the same keys.
+     * @param table a table
+     * @param file a file to be created or overwritten
+     * @throws IOException if an I/O error occurs
+     */
+    static void writeHashed(OffHeapTable table, Path file) throws IOException {
+
+        final long capacity = table.capacity();
+
+        long recordsLength = 0;
+        for (long i = 0; i < capacity; i++) {
+            final long address = table.addressAt(i);
+            if (address >= 0) {
+                final int size = RecordPages.recordSize( table.page(address), OffHeapTable.offset(address) );
+                recordsLength = place(recordsLength, size) + size;
+            }
+        }
+
+        try (final Output records = new Output(file, 0); final Output index = new Output(file, indexOffset(recordsLength))) {
+
+            records.writeHeader(HASHED, table.size(), recordsLength, indexOffset(recordsLength), capacity);
+
+            for (long i = 0; i < capacity; i++) {
+                final long address = table.addressAt(i);
+                if (address < 0) {
+                    index.writeLong(0);
+                } else {
+                    final ByteBuffer page = table.page(address);
+                    final int offset = OffHeapTable.offset(address);
+                    index.writeLong( records.copyRecord(page, offset, RecordPages.recordSize(page, offset)) + 1 );
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the given entries into a sorted snapshot file. The entries must be sorted by their
+     * keys and the keys must be distinct.
+     * @param <K> the type of the keys
+     * @param <V> the type of the values
+     * @param entries the entries, sorted by their keys
+     * @param keySerializer a serializer of the keys
+     * @param valueSerializer a serializer of the values
+     * @param file a file to be created or overwritten
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if a record is larger than a window
+     */
+    static <K, V> void writeSorted(
+            Iterable<? extends Map.Entry<? extends K, ? extends V>> entries,
+            Serializer<? super K> keySerializer,
+            Serializer<? super V> valueSerializer,
+            Path file) throws IOException, IllegalArgumentException {
+
+        long size = 0;
+        long recordsLength = 0;
+        for (final Map.Entry<? extends K, ? extends V> entry : entries) {
+            final int recordSize = recordSize(entry, keySerializer, valueSerializer);
+            recordsLength = place(recordsLength, recordSize) + recordSize;
+            size++;
+        }
+
+        try (final Output records = new Output(file, 0); final Output index = new Output(file, indexOffset(recordsLength))) {
+
+            records.writeHeader(SORTED, size, recordsLength, indexOffset(recordsLength), size);
+
+            final Iterator<? extends Map.Entry<? extends K, ? extends V>> iterator = entries.iterator();
+            for (long i = 0; i < size; i++) {
+                final Map.Entry<? extends K, ? extends V> entry = iterator.next();
+                index.writeLong( records.writeRecord(entry.getKey(), keySerializer, entry.getValue(), valueSerializer) );
+            }
+        }
+    }
+
+    /**
+     * Maps a snapshot file into memory.
+     * @param file a snapshot file
+     * @param kind the expected kind of the snapshot
+     * @return the mapped regions of the file
+     * @throws IOException if an I/O error occurs or the file is not a snapshot of the expected kind
+     */
+    static Mapping map(Path file, int kind) throws IOException {
+
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != kind) {
+                throw new IOException("Not a snapshot of the expected kind and version: " + file);
+            }
+
+            final long size = header.getLong(16);
+            final long recordsLength = header.getLong(24);
+            final long indexOffset = header.getLong(32);
+            final long indexLength = header.getLong(40);
+
+            final ByteBuffer[] windows = mapWindows(channel, HEADER_SIZE, recordsLength, WINDOW_SIZE);
+            final ByteBuffer[] indexWindows = mapWindows(
+                    channel, indexOffset, indexLength * Long.BYTES, Long.BYTES << INDEX_WINDOW_SHIFT
+            );
+
+            return new Mapping(size, windows, indexWindows, indexLength);
+        }
+    }
+
+    /**
+     * Maps a hashed snapshot file into memory.
+     * @param file a hashed snapshot file
+     * @return a table over the mapped file
+     * @throws IOException if an I/O error occurs or the file is not a hashed snapshot
+     */
+    static OffHeapTable openHashed(Path file) throws IOException {
+
+        final Mapping mapping = map(file, HASHED);
+
+        return OffHeapTable.of(
+                mapping.windows, mapping.indexWindows, INDEX_WINDOW_SHIFT, mapping.indexLength, mapping.size
+        );
+    }
+
+    private static ByteBuffer[] mapWindows(FileChannel channel, long offset, long length, int windowSize)
+            throws IOException {
+
+        final ByteBuffer[] windows = new ByteBuffer[ (int) ((length + windowSize - 1) / windowSize) ];
+        for (int i = 0; i < windows.length; i++) {
+            final long start = (long) i * windowSize;
+            windows[i] = channel.map( FileChannel.MapMode.READ_ONLY, offset + start, Math.min(windowSize, length - start) );
+        }
+
+        return windows;
+    }
+
+    private static <K, V> int recordSize(
+            Map.Entry<? extends K, ? extends V> entry,
+            Serializer<? super K> keySerializer,
+            Serializer<? super V> valueSerializer) throws IllegalArgumentException {
+
+        final long size = (long) RecordPages.HEADER_SIZE
+                + keySerializer.serializedSize( entry.getKey() )
+                + valueSerializer.serializedSize( entry.getValue() );
+        checkArgument(size <= WINDOW_SIZE, "The record of %s is too large.", entry);
+
+        return (int) size;
+    }
+
+    // the position of a record of the given size placed at or after the given position
+    private static long place(long position, int recordSize) {
+
+        final long windowEnd = (position / WINDOW_SIZE + 1) * WINDOW_SIZE;
+
+        return position + recordSize <= windowEnd ? position : windowEnd;
+    }
+
+    private static long indexOffset(long recordsLength) {
+        return (HEADER_SIZE + recordsLength + Long.BYTES - 1) & -Long.BYTES;
+    }
+
+    // A sequential writer of a region of a file through a heap buffer. The addresses of the
+    // records are relative to the end of the header, so records are written by the writer
+    // starting at the beginning of the file, right after the header.
+    private static final class Output implements AutoCloseable {
+
+        private final FileChannel channel;
+        private long position;
+        private byte[] array = new byte[BUFFER_SIZE];
+        private ByteBuffer buffer = ByteBuffer.wrap(array);
+        private int used;
+
+        Output(Path file, long position) throws IOException {
+
+            this.channel = FileChannel.open(
+                    file, StandardOpenOption.CREATE, StandardOpenOption.WRITE
+            );
+            this.position = position;
+            if (position == 0) {
+                channel.truncate(0);
+            }
+        }
+
+        void writeHeader(int kind, long size, long recordsLength, long indexOffset, long indexLength)
+                throws IOException {
+
+            final ByteBuffer header = reserve(HEADER_SIZE);
+            final int offset = used;
+            header.putInt(offset, MAGIC);
+            header.putInt(offset + 4, VERSION);
+            header.putInt(offset + 8, kind);
+            header.putLong(offset + 16, size);
+            header.putLong(offset + 24, recordsLength);
+            header.putLong(offset + 32, indexOffset);
+            header.putLong(offset + 40, indexLength);
+            used += HEADER_SIZE;
+        }
+
+        void writeLong(long value) throws IOException {
+
+            reserve(Long.BYTES).putLong(used, value);
+            used += Long.BYTES;
+        }
+
+        // returns the address of the copied record
+        long copyRecord(ByteBuffer page, int offset, int recordSize) throws IOException {
+
+            final long address = startRecord(recordSize);
+            final ByteBuffer target = reserve(recordSize);
+            int i = 0;
+            for (; i + Long.BYTES <= recordSize; i += Long.BYTES) {
+                target.putLong( used + i, page.getLong(offset + i) );
+            }
+            for (; i < recordSize; i++) {
+                target.put( used + i, page.get(offset + i) );
+            }
+            used += recordSize;
+
+            return address;
+        }
+
+        // returns the address of the written record
+        <K, V> long writeRecord(K key, Serializer<? super K> keySerializer, V value, Serializer<? super V> valueSerializer)
+                throws IOException {
+
+            final int keyLength = keySerializer.serializedSize(key);
+            final int valueLength = valueSerializer.serializedSize(value);
+            final int recordSize = RecordPages.HEADER_SIZE + keyLength + valueLength;
+
+            final long address = startRecord(recordSize);
+            final ByteBuffer target = reserve(recordSize);
+            final int keyOffset = used + RecordPages.HEADER_SIZE;
+            keySerializer.write(key, target, keyOffset);
+            valueSerializer.write(value, target, keyOffset + keyLength);
+            target.putInt( used + RecordPages.HASH_OFFSET, RecordPages.hash(target, keyOffset, keyLength) );
+            target.putInt(used + RecordPages.KEY_LENGTH_OFFSET, keyLength);
+            target.putInt(used + RecordPages.VALUE_LENGTH_OFFSET, valueLength);
+            used += recordSize;
+
+            return address;
+        }
+
+        @Override
+        public void close() throws IOException {
+
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+
+        // pads the current window if the record does not fit into it
+        private long startRecord(int recordSize) throws IOException {
+
+            final long relative = position + used - HEADER_SIZE;
+            final long placed = place(relative, recordSize);
+            for (long i = relative; i < placed; i++) {
+                reserve(1).put(used++, (byte) 0);
+            }
+
+            return OffHeapTable.address( (int) (placed / WINDOW_SIZE), (int) (placed % WINDOW_SIZE) );
+        }
+
+        // makes room for the given number of bytes at the used end of the returned buffer
+        private ByteBuffer reserve(int length) throws IOException {
+
+            if (array.length - used >= length) {
+                return buffer;
+            }
+
+            flush();
+            if (length > array.length) {
+                // an oversized record is written at once through a buffer of its own
+                array = new byte[length];
+                buffer = ByteBuffer.wrap(array);
+            }
+
+            return buffer;
+        }
+
+        private void flush() throws IOException {
+
+            final ByteBuffer chunk = ByteBuffer.wrap(array, 0, used);
+            while ( chunk.hasRemaining() ) {
+                position += channel.write(chunk, position);
+            }
+            used = 0;
+        }
+    }
+
+}
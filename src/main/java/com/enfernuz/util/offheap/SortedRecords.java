@@ -0,0 +1,112 @@
+package com.enfernuz.util.offheap;
+
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+
+/**
+ *
+ * The records of a memory-mapped sorted snapshot, accessed by their positions in the key order
+ * through the binary-search index of the snapshot (see {@link SnapshotFile}).
+ *
+ * Instances are safe to be read by many threads at once.
+ *
+ * Created by A. Nerushev
+ */
+final class SortedRecords<K> {
+
+    private final SnapshotFile.Mapping mapping;
+    private final Serializer<K> keySerializer;
+    private final Comparator<? super K> comparator;
+
+    SortedRecords(SnapshotFile.Mapping mapping, Serializer<K> keySerializer, Comparator<? super K> comparator) {
+        this.mapping = mapping;
+        this.keySerializer = keySerializer;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Returns the number of the records.
+     * @return the number of the records
+     */
+    long size() {
+        return mapping.size;
+    }
+
+    /**
+     * Returns the comparator of the keys.
+     * @return the comparator of the keys
+     */
+    Comparator<? super K> comparator() {
+        return comparator;
+    }
+
+    /**
+     * Reads the key of a record.
+     * @param position the position of the record in the key order
+     * @return the key of the record
+     */
+    K readKey(long position) {
+
+        final long address = mapping.index(position);
+
+        return RecordPages.readKey( window(address), OffHeapTable.offset(address), keySerializer );
+    }
+
+    /**
+     * Reads the value of a record.
+     * @param <V> the type of the value
+     * @param position the position of the record in the key order
+     * @param valueSerializer a serializer of the value
+     * @return the value of the record
+     */
+    <V> V readValue(long position, Serializer<V> valueSerializer) {
+
+        final long address = mapping.index(position);
+
+        return RecordPages.readValue( window(address), OffHeapTable.offset(address), valueSerializer );
+    }
+
+    /**
+     * Finds the position of the first record of a key not less than the given key, with
+     * {@code O(log n)} key reads.
+     * @param key a key
+     * @param from the first position of the range to be searched, inclusive
+     * @param to the last position of the range to be searched, exclusive
+     * @return the position of the first record of a key not less than the given key, or
+     * {@code to} if there is no such record in the range
+     */
+    long lowerBound(K key, long from, long to) {
+
+        long low = from;
+        long high = to;
+        while (low < high) {
+            final long middle = (low + high) >>> 1;
+            if ( comparator.compare(readKey(middle), key) < 0 ) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Finds the position of the record of the given key.
+     * @param key a key
+     * @param from the first position of the range to be searched, inclusive
+     * @param to the last position of the range to be searched, exclusive
+     * @return the position of the record of the key, or -1 if there is no such record in the range
+     */
+    long find(K key, long from, long to) {
+
+        final long position = lowerBound(key, from, to);
+
+        return position < to && comparator.compare(readKey(position), key) == 0 ? position : -1;
+    }
+
+    private ByteBuffer window(long address) {
+        return mapping.windows[ (int) (address >>> Integer.SIZE) ];
+    }
+
+}
@@ -0,0 +1,317 @@
+package com.enfernuz.util.persistent;
+
+import com.google.common.collect.Maps;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *
+ * An immutable hash map, the updated copies of which share the structure of the map they have
+ * been made of.
+ *
+ * The entries are kept in a hash array mapped trie of 32-way nodes, so {@link #with(Object, Object)}
+ * and {@link #without(Object)} copy only the few nodes on the path to the updated key and return
+ * a new map in time independent of the size of the map, leaving this map intact. A batch of
+ * updates is best applied through a {@link Builder}, which copies each node at most once.
+ *
+ * Neither null keys nor null values are permitted. The order of the iteration is unspecified.
+ * Instances are immutable and thus safe to be read by many threads at once, without any locking.
+ *
+ * Created by A. Nerushev
+ */
+public final class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+
+    private static final PersistentHashMap<Object, Object> EMPTY = new PersistentHashMap<>(TrieNode.EMPTY, 0);
+
+    private final TrieNode root;
+    private final int size;
+
+    private Set<Map.Entry<K, V>> entrySet;
+
+    private PersistentHashMap(TrieNode root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the empty map.
+     * @param <K> the type of the keys
+     * @param <V> the type of the values
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> of() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Returns a map of the entries of the given map.
+     * @param <K> the type of the keys
+     * @param <V> the type of the values
+     * @param map a map
+     * @return a map of the same entries, which is the given map if it is a persistent one
+     * @throws NullPointerException if the passed argument is a null reference or contains a null
+     * key or value
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> copyOf(Map<? extends K, ? extends V> map)
+            throws NullPointerException {
+
+        if (map instanceof PersistentHashMap) {
+            return (PersistentHashMap<K, V>) map;
+        }
+
+        return PersistentHashMap.<K, V>builder().putAll(map).build();
+    }
+
+    /**
+     * Creates a builder of a map.
+     * @param <K> the type of the keys
+     * @param <V> the type of the values
+     * @return a new builder
+     */
+    public static <K, V> Builder<K, V> builder() {
+        return new Builder<>( PersistentHashMap.<K, V>of() );
+    }
+
+    /**
+     * Creates a builder of an updated copy of this map.
+     * @return a new builder, starting with the entries of this map
+     */
+    public Builder<K, V> toBuilder() {
+        return new Builder<>(this);
+    }
+
+    /**
+     * Returns a copy of this map with the given key bound to the given value.
+     * @param key a key
+     * @param value a value
+     * @return the updated copy of this map, which is this map if the key is already bound to the
+     * very same value
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    public PersistentHashMap<K, V> with(K key, V value) throws NullPointerException {
+
+        requireNonNull(key);
+        requireNonNull(value);
+
+        final TrieNode.Change change = new TrieNode.Change();
+        final TrieNode newRoot = root.put(null, 0, TrieNode.hash(key), key, value, change);
+
+        return newRoot == root ? this : new PersistentHashMap<>( newRoot, change.added ? size + 1 : size );
+    }
+
+    /**
+     * Returns a copy of this map without the given key.
+     * @param key a key
+     * @return the updated copy of this map, which is this map if it does not contain the key
+     */
+    public PersistentHashMap<K, V> without(Object key) {
+
+        if (key == null) {
+            return this;
+        }
+
+        final TrieNode newRoot = root.remove( null, 0, TrieNode.hash(key), key, new TrieNode.Change() );
+
+        if (newRoot == root) {
+            return this;
+        }
+
+        return newRoot == null ? PersistentHashMap.<K, V>of() : new PersistentHashMap<>(newRoot, size - 1);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        return key == null ? null : (V) root.get( 0, TrieNode.hash(key), key );
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+
+        requireNonNull(action);
+
+        final TrieNode.Cursor cursor = new TrieNode.Cursor(root);
+        while ( cursor.hasNext() ) {
+            cursor.advance();
+            action.accept( (K) cursor.key(), (V) cursor.value() );
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+
+        Set<Map.Entry<K, V>> result = entrySet;
+        if (result == null) {
+            entrySet = result = new AbstractSet<Map.Entry<K, V>>() {
+
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+
+                    final TrieNode.Cursor cursor = new TrieNode.Cursor(root);
+
+                    return new Iterator<Map.Entry<K, V>>() {
+
+                        @Override
+                        public boolean hasNext() {
+                            return cursor.hasNext();
+                        }
+
+                        @Override
+                        @SuppressWarnings("unchecked")
+                        public Map.Entry<K, V> next() {
+
+                            cursor.advance();
+
+                            return Maps.immutableEntry( (K) cursor.key(), (V) cursor.value() );
+                        }
+                    };
+                }
+
+                @Override
+                public boolean contains(Object o) {
+
+                    if ( !(o instanceof Map.Entry) ) {
+                        return false;
+                    }
+
+                    final Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                    final V value = get( entry.getKey() );
+
+                    return value != null && value.equals( entry.getValue() );
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+
+        return result;
+    }
+
+    /**
+     * A builder of a persistent map. The builder updates the nodes it has copied in place, so a
+     * batch of updates copies each node of the trie at most once; the map it starts with, as well
+     * as the maps it has built, are never modified.
+     *
+     * Instances are not thread-safe.
+     */
+    public static final class Builder<K, V> {
+
+        private final TrieNode.Change change = new TrieNode.Change();
+
+        private Object edit = new Object();
+        private TrieNode root;
+        private int size;
+
+        // the map last built, or started with, to be returned again while nothing changes
+        private PersistentHashMap<K, V> built;
+
+        private Builder(PersistentHashMap<K, V> base) {
+            this.root = base.root;
+            this.size = base.size;
+            this.built = base;
+        }
+
+        /**
+         * Binds the given key to the given value in the map being built.
+         * @param key a key
+         * @param value a value
+         * @return this builder
+         * @throws NullPointerException if either of the passed arguments is a null reference
+         */
+        public Builder<K, V> put(K key, V value) throws NullPointerException {
+
+            requireNonNull(key);
+            requireNonNull(value);
+
+            change.reset();
+            root = root.put(edit, 0, TrieNode.hash(key), key, value, change);
+            if (change.added) {
+                size++;
+            }
+
+            return this;
+        }
+
+        /**
+         * Puts all the entries of the given map into the map being built.
+         * @param map a map
+         * @return this builder
+         * @throws NullPointerException if the passed argument is a null reference or contains a
+         * null key or value
+         */
+        public Builder<K, V> putAll(Map<? extends K, ? extends V> map) throws NullPointerException {
+
+            map.forEach(this::put);
+
+            return this;
+        }
+
+        /**
+         * Removes the given key from the map being built.
+         * @param key a key
+         * @return this builder
+         */
+        public Builder<K, V> remove(Object key) {
+
+            if (key != null) {
+
+                change.reset();
+                final TrieNode newRoot = root.remove(edit, 0, TrieNode.hash(key), key, change);
+                root = newRoot == null ? TrieNode.EMPTY : newRoot;
+                if (change.removed) {
+                    size--;
+                }
+            }
+
+            return this;
+        }
+
+        /**
+         * Returns the number of entries in the map being built.
+         * @return the number of entries
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Builds the map. The builder may be used afterwards: its further updates copy the nodes
+         * shared with the built map instead of modifying them.
+         * @return a persistent map of the entries of the builder, which is the map the builder
+         * has started with if nothing has changed since
+         */
+        public PersistentHashMap<K, V> build() {
+
+            if (built.root != root) {
+                edit = new Object();
+                built = size == 0 ? PersistentHashMap.<K, V>of() : new PersistentHashMap<>(root, size);
+            }
+
+            return built;
+        }
+    }
+
+}
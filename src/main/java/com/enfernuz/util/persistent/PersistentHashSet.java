@@ -0,0 +1,197 @@
+package com.enfernuz.util.persistent;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *
+ * An immutable hash set, the updated copies of which share the structure of the set they have
+ * been made of. The set is a {@link PersistentHashMap} of its elements, so {@link #with(Object)}
+ * and {@link #without(Object)} return a new set in time independent of the size of the set.
+ *
+ * Null elements are not permitted. The order of the iteration is unspecified. Instances are
+ * immutable and thus safe to be read by many threads at once, without any locking.
+ *
+ * Created by A. Nerushev
+ */
+public final class PersistentHashSet<E> extends AbstractSet<E> {
+
+    private static final PersistentHashSet<Object> EMPTY = new PersistentHashSet<>( PersistentHashMap.of() );
+
+    private final PersistentHashMap<E, Boolean> map;
+
+    private PersistentHashSet(PersistentHashMap<E, Boolean> map) {
+        this.map = map;
+    }
+
+    /**
+     * Returns the empty set.
+     * @param <E> the type of the elements
+     * @return the empty set
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentHashSet<E> of() {
+        return (PersistentHashSet<E>) EMPTY;
+    }
+
+    /**
+     * Returns a set of the given elements.
+     * @param <E> the type of the elements
+     * @param elements elements
+     * @return a set of the elements, which is the given iterable if it is a persistent set
+     * @throws NullPointerException if the passed argument is a null reference or contains a null
+     * element
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentHashSet<E> copyOf(Iterable<? extends E> elements) throws NullPointerException {
+
+        if (elements instanceof PersistentHashSet) {
+            return (PersistentHashSet<E>) elements;
+        }
+
+        return PersistentHashSet.<E>builder().addAll(elements).build();
+    }
+
+    /**
+     * Creates a builder of a set.
+     * @param <E> the type of the elements
+     * @return a new builder
+     */
+    public static <E> Builder<E> builder() {
+        return new Builder<>( PersistentHashMap.<E, Boolean>builder(), PersistentHashSet.<E>of() );
+    }
+
+    /**
+     * Creates a builder of an updated copy of this set.
+     * @return a new builder, starting with the elements of this set
+     */
+    public Builder<E> toBuilder() {
+        return new Builder<>( map.toBuilder(), this );
+    }
+
+    /**
+     * Returns a copy of this set with the given element.
+     * @param element an element
+     * @return the updated copy of this set, which is this set if it already contains the element
+     * @throws NullPointerException if the passed argument is a null reference
+     */
+    public PersistentHashSet<E> with(E element) throws NullPointerException {
+
+        final PersistentHashMap<E, Boolean> newMap = map.with(element, Boolean.TRUE);
+
+        return newMap == map ? this : new PersistentHashSet<>(newMap);
+    }
+
+    /**
+     * Returns a copy of this set without the given element.
+     * @param element an element
+     * @return the updated copy of this set, which is this set if it does not contain the element
+     */
+    public PersistentHashSet<E> without(Object element) {
+
+        final PersistentHashMap<E, Boolean> newMap = map.without(element);
+
+        if (newMap == map) {
+            return this;
+        }
+
+        return newMap.isEmpty() ? PersistentHashSet.<E>of() : new PersistentHashSet<>(newMap);
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public boolean contains(Object element) {
+        return map.containsKey(element);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return map.keySet().iterator();
+    }
+
+    /**
+     * A builder of a persistent set, which copies each node of the trie at most once per batch of
+     * updates; the set it starts with, as well as the sets it has built, are never modified.
+     *
+     * Instances are not thread-safe.
+     */
+    public static final class Builder<E> {
+
+        private final PersistentHashMap.Builder<E, Boolean> map;
+        private PersistentHashSet<E> built;
+
+        private Builder(PersistentHashMap.Builder<E, Boolean> map, PersistentHashSet<E> base) {
+            this.map = map;
+            this.built = base;
+        }
+
+        /**
+         * Adds an element to the set being built.
+         * @param element an element
+         * @return this builder
+         * @throws NullPointerException if the passed argument is a null reference
+         */
+        public Builder<E> add(E element) throws NullPointerException {
+
+            map.put(element, Boolean.TRUE);
+
+            return this;
+        }
+
+        /**
+         * Adds all the given elements to the set being built.
+         * @param elements elements
+         * @return this builder
+         * @throws NullPointerException if the passed argument is a null reference or contains a
+         * null element
+         */
+        public Builder<E> addAll(Iterable<? extends E> elements) throws NullPointerException {
+
+            requireNonNull(elements).forEach(this::add);
+
+            return this;
+        }
+
+        /**
+         * Removes an element from the set being built.
+         * @param element an element
+         * @return this builder
+         */
+        public Builder<E> remove(Object element) {
+
+            map.remove(element);
+
+            return this;
+        }
+
+        /**
+         * Returns the number of elements in the set being built.
+         * @return the number of elements
+         */
+        public int size() {
+            return map.size();
+        }
+
+        /**
+         * Builds the set. The builder may be used afterwards.
+         * @return a persistent set of the elements of the builder, which is the set the builder
+         * has started with if nothing has changed since
+         */
+        public PersistentHashSet<E> build() {
+
+            final PersistentHashMap<E, Boolean> builtMap = map.build();
+            if (builtMap != built.map) {
+                built = builtMap.isEmpty() ? PersistentHashSet.<E>of() : new PersistentHashSet<>(builtMap);
+            }
+
+            return built;
+        }
+    }
+
+}
@@ -0,0 +1,467 @@
+package com.enfernuz.util.persistent;
+
+import java.util.NoSuchElementException;
+
+/**
+ *
+ * A node of the hash array mapped trie the persistent collections are built of.
+ *
+ * A node is either a bitmap node, branching on five bits of the hashes at a time, or a collision
+ * node, holding the pairs of the keys of the same hash. Both keep their content in an array of
+ * interleaved slots: a key followed by its value, or, in a bitmap node only, a null followed by a
+ * child node.
+ *
+ * The update methods return the updated node and never modify a node, unless it is owned by the
+ * given edit token, i.e. has been created by an update made with the same token. So a chain of
+ * updates made with one token copies each node of the trie at most once, while the updates made
+ * without a token ({@code null}) copy the path to the updated key every time.
+ *
+ * Created by A. Nerushev
+ */
+abstract class TrieNode {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    // 7 levels of bitmap nodes cover all 32 bits of a hash, plus a collision node at the bottom
+    private static final int MAX_DEPTH = 8;
+
+    static final TrieNode EMPTY = new BitmapNode(null, 0, new Object[0]);
+
+    /**
+     * The outcome of an update: whether a key has been added or removed, and the value it has
+     * been bound to before.
+     */
+    static final class Change {
+
+        boolean added;
+        boolean removed;
+        Object previousValue;
+
+        void reset() {
+            added = removed = false;
+            previousValue = null;
+        }
+    }
+
+    /**
+     * Spreads the bits of the hash code of the given key, so that each five of them can be used to
+     * branch on.
+     * @param key a key
+     * @return the hash of the key
+     */
+    static int hash(Object key) {
+        return 0x1b873593 * Integer.rotateLeft(key.hashCode() * 0xcc9e2d51, 15);
+    }
+
+    /**
+     * Returns the value the given key is bound to.
+     * @param shift the number of the hash bits branched on above this node
+     * @param hash the hash of the key
+     * @param key a key
+     * @return the value of the key, or {@code null} if the key is missing
+     */
+    abstract Object get(int shift, int hash, Object key);
+
+    /**
+     * Binds the given key to the given value.
+     * @param edit the edit token, or {@code null} for a persistent update
+     * @param shift the number of the hash bits branched on above this node
+     * @param hash the hash of the key
+     * @param key a key
+     * @param value a value
+     * @param change the outcome of the update to be filled
+     * @return the updated node, which is this node if nothing has changed
+     */
+    abstract TrieNode put(Object edit, int shift, int hash, Object key, Object value, Change change);
+
+    /**
+     * Removes the given key.
+     * @param edit the edit token, or {@code null} for a persistent update
+     * @param shift the number of the hash bits branched on above this node
+     * @param hash the hash of the key
+     * @param key a key
+     * @param change the outcome of the update to be filled
+     * @return the updated node, which is this node if nothing has changed, or {@code null} if
+     * the node has become empty
+     */
+    abstract TrieNode remove(Object edit, int shift, int hash, Object key, Change change);
+
+    /**
+     * Returns the slots of the node.
+     * @return the interleaved slots of the node
+     */
+    abstract Object[] slots();
+
+    // whether the node holds a single key-value pair, to be inlined into its parent
+    private boolean isSingleton() {
+
+        final Object[] slots = slots();
+
+        return slots.length == 2 && slots[0] != null;
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ( (hash >>> shift) & MASK );
+    }
+
+    private static TrieNode pairOf(
+            Object edit, int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+
+        final int hash1 = hash(key1);
+        if (hash1 == hash2) {
+            return new CollisionNode( edit, hash1, new Object[] { key1, value1, key2, value2 } );
+        }
+
+        final Change ignored = new Change();
+
+        return EMPTY.put(edit, shift, hash1, key1, value1, ignored).put(edit, shift, hash2, key2, value2, ignored);
+    }
+
+    private static Object[] insertPair(Object[] slots, int index, Object key, Object value) {
+
+        final Object[] result = new Object[slots.length + 2];
+        System.arraycopy(slots, 0, result, 0, index);
+        result[index] = key;
+        result[index + 1] = value;
+        System.arraycopy(slots, index, result, index + 2, slots.length - index);
+
+        return result;
+    }
+
+    private static Object[] removePair(Object[] slots, int index) {
+
+        final Object[] result = new Object[slots.length - 2];
+        System.arraycopy(slots, 0, result, 0, index);
+        System.arraycopy(slots, index + 2, result, index, result.length - index);
+
+        return result;
+    }
+
+    private static final class BitmapNode extends TrieNode {
+
+        private final Object edit;
+        private int bitmap;
+        private Object[] slots;
+
+        BitmapNode(Object edit, int bitmap, Object[] slots) {
+            this.edit = edit;
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        @Override
+        Object get(int shift, int hash, Object key) {
+
+            final int bit = bit(hash, shift);
+            if ( (bitmap & bit) == 0 ) {
+                return null;
+            }
+
+            final int index = index(bit);
+            final Object storedKey = slots[index];
+            final Object valueOrNode = slots[index + 1];
+
+            if (storedKey == null) {
+                return ( (TrieNode) valueOrNode ).get(shift + BITS, hash, key);
+            }
+
+            return key.equals(storedKey) ? valueOrNode : null;
+        }
+
+        @Override
+        TrieNode put(Object edit, int shift, int hash, Object key, Object value, Change change) {
+
+            final int bit = bit(hash, shift);
+            final int index = index(bit);
+
+            if ( (bitmap & bit) == 0 ) {
+
+                change.added = true;
+
+                final Object[] newSlots = insertPair(slots, index, key, value);
+                if ( isOwnedBy(edit) ) {
+                    slots = newSlots;
+                    bitmap |= bit;
+                    return this;
+                }
+
+                return new BitmapNode(edit, bitmap | bit, newSlots);
+            }
+
+            final Object storedKey = slots[index];
+            final Object valueOrNode = slots[index + 1];
+
+            if (storedKey == null) {
+
+                final TrieNode child = (TrieNode) valueOrNode;
+                final TrieNode newChild = child.put(edit, shift + BITS, hash, key, value, change);
+
+                return newChild == child ? this : editable(edit).set(index + 1, newChild);
+            }
+
+            if ( key.equals(storedKey) ) {
+
+                change.previousValue = valueOrNode;
+
+                return valueOrNode == value ? this : editable(edit).set(index + 1, value);
+            }
+
+            change.added = true;
+
+            return editable(edit).set(
+                    index, null,
+                    index + 1, pairOf(edit, shift + BITS, storedKey, valueOrNode, hash, key, value)
+            );
+        }
+
+        @Override
+        TrieNode remove(Object edit, int shift, int hash, Object key, Change change) {
+
+            final int bit = bit(hash, shift);
+            if ( (bitmap & bit) == 0 ) {
+                return this;
+            }
+
+            final int index = index(bit);
+            final Object storedKey = slots[index];
+            final Object valueOrNode = slots[index + 1];
+
+            if (storedKey == null) {
+
+                final TrieNode child = (TrieNode) valueOrNode;
+                final TrieNode newChild = child.remove(edit, shift + BITS, hash, key, change);
+
+                if (newChild == child) {
+                    return this;
+                } else if (newChild == null) {
+                    return without(edit, bit, index);
+                } else if ( newChild.isSingleton() ) {
+                    final Object[] pair = newChild.slots();
+                    return editable(edit).set(index, pair[0], index + 1, pair[1]);
+                }
+
+                return editable(edit).set(index + 1, newChild);
+            }
+
+            if ( !key.equals(storedKey) ) {
+                return this;
+            }
+
+            change.removed = true;
+            change.previousValue = valueOrNode;
+
+            return without(edit, bit, index);
+        }
+
+        @Override
+        Object[] slots() {
+            return slots;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount( bitmap & (bit - 1) ) << 1;
+        }
+
+        private boolean isOwnedBy(Object edit) {
+            return edit != null && edit == this.edit;
+        }
+
+        private BitmapNode editable(Object edit) {
+            return isOwnedBy(edit) ? this : new BitmapNode( edit, bitmap, slots.clone() );
+        }
+
+        private BitmapNode set(int index, Object slot) {
+
+            slots[index] = slot;
+
+            return this;
+        }
+
+        private BitmapNode set(int index1, Object slot1, int index2, Object slot2) {
+
+            slots[index1] = slot1;
+            slots[index2] = slot2;
+
+            return this;
+        }
+
+        private TrieNode without(Object edit, int bit, int index) {
+
+            if (bitmap == bit) {
+                return null;
+            }
+
+            final Object[] newSlots = removePair(slots, index);
+            if ( isOwnedBy(edit) ) {
+                slots = newSlots;
+                bitmap ^= bit;
+                return this;
+            }
+
+            return new BitmapNode(edit, bitmap ^ bit, newSlots);
+        }
+    }
+
+    private static final class CollisionNode extends TrieNode {
+
+        private final Object edit;
+        private final int hash;
+        private Object[] slots;
+
+        CollisionNode(Object edit, int hash, Object[] slots) {
+            this.edit = edit;
+            this.hash = hash;
+            this.slots = slots;
+        }
+
+        @Override
+        Object get(int shift, int hash, Object key) {
+
+            final int index = indexOf(hash, key);
+
+            return index < 0 ? null : slots[index + 1];
+        }
+
+        @Override
+        TrieNode put(Object edit, int shift, int hash, Object key, Object value, Change change) {
+
+            if (hash != this.hash) {
+                // the keys part ways at this level, so the node goes one level down
+                return new BitmapNode( edit, bit(this.hash, shift), new Object[] { null, this } )
+                        .put(edit, shift, hash, key, value, change);
+            }
+
+            final int index = indexOf(hash, key);
+
+            if (index < 0) {
+                change.added = true;
+                return withSlots( edit, insertPair(slots, slots.length, key, value) );
+            }
+
+            change.previousValue = slots[index + 1];
+            if (slots[index + 1] == value) {
+                return this;
+            }
+
+            final Object[] newSlots = isOwnedBy(edit) ? slots : slots.clone();
+            newSlots[index + 1] = value;
+
+            return withSlots(edit, newSlots);
+        }
+
+        @Override
+        TrieNode remove(Object edit, int shift, int hash, Object key, Change change) {
+
+            final int index = indexOf(hash, key);
+            if (index < 0) {
+                return this;
+            }
+
+            change.removed = true;
+            change.previousValue = slots[index + 1];
+
+            return slots.length == 2 ? null : withSlots( edit, removePair(slots, index) );
+        }
+
+        @Override
+        Object[] slots() {
+            return slots;
+        }
+
+        private int indexOf(int hash, Object key) {
+
+            if (hash == this.hash) {
+                for (int i = 0; i < slots.length; i += 2) {
+                    if ( key.equals(slots[i]) ) {
+                        return i;
+                    }
+                }
+            }
+
+            return -1;
+        }
+
+        private boolean isOwnedBy(Object edit) {
+            return edit != null && edit == this.edit;
+        }
+
+        private CollisionNode withSlots(Object edit, Object[] newSlots) {
+
+            if ( isOwnedBy(edit) ) {
+                slots = newSlots;
+                return this;
+            }
+
+            return new CollisionNode(edit, hash, newSlots);
+        }
+    }
+
+    /**
+     * A cursor over the key-value pairs of a trie, walking it depth-first without allocating
+     * anything per pair.
+     */
+    static final class Cursor {
+
+        private final Object[][] path = new Object[MAX_DEPTH][];
+        private final int[] positions = new int[MAX_DEPTH];
+        private int depth;
+
+        private Object[] current;
+        private int index;
+
+        Cursor(TrieNode root) {
+            path[0] = root.slots();
+        }
+
+        /**
+         * Tells whether there are pairs left.
+         * @return {@code true} if {@link #advance()} can be called
+         */
+        boolean hasNext() {
+
+            while (depth >= 0) {
+
+                final Object[] slots = path[depth];
+                final int position = positions[depth];
+
+                if (position == slots.length) {
+                    depth--;
+                } else if (slots[position] == null) {
+                    positions[depth] += 2;
+                    depth++;
+                    path[depth] = ( (TrieNode) slots[position + 1] ).slots();
+                    positions[depth] = 0;
+                } else {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        /**
+         * Moves the cursor to the next pair.
+         * @throws NoSuchElementException if there are no pairs left
+         */
+        void advance() throws NoSuchElementException {
+
+            if ( !hasNext() ) {
+                throw new NoSuchElementException();
+            }
+
+            current = path[depth];
+            index = positions[depth];
+            positions[depth] += 2;
+        }
+
+        Object key() {
+            return current[index];
+        }
+
+        Object value() {
+            return current[index + 1];
+        }
+    }
+
+}
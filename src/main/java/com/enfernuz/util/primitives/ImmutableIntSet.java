@@ -0,0 +1,320 @@
+package com.enfernuz.util.primitives;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *
+ * An immutable set of {@code int} values, which are stored unboxed in an open-addressing hash
+ * table with linear probing.
+ *
+ * Created by A. Nerushev
+ */
+public final class ImmutableIntSet {
+
+    private static final ImmutableIntSet EMPTY = new ImmutableIntSet(new int[4], false, 0);
+
+    // 0 marks a free slot, the presence of the value 0 itself is tracked separately
+    private final int[] table;
+    private final boolean containsZero;
+    private final int size;
+
+    private ImmutableIntSet(int[] table, boolean containsZero, int size) {
+        this.table = table;
+        this.containsZero = containsZero;
+        this.size = size;
+    }
+
+    /**
+     * Returns an immutable set containing the given values.
+     * @param values the values of the result set
+     * @return an immutable set containing the given values
+     * @throws NullPointerException if the passed argument is a null reference
+     */
+    public static ImmutableIntSet of(int... values) throws NullPointerException {
+
+        final Builder builder = builder(values.length);
+        for (final int value : values) {
+            builder.add(value);
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Creates a builder of an immutable set.
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder(0);
+    }
+
+    /**
+     * Creates a builder of an immutable set, presized for the given number of distinct values.
+     * @param expectedSize the expected number of distinct values
+     * @return a new builder
+     * @throws IllegalArgumentException if the passed argument is negative
+     */
+    public static Builder builder(int expectedSize) throws IllegalArgumentException {
+
+        checkArgument(expectedSize >= 0, "The expected size must not be negative.");
+
+        return new Builder(expectedSize);
+    }
+
+    /**
+     * Returns the number of values in the set.
+     * @return the number of values in the set
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Tells whether the set has no values.
+     * @return {@code true} if the set has no values, {@code false} otherwise
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Tells whether the set contains the given value.
+     * @param value a value
+     * @return {@code true} if the set contains the value, {@code false} otherwise
+     */
+    public boolean contains(int value) {
+
+        if (value == 0) {
+            return containsZero;
+        }
+
+        final int mask = table.length - 1;
+        for (int i = PrimitiveHashing.mix(value) & mask; ; i = (i + 1) & mask) {
+
+            final int slot = table[i];
+            if (slot == value) {
+                return true;
+            }
+            if (slot == 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Performs the given action on each value of the set. The iteration order is unspecified.
+     * @param action an action to be performed
+     * @throws NullPointerException if the passed argument is a null reference
+     */
+    public void forEach(IntConsumer action) throws NullPointerException {
+
+        requireNonNull(action);
+
+        if (containsZero) {
+            action.accept(0);
+        }
+
+        for (final int slot : table) {
+            if (slot != 0) {
+                action.accept(slot);
+            }
+        }
+    }
+
+    /**
+     * Returns a sequential stream over the values of the set. The order of the values is
+     * unspecified.
+     * @return a stream over the values of the set
+     */
+    public IntStream stream() {
+
+        final IntStream values = Arrays.stream(table).filter(slot -> slot != 0);
+        return containsZero ? IntStream.concat(IntStream.of(0), values) : values;
+    }
+
+    /**
+     * Returns a new array containing the values of the set. The order of the values is
+     * unspecified.
+     * @return a new array containing the values of the set
+     */
+    public int[] toArray() {
+
+        final int[] values = new int[size];
+
+        int index = 0;
+        if (containsZero) {
+            values[index++] = 0;
+        }
+        for (final int slot : table) {
+            if (slot != 0) {
+                values[index++] = slot;
+            }
+        }
+
+        return values;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+
+        if (obj == this) {
+            return true;
+        }
+
+        if ( !(obj instanceof ImmutableIntSet) ) {
+            return false;
+        }
+
+        final ImmutableIntSet other = (ImmutableIntSet) obj;
+        if (size != other.size || containsZero != other.containsZero) {
+            return false;
+        }
+
+        for (final int slot : table) {
+            if ( slot != 0 && !other.contains(slot) ) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+
+        // the same as the hash code of a java.util.Set of the boxed values
+        int hashCode = 0;
+        for (final int slot : table) {
+            hashCode += slot;
+        }
+
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString( toArray() );
+    }
+
+    /**
+     *
+     * A builder of an {@link ImmutableIntSet}. The values are deduplicated as they are added, so
+     * the memory held by a builder is proportional to the number of distinct values. Builders are
+     * not thread-safe; for parallel accumulation, use one builder per worker and join them with
+     * {@link #addAll(Builder)}.
+     */
+    public static final class Builder {
+
+        private int[] table;
+        private boolean containsZero;
+        private int size;
+        // tells whether the table is shared with an already built set
+        private boolean shared;
+
+        private Builder(int expectedSize) {
+            this.table = new int[ PrimitiveHashing.tableSizeFor(expectedSize) ];
+        }
+
+        /**
+         * Adds a value to the set being built, unless it is already there.
+         * @param value a value
+         * @return this builder
+         */
+        public Builder add(int value) {
+
+            if (value == 0) {
+                if (!containsZero) {
+                    containsZero = true;
+                    size++;
+                }
+                return this;
+            }
+
+            if ( PrimitiveHashing.needsGrowth(size, table.length) ) {
+                table = rehash(table, table.length << 1);
+                shared = false;
+            } else if (shared) {
+                table = table.clone();
+                shared = false;
+            }
+
+            if ( insert(table, value) ) {
+                size++;
+            }
+
+            return this;
+        }
+
+        /**
+         * Adds all the values of the given builder to the set being built.
+         * @param other a builder
+         * @return this builder
+         * @throws NullPointerException if the passed argument is a null reference
+         */
+        public Builder addAll(Builder other) throws NullPointerException {
+
+            if (other.containsZero) {
+                add(0);
+            }
+
+            for (final int slot : other.table) {
+                if (slot != 0) {
+                    add(slot);
+                }
+            }
+
+            return this;
+        }
+
+        /**
+         * Returns an immutable set of the values added to the builder.
+         * @return an immutable set
+         */
+        public ImmutableIntSet build() {
+
+            if (size == 0) {
+                return EMPTY;
+            }
+
+            // the table is handed over to the result, further additions will work on a copy
+            shared = true;
+
+            return new ImmutableIntSet(table, containsZero, size);
+        }
+
+        private static boolean insert(int[] table, int value) {
+
+            final int mask = table.length - 1;
+            for (int i = PrimitiveHashing.mix(value) & mask; ; i = (i + 1) & mask) {
+
+                final int slot = table[i];
+                if (slot == value) {
+                    return false;
+                }
+                if (slot == 0) {
+                    table[i] = value;
+                    return true;
+                }
+            }
+        }
+
+        private static int[] rehash(int[] table, int newLength) {
+
+            final int[] newTable = new int[newLength];
+            for (final int slot : table) {
+                if (slot != 0) {
+                    insert(newTable, slot);
+                }
+            }
+
+            return newTable;
+        }
+    }
+
+}
@@ -0,0 +1,227 @@
+package com.enfernuz.util.primitives;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *
+ * An immutable array of {@code long} values, which are stored unboxed.
+ *
+ * Created by A. Nerushev
+ */
+public final class ImmutableLongArray {
+
+    private static final ImmutableLongArray EMPTY = new ImmutableLongArray(new long[0]);
+
+    private final long[] values;
+
+    private ImmutableLongArray(long[] values) {
+        this.values = values;
+    }
+
+    /**
+     * Returns an immutable array containing the given values, in order.
+     * @param values the values of the result array
+     * @return an immutable array containing the given values
+     * @throws NullPointerException if the passed argument is a null reference
+     */
+    public static ImmutableLongArray of(long... values) throws NullPointerException {
+        return copyOf(values);
+    }
+
+    /**
+     * Returns an immutable array containing the given values, in order.
+     * @param values the values of the result array
+     * @return an immutable array containing the given values
+     * @throws NullPointerException if the passed argument is a null reference
+     */
+    public static ImmutableLongArray copyOf(long[] values) throws NullPointerException {
+        return values.length == 0 ? EMPTY : new ImmutableLongArray( values.clone() );
+    }
+
+    /**
+     * Creates a builder of an immutable array.
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder(Builder.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a builder of an immutable array, presized for the given number of values.
+     * @param expectedSize the expected number of values
+     * @return a new builder
+     * @throws IllegalArgumentException if the passed argument is negative
+     */
+    public static Builder builder(int expectedSize) throws IllegalArgumentException {
+
+        checkArgument(expectedSize >= 0, "The expected size must not be negative.");
+
+        return new Builder(expectedSize);
+    }
+
+    /**
+     * Returns the number of values in the array.
+     * @return the number of values in the array
+     */
+    public int length() {
+        return values.length;
+    }
+
+    /**
+     * Tells whether the array has no values.
+     * @return {@code true} if the array has no values, {@code false} otherwise
+     */
+    public boolean isEmpty() {
+        return values.length == 0;
+    }
+
+    /**
+     * Returns the value at the given index.
+     * @param index an index
+     * @return the value at the given index
+     * @throws IndexOutOfBoundsException if the index is out of the array bounds
+     */
+    public long get(int index) throws IndexOutOfBoundsException {
+        return values[index];
+    }
+
+    /**
+     * Tells whether the array contains the given value.
+     * @param value a value
+     * @return {@code true} if the array contains the value, {@code false} otherwise
+     */
+    public boolean contains(long value) {
+
+        for (final long v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Performs the given action on each value of the array, in order.
+     * @param action an action to be performed
+     * @throws NullPointerException if the passed argument is a null reference
+     */
+    public void forEach(LongConsumer action) throws NullPointerException {
+
+        requireNonNull(action);
+
+        for (final long value : values) {
+            action.accept(value);
+        }
+    }
+
+    /**
+     * Returns a sequential stream over the values of the array.
+     * @return a stream over the values of the array
+     */
+    public LongStream stream() {
+        return Arrays.stream(values);
+    }
+
+    /**
+     * Returns a mutable copy of the values of the array.
+     * @return a new array containing the values of this array
+     */
+    public long[] toArray() {
+        return values.clone();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+
+        if (obj == this) {
+            return true;
+        }
+
+        return obj instanceof ImmutableLongArray && Arrays.equals(values, ((ImmutableLongArray) obj).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(values);
+    }
+
+    /**
+     *
+     * A builder of an {@link ImmutableLongArray}. Builders are not thread-safe; for parallel
+     * accumulation, use one builder per worker and join them with {@link #addAll(Builder)}.
+     */
+    public static final class Builder {
+
+        static final int DEFAULT_CAPACITY = 16;
+
+        private long[] values;
+        private int size;
+
+        private Builder(int capacity) {
+            this.values = new long[capacity];
+        }
+
+        /**
+         * Appends a value to the array being built.
+         * @param value a value
+         * @return this builder
+         */
+        public Builder add(long value) {
+
+            if (size == values.length) {
+                values = Arrays.copyOf( values, Math.max(DEFAULT_CAPACITY, size + (size >> 1)) );
+            }
+
+            values[size++] = value;
+
+            return this;
+        }
+
+        /**
+         * Appends all the values of the given builder to the array being built.
+         * @param other a builder
+         * @return this builder
+         * @throws NullPointerException if the passed argument is a null reference
+         */
+        public Builder addAll(Builder other) throws NullPointerException {
+
+            final int newSize = size + other.size;
+            if (newSize > values.length) {
+                values = Arrays.copyOf( values, Math.max(newSize, size + (size >> 1)) );
+            }
+
+            System.arraycopy(other.values, 0, values, size, other.size);
+            size = newSize;
+
+            return this;
+        }
+
+        /**
+         * Returns an immutable array of the values added to the builder.
+         * @return an immutable array
+         */
+        public ImmutableLongArray build() {
+
+            if (size == 0) {
+                return EMPTY;
+            }
+
+            // an exactly filled storage is handed over to the result: any further addition has
+            // to grow it and thus works on a new copy
+            return new ImmutableLongArray( size == values.length ? values : Arrays.copyOf(values, size) );
+        }
+    }
+
+}
@@ -0,0 +1,327 @@
+package com.enfernuz.util.primitives;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *
+ * An immutable map of {@code long} keys to {@code long} values, which are stored unboxed in an
+ * open-addressing hash table with linear probing.
+ *
+ * Created by A. Nerushev
+ */
+public final class ImmutableLongLongMap {
+
+    /**
+     *
+     * An operation accepting a key and a value of the map.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+
+        /**
+         * Performs the operation on the given key-value pair.
+         * @param key a key
+         * @param value a value
+         */
+        void accept(long key, long value);
+    }
+
+    private static final ImmutableLongLongMap EMPTY = 
+            new ImmutableLongLongMap(new long[4], new long[4], false, 0, 0);
+
+    // the key 0 marks a free slot, the mapping of the key 0 itself is kept separately
+    private final long[] keys;
+    private final long[] values;
+    private final boolean containsZeroKey;
+    private final long zeroKeyValue;
+    private final int size;
+
+    private ImmutableLongLongMap(
+            long[] keys, long[] values, boolean containsZeroKey, long zeroKeyValue, int size) {
+
+        this.keys = keys;
+        this.values = values;
+        this.containsZeroKey = containsZeroKey;
+        this.zeroKeyValue = zeroKeyValue;
+        this.size = size;
+    }
+
+    /**
+     * Creates a builder of an immutable map.
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder(0);
+    }
+
+    /**
+     * Creates a builder of an immutable map, presized for the given number of distinct keys.
+     * @param expectedSize the expected number of distinct keys
+     * @return a new builder
+     * @throws IllegalArgumentException if the passed argument is negative
+     */
+    public static Builder builder(int expectedSize) throws IllegalArgumentException {
+
+        checkArgument(expectedSize >= 0, "The expected size must not be negative.");
+
+        return new Builder(expectedSize);
+    }
+
+    /**
+     * Returns the number of mappings in the map.
+     * @return the number of mappings in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Tells whether the map has no mappings.
+     * @return {@code true} if the map has no mappings, {@code false} otherwise
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Tells whether the map contains a mapping for the given key.
+     * @param key a key
+     * @return {@code true} if the map contains a mapping for the key, {@code false} otherwise
+     */
+    public boolean containsKey(long key) {
+        return key == 0 ? containsZeroKey : indexOf(key) >= 0;
+    }
+
+    /**
+     * Returns the value mapped to the given key, or the given default value if there is no such
+     * mapping.
+     * @param key a key
+     * @param defaultValue a value to be returned if the map contains no mapping for the key
+     * @return the value mapped to the key, or the default value
+     */
+    public long getOrDefault(long key, long defaultValue) {
+
+        if (key == 0) {
+            return containsZeroKey ? zeroKeyValue : defaultValue;
+        }
+
+        final int index = indexOf(key);
+        return index >= 0 ? values[index] : defaultValue;
+    }
+
+    /**
+     * Performs the given action on each mapping of the map. The iteration order is unspecified.
+     * @param action an action to be performed
+     * @throws NullPointerException if the passed argument is a null reference
+     */
+    public void forEach(EntryConsumer action) throws NullPointerException {
+
+        requireNonNull(action);
+
+        if (containsZeroKey) {
+            action.accept(0, zeroKeyValue);
+        }
+
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    private int indexOf(long key) {
+
+        final int mask = keys.length - 1;
+        for (int i = PrimitiveHashing.mix(key) & mask; ; i = (i + 1) & mask) {
+
+            final long slot = keys[i];
+            if (slot == key) {
+                return i;
+            }
+            if (slot == 0) {
+                return -1;
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+
+        if (obj == this) {
+            return true;
+        }
+
+        if ( !(obj instanceof ImmutableLongLongMap) ) {
+            return false;
+        }
+
+        final ImmutableLongLongMap other = (ImmutableLongLongMap) obj;
+        if ( size != other.size || containsZeroKey != other.containsZeroKey
+                || (containsZeroKey && zeroKeyValue != other.zeroKeyValue) ) {
+            return false;
+        }
+
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                final int index = other.indexOf(keys[i]);
+                if (index < 0 || other.values[index] != values[i]) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+
+        // the same as the hash code of a java.util.Map of the boxed keys and values
+        int hashCode = containsZeroKey ? Long.hashCode(zeroKeyValue) : 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                hashCode += Long.hashCode(keys[i]) ^ Long.hashCode(values[i]);
+            }
+        }
+
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+
+        final StringBuilder sb = new StringBuilder("{");
+        forEach( (key, value) -> sb.append(sb.length() > 1 ? ", " : "").append(key).append('=').append(value) );
+
+        return sb.append('}').toString();
+    }
+
+    /**
+     *
+     * A builder of an {@link ImmutableLongLongMap}. A key put more than once is mapped to the
+     * last value put. Builders are not thread-safe; for parallel accumulation, use one builder per
+     * worker and join them with {@link #putAll(Builder)}.
+     */
+    public static final class Builder {
+
+        private long[] keys;
+        private long[] values;
+        private boolean containsZeroKey;
+        private long zeroKeyValue;
+        private int size;
+        // tells whether the table is shared with an already built map
+        private boolean shared;
+
+        private Builder(int expectedSize) {
+
+            final int tableSize = PrimitiveHashing.tableSizeFor(expectedSize);
+            this.keys = new long[tableSize];
+            this.values = new long[tableSize];
+        }
+
+        /**
+         * Maps the given key to the given value, replacing the previous mapping of the key.
+         * @param key a key
+         * @param value a value
+         * @return this builder
+         */
+        public Builder put(long key, long value) {
+
+            if (key == 0) {
+                size += containsZeroKey ? 0 : 1;
+                containsZeroKey = true;
+                zeroKeyValue = value;
+                return this;
+            }
+
+            if ( PrimitiveHashing.needsGrowth(size, keys.length) ) {
+                rehash(keys.length << 1);
+            } else if (shared) {
+                keys = keys.clone();
+                values = values.clone();
+                shared = false;
+            }
+
+            final int mask = keys.length - 1;
+            for (int i = PrimitiveHashing.mix(key) & mask; ; i = (i + 1) & mask) {
+
+                final long slot = keys[i];
+                if (slot == key) {
+                    values[i] = value;
+                    return this;
+                }
+                if (slot == 0) {
+                    keys[i] = key;
+                    values[i] = value;
+                    size++;
+                    return this;
+                }
+            }
+        }
+
+        /**
+         * Puts all the mappings of the given builder into the map being built. The mappings of the
+         * given builder replace the mappings of this builder.
+         * @param other a builder
+         * @return this builder
+         * @throws NullPointerException if the passed argument is a null reference
+         */
+        public Builder putAll(Builder other) throws NullPointerException {
+
+            if (other.containsZeroKey) {
+                put(0, other.zeroKeyValue);
+            }
+
+            for (int i = 0; i < other.keys.length; i++) {
+                if (other.keys[i] != 0) {
+                    put(other.keys[i], other.values[i]);
+                }
+            }
+
+            return this;
+        }
+
+        /**
+         * Returns an immutable map of the mappings put into the builder.
+         * @return an immutable map
+         */
+        public ImmutableLongLongMap build() {
+
+            if (size == 0) {
+                return EMPTY;
+            }
+
+            // the table is handed over to the result, further puts will work on a copy
+            shared = true;
+
+            return new ImmutableLongLongMap(keys, values, containsZeroKey, zeroKeyValue, size);
+        }
+
+        private void rehash(int newLength) {
+
+            final long[] oldKeys = keys;
+            final long[] oldValues = values;
+
+            keys = new long[newLength];
+            values = new long[newLength];
+            shared = false;
+
+            final int mask = newLength - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+
+                final long key = oldKeys[j];
+                if (key != 0) {
+                    int i = PrimitiveHashing.mix(key) & mask;
+                    while (keys[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = key;
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,294 @@
+package com.enfernuz.util.primitives;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *
+ * An immutable map of {@code long} keys to non-null values. The keys are stored unboxed in an
+ * open-addressing hash table with linear probing.
+ *
+ * Created by A. Nerushev
+ */
+public final class ImmutableLongObjectMap<V> {
+
+    /**
+     *
+     * An operation accepting a key and a value of the map.
+     * @param <V> the type of the values of the map
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+
+        /**
+         * Performs the operation on the given key-value pair.
+         * @param key a key
+         * @param value a value
+         */
+        void accept(long key, V value);
+    }
+
+    private static final ImmutableLongObjectMap<Object> EMPTY = 
+            new ImmutableLongObjectMap<>(new long[4], new Object[4], 0);
+
+    // a null value marks a free slot
+    private final long[] keys;
+    private final Object[] values;
+    private final int size;
+
+    private ImmutableLongObjectMap(long[] keys, Object[] values, int size) {
+        this.keys = keys;
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * Creates a builder of an immutable map.
+     * @param <V> the type of the values of the map
+     * @return a new builder
+     */
+    public static <V> Builder<V> builder() {
+        return new Builder<>(0);
+    }
+
+    /**
+     * Creates a builder of an immutable map, presized for the given number of distinct keys.
+     * @param <V> the type of the values of the map
+     * @param expectedSize the expected number of distinct keys
+     * @return a new builder
+     * @throws IllegalArgumentException if the passed argument is negative
+     */
+    public static <V> Builder<V> builder(int expectedSize) throws IllegalArgumentException {
+
+        checkArgument(expectedSize >= 0, "The expected size must not be negative.");
+
+        return new Builder<>(expectedSize);
+    }
+
+    /**
+     * Returns the number of mappings in the map.
+     * @return the number of mappings in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Tells whether the map has no mappings.
+     * @return {@code true} if the map has no mappings, {@code false} otherwise
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Tells whether the map contains a mapping for the given key.
+     * @param key a key
+     * @return {@code true} if the map contains a mapping for the key, {@code false} otherwise
+     */
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Returns the value mapped to the given key.
+     * @param key a key
+     * @return the value mapped to the key, or a null reference if there is no such mapping
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+
+        final int mask = keys.length - 1;
+        for (int i = PrimitiveHashing.mix(key) & mask; ; i = (i + 1) & mask) {
+
+            final Object value = values[i];
+            if (value == null || keys[i] == key) {
+                return (V) value;
+            }
+        }
+    }
+
+    /**
+     * Performs the given action on each mapping of the map. The iteration order is unspecified.
+     * @param action an action to be performed
+     * @throws NullPointerException if the passed argument is a null reference
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> action) throws NullPointerException {
+
+        requireNonNull(action);
+
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                action.accept( keys[i], (V) values[i] );
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+
+        if (obj == this) {
+            return true;
+        }
+
+        if ( !(obj instanceof ImmutableLongObjectMap) ) {
+            return false;
+        }
+
+        final ImmutableLongObjectMap<?> other = (ImmutableLongObjectMap<?>) obj;
+        if (size != other.size) {
+            return false;
+        }
+
+        for (int i = 0; i < keys.length; i++) {
+            if ( values[i] != null && !values[i].equals( other.get(keys[i]) ) ) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+
+        // the same as the hash code of a java.util.Map of the boxed keys and the values
+        int hashCode = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                hashCode += Long.hashCode(keys[i]) ^ values[i].hashCode();
+            }
+        }
+
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+
+        final StringBuilder sb = new StringBuilder("{");
+        forEach( (key, value) -> sb.append(sb.length() > 1 ? ", " : "").append(key).append('=').append(value) );
+
+        return sb.append('}').toString();
+    }
+
+    /**
+     *
+     * A builder of an {@link ImmutableLongObjectMap}. A key put more than once is mapped to the
+     * last value put. Builders are not thread-safe; for parallel accumulation, use one builder per
+     * worker and join them with {@link #putAll(Builder)}.
+     * @param <V> the type of the values of the map
+     */
+    public static final class Builder<V> {
+
+        private long[] keys;
+        private Object[] values;
+        private int size;
+        // tells whether the table is shared with an already built map
+        private boolean shared;
+
+        private Builder(int expectedSize) {
+
+            final int tableSize = PrimitiveHashing.tableSizeFor(expectedSize);
+            this.keys = new long[tableSize];
+            this.values = new Object[tableSize];
+        }
+
+        /**
+         * Maps the given key to the given value, replacing the previous mapping of the key.
+         * @param key a key
+         * @param value a value
+         * @return this builder
+         * @throws NullPointerException if the passed value is a null reference
+         */
+        public Builder<V> put(long key, V value) throws NullPointerException {
+
+            requireNonNull(value);
+
+            if ( PrimitiveHashing.needsGrowth(size, keys.length) ) {
+                rehash(keys.length << 1);
+            } else if (shared) {
+                keys = keys.clone();
+                values = values.clone();
+                shared = false;
+            }
+
+            final int mask = keys.length - 1;
+            for (int i = PrimitiveHashing.mix(key) & mask; ; i = (i + 1) & mask) {
+
+                if (values[i] == null) {
+                    keys[i] = key;
+                    values[i] = value;
+                    size++;
+                    return this;
+                }
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return this;
+                }
+            }
+        }
+
+        /**
+         * Puts all the mappings of the given builder into the map being built. The mappings of the
+         * given builder replace the mappings of this builder.
+         * @param other a builder
+         * @return this builder
+         * @throws NullPointerException if the passed argument is a null reference
+         */
+        @SuppressWarnings("unchecked")
+        public Builder<V> putAll(Builder<? extends V> other) throws NullPointerException {
+
+            for (int i = 0; i < other.keys.length; i++) {
+                if (other.values[i] != null) {
+                    put( other.keys[i], (V) other.values[i] );
+                }
+            }
+
+            return this;
+        }
+
+        /**
+         * Returns an immutable map of the mappings put into the builder.
+         * @return an immutable map
+         */
+        @SuppressWarnings("unchecked")
+        public ImmutableLongObjectMap<V> build() {
+
+            if (size == 0) {
+                return (ImmutableLongObjectMap<V>) EMPTY;
+            }
+
+            // the table is handed over to the result, further puts will work on a copy
+            shared = true;
+
+            return new ImmutableLongObjectMap<>(keys, values, size);
+        }
+
+        private void rehash(int newLength) {
+
+            final long[] oldKeys = keys;
+            final Object[] oldValues = values;
+
+            keys = new long[newLength];
+            values = new Object[newLength];
+            shared = false;
+
+            final int mask = newLength - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+
+                if (oldValues[j] != null) {
+                    int i = PrimitiveHashing.mix(oldKeys[j]) & mask;
+                    while (values[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.enfernuz.util.primitives;
+
+/**
+ *
+ * Hashing helpers shared by the open-addressing primitive collections.
+ *
+ * Created by A. Nerushev
+ */
+final class PrimitiveHashing {
+
+    private static final int MAX_TABLE_SIZE = 1 << 30;
+
+    private PrimitiveHashing() {
+        throw new AssertionError("The class is uninstantiable.");
+    }
+
+    /**
+     * Spreads the bits of the given value (the MurmurHash3 finalizer), so that the low bits of the
+     * result can be used as a table index.
+     * @param value a value
+     * @return the mixed bits of the value
+     */
+    static int mix(long value) {
+
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+
+        return (int) h;
+    }
+
+    /**
+     * Spreads the bits of the given value (the MurmurHash3 finalizer), so that the low bits of the
+     * result can be used as a table index.
+     * @param value a value
+     * @return the mixed bits of the value
+     */
+    static int mix(int value) {
+
+        int h = value;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+
+        return h;
+    }
+
+    /**
+     * Returns the power-of-two table size able to hold the given number of entries without
+     * exceeding the load factor of 3/4.
+     * @param expectedSize the expected number of entries
+     * @return the table size
+     */
+    static int tableSizeFor(int expectedSize) {
+
+        final long minimum = Math.max(4L, (long) expectedSize * 4 / 3 + 1);
+        if (minimum >= MAX_TABLE_SIZE) {
+            return MAX_TABLE_SIZE;
+        }
+
+        return Integer.highestOneBit( (int) minimum - 1 ) << 1;
+    }
+
+    /**
+     * Tells whether a table of the given size has to grow before taking one more entry.
+     * @param size the number of entries in the table
+     * @param tableSize the size of the table
+     * @return {@code true} if the table has to grow, {@code false} otherwise
+     */
+    static boolean needsGrowth(int size, int tableSize) {
+        return size + 1 > tableSize - (tableSize >>> 2) && tableSize < MAX_TABLE_SIZE;
+    }
+
+}
@@ -0,0 +1,251 @@
+package com.enfernuz.util.sketch;
+
+import com.google.common.hash.Funnel;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Longs;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *
+ * A Count-Min sketch estimating the number of times each element was added to it.
+ *
+ * The sketch is a fixed matrix of {@code depth} rows of {@code width} counters. An element is
+ * counted in one counter of each row, and its estimate is the minimum of these counters, so the
+ * estimate is never below the true count. With the width of {@code ceil(e / epsilon)} and the
+ * depth of {@code ceil(ln(1 / delta))}, the estimate exceeds the true count by more than
+ * {@code epsilon * N}, where {@code N} is the total count of the sketch, with a probability of at
+ * most {@code delta}. The counters of a row are picked by double hashing of the 128-bit
+ * MurmurHash3 of the element, the way {@link com.google.common.hash.BloomFilter} picks its bits.
+ *
+ * Two sketches of the same dimensions and funnel are merged by adding up their counters, which
+ * makes the sketch a fit for the parallel streams. Instances are not thread-safe.
+ *
+ * Created by A. Nerushev
+ */
+public final class CountMinSketch<T> {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final Funnel<? super T> funnel;
+    private final int width;
+    private final int depth;
+    private final long[] counters;
+    private long totalCount;
+
+    private CountMinSketch(Funnel<? super T> funnel, int width, int depth, long[] counters, long totalCount) {
+        this.funnel = funnel;
+        this.width = width;
+        this.depth = depth;
+        this.counters = counters;
+        this.totalCount = totalCount;
+    }
+
+    /**
+     * Creates an empty sketch of the given dimensions.
+     * @param <T> the type of the elements
+     * @param funnel a funnel of the elements
+     * @param width the number of counters per row
+     * @param depth the number of rows
+     * @return a new sketch
+     * @throws NullPointerException if the passed funnel is a null reference
+     * @throws IllegalArgumentException if either of the dimensions is not positive or the sketch
+     * would have more than {@code Integer.MAX_VALUE} counters
+     */
+    public static <T> CountMinSketch<T> createWithDimensions(Funnel<? super T> funnel, int width, int depth)
+            throws NullPointerException, IllegalArgumentException {
+
+        requireNonNull(funnel);
+        checkArgument(width > 0, "The width must be positive, got %s.", width);
+        checkArgument(depth > 0, "The depth must be positive, got %s.", depth);
+        checkArgument(
+                (long) width * depth <= Integer.MAX_VALUE,
+                "The sketch of %s x %s counters is too large.", depth, width
+        );
+
+        return new CountMinSketch<>( funnel, width, depth, new long[width * depth], 0 );
+    }
+
+    /**
+     * Creates an empty sketch, the estimates of which exceed the true counts by more than
+     * {@code epsilon} times the total count with a probability of at most {@code delta}.
+     * @param <T> the type of the elements
+     * @param funnel a funnel of the elements
+     * @param epsilon the relative error bound of the estimates, e.g. 0.001
+     * @param delta the probability of an estimate exceeding the error bound, e.g. 0.01
+     * @return a new sketch
+     * @throws NullPointerException if the passed funnel is a null reference
+     * @throws IllegalArgumentException if either {@code epsilon} or {@code delta} is not in
+     * (0, 1), or the sketch would be too large
+     */
+    public static <T> CountMinSketch<T> create(Funnel<? super T> funnel, double epsilon, double delta)
+            throws NullPointerException, IllegalArgumentException {
+
+        checkArgument(epsilon > 0 && epsilon < 1, "The epsilon must be in (0, 1), got %s.", epsilon);
+        checkArgument(delta > 0 && delta < 1, "The delta must be in (0, 1), got %s.", delta);
+
+        final double width = Math.ceil(Math.E / epsilon);
+        checkArgument(width <= Integer.MAX_VALUE, "The epsilon of %s is too small.", epsilon);
+
+        return createWithDimensions( funnel, (int) width, (int) Math.ceil( Math.log(1 / delta) ) );
+    }
+
+    /**
+     * Adds an occurrence of an element to the sketch.
+     * @param element an element
+     */
+    public void add(T element) {
+        add(element, 1);
+    }
+
+    /**
+     * Adds the given number of occurrences of an element to the sketch.
+     * @param element an element
+     * @param count the number of occurrences
+     * @throws IllegalArgumentException if the count is negative
+     */
+    public void add(T element, long count) throws IllegalArgumentException {
+
+        checkArgument(count >= 0, "The count must not be negative, got %s.", count);
+
+        final HashCode hashCode = HASH_FUNCTION.hashObject(element, funnel);
+        final long hash1 = hashCode.asLong();
+        final long hash2 = secondHalfOf(hashCode);
+
+        long combinedHash = hash1;
+        for (int row = 0, offset = 0; row < depth; row++, offset += width) {
+            counters[ offset + (int) ((combinedHash & Long.MAX_VALUE) % width) ] += count;
+            combinedHash += hash2;
+        }
+
+        totalCount += count;
+    }
+
+    /**
+     * Estimates the number of occurrences of an element added to the sketch. The estimate is
+     * never less than the true number.
+     * @param element an element
+     * @return the estimated number of occurrences of the element
+     */
+    public long estimateCount(T element) {
+
+        final HashCode hashCode = HASH_FUNCTION.hashObject(element, funnel);
+        final long hash1 = hashCode.asLong();
+        final long hash2 = secondHalfOf(hashCode);
+
+        long estimate = Long.MAX_VALUE;
+        long combinedHash = hash1;
+        for (int row = 0, offset = 0; row < depth; row++, offset += width) {
+            estimate = Math.min( estimate, counters[ offset + (int) ((combinedHash & Long.MAX_VALUE) % width) ] );
+            combinedHash += hash2;
+        }
+
+        return estimate;
+    }
+
+    /**
+     * Merges the given sketch into this sketch, so that this sketch estimates the counts of the
+     * elements added to either of them.
+     * @param other a compatible sketch
+     * @throws NullPointerException if the passed argument is a null reference
+     * @throws IllegalArgumentException if the sketches are not compatible
+     */
+    public void putAll(CountMinSketch<T> other) throws NullPointerException, IllegalArgumentException {
+
+        checkArgument( isCompatible(other), "The sketches are not compatible." );
+
+        final long[] otherCounters = other.counters;
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] += otherCounters[i];
+        }
+
+        totalCount += other.totalCount;
+    }
+
+    /**
+     * Tells whether the given sketch can be merged into this sketch, which is the case when both
+     * sketches are of the same dimensions and funnel.
+     * @param other a sketch
+     * @return {@code true} if the sketches are compatible, {@code false} otherwise
+     * @throws NullPointerException if the passed argument is a null reference
+     */
+    public boolean isCompatible(CountMinSketch<T> other) throws NullPointerException {
+
+        return this != other
+                && width == other.width
+                && depth == other.depth
+                && funnel.equals(other.funnel);
+    }
+
+    /**
+     * Returns the total number of occurrences added to the sketch.
+     * @return the total count of the sketch
+     */
+    public long totalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Returns the number of counters per row of the sketch.
+     * @return the width of the sketch
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * Returns the number of rows of the sketch.
+     * @return the depth of the sketch
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * Creates a copy of the sketch.
+     * @return a new sketch equal to this one
+     */
+    public CountMinSketch<T> copy() {
+        return new CountMinSketch<>( funnel, width, depth, counters.clone(), totalCount );
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+
+        if (obj == this) {
+            return true;
+        }
+
+        if ( !(obj instanceof CountMinSketch) ) {
+            return false;
+        }
+
+        final CountMinSketch<?> other = (CountMinSketch<?>) obj;
+
+        return width == other.width
+                && depth == other.depth
+                && totalCount == other.totalCount
+                && funnel.equals(other.funnel)
+                && Arrays.equals(counters, other.counters);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * funnel.hashCode() + Arrays.hashCode(counters);
+    }
+
+    // the upper 64 bits of the hash code, in the byte order of HashCode.asLong()
+    private static long secondHalfOf(HashCode hashCode) {
+
+        final byte[] bytes = hashCode.asBytes();
+
+        return Longs.fromBytes(bytes[15], bytes[14], bytes[13], bytes[12], bytes[11], bytes[10], bytes[9], bytes[8]);
+    }
+
+}
@@ -0,0 +1,230 @@
+package com.enfernuz.util.sketch;
+
+import com.google.common.hash.Funnel;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *
+ * A HyperLogLog sketch estimating the number of distinct elements put into it.
+ *
+ * The sketch is a fixed array of {@code 2^p} one-byte registers, where {@code p} is its
+ * precision, so it takes {@code 2^p} bytes however many elements are put into it. The relative
+ * standard error of the estimate is about {@code 1.04 / sqrt(2^p)}: 16 KiB of registers give an
+ * error of 0.8%. Small cardinalities are estimated by linear counting. The elements are hashed
+ * into 64 bits with the 128-bit MurmurHash3, so no correction for hash collisions is needed at
+ * large cardinalities.
+ *
+ * Two sketches of the same precision and funnel are merged by taking the maximum of each
+ * register, which makes the sketch a fit for the parallel streams. Instances are not thread-safe.
+ *
+ * Created by A. Nerushev
+ */
+public final class HyperLogLog<T> {
+
+    /** The minimum precision of a sketch. */
+    public static final int MIN_PRECISION = 4;
+    /** The maximum precision of a sketch. */
+    public static final int MAX_PRECISION = 18;
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final Funnel<? super T> funnel;
+    private final int precision;
+    private final byte[] registers;
+
+    private HyperLogLog(Funnel<? super T> funnel, int precision, byte[] registers) {
+        this.funnel = funnel;
+        this.precision = precision;
+        this.registers = registers;
+    }
+
+    /**
+     * Creates an empty sketch of the given precision.
+     * @param <T> the type of the elements
+     * @param funnel a funnel of the elements
+     * @param precision the number of bits of the register index, from {@link #MIN_PRECISION} to
+     * {@link #MAX_PRECISION}
+     * @return a new sketch
+     * @throws NullPointerException if the passed funnel is a null reference
+     * @throws IllegalArgumentException if the precision is out of the bounds
+     */
+    public static <T> HyperLogLog<T> createWithPrecision(Funnel<? super T> funnel, int precision)
+            throws NullPointerException, IllegalArgumentException {
+
+        requireNonNull(funnel);
+        checkArgument(
+                precision >= MIN_PRECISION && precision <= MAX_PRECISION,
+                "The precision must be in [%s, %s], got %s.", MIN_PRECISION, MAX_PRECISION, precision
+        );
+
+        return new HyperLogLog<>( funnel, precision, new byte[1 << precision] );
+    }
+
+    /**
+     * Creates an empty sketch of the lowest precision giving the required relative standard
+     * error, or of the maximum precision if the error cannot be reached.
+     * @param <T> the type of the elements
+     * @param funnel a funnel of the elements
+     * @param relativeError the required relative standard error of the estimate, e.g. 0.01
+     * @return a new sketch
+     * @throws NullPointerException if the passed funnel is a null reference
+     * @throws IllegalArgumentException if the relative error is not in (0, 1)
+     */
+    public static <T> HyperLogLog<T> create(Funnel<? super T> funnel, double relativeError)
+            throws NullPointerException, IllegalArgumentException {
+
+        checkArgument(
+                relativeError > 0 && relativeError < 1,
+                "The relative error must be in (0, 1), got %s.", relativeError
+        );
+
+        // 1.04 / sqrt(2^p) <= error  <=>  p >= 2 * log2(1.04 / error)
+        final double bits = 2 * Math.log(1.04 / relativeError) / Math.log(2);
+        final int precision = (int) Math.min( MAX_PRECISION, Math.max(MIN_PRECISION, Math.ceil(bits)) );
+
+        return createWithPrecision(funnel, precision);
+    }
+
+    /**
+     * Puts an element into the sketch.
+     * @param element an element
+     */
+    public void put(T element) {
+
+        final long hash = HASH_FUNCTION.hashObject(element, funnel).asLong();
+
+        final int index = (int) (hash >>> (Long.SIZE - precision));
+        // the sentinel bit bounds the rank by 64 - p + 1
+        final long rest = (hash << precision) | (1L << (precision - 1));
+        final byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+
+        if (registers[index] < rank) {
+            registers[index] = rank;
+        }
+    }
+
+    /**
+     * Merges the given sketch into this sketch, so that this sketch estimates the number of the
+     * distinct elements put into either of them.
+     * @param other a compatible sketch
+     * @throws NullPointerException if the passed argument is a null reference
+     * @throws IllegalArgumentException if the sketches are not compatible
+     */
+    public void putAll(HyperLogLog<T> other) throws NullPointerException, IllegalArgumentException {
+
+        checkArgument( isCompatible(other), "The sketches are not compatible." );
+
+        final byte[] otherRegisters = other.registers;
+        for (int i = 0; i < registers.length; i++) {
+            if (registers[i] < otherRegisters[i]) {
+                registers[i] = otherRegisters[i];
+            }
+        }
+    }
+
+    /**
+     * Tells whether the given sketch can be merged into this sketch, which is the case when both
+     * sketches are of the same precision and funnel.
+     * @param other a sketch
+     * @return {@code true} if the sketches are compatible, {@code false} otherwise
+     * @throws NullPointerException if the passed argument is a null reference
+     */
+    public boolean isCompatible(HyperLogLog<T> other) throws NullPointerException {
+        return this != other && precision == other.precision && funnel.equals(other.funnel);
+    }
+
+    /**
+     * Estimates the number of the distinct elements put into the sketch.
+     * @return the estimated number of the distinct elements
+     */
+    public long cardinality() {
+
+        final int m = registers.length;
+
+        double sum = 0;
+        int zeros = 0;
+        for (final byte register : registers) {
+            sum += Double.longBitsToDouble( (1023L - register) << 52 ); // 2^-register
+            if (register == 0) {
+                zeros++;
+            }
+        }
+
+        final double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            return Math.round( m * Math.log( (double) m / zeros ) );
+        }
+
+        return Math.round(estimate);
+    }
+
+    /**
+     * Returns the relative standard error of the estimates of the sketch.
+     * @return the relative standard error
+     */
+    public double relativeError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    /**
+     * Returns the precision of the sketch, i.e. the base 2 logarithm of the number of its
+     * registers.
+     * @return the precision of the sketch
+     */
+    public int precision() {
+        return precision;
+    }
+
+    /**
+     * Creates a copy of the sketch.
+     * @return a new sketch equal to this one
+     */
+    public HyperLogLog<T> copy() {
+        return new HyperLogLog<>( funnel, precision, registers.clone() );
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+
+        if (obj == this) {
+            return true;
+        }
+
+        if ( !(obj instanceof HyperLogLog) ) {
+            return false;
+        }
+
+        final HyperLogLog<?> other = (HyperLogLog<?>) obj;
+
+        return precision == other.precision
+                && funnel.equals(other.funnel)
+                && Arrays.equals(registers, other.registers);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * funnel.hashCode() + Arrays.hashCode(registers);
+    }
+
+    private static double alpha(int m) {
+
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+package com.enfernuz.util.stream;
+
+import com.google.common.collect.ArrayTable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *
+ * A dense accumulation container of the table collectors for the tables, the row and column keys
+ * of which are known up front. The cells are stored in a flat row-major array, so putting a value
+ * is two index lookups and an array store, and merging two buffers is a linear scan of their
+ * arrays.
+ *
+ * Instances are not thread-safe.
+ *
+ * Created by A. Nerushev
+ */
+final class ArrayTableBuffer<R, C, V> {
+
+    /**
+     *
+     * The row and column keys of a dense table along with their indices, shared by all the
+     * buffers of a collector.
+     */
+    static final class Layout<R, C> {
+
+        final ImmutableList<R> rowKeys;
+        final ImmutableList<C> columnKeys;
+
+        private final ImmutableMap<R, Integer> rowIndices;
+        private final ImmutableMap<C, Integer> columnIndices;
+
+        /**
+         * Constructs a layout of a dense table.
+         * @param rowKeys the row keys of the table
+         * @param columnKeys the column keys of the table
+         * @throws NullPointerException if either of the passed arguments is a null reference or
+         * contains a null reference
+         * @throws IllegalArgumentException if either of the passed arguments contains duplicates
+         * or the table would have more than {@code Integer.MAX_VALUE} cells
+         */
+        Layout(Iterable<? extends R> rowKeys, Iterable<? extends C> columnKeys) 
+                throws NullPointerException, IllegalArgumentException {
+
+            this.rowKeys = ImmutableList.copyOf(rowKeys);
+            this.columnKeys = ImmutableList.copyOf(columnKeys);
+            this.rowIndices = indicesOf(this.rowKeys);
+            this.columnIndices = indicesOf(this.columnKeys);
+
+            checkArgument(
+                    (long) this.rowKeys.size() * this.columnKeys.size() <= Integer.MAX_VALUE, 
+                    "The table must not have more than Integer.MAX_VALUE cells."
+            );
+        }
+
+        private static <K> ImmutableMap<K, Integer> indicesOf(ImmutableList<K> keys) {
+
+            final ImmutableMap.Builder<K, Integer> indices = ImmutableMap.builder();
+            for (int i = 0; i < keys.size(); i++) {
+                indices.put(keys.get(i), i);
+            }
+
+            return indices.build();
+        }
+    }
+
+    private final Layout<R, C> layout;
+    private final Object[] cells;
+
+    /**
+     * Constructs an empty buffer of the given layout.
+     * @param layout the layout of the table
+     */
+    ArrayTableBuffer(Layout<R, C> layout) {
+        this.layout = layout;
+        this.cells = new Object[ layout.rowKeys.size() * layout.columnKeys.size() ];
+    }
+
+    /**
+     * Puts a value into a cell of the buffer.
+     * @param row the row key of the cell
+     * @param column the column key of the cell
+     * @param value a value
+     * @throws NullPointerException if the passed value is a null reference
+     * @throws IllegalArgumentException if either of the passed keys is not a key of the layout
+     */
+    void put(R row, C column, V value) throws NullPointerException, IllegalArgumentException {
+
+        requireNonNull(value);
+
+        final Integer rowIndex = layout.rowIndices.get(row);
+        checkArgument(rowIndex != null, "Row %s not in %s", row, layout.rowKeys);
+
+        final Integer columnIndex = layout.columnIndices.get(column);
+        checkArgument(columnIndex != null, "Column %s not in %s", column, layout.columnKeys);
+
+        cells[rowIndex * layout.columnKeys.size() + columnIndex] = value;
+    }
+
+    /**
+     * Merges the cells of the given buffer, which follows this buffer in the encounter order, into
+     * this buffer.
+     * @param later a buffer to be merged into this buffer
+     * @return this buffer
+     */
+    ArrayTableBuffer<R, C, V> merge(ArrayTableBuffer<R, C, V> later) {
+
+        final Object[] laterCells = later.cells;
+        for (int i = 0; i < cells.length; i++) {
+            if (laterCells[i] != null) {
+                cells[i] = laterCells[i];
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * Creates an array table of the cells of the buffer.
+     * @return a new array table
+     */
+    @SuppressWarnings("unchecked")
+    ArrayTable<R, C, V> toArrayTable() {
+
+        final ArrayTable<R, C, V> table = ArrayTable.create(layout.rowKeys, layout.columnKeys);
+
+        final int columns = layout.columnKeys.size();
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != null) {
+                table.set( i / columns, i % columns, (V) cells[i] );
+            }
+        }
+
+        return table;
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.enfernuz.util.stream;
+
+/**
+ *
+ * The summary of a reduction performed by a batching collector (see
+ * {@link Collectors#toBatches(int, java.util.function.Consumer)}): the numbers of the elements and
+ * the batches handed to the consumer, and where the time has gone.
+ *
+ * Created by A. Nerushev
+ */
+public final class BatchSummary {
+
+    private final long elementCount;
+    private final long batchCount;
+    private final long consumerNanos;
+    private final long backpressureNanos;
+
+    BatchSummary(long elementCount, long batchCount, long consumerNanos, long backpressureNanos) {
+        this.elementCount = elementCount;
+        this.batchCount = batchCount;
+        this.consumerNanos = consumerNanos;
+        this.backpressureNanos = backpressureNanos;
+    }
+
+    /**
+     * Returns the number of the elements handed to the consumer.
+     * @return the number of the elements
+     */
+    public long elementCount() {
+        return elementCount;
+    }
+
+    /**
+     * Returns the number of the batches handed to the consumer.
+     * @return the number of the batches
+     */
+    public long batchCount() {
+        return batchCount;
+    }
+
+    /**
+     * Returns the total time spent in the consumer.
+     * @return the consumer time in nanoseconds
+     */
+    public long consumerNanos() {
+        return consumerNanos;
+    }
+
+    /**
+     * Returns the total time the threads of the stream have been held up by the consumer, i.e.
+     * have waited for their turn to call it or for room in the queue of the batches.
+     * @return the backpressure time in nanoseconds
+     */
+    public long backpressureNanos() {
+        return backpressureNanos;
+    }
+
+    @Override
+    public String toString() {
+
+        return "BatchSummary{elements=" + elementCount
+                + ", batches=" + batchCount
+                + ", consumerNanos=" + consumerNanos
+                + ", backpressureNanos=" + backpressureNanos + "}";
+    }
+
+}
@@ -0,0 +1,156 @@
+package com.enfernuz.util.stream;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ *
+ * A bounded binary heap used as the accumulation container of the top-K and sampling collectors:
+ * it keeps at most {@code k} of the offered elements, the ones coming first in the order of its
+ * comparator.
+ *
+ * The root of the heap is the greatest of the kept elements, so an offered element is either
+ * rejected by a single comparison with the root or replaces the root with a single sift-down.
+ * The array of the heap grows with the number of the kept elements up to {@code k}, so the memory
+ * footprint never exceeds O(k) however long the stream is.
+ *
+ * Instances are not thread-safe.
+ *
+ * Created by A. Nerushev
+ */
+final class BoundedHeap<T> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int k;
+    private final Comparator<? super T> comparator;
+
+    private Object[] elements;
+    private int size;
+
+    /**
+     * Constructs an empty heap.
+     * @param k the maximum number of the kept elements
+     * @param comparator a comparator defining which elements are kept
+     * @throws IllegalArgumentException if {@code k} is negative
+     */
+    BoundedHeap(int k, Comparator<? super T> comparator) throws IllegalArgumentException {
+
+        checkArgument(k >= 0, "The k must not be negative.");
+
+        this.k = k;
+        this.comparator = comparator;
+        this.elements = new Object[ Math.min(k, INITIAL_CAPACITY) ];
+    }
+
+    /**
+     * Offers an element to the heap.
+     * @param element an element
+     */
+    void offer(T element) {
+
+        if (size < k) {
+            if (size == elements.length) {
+                elements = Arrays.copyOf( elements, (int) Math.min(k, 2L * size) );
+            }
+            siftUp(size++, element);
+        } else if ( k > 0 && comparator.compare(element, root()) < 0 ) {
+            siftDown(0, element);
+        }
+    }
+
+    /**
+     * Offers all the kept elements of the given heap, which has the same bound and comparator, to
+     * this heap or vice versa, whichever heap is smaller. The given heap must not be used
+     * afterwards.
+     * @param other a heap to be merged
+     * @return the merged heap
+     */
+    BoundedHeap<T> merge(BoundedHeap<T> other) {
+
+        final BoundedHeap<T> larger = size >= other.size ? this : other;
+        final BoundedHeap<T> smaller = larger == this ? other : this;
+
+        for (int i = 0; i < smaller.size; i++) {
+            larger.offer( smaller.get(i) );
+        }
+
+        return larger;
+    }
+
+    /**
+     * Performs the given action for each of the kept elements, in no particular order.
+     * @param action an action
+     */
+    void forEach(Consumer<? super T> action) {
+
+        for (int i = 0; i < size; i++) {
+            action.accept( get(i) );
+        }
+    }
+
+    /**
+     * Returns the kept elements sorted by the comparator of the heap.
+     * @return an immutable list of the kept elements
+     * @throws NullPointerException if one of the kept elements is a null reference
+     */
+    @SuppressWarnings("unchecked")
+    ImmutableList<T> toSortedList() throws NullPointerException {
+
+        final T[] array = (T[]) Arrays.copyOf(elements, size);
+        Arrays.sort(array, comparator);
+
+        return ImmutableList.copyOf(array);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T get(int index) {
+        return (T) elements[index];
+    }
+
+    private T root() {
+        return get(0);
+    }
+
+    private void siftUp(int index, T element) {
+
+        while (index > 0) {
+            final int parent = (index - 1) >>> 1;
+            final T parentElement = get(parent);
+            if ( comparator.compare(element, parentElement) <= 0 ) {
+                break;
+            }
+            elements[index] = parentElement;
+            index = parent;
+        }
+
+        elements[index] = element;
+    }
+
+    private void siftDown(int index, T element) {
+
+        final int half = size >>> 1;
+        while (index < half) {
+            int child = (index << 1) + 1;
+            T childElement = get(child);
+            final int right = child + 1;
+            if ( right < size && comparator.compare(get(right), childElement) > 0 ) {
+                child = right;
+                childElement = get(child);
+            }
+            if ( comparator.compare(element, childElement) >= 0 ) {
+                break;
+            }
+            elements[index] = childElement;
+            index = child;
+        }
+
+        elements[index] = element;
+    }
+
+}
@@ -0,0 +1,405 @@
+package com.enfernuz.util.stream;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ *
+ * An accumulation container of a batching collector: the chunk of elements being filled by a
+ * worker, which is handed to the consumer once full, and the statistics of the batches handed
+ * over.
+ *
+ * The synchronous sink calls the consumer from the thread which has filled the chunk and then
+ * refills the chunk. The queued sink puts the chunk into a bounded queue of its own, drained by a
+ * single task at a time running on an executor, so the worker goes on filling another chunk while
+ * the consumer writes, and only blocks when the queue is full. The written chunks are recycled, so
+ * the number of chunks ever allocated by a sink depends on the capacity of its queue, but not on
+ * the number of elements.
+ *
+ * All the state of a reduction lives in its sinks, which the combiner merges and the finisher
+ * summarizes, so a collector may run any number of reductions at once, and a reduction abandoned
+ * midway leaves nothing behind. The sinks created for a collector share nothing but the lock
+ * which makes the calls of the consumer one at a time.
+ *
+ * Created by A. Nerushev
+ */
+abstract class ChunkedSink<T> {
+
+    private final int chunkSize;
+    private final Consumer<? super List<T>> consumer;
+    private final Object consumerLock;
+
+    private Chunk<T> chunk;
+
+    // updated by the thread filling the chunks as well as by the one consuming them
+    private final AtomicLong elementCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong consumerNanos = new AtomicLong();
+    final AtomicLong backpressureNanos = new AtomicLong();
+
+    volatile Throwable failure;
+
+    private ChunkedSink(int chunkSize, Consumer<? super List<T>> consumer, Object consumerLock) {
+        this.chunkSize = chunkSize;
+        this.consumer = consumer;
+        this.consumerLock = consumerLock;
+    }
+
+    /**
+     * Creates a sink calling the consumer from the thread filling the chunks.
+     * @param <T> the type of the elements
+     * @param chunkSize the number of elements per chunk
+     * @param consumer a consumer of the full chunks
+     * @param consumerLock the lock to hold while calling the consumer, shared by all the sinks of
+     * a collector
+     * @return a new sink
+     */
+    static <T> ChunkedSink<T> synchronous(int chunkSize, Consumer<? super List<T>> consumer, Object consumerLock) {
+        return new Synchronous<>(chunkSize, consumer, consumerLock);
+    }
+
+    /**
+     * Creates a sink calling the consumer from the tasks draining its queue on the given executor.
+     * @param <T> the type of the elements
+     * @param chunkSize the number of elements per chunk
+     * @param consumer a consumer of the full chunks
+     * @param consumerLock the lock to hold while calling the consumer, shared by all the sinks of
+     * a collector
+     * @param executor an executor to run the draining tasks on
+     * @param queueCapacity the maximum number of full chunks waiting to be consumed
+     * @return a new sink
+     */
+    static <T> ChunkedSink<T> queued(
+            int chunkSize,
+            Consumer<? super List<T>> consumer,
+            Object consumerLock,
+            Executor executor,
+            int queueCapacity) {
+
+        return new Queued<>(chunkSize, consumer, consumerLock, executor, queueCapacity);
+    }
+
+    /**
+     * Appends an element to the chunk being filled, handing the chunk to the consumer once full.
+     * @param element an element
+     */
+    final void add(T element) {
+
+        if (chunk == null) {
+            chunk = acquire();
+        }
+
+        if ( chunk.append(element) ) {
+            chunk = deliver(chunk);
+        }
+    }
+
+    /**
+     * Merges the given sink into this one: waits until the chunks delivered by the given sink have
+     * been consumed, adds up the statistics and appends the elements of its last chunk. The given
+     * sink must not be used afterwards.
+     * @param other a sink
+     * @return this sink
+     */
+    final ChunkedSink<T> append(ChunkedSink<T> other) {
+
+        other.awaitConsumed();
+
+        elementCount.addAndGet( other.elementCount.get() );
+        batchCount.addAndGet( other.batchCount.get() );
+        consumerNanos.addAndGet( other.consumerNanos.get() );
+        backpressureNanos.addAndGet( other.backpressureNanos.get() );
+        if (failure == null) {
+            failure = other.failure;
+        }
+
+        final Chunk<T> otherChunk = other.chunk;
+        other.chunk = null;
+        if (otherChunk != null) {
+            for (int i = 0; i < otherChunk.size; i++) {
+                add( otherChunk.get(i) );
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * Hands the last chunk to the consumer and waits until all the delivered chunks have been
+     * consumed.
+     * @return the summary of the batches handed over by this sink and the ones merged into it
+     * @throws RuntimeException a failure of the consumer
+     */
+    final BatchSummary finish() {
+
+        final Chunk<T> rest = chunk;
+        chunk = null;
+        if (rest != null && rest.size > 0) {
+            deliver(rest);
+        }
+
+        awaitConsumed();
+
+        final Throwable t = failure;
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t != null) {
+            throw new IllegalStateException("The consumer of the batches has failed.", t);
+        }
+
+        return new BatchSummary(elementCount.get(), batchCount.get(), consumerNanos.get(), backpressureNanos.get());
+    }
+
+    /**
+     * Returns an empty chunk to be filled.
+     * @return an empty chunk
+     */
+    Chunk<T> acquire() {
+        return new Chunk<>(chunkSize);
+    }
+
+    /**
+     * Hands a full, or the last, chunk to the consumer.
+     * @param chunk a chunk
+     * @return an empty chunk to go on with, or {@code null} if the chunk has been taken over
+     */
+    abstract Chunk<T> deliver(Chunk<T> chunk);
+
+    /**
+     * Waits until all the chunks delivered by this sink have been consumed.
+     */
+    abstract void awaitConsumed();
+
+    /**
+     * Hands a chunk to the consumer, waiting for the calls of the consumer made by the other
+     * sinks of the collector to return first.
+     * @param chunk a chunk
+     * @return the time spent waiting for the lock of the consumer, in nanoseconds
+     */
+    final long consume(Chunk<T> chunk) {
+
+        final long lockStart = System.nanoTime();
+        synchronized (consumerLock) {
+
+            final long start = System.nanoTime();
+            consumer.accept(chunk);
+            consumerNanos.addAndGet( System.nanoTime() - start );
+            elementCount.addAndGet(chunk.size);
+            batchCount.incrementAndGet();
+
+            return start - lockStart;
+        }
+    }
+
+    /**
+     * A fixed-size chunk of elements, handed to the consumer as a read-only list. The consumer
+     * must not keep the list, as the chunk is refilled afterwards.
+     */
+    static final class Chunk<T> extends AbstractList<T> implements RandomAccess {
+
+        private final Object[] elements;
+        private int size;
+
+        private Chunk(int capacity) {
+            this.elements = new Object[capacity];
+        }
+
+        /**
+         * Appends an element.
+         * @param element an element
+         * @return {@code true} if the chunk is full
+         */
+        boolean append(T element) {
+
+            elements[size++] = element;
+
+            return size == elements.length;
+        }
+
+        void clear(boolean dropReferences) {
+
+            if (dropReferences) {
+                Arrays.fill(elements, 0, size, null);
+            }
+            size = 0;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+
+            if (index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+            }
+
+            return (T) elements[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private static final class Synchronous<T> extends ChunkedSink<T> {
+
+        Synchronous(int chunkSize, Consumer<? super List<T>> consumer, Object consumerLock) {
+            super(chunkSize, consumer, consumerLock);
+        }
+
+        @Override
+        Chunk<T> deliver(Chunk<T> chunk) {
+
+            backpressureNanos.addAndGet( consume(chunk) );
+            chunk.clear(false);
+
+            return chunk;
+        }
+
+        @Override
+        void awaitConsumed() {
+            // the chunks are consumed as they are delivered
+        }
+    }
+
+    private static final class Queued<T> extends ChunkedSink<T> {
+
+        private final Executor executor;
+        private final BlockingQueue<Chunk<T>> full;
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        // the empty chunks left over by the consumer, to be refilled
+        private final ConcurrentLinkedQueue<Chunk<T>> free = new ConcurrentLinkedQueue<>();
+
+        // the number of the chunks delivered and not yet consumed, guarded by itself
+        private final Object pendingLock = new Object();
+        private int pending;
+
+        Queued(
+                int chunkSize,
+                Consumer<? super List<T>> consumer,
+                Object consumerLock,
+                Executor executor,
+                int queueCapacity) {
+
+            super(chunkSize, consumer, consumerLock);
+
+            this.executor = executor;
+            this.full = new ArrayBlockingQueue<>(queueCapacity);
+        }
+
+        @Override
+        Chunk<T> acquire() {
+
+            final Chunk<T> chunk = free.poll();
+
+            return chunk == null ? super.acquire() : chunk;
+        }
+
+        @Override
+        Chunk<T> deliver(Chunk<T> chunk) {
+
+            synchronized (pendingLock) {
+                pending++;
+            }
+
+            final long start = System.nanoTime();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    full.put(chunk);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            backpressureNanos.addAndGet( System.nanoTime() - start );
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            scheduleDrain();
+
+            return null;
+        }
+
+        @Override
+        void awaitConsumed() {
+
+            boolean interrupted = false;
+            synchronized (pendingLock) {
+                while (pending > 0) {
+                    try {
+                        pendingLock.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // at most one drain task of a sink is scheduled at a time, so no task outlives the chunks
+        // it has to write
+        private void scheduleDrain() {
+
+            if ( draining.compareAndSet(false, true) ) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RuntimeException rejected) {
+                    draining.set(false);
+                    throw rejected;
+                }
+            }
+        }
+
+        // after a failure of the consumer, the chunks are only drained, so that the stream
+        // threads do not block on the full queue, and the failure is rethrown by finish()
+        private void drain() {
+
+            try {
+                Chunk<T> chunk;
+                while ( (chunk = full.poll()) != null ) {
+
+                    if (failure == null) {
+                        try {
+                            consume(chunk);
+                        } catch (Throwable t) {
+                            failure = t;
+                        }
+                    }
+
+                    chunk.clear(true);
+                    free.offer(chunk);
+
+                    synchronized (pendingLock) {
+                        if (--pending == 0) {
+                            pendingLock.notifyAll();
+                        }
+                    }
+                }
+            } finally {
+                draining.set(false);
+            }
+
+            // a chunk may have been put after the last poll, but before the flag was cleared
+            if ( !full.isEmpty() ) {
+                scheduleDrain();
+            }
+        }
+    }
+
+}
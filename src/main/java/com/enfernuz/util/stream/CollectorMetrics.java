@@ -0,0 +1,154 @@
+package com.enfernuz.util.stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *
+ * The measurements of a single reduction performed by an instrumented collector (see
+ * {@link Collectors#instrumented(String, java.util.stream.Collector, CollectorMetricsSink)}).
+ *
+ * The phase times are sums over all the calls of the phase, possibly made by many threads at
+ * once, so on a parallel stream their total may well exceed the wall time of the reduction. The
+ * lock wait is an estimate: it is the off-CPU time of a sample of the accumulator calls, scaled up
+ * to all of them, and it is zero when the JVM does not measure thread CPU time.
+ *
+ * Created by A. Nerushev
+ */
+public final class CollectorMetrics {
+
+    private final String name;
+    private final long elementCount;
+    private final long containerCount;
+    private final long peakContainerSize;
+    private final long supplierNanos;
+    private final long accumulatorNanos;
+    private final long combinerNanos;
+    private final long finisherNanos;
+    private final long finisherAllocatedBytes;
+    private final long lockWaitNanos;
+
+    CollectorMetrics(
+            String name,
+            long elementCount,
+            long containerCount,
+            long peakContainerSize,
+            long supplierNanos,
+            long accumulatorNanos,
+            long combinerNanos,
+            long finisherNanos,
+            long finisherAllocatedBytes,
+            long lockWaitNanos) {
+
+        this.name = requireNonNull(name);
+        this.elementCount = elementCount;
+        this.containerCount = containerCount;
+        this.peakContainerSize = peakContainerSize;
+        this.supplierNanos = supplierNanos;
+        this.accumulatorNanos = accumulatorNanos;
+        this.combinerNanos = combinerNanos;
+        this.finisherNanos = finisherNanos;
+        this.finisherAllocatedBytes = finisherAllocatedBytes;
+        this.lockWaitNanos = lockWaitNanos;
+    }
+
+    /**
+     * Returns the name of the instrumented collector, e.g. the name of the factory method which
+     * has created it.
+     * @return the name of the collector
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Returns the number of the elements folded into the containers.
+     * @return the number of the accumulated elements
+     */
+    public long elementCount() {
+        return elementCount;
+    }
+
+    /**
+     * Returns the number of the containers created by the supplier, which is the number of the
+     * leaf tasks of a parallel reduction.
+     * @return the number of the containers
+     */
+    public long containerCount() {
+        return containerCount;
+    }
+
+    /**
+     * Returns the largest number of elements ever folded into a single container, combined
+     * containers included; for a complete reduction it equals {@link #elementCount()}.
+     * @return the peak container size
+     */
+    public long peakContainerSize() {
+        return peakContainerSize;
+    }
+
+    /**
+     * Returns the total time spent in the supplier.
+     * @return the supplier time in nanoseconds
+     */
+    public long supplierNanos() {
+        return supplierNanos;
+    }
+
+    /**
+     * Returns the total time spent in the accumulator.
+     * @return the accumulator time in nanoseconds
+     */
+    public long accumulatorNanos() {
+        return accumulatorNanos;
+    }
+
+    /**
+     * Returns the total time spent in the combiner.
+     * @return the combiner time in nanoseconds
+     */
+    public long combinerNanos() {
+        return combinerNanos;
+    }
+
+    /**
+     * Returns the time spent in the finisher.
+     * @return the finisher time in nanoseconds
+     */
+    public long finisherNanos() {
+        return finisherNanos;
+    }
+
+    /**
+     * Returns the number of bytes allocated on the heap by the finisher, e.g. by the copying of
+     * the container into an immutable collection, or -1 if the JVM does not measure thread
+     * allocation.
+     * @return the finisher allocation in bytes, or -1 if unknown
+     */
+    public long finisherAllocatedBytes() {
+        return finisherAllocatedBytes;
+    }
+
+    /**
+     * Returns the estimated time the accumulator calls have spent off CPU, mostly waiting for
+     * locks of shared containers.
+     * @return the estimated lock wait in nanoseconds
+     */
+    public long lockWaitNanos() {
+        return lockWaitNanos;
+    }
+
+    @Override
+    public String toString() {
+
+        return name + "{elements=" + elementCount
+                + ", containers=" + containerCount
+                + ", peakContainerSize=" + peakContainerSize
+                + ", supplierNanos=" + supplierNanos
+                + ", accumulatorNanos=" + accumulatorNanos
+                + ", combinerNanos=" + combinerNanos
+                + ", finisherNanos=" + finisherNanos
+                + ", finisherAllocatedBytes=" + finisherAllocatedBytes
+                + ", lockWaitNanos=" + lockWaitNanos + "}";
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.enfernuz.util.stream;
+
+/**
+ *
+ * A receiver of the metrics of instrumented collectors, e.g. an adapter to a metrics library.
+ *
+ * The collectors created by the factory methods of {@link Collectors} report to the sink
+ * registered as a {@link java.util.ServiceLoader} provider of this interface (in
+ * {@code META-INF/services/com.enfernuz.util.stream.CollectorMetricsSink}); the first provider
+ * found is used. With no provider registered the factory methods return their collectors
+ * uninstrumented, so that the metrics cost nothing unless asked for.
+ *
+ * A sink is called by the thread finishing a reduction, so it has to be thread-safe; it should
+ * also be fast and not throw, since it runs as a part of the reduction.
+ *
+ * Created by A. Nerushev
+ */
+@FunctionalInterface
+public interface CollectorMetricsSink {
+
+    /**
+     * Receives the metrics of a finished reduction.
+     * @param metrics the metrics of the reduction
+     */
+    void record(CollectorMetrics metrics);
+
+    /**
+     * Returns the sink which ignores all the metrics.
+     * @return the no-op sink
+     */
+    static CollectorMetricsSink noOp() {
+        return metrics -> { };
+    }
+
+}
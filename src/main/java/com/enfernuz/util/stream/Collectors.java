@@ -1,12 +1,32 @@
 package com.enfernuz.util.stream;
 
 import com.google.common.collect.*;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.*;
 import java.util.stream.Collector;
 
+import com.enfernuz.util.dense.DenseSetMultimap;
+import com.enfernuz.util.dense.DenseTable;
+import com.enfernuz.util.offheap.MappedSortedMap;
+import com.enfernuz.util.offheap.MappedSortedSet;
+import com.enfernuz.util.offheap.OffHeapMap;
+import com.enfernuz.util.offheap.OffHeapSet;
+import com.enfernuz.util.offheap.Serializer;
+import com.enfernuz.util.persistent.PersistentHashMap;
+import com.enfernuz.util.persistent.PersistentHashSet;
+import com.enfernuz.util.sketch.CountMinSketch;
+import com.enfernuz.util.sketch.HyperLogLog;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -20,6 +40,12 @@ public final class Collectors {
     // A good guide about Collectors:
     // http://www.nurkiewicz.com/2014/07/introduction-to-writing-custom.html
     
+    // the sink registered as a service provider, or null if there is none
+    private static final CollectorMetricsSink DEFAULT_SINK = loadDefaultSink();
+    
+    // marks the removals among the updates buffered by the persistent map collectors
+    private static final Object REMOVAL = new Object();
+    
     private Collectors() {
         throw new AssertionError("The class is uninstantiable.");
     }
@@ -40,12 +66,12 @@ public final class Collectors {
 
         requireNonNull(immutableCollectionBuilderFactory);
         
-        return Collector.of(
+        return instrument( "toImmutableCollection", Collector.of(
                 immutableCollectionBuilderFactory, //supplier
                 (builder, t) -> builder.add(t), //accumulator
                 (builder1, builder2) -> { builder1.addAll( builder2.build() ); return builder1; }, //combiner
                 ImmutableCollection.Builder::<T>build //finisher
-        );
+        ) );
     }
     
     /**
@@ -55,13 +81,71 @@ public final class Collectors {
      */
     public static <T> Collector<T, ?, ImmutableList<T>> toImmutableList() {
         
-        return Collector.of(
-                () -> Collections.synchronizedList( new ArrayList<T>() ), 
-                (list, t) -> list.add(t), 
-                (list1, list2) -> { list1.addAll(list2); return list1; }, 
-                ImmutableList::<T>copyOf, 
-                Collector.Characteristics.CONCURRENT
-        );
+        return instrument( "toImmutableList", Collector.of(
+                ElementBuffer<T>::new, 
+                (elements, t) -> elements.add( requireNonNull(t) ), 
+                ElementBuffer::append, 
+                ImmutableList::<T>copyOf
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into an immutable list, presizing its 
+     * accumulation containers for the given number of elements. 
+     * 
+     * Every container created by the collector is presized, so the hint pays off on sequential 
+     * streams of a known size: the elements are then written into a single array, which is copied 
+     * once into the result list. On a parallel stream each leaf task accumulates into a container 
+     * of its own, so the hint should be the expected number of elements per leaf rather than in 
+     * the whole stream; {@link Streams#collectPresized(java.util.stream.Stream, java.util.function.IntFunction)} 
+     * works it out from the size of the stream.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param expectedSize the expected number of elements per accumulation container
+     * @return a collector that reduces a stream of elements into an immutable list
+     * @throws IllegalArgumentException if the passed argument is negative
+     */
+    public static <T> Collector<T, ?, ImmutableList<T>> toImmutableList(int expectedSize) 
+            throws IllegalArgumentException {
+        
+        checkArgument(expectedSize >= 0, "The expected size must not be negative.");
+        
+        return instrument( "toImmutableList", Collector.of(
+                () -> new ElementBuffer<T>(expectedSize), 
+                (elements, t) -> elements.add( requireNonNull(t) ), 
+                ElementBuffer::append, 
+                ImmutableList::<T>copyOf
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into an immutable list of its non-null 
+     * elements, counting the skipped null elements. 
+     * 
+     * The nulls are skipped by the accumulator itself, so the collector takes the place of a 
+     * filtering stage or a null-skipping iterator in front of {@link #toImmutableList()} at no 
+     * extra call per element.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param skipped the counters to be incremented for each skipped null
+     * @return a collector that reduces a stream of elements into an immutable list
+     * @throws NullPointerException if the passed argument is a null reference
+     */
+    public static <T> Collector<T, ?, ImmutableList<T>> toImmutableListSkippingNulls(SkippedNulls skipped) 
+            throws NullPointerException {
+        
+        requireNonNull(skipped);
+        
+        return instrument( "toImmutableListSkippingNulls", Collector.of(
+                ElementBuffer<T>::new, 
+                (elements, t) -> {
+                    if (t == null) {
+                        skipped.skipElement();
+                    } else {
+                        elements.add(t);
+                    }
+                }, 
+                ElementBuffer::append, 
+                ImmutableList::<T>copyOf
+        ) );
     }
     
     /**
@@ -71,14 +155,43 @@ public final class Collectors {
      */
     public static <T> Collector<T, ?, ImmutableSet<T>> toImmutableSet() {
         
-        return Collector.of(
-                () -> Collections.synchronizedSet( new HashSet<T>() ), 
-                (set, t) -> set.add(t), 
-                (set1, set2) -> { set1.addAll(set2); return set1; }, 
+        return instrument( "toImmutableSet", Collector.of(
+                HashSet<T>::new, 
+                (set, t) -> set.add( requireNonNull(t) ), 
+                Collectors::<T, HashSet<T>>mergeIntoLarger, 
                 ImmutableSet::<T>copyOf, 
-                Collector.Characteristics.CONCURRENT, 
                 Collector.Characteristics.UNORDERED
-        );
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into an immutable set, presizing its 
+     * accumulation containers for the given number of elements, so that they are not rehashed 
+     * while growing.
+     * 
+     * Every container created by the collector is presized. A sequential stream is accumulated 
+     * into a single container, whereas on a parallel stream each leaf task accumulates into a 
+     * container of its own, so the hint should then be the expected number of elements per leaf 
+     * rather than in the whole stream; 
+     * {@link Streams#collectPresized(java.util.stream.Stream, java.util.function.IntFunction)} 
+     * works it out from the size of the stream.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param expectedSize the expected number of elements per accumulation container
+     * @return a collector that reduces a stream of elements into an immutable set
+     * @throws IllegalArgumentException if the passed argument is negative
+     */
+    public static <T> Collector<T, ?, ImmutableSet<T>> toImmutableSet(int expectedSize) 
+            throws IllegalArgumentException {
+        
+        checkArgument(expectedSize >= 0, "The expected size must not be negative.");
+        
+        return instrument( "toImmutableSet", Collector.of(
+                () -> Sets.<T>newHashSetWithExpectedSize(expectedSize), 
+                (set, t) -> set.add( requireNonNull(t) ), 
+                Collectors::<T, HashSet<T>>mergeIntoLarger, 
+                ImmutableSet::<T>copyOf, 
+                Collector.Characteristics.UNORDERED
+        ) );
     }
     
     /**
@@ -94,14 +207,31 @@ public final class Collectors {
         
         requireNonNull(comparator);
        
-        return Collector.of(
-                () -> Collections.synchronizedSet( new HashSet<T>() ), 
+        return instrument( "toImmutableSortedSet", Collector.of(
+                HashSet<T>::new, 
                 (set, t) -> set.add(t), 
-                (set1, set2) -> { set1.addAll(set2); return set1; }, 
+                Collectors::<T, HashSet<T>>mergeIntoLarger, 
                 (set) -> ImmutableSortedSet.<T>copyOf(comparator, set), 
-                Collector.Characteristics.CONCURRENT, 
                 Collector.Characteristics.UNORDERED
-        );
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into an immutable sorted set, the 
+     * elements of which are sorted using the provided comparator instance. 
+     * 
+     * Unlike {@link #toImmutableSortedSet(Comparator)}, the collector does no hashing: the 
+     * elements are buffered as they come and sorted once, in parallel, by the finisher, which then 
+     * drops the duplicates in a single pass over the sorted array. This suits streams with few 
+     * duplicates, where the sorting dominates the cost of the collection.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param comparator a comparator to be used for sorting the set
+     * @return a collector that reduces a stream of elements into an immutable sorted set
+     * @throws NullPointerException if the passed argument is a null reference
+     */
+    public static <T> Collector<T, ?, ImmutableSortedSet<T>> toImmutableSortedSetBySorting(
+                Comparator<T> comparator) throws NullPointerException {
+        return instrument( "toImmutableSortedSetBySorting", toImmutableSortedSetBySortingImpl(comparator) );
     }
     
     /**
@@ -119,18 +249,115 @@ public final class Collectors {
     public static <T, K, V> Collector<T, ?, ImmutableMap<K, V>> toImmutableMap(
             Function<? super T, K> keyMapper,
             Function<? super T, V> valueMapper) throws NullPointerException {
+        return instrument( "toImmutableMap", toImmutableMapImpl(keyMapper, valueMapper) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into an immutable map, skipping the 
+     * null elements as well as the elements mapped to a null key or a null value, and counting 
+     * each of them. The null elements are skipped before being passed to the mappers, and the 
+     * value mapper is not applied to an element mapped to a null key.
+     * 
+     * The nulls are skipped by the accumulator itself, so the collector takes the place of the 
+     * filtering stages around {@link #toImmutableMap(Function, Function)} at no extra call per 
+     * element.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <K> the type of the keys of the result map
+     * @param <V> the type of the values of the result map
+     * @param keyMapper a function to be used to map the elements of the stream to the keys of the
+     * result map
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result map
+     * @param skipped the counters to be incremented for each skipped element
+     * @return a collector that reduces a stream of elements into an immutable map
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    public static <T, K, V> Collector<T, ?, ImmutableMap<K, V>> toImmutableMapSkippingNulls(
+            Function<? super T, K> keyMapper,
+            Function<? super T, V> valueMapper, 
+            SkippedNulls skipped) throws NullPointerException {
         
         requireNonNull(keyMapper);
         requireNonNull(valueMapper);
+        requireNonNull(skipped);
         
-        return Collector.of(
-                ConcurrentHashMap<K, V>::new, 
-                (map, t) -> map.put(keyMapper.apply(t), valueMapper.apply(t)), 
-                (map1, map2) -> { map1.putAll(map2); return map1; }, 
-                ImmutableMap::<K, V>copyOf, 
-                Collector.Characteristics.CONCURRENT,
+        return instrument( "toImmutableMapSkippingNulls", Collector.of(
+                EntryBuffer<K, V>::new, 
+                (entries, t) -> putSkippingNulls(entries, t, keyMapper, valueMapper, skipped), 
+                EntryBuffer::append, 
+                (entries) -> buildImmutableMap( entries, ImmutableMap::<K, V>builder ), 
                 Collector.Characteristics.UNORDERED
-        );
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into an immutable map, running the 
+     * mappers on the given executor (see {@link #onExecutor(Collector, Executor, int, int)}), 
+     * which suits mappers that block.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <K> the type of the keys of the result map
+     * @param <V> the type of the values of the result map
+     * @param keyMapper a function to be used to map the elements of the stream to the keys of the
+     * result map
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result map
+     * @param executor an executor to run the mappers on, e.g. one of virtual threads
+     * @param maxInFlightBatches the maximum number of batches submitted to the executor by an 
+     * accumulation container and not yet combined
+     * @param batchSize the number of elements per batch
+     * @return a collector that reduces a stream of elements into an immutable map
+     * @throws NullPointerException if either of the passed references is a null reference
+     * @throws IllegalArgumentException if either the maximum number of batches in flight or the 
+     * batch size is not positive
+     */
+    public static <T, K, V> Collector<T, ?, ImmutableMap<K, V>> toImmutableMap(
+            Function<? super T, K> keyMapper,
+            Function<? super T, V> valueMapper, 
+            Executor executor, 
+            int maxInFlightBatches, 
+            int batchSize) throws NullPointerException, IllegalArgumentException {
+        
+        return instrument( "toImmutableMap", onExecutorImpl( 
+                toImmutableMapImpl(keyMapper, valueMapper), executor, maxInFlightBatches, batchSize 
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into an immutable map, presizing its 
+     * accumulation containers for the given number of elements, so that the entries of each 
+     * container are buffered in a single array.
+     * 
+     * Every container created by the collector is presized, so on a parallel stream the hint 
+     * should be the expected number of elements per leaf task rather than in the whole stream, as 
+     * worked out by {@link Streams#collectPresized(java.util.stream.Stream, java.util.function.IntFunction)}.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <K> the type of the keys of the result map
+     * @param <V> the type of the values of the result map
+     * @param keyMapper a function to be used to map the elements of the stream to the keys of the
+     * result map
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result map
+     * @param expectedSize the expected number of elements per accumulation container
+     * @return a collector that reduces a stream of elements into an immutable map
+     * @throws NullPointerException if either of the passed mappers is a null reference
+     * @throws IllegalArgumentException if the expected size is negative
+     */
+    public static <T, K, V> Collector<T, ?, ImmutableMap<K, V>> toImmutableMap(
+            Function<? super T, K> keyMapper,
+            Function<? super T, V> valueMapper, 
+            int expectedSize) throws NullPointerException, IllegalArgumentException {
+        
+        requireNonNull(keyMapper);
+        requireNonNull(valueMapper);
+        checkArgument(expectedSize >= 0, "The expected size must not be negative.");
+        
+        return instrument( "toImmutableMap", Collector.of(
+                () -> new EntryBuffer<K, V>(expectedSize), 
+                (entries, t) -> entries.put(keyMapper.apply(t), valueMapper.apply(t)), 
+                EntryBuffer::append, 
+                (entries) -> buildImmutableMap( entries, ImmutableMap::<K, V>builder ), 
+                Collector.Characteristics.UNORDERED
+        ) );
     }
     
     /**
@@ -153,230 +380,1978 @@ public final class Collectors {
         requireNonNull(keyMapper);
         requireNonNull(valueMapper);
         
-        return Collector.of(
-                ConcurrentHashMap<K, V>::new, 
-                (map, t) -> map.put(keyMapper.apply(t), valueMapper.apply(t)), 
-                (map1, map2) -> { map1.putAll(map2); return map1; }, 
-                ImmutableBiMap::<K, V>copyOf, 
-                Collector.Characteristics.CONCURRENT, 
+        return instrument( "toImmutableBiMap", Collector.of(
+                EntryBuffer<K, V>::new, 
+                (entries, t) -> entries.put(keyMapper.apply(t), valueMapper.apply(t)), 
+                EntryBuffer::append, 
+                (entries) -> buildImmutableMap( entries, ImmutableBiMap::<K, V>builder ), 
                 Collector.Characteristics.UNORDERED
-        );
+        ) );
     }
     
     /**
-     * Creates a collector that reduces a stream of elements into a 
-     * {@link com.google.common.collect.ImmutableSortedMap} instance.
+     * Creates a collector that reduces a stream of elements into an immutable map, resolving the 
+     * values mapped to the same key with the given merge function. The values are merged in place, 
+     * as soon as a duplicate key is met.
      * @param <T> the type of elements in the stream to be reduced by the collector
      * @param <K> the type of the keys of the result map
-     * @param <V> the type of the values of the result bimap
+     * @param <V> the type of the values of the result map
      * @param keyMapper a function to be used to map the elements of the stream to the keys of the
      * result map
      * @param valueMapper a function to be used to map the elements of the stream to the values of 
      * the result map
-     * @param comparator a comparator to be used for ordering the keys of the result map
-     * @return a collector that reduces a stream of elements into an immutable sorted map
+     * @param mergeFunction a function to be used to merge the value mapped to a key earlier in the 
+     * encounter order with the value mapped to the same key later
+     * @return a collector that reduces a stream of elements into an immutable map
      * @throws NullPointerException if either of the passed arguments is a null reference
      */
-    public static <T, K, V> Collector<T, ?, ImmutableSortedMap<K, V>> toImmutableSortedMap(
+    public static <T, K, V> Collector<T, ?, ImmutableMap<K, V>> toImmutableMap(
             Function<? super T, K> keyMapper,
             Function<? super T, V> valueMapper,
-            Comparator<K> comparator) throws NullPointerException {
+            BinaryOperator<V> mergeFunction) throws NullPointerException {
         
         requireNonNull(keyMapper);
         requireNonNull(valueMapper);
-        requireNonNull(comparator);
+        requireNonNull(mergeFunction);
         
-        return Collector.of(
-                ConcurrentHashMap<K, V>::new, 
-                (map, t) -> map.put(keyMapper.apply(t), valueMapper.apply(t)), 
-                (map1, map2) -> { map1.putAll( map2 ); return map1; }, 
-                (map) -> ImmutableSortedMap.copyOf(map, comparator), 
-                Collector.Characteristics.CONCURRENT, 
-                Collector.Characteristics.UNORDERED
-        );
+        return instrument( "toImmutableMap", Collector.of(
+                HashMap<K, V>::new, 
+                (map, t) -> map.merge(keyMapper.apply(t), valueMapper.apply(t), mergeFunction), 
+                (map1, map2) -> mergeMaps(map1, map2, mergeFunction), 
+                ImmutableMap::<K, V>copyOf
+        ) );
     }
     
     /**
-     * Creates a collector that reduces a stream of elements into an 
-     * {@link com.google.common.collect.Multimap} instance, the type of which depends on 
-     * the given multimap factory.
+     * Creates a collector that reduces a stream of elements into an immutable map, resolving the 
+     * values mapped to the same key with the given merge function and presizing its accumulation 
+     * containers for the given number of elements, so that they are not rehashed while growing.
+     * 
+     * Every container created by the collector is presized, so on a parallel stream the hint 
+     * should be the expected number of elements per leaf task rather than in the whole stream, as 
+     * worked out by {@link Streams#collectPresized(java.util.stream.Stream, java.util.function.IntFunction)}.
      * @param <T> the type of elements in the stream to be reduced by the collector
-     * @param <K> the type of the keys of the result multimap
-     * @param <V> the type of the elements of the result multimap's collection-values
+     * @param <K> the type of the keys of the result map
+     * @param <V> the type of the values of the result map
      * @param keyMapper a function to be used to map the elements of the stream to the keys of the
-     * result multimap
+     * result map
      * @param valueMapper a function to be used to map the elements of the stream to the values of 
-     * the result multimap
-     * @param multimapFactory a multimap factory to be used to construct the result multimap
-     * @return a collector that reduces a stream of elements into a 
-     * {@link com.google.common.collect.Multimap} instance
-     * @throws NullPointerException if either of the passed arguments is a null reference
+     * the result map
+     * @param mergeFunction a function to be used to merge the value mapped to a key earlier in the 
+     * encounter order with the value mapped to the same key later
+     * @param expectedSize the expected number of elements per accumulation container
+     * @return a collector that reduces a stream of elements into an immutable map
+     * @throws NullPointerException if either of the passed functions is a null reference
+     * @throws IllegalArgumentException if the expected size is negative
      */
-    public static <T, K, V> Collector<T, ?, Multimap<K, V>> toMultimap(
-            Function<? super T, K> keyMapper, 
-            Function<? super T, V> valueMapper, 
-            Supplier<Multimap<K,V>> multimapFactory) throws NullPointerException {
+    public static <T, K, V> Collector<T, ?, ImmutableMap<K, V>> toImmutableMap(
+            Function<? super T, K> keyMapper,
+            Function<? super T, V> valueMapper,
+            BinaryOperator<V> mergeFunction, 
+            int expectedSize) throws NullPointerException, IllegalArgumentException {
         
         requireNonNull(keyMapper);
         requireNonNull(valueMapper);
-        requireNonNull(multimapFactory);
+        requireNonNull(mergeFunction);
+        checkArgument(expectedSize >= 0, "The expected size must not be negative.");
         
-        return Collector.of(
-                () -> Multimaps.synchronizedMultimap( multimapFactory.get() ), 
-                (multimap, t) -> multimap.put( keyMapper.apply(t), valueMapper.apply(t) ), 
-                (multimap1, multimap2) -> { multimap1.putAll(multimap2); return multimap1; },
-                Collector.Characteristics.CONCURRENT, 
-                Collector.Characteristics.IDENTITY_FINISH
-        );
+        return instrument( "toImmutableMap", Collector.of(
+                () -> Maps.<K, V>newHashMapWithExpectedSize(expectedSize), 
+                (map, t) -> map.merge(keyMapper.apply(t), valueMapper.apply(t), mergeFunction), 
+                (map1, map2) -> mergeMaps(map1, map2, mergeFunction), 
+                ImmutableMap::<K, V>copyOf
+        ) );
     }
     
     /**
-     * Creates a collector that reduces a stream of elements into an 
-     * {@link com.google.common.collect.ImmutableListMultimap} instance.
+     * Creates a collector that reduces a stream of elements into an immutable map, failing on the 
+     * first duplicate key met during the accumulation rather than after the whole stream has been 
+     * buffered.
      * @param <T> the type of elements in the stream to be reduced by the collector
-     * @param <K> the type of the keys of the result multimap
-     * @param <V> the type of the elements of the result multimap's collection-values
+     * @param <K> the type of the keys of the result map
+     * @param <V> the type of the values of the result map
      * @param keyMapper a function to be used to map the elements of the stream to the keys of the
-     * result multimap
+     * result map
      * @param valueMapper a function to be used to map the elements of the stream to the values of 
-     * the result multimap
-     * @return a collector that reduces a stream of elements into a 
-     * {@link com.google.common.collect.ImmutableListMultimap} instance
+     * the result map
+     * @return a collector that reduces a stream of elements into an immutable map; the collector 
+     * throws {@code IllegalArgumentException} upon a duplicate key
      * @throws NullPointerException if either of the passed arguments is a null reference
      */
-    public static <T, K, V> Collector<T, ?, ImmutableListMultimap<K, V>> toImmutableListMultimap(
+    public static <T, K, V> Collector<T, ?, ImmutableMap<K, V>> toImmutableMapFailFast(
             Function<? super T, K> keyMapper,
             Function<? super T, V> valueMapper) throws NullPointerException {
         
         requireNonNull(keyMapper);
         requireNonNull(valueMapper);
         
-        return Collector.of(
-                () -> Multimaps.synchronizedListMultimap(
-                        Multimaps.newListMultimap(new HashMap<K, Collection<V>>(), ArrayList<V>::new)
-                ), 
-                (listMultimap, t) -> listMultimap.put(keyMapper.apply(t), valueMapper.apply(t)), 
-                (listMultimap1, listMultimap2) -> { listMultimap1.putAll( listMultimap2 ); return listMultimap1; }, 
-                ImmutableListMultimap::<K, V>copyOf, 
-                Collector.Characteristics.CONCURRENT
-        );
+        return instrument( "toImmutableMapFailFast", Collector.of(
+                HashMap<K, V>::new, 
+                (map, t) -> putUniqueKey(map, keyMapper.apply(t), valueMapper.apply(t)), 
+                (map1, map2) -> mergeUniqueKeys(map1, map2), 
+                ImmutableMap::<K, V>copyOf, 
+                Collector.Characteristics.UNORDERED
+        ) );
     }
     
     /**
-     * Creates a collector that reduces a stream of elements into an 
-     * {@link com.google.common.collect.ImmutableSetMultimap} instance.
+     * Creates a collector that reduces a stream of elements into an immutable map, failing on the 
+     * first duplicate key met during the accumulation and presizing its accumulation containers 
+     * for the given number of elements, so that they are not rehashed while growing.
+     * 
+     * Every container created by the collector is presized, so on a parallel stream the hint 
+     * should be the expected number of elements per leaf task rather than in the whole stream, as 
+     * worked out by {@link Streams#collectPresized(java.util.stream.Stream, java.util.function.IntFunction)}.
      * @param <T> the type of elements in the stream to be reduced by the collector
-     * @param <K> the type of the keys of the result multimap
-     * @param <V> the type of the elements of the result multimap's collection-values
+     * @param <K> the type of the keys of the result map
+     * @param <V> the type of the values of the result map
      * @param keyMapper a function to be used to map the elements of the stream to the keys of the
-     * result multimap
+     * result map
      * @param valueMapper a function to be used to map the elements of the stream to the values of 
-     * the result multimap
-     * @return a collector that reduces a stream of elements into a 
-     * {@link com.google.common.collect.ImmutableSetMultimap} instance
-     * @throws NullPointerException if either of the passed arguments is a null reference
+     * the result map
+     * @param expectedSize the expected number of elements per accumulation container
+     * @return a collector that reduces a stream of elements into an immutable map; the collector 
+     * throws {@code IllegalArgumentException} upon a duplicate key
+     * @throws NullPointerException if either of the passed mappers is a null reference
+     * @throws IllegalArgumentException if the expected size is negative
      */
-    public static <T, K, V> Collector<T, ?, ImmutableSetMultimap<K, V>> toImmutableSetMultimap(
+    public static <T, K, V> Collector<T, ?, ImmutableMap<K, V>> toImmutableMapFailFast(
             Function<? super T, K> keyMapper,
-            Function<? super T, V> valueMapper) throws NullPointerException {
+            Function<? super T, V> valueMapper, 
+            int expectedSize) throws NullPointerException, IllegalArgumentException {
         
         requireNonNull(keyMapper);
         requireNonNull(valueMapper);
+        checkArgument(expectedSize >= 0, "The expected size must not be negative.");
         
-        return Collector.of(
-                () -> Multimaps.synchronizedSetMultimap(
-                        Multimaps.newSetMultimap(new HashMap<K, Collection<V>>(), HashSet<V>::new)
-                ), 
-                (multimap, t) -> multimap.put(keyMapper.apply(t), valueMapper.apply(t)), 
-                (multimap1, multimap2) -> { multimap1.putAll( multimap2 ); return multimap1; }, 
-                ImmutableSetMultimap::<K, V>copyOf, 
-                Collector.Characteristics.CONCURRENT, 
+        return instrument( "toImmutableMapFailFast", Collector.of(
+                () -> Maps.<K, V>newHashMapWithExpectedSize(expectedSize), 
+                (map, t) -> putUniqueKey(map, keyMapper.apply(t), valueMapper.apply(t)), 
+                (map1, map2) -> mergeUniqueKeys(map1, map2), 
+                ImmutableMap::<K, V>copyOf, 
                 Collector.Characteristics.UNORDERED
-        );
+        ) );
     }
     
     /**
-     * Creates a collector that reduces a stream of elements into an 
-     * {@link com.google.common.collect.Table} instance, the type of which depends on the given 
-     * table factory.
+     * Creates a collector that reduces a stream of elements into a 
+     * {@link com.google.common.collect.ImmutableBiMap} instance, resolving the values mapped to 
+     * the same key with the given merge function. The values are merged in place, as soon as a 
+     * duplicate key is met, and the collector fails as soon as the same value is bound to two 
+     * different keys.
      * @param <T> the type of elements in the stream to be reduced by the collector
-     * @param <R> the type of the table's rows
-     * @param <C> the type of the table's columns
-     * @param <V> the type of the table's values
-     * @param rowMapper a function to be used to map the elements of the stream to the row keys of 
-     * the result table
-     * @param columnMapper a function to be used to map the elements of the stream to the column 
-     * keys of the result table
+     * @param <K> the type of the keys of the result bimap
+     * @param <V> the type of the values of the result bimap
+     * @param keyMapper a function to be used to map the elements of the stream to the keys of the
+     * result bimap
      * @param valueMapper a function to be used to map the elements of the stream to the values of 
-     * the result table
-     * @param tableFactory a table factory to be used to construct the result table
-     * @return a collector that reduces a stream of elements into a 
-     * {@link com.google.common.collect.Table} instance
+     * the result bimap
+     * @param mergeFunction a function to be used to merge the value mapped to a key earlier in the 
+     * encounter order with the value mapped to the same key later
+     * @return a collector that reduces a stream of elements into an immutable BiMap; the collector 
+     * throws {@code IllegalArgumentException} upon a duplicate value
      * @throws NullPointerException if either of the passed arguments is a null reference
      */
-    public static <T, R, C, V> Collector<T, ?, Table<R, C, V>> toTable(
-            Function<? super T, R> rowMapper, 
-            Function<? super T, C> columnMapper,
+    public static <T, K, V> Collector<T, ?, ImmutableBiMap<K, V>> toImmutableBiMap(
+            Function<? super T, K> keyMapper,
             Function<? super T, V> valueMapper,
-            Supplier<Table<R, C, V>> tableFactory) throws NullPointerException {
+            BinaryOperator<V> mergeFunction) throws NullPointerException {
         
-        requireNonNull(rowMapper);
-        requireNonNull(columnMapper);
+        requireNonNull(keyMapper);
         requireNonNull(valueMapper);
+        requireNonNull(mergeFunction);
         
-        return Collector.of(
-                tableFactory, 
-                (table, t) -> {
-                    final R row = rowMapper.apply(t);
-                    final C column = columnMapper.apply(t);
-                    final V value = valueMapper.apply(t);
-                    table.put(row, column, value);
+        return instrument( "toImmutableBiMap", Collector.of(
+                HashBiMap::<K, V>create, 
+                (biMap, t) -> mergeIntoBiMap(biMap, keyMapper.apply(t), valueMapper.apply(t), mergeFunction), 
+                (biMap1, biMap2) -> { 
+                    biMap2.forEach( (key, value) -> mergeIntoBiMap(biMap1, key, value, mergeFunction) ); 
+                    return biMap1; 
                 }, 
-                (table1, table2) -> { table1.putAll(table2); return table1; }, 
-                Collector.Characteristics.IDENTITY_FINISH
-        );
+                ImmutableBiMap::<K, V>copyOf
+        ) );
     }
     
     /**
-     * Creates a collector that reduces a stream of elements into an 
-     * {@link com.google.common.collect.ImmutableTable} view over the table constructed with the 
-     * given table factory method.
+     * Creates a collector that reduces a stream of elements into a 
+     * {@link com.google.common.collect.ImmutableBiMap} instance, failing on the first duplicate key 
+     * or value met during the accumulation rather than after the whole stream has been buffered.
      * @param <T> the type of elements in the stream to be reduced by the collector
-     * @param <R> the type of the table's rows
-     * @param <C> the type of the table's columns
-     * @param <V> the type of the table's values
-     * @param rowMapper a function to be used to map the elements of the stream to the row keys of 
-     * the result table
-     * @param columnMapper a function to be used to map the elements of the stream to the column 
-     * keys of the result table
+     * @param <K> the type of the keys of the result bimap
+     * @param <V> the type of the values of the result bimap
+     * @param keyMapper a function to be used to map the elements of the stream to the keys of the
+     * result bimap
      * @param valueMapper a function to be used to map the elements of the stream to the values of 
-     * the result table
-     * @param tableFactory a table factory to be used to construct the result table
-     * @return a collector that reduces a stream of elements into a 
-     * {@link com.google.common.collect.ImmutableTable} instance
+     * the result bimap
+     * @return a collector that reduces a stream of elements into an immutable BiMap; the collector 
+     * throws {@code IllegalArgumentException} upon a duplicate key or value
      * @throws NullPointerException if either of the passed arguments is a null reference
      */
-    public static <T, R, C, V> Collector<T, ?, ImmutableTable<R, C, V>> toImmutableTable(
-            Function<? super T, R> rowMapper, 
-            Function<? super T, C> columnMapper,
-            Function<? super T, V> valueMapper,
-            Supplier<Table<R, C, V>> tableFactory) throws NullPointerException {
+    public static <T, K, V> Collector<T, ?, ImmutableBiMap<K, V>> toImmutableBiMapFailFast(
+            Function<? super T, K> keyMapper,
+            Function<? super T, V> valueMapper) throws NullPointerException {
         
-        requireNonNull(rowMapper);
-        requireNonNull(columnMapper);
+        requireNonNull(keyMapper);
+        requireNonNull(valueMapper);
+        
+        return instrument( "toImmutableBiMapFailFast", Collector.of(
+                HashBiMap::<K, V>create, 
+                (biMap, t) -> putUniqueKey(biMap, keyMapper.apply(t), valueMapper.apply(t)), 
+                (biMap1, biMap2) -> mergeUniqueKeys(biMap1, biMap2), 
+                ImmutableBiMap::<K, V>copyOf, 
+                Collector.Characteristics.UNORDERED
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into a 
+     * {@link com.google.common.collect.ImmutableSortedMap} instance. The keys are never hashed: 
+     * the collector sorts them just as {@link #toImmutableSortedMapBySorting(Function, Function, Comparator)} 
+     * does, and a key mapped more than once is mapped to the value of the last element in the 
+     * encounter order.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <K> the type of the keys of the result map
+     * @param <V> the type of the values of the result bimap
+     * @param keyMapper a function to be used to map the elements of the stream to the keys of the
+     * result map
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result map
+     * @param comparator a comparator to be used for ordering the keys of the result map
+     * @return a collector that reduces a stream of elements into an immutable sorted map
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    public static <T, K, V> Collector<T, ?, ImmutableSortedMap<K, V>> toImmutableSortedMap(
+            Function<? super T, K> keyMapper,
+            Function<? super T, V> valueMapper,
+            Comparator<K> comparator) throws NullPointerException {
+        return instrument( "toImmutableSortedMap", toImmutableSortedMapBySortingImpl(keyMapper, valueMapper, comparator) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into a 
+     * {@link com.google.common.collect.ImmutableSortedMap} instance. 
+     * 
+     * The collector does no hashing: the entries are buffered as they come and sorted by their 
+     * keys once, in parallel, by the finisher, which then resolves the duplicate keys in a single 
+     * pass over the sorted entries. A key mapped more than once is mapped to the value of the last element in the 
+     * encounter order.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <K> the type of the keys of the result map
+     * @param <V> the type of the values of the result map
+     * @param keyMapper a function to be used to map the elements of the stream to the keys of the
+     * result map
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result map
+     * @param comparator a comparator to be used for ordering the keys of the result map
+     * @return a collector that reduces a stream of elements into an immutable sorted map
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    public static <T, K, V> Collector<T, ?, ImmutableSortedMap<K, V>> toImmutableSortedMapBySorting(
+            Function<? super T, K> keyMapper,
+            Function<? super T, V> valueMapper,
+            Comparator<K> comparator) throws NullPointerException {
+        return instrument( "toImmutableSortedMapBySorting", toImmutableSortedMapBySortingImpl(keyMapper, valueMapper, comparator) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into an 
+     * {@link com.enfernuz.util.offheap.OffHeapMap}, a read-only map of entries serialized into 
+     * direct memory. Whenever the stream has more than one element of the same key, the value of 
+     * the last one in the encounter order wins.
+     * 
+     * Each worker serializes its entries into direct pages of its own, the pages are linked 
+     * together by the combiner and the finisher builds the off-heap hash table over them, so 
+     * neither the entries nor any staging copy of them is ever kept on the heap.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <K> the type of the keys of the result map
+     * @param <V> the type of the values of the result map
+     * @param keyMapper a function to be used to map the elements of the stream to the keys of the
+     * result map
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result map
+     * @param keySerializer a canonical serializer of the keys
+     * @param valueSerializer a serializer of the values
+     * @return a collector that reduces a stream of elements into an off-heap map
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    public static <T, K, V> Collector<T, ?, OffHeapMap<K, V>> toOffHeapMap(
+            Function<? super T, K> keyMapper, 
+            Function<? super T, V> valueMapper, 
+            Serializer<K> keySerializer, 
+            Serializer<V> valueSerializer) throws NullPointerException {
+        return instrument( "toOffHeapMap", toOffHeapMapImpl(keyMapper, valueMapper, keySerializer, valueSerializer) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into an 
+     * {@link com.enfernuz.util.offheap.OffHeapSet}, a read-only set of elements serialized into 
+     * direct memory.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param serializer a canonical serializer of the elements
+     * @return a collector that reduces a stream of elements into an off-heap set
+     * @throws NullPointerException if the passed argument is a null reference
+     */
+    public static <T> Collector<T, ?, OffHeapSet<T>> toOffHeapSet(Serializer<T> serializer) 
+            throws NullPointerException {
+        
+        requireNonNull(serializer);
+        
+        return instrument( "toOffHeapSet", Collector.of(
+                () -> OffHeapSet.builder(serializer), 
+                OffHeapSet.Builder::add, 
+                OffHeapSet.Builder::combine, 
+                OffHeapSet.Builder::build, 
+                Collector.Characteristics.UNORDERED
+        ) );
+    }
+    
+    /**
+     * Creates a collector that writes the entries of a stream into a hashed snapshot file and 
+     * returns an {@link com.enfernuz.util.offheap.OffHeapMap} over the memory-mapped file. 
+     * Whenever the stream has more than one element of the same key, the value of the last one in 
+     * the encounter order wins.
+     * 
+     * The snapshot holds the hash table of the map as it is, so a restarted process gets the map 
+     * back by {@link com.enfernuz.util.offheap.OffHeapMap#open(Path, Serializer, Serializer)}, 
+     * which merely maps the file, instead of collecting the stream again.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <K> the type of the keys of the result map
+     * @param <V> the type of the values of the result map
+     * @param keyMapper a function to be used to map the elements of the stream to the keys of the
+     * result map
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result map
+     * @param keySerializer a canonical serializer of the keys
+     * @param valueSerializer a serializer of the values
+     * @param file a snapshot file to be created or overwritten
+     * @return a collector that reduces a stream of elements into a memory-mapped off-heap map
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    public static <T, K, V> Collector<T, ?, OffHeapMap<K, V>> toMappedMap(
+            Function<? super T, K> keyMapper, 
+            Function<? super T, V> valueMapper, 
+            Serializer<K> keySerializer, 
+            Serializer<V> valueSerializer, 
+            Path file) throws NullPointerException {
+        
+        requireNonNull(file);
+        
+        return instrument( "toMappedMap", java.util.stream.Collectors.collectingAndThen(
+                toOffHeapMapImpl(keyMapper, valueMapper, keySerializer, valueSerializer), 
+                (map) -> {
+                    try {
+                        map.writeTo(file);
+                        return OffHeapMap.open(file, keySerializer, valueSerializer);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+        ) );
+    }
+    
+    /**
+     * Creates a collector that sorts the entries of a stream by their keys, writes them into a 
+     * sorted snapshot file and returns a {@link com.enfernuz.util.offheap.MappedSortedMap} over the 
+     * memory-mapped file. Whenever the stream has more than one element of the same key, the 
+     * value of the last one in the encounter order wins.
+     * 
+     * The entries are sorted the way {@link #toImmutableSortedMapBySorting} sorts them. The 
+     * snapshot holds the sorted entries plus a binary-search index, so a restarted process gets 
+     * the map back by 
+     * {@link com.enfernuz.util.offheap.MappedSortedMap#open(Path, Serializer, Serializer, Comparator)}, 
+     * which merely maps the file, instead of collecting the stream again.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <K> the type of the keys of the result map
+     * @param <V> the type of the values of the result map
+     * @param keyMapper a function to be used to map the elements of the stream to the keys of the
+     * result map
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result map
+     * @param comparator a comparator to be used to sort the keys of the result map
+     * @param keySerializer a serializer of the keys
+     * @param valueSerializer a serializer of the values
+     * @param file a snapshot file to be created or overwritten
+     * @return a collector that reduces a stream of elements into a memory-mapped sorted map
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    public static <T, K, V> Collector<T, ?, MappedSortedMap<K, V>> toMappedSortedMap(
+            Function<? super T, K> keyMapper, 
+            Function<? super T, V> valueMapper, 
+            Comparator<K> comparator, 
+            Serializer<K> keySerializer, 
+            Serializer<V> valueSerializer, 
+            Path file) throws NullPointerException {
+        
+        requireNonNull(keySerializer);
+        requireNonNull(valueSerializer);
+        requireNonNull(file);
+        
+        return instrument( "toMappedSortedMap", java.util.stream.Collectors.collectingAndThen(
+                toImmutableSortedMapBySortingImpl(keyMapper, valueMapper, comparator), 
+                (map) -> {
+                    try {
+                        MappedSortedMap.write(map, keySerializer, valueSerializer, file);
+                        return MappedSortedMap.open(file, keySerializer, valueSerializer, comparator);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+        ) );
+    }
+    
+    /**
+     * Creates a collector that sorts the elements of a stream, writes the distinct ones into a 
+     * sorted snapshot file and returns a {@link com.enfernuz.util.offheap.MappedSortedSet} over the 
+     * memory-mapped file, to be reopened by 
+     * {@link com.enfernuz.util.offheap.MappedSortedSet#open(Path, Serializer, Comparator)}.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param comparator a comparator to be used to sort the elements of the result set
+     * @param serializer a serializer of the elements
+     * @param file a snapshot file to be created or overwritten
+     * @return a collector that reduces a stream of elements into a memory-mapped sorted set
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    public static <T> Collector<T, ?, MappedSortedSet<T>> toMappedSortedSet(
+            Comparator<T> comparator, 
+            Serializer<T> serializer, 
+            Path file) throws NullPointerException {
+        
+        requireNonNull(serializer);
+        requireNonNull(file);
+        
+        return instrument( "toMappedSortedSet", java.util.stream.Collectors.collectingAndThen(
+                Collectors.<T>toImmutableSortedSetBySortingImpl(comparator), 
+                (set) -> {
+                    try {
+                        MappedSortedSet.write(set, serializer, file);
+                        return MappedSortedSet.open(file, serializer, comparator);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into a 
+     * {@link com.enfernuz.util.persistent.PersistentHashMap}. Whenever the stream has more than one 
+     * element of the same key, the value of the last one in the encounter order wins.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <K> the type of the keys of the result map
+     * @param <V> the type of the values of the result map
+     * @param keyMapper a function to be used to map the elements of the stream to the keys of the
+     * result map
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result map
+     * @return a collector that reduces a stream of elements into a persistent map
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    public static <T, K, V> Collector<T, ?, PersistentHashMap<K, V>> toPersistentMap(
+            Function<? super T, K> keyMapper,
+            Function<? super T, V> valueMapper) throws NullPointerException {
+        
+        return toPersistentMap( PersistentHashMap.<K, V>of(), keyMapper, valueMapper, (t) -> false );
+    }
+    
+    /**
+     * Creates a collector that applies a stream of updates to the given persistent map and 
+     * reduces it into the updated copy of the map. Each element of the stream either binds its key 
+     * to its value or, if it matches the given removal predicate, removes its key; the updates are 
+     * applied in the encounter order, so the last update of a key wins.
+     * 
+     * The updated copy shares all the nodes of the given map but the ones on the paths to the 
+     * updated keys, so the collection takes time proportional to the number of the updates rather 
+     * than to the size of the map, and the given map is left intact for its readers. That makes 
+     * the collector a fit for refreshing a large snapshot from a small delta, e.g. 
+     * {@code snapshot = changes.stream().collect(toPersistentMap(snapshot, ...))}.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <K> the type of the keys of the result map
+     * @param <V> the type of the values of the result map
+     * @param base a map to be updated
+     * @param keyMapper a function to be used to map the elements of the stream to the keys to be 
+     * updated
+     * @param valueMapper a function to be used to map the non-removal elements of the stream to 
+     * the values of their keys
+     * @param isRemoval a predicate telling the elements removing their keys
+     * @return a collector that reduces a stream of updates into an updated persistent map
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    public static <T, K, V> Collector<T, ?, PersistentHashMap<K, V>> toPersistentMap(
+            PersistentHashMap<K, V> base, 
+            Function<? super T, K> keyMapper,
+            Function<? super T, V> valueMapper, 
+            Predicate<? super T> isRemoval) throws NullPointerException {
+        
+        requireNonNull(base);
+        requireNonNull(keyMapper);
+        requireNonNull(valueMapper);
+        requireNonNull(isRemoval);
+        
+        return instrument( "toPersistentMap", Collector.of(
+                EntryBuffer<K, Object>::new, 
+                (updates, t) -> updates.put( keyMapper.apply(t), isRemoval.test(t) ? REMOVAL : valueMapper.apply(t) ), 
+                EntryBuffer::append, 
+                (updates) -> {
+                    final PersistentHashMap.Builder<K, V> builder = base.toBuilder();
+                    updates.forEach( (key, value) -> applyUpdate(builder, key, value) );
+                    return builder.build();
+                }
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into a 
+     * {@link com.enfernuz.util.persistent.PersistentHashSet}.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @return a collector that reduces a stream of elements into a persistent set
+     */
+    public static <T> Collector<T, ?, PersistentHashSet<T>> toPersistentSet() {
+        
+        return instrument( "toPersistentSet", Collector.of(
+                ElementBuffer<T>::new, 
+                ElementBuffer::add, 
+                ElementBuffer::append, 
+                (elements) -> PersistentHashSet.<T>builder().addAll(elements).build(), 
+                Collector.Characteristics.UNORDERED
+        ) );
+    }
+    
+    /**
+     * Creates a collector that applies a stream of updates to the given persistent set and 
+     * reduces it into the updated copy of the set. Each element of the stream either adds the 
+     * element it is mapped to or, if it matches the given removal predicate, removes it; the 
+     * updates are applied in the encounter order, in time proportional to their number rather 
+     * than to the size of the set (see 
+     * {@link #toPersistentMap(PersistentHashMap, Function, Function, Predicate)}).
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <E> the type of the elements of the result set
+     * @param base a set to be updated
+     * @param elementMapper a function to be used to map the elements of the stream to the 
+     * elements to be added or removed
+     * @param isRemoval a predicate telling the elements to be removed
+     * @return a collector that reduces a stream of updates into an updated persistent set
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    public static <T, E> Collector<T, ?, PersistentHashSet<E>> toPersistentSet(
+            PersistentHashSet<E> base, 
+            Function<? super T, E> elementMapper, 
+            Predicate<? super T> isRemoval) throws NullPointerException {
+        
+        requireNonNull(base);
+        requireNonNull(elementMapper);
+        requireNonNull(isRemoval);
+        
+        return instrument( "toPersistentSet", Collector.of(
+                EntryBuffer<E, Boolean>::new, 
+                (updates, t) -> updates.put( elementMapper.apply(t), isRemoval.test(t) ), 
+                EntryBuffer::append, 
+                (updates) -> {
+                    final PersistentHashSet.Builder<E> builder = base.toBuilder();
+                    updates.forEach( (element, removal) -> {
+                        if (removal) {
+                            builder.remove(element);
+                        } else {
+                            builder.add(element);
+                        }
+                    } );
+                    return builder.build();
+                }
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into an 
+     * {@link com.google.common.collect.Multimap} instance, the type of which depends on 
+     * the given multimap factory.
+     * 
+     * The pairs are accumulated straight into the multimaps created by the factory, a multimap per 
+     * worker, so the keys and the values may be null references whenever that multimap permits them.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <K> the type of the keys of the result multimap
+     * @param <V> the type of the elements of the result multimap's collection-values
+     * @param keyMapper a function to be used to map the elements of the stream to the keys of the
+     * result multimap
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result multimap
+     * @param multimapFactory a multimap factory to be used to construct the result multimap
+     * @return a collector that reduces a stream of elements into a 
+     * {@link com.google.common.collect.Multimap} instance
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    public static <T, K, V> Collector<T, ?, Multimap<K, V>> toMultimap(
+            Function<? super T, K> keyMapper, 
+            Function<? super T, V> valueMapper, 
+            Supplier<Multimap<K,V>> multimapFactory) throws NullPointerException {
+        return instrument( "toMultimap", toMultimapImpl(keyMapper, valueMapper, multimapFactory) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into a 
+     * {@link com.google.common.collect.Multimap} instance, the type of which depends on the given 
+     * multimap factory, running the mappers on the given executor (see 
+     * {@link #onExecutor(Collector, Executor, int, int)}), which suits mappers that block.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <K> the type of the keys of the result multimap
+     * @param <V> the type of the elements of the result multimap's collection-values
+     * @param keyMapper a function to be used to map the elements of the stream to the keys of the
+     * result multimap
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result multimap
+     * @param multimapFactory a multimap factory to be used to construct the result multimap
+     * @param executor an executor to run the mappers on, e.g. one of virtual threads
+     * @param maxInFlightBatches the maximum number of batches submitted to the executor by an 
+     * accumulation container and not yet combined
+     * @param batchSize the number of elements per batch
+     * @return a collector that reduces a stream of elements into a 
+     * {@link com.google.common.collect.Multimap} instance
+     * @throws NullPointerException if either of the passed references is a null reference
+     * @throws IllegalArgumentException if either the maximum number of batches in flight or the 
+     * batch size is not positive
+     */
+    public static <T, K, V> Collector<T, ?, Multimap<K, V>> toMultimap(
+            Function<? super T, K> keyMapper, 
+            Function<? super T, V> valueMapper, 
+            Supplier<Multimap<K,V>> multimapFactory, 
+            Executor executor, 
+            int maxInFlightBatches, 
+            int batchSize) throws NullPointerException, IllegalArgumentException {
+        
+        return instrument( "toMultimap", onExecutorImpl( 
+                toMultimapImpl(keyMapper, valueMapper, multimapFactory), executor, maxInFlightBatches, batchSize 
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into a 
+     * {@link com.google.common.collect.Multimap} instance, the type of which depends on the given 
+     * multimap factory, presizing its accumulation containers for the given number of elements.
+     * 
+     * As a multimap created by the factory cannot be presized, the pairs are grouped by the keys in 
+     * a hash map of value lists first, and the value lists are put into the factory multimap key by 
+     * key once the reduction is over. The hash map of every container is presized for as many 
+     * keys as the given number of elements, which bounds the number of the distinct keys, so on a 
+     * parallel stream the hint should be the expected number of elements per leaf task, as worked 
+     * out by {@link Streams#collectPresized(java.util.stream.Stream, java.util.function.IntFunction)}. 
+     * The keys and the values may be null references 
+     * whenever the factory multimap permits them.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <K> the type of the keys of the result multimap
+     * @param <V> the type of the elements of the result multimap's collection-values
+     * @param keyMapper a function to be used to map the elements of the stream to the keys of the
+     * result multimap
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result multimap
+     * @param multimapFactory a multimap factory to be used to construct the result multimap
+     * @param expectedSize the expected number of elements per accumulation container
+     * @return a collector that reduces a stream of elements into a 
+     * {@link com.google.common.collect.Multimap} instance
+     * @throws NullPointerException if either of the passed functions is a null reference
+     * @throws IllegalArgumentException if the expected size is negative
+     */
+    public static <T, K, V> Collector<T, ?, Multimap<K, V>> toMultimap(
+            Function<? super T, K> keyMapper, 
+            Function<? super T, V> valueMapper, 
+            Supplier<Multimap<K,V>> multimapFactory, 
+            int expectedSize) throws NullPointerException, IllegalArgumentException {
+        
+        requireNonNull(keyMapper);
+        requireNonNull(valueMapper);
+        requireNonNull(multimapFactory);
+        checkArgument(expectedSize >= 0, "The expected size must not be negative.");
+        
+        return instrument( "toMultimap", Collector.of(
+                () -> Maps.<K, List<V>>newHashMapWithExpectedSize(expectedSize), 
+                (groups, t) -> groups.computeIfAbsent( keyMapper.apply(t), key -> new ArrayList<>() ).add( valueMapper.apply(t) ), 
+                Collectors::<K, V>mergeValueLists, 
+                (groups) -> {
+                    final Multimap<K, V> multimap = multimapFactory.get();
+                    groups.forEach(multimap::putAll);
+                    return multimap;
+                }
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into an 
+     * {@link com.google.common.collect.ImmutableListMultimap} instance.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <K> the type of the keys of the result multimap
+     * @param <V> the type of the elements of the result multimap's collection-values
+     * @param keyMapper a function to be used to map the elements of the stream to the keys of the
+     * result multimap
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result multimap
+     * @return a collector that reduces a stream of elements into a 
+     * {@link com.google.common.collect.ImmutableListMultimap} instance
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    public static <T, K, V> Collector<T, ?, ImmutableListMultimap<K, V>> toImmutableListMultimap(
+            Function<? super T, K> keyMapper,
+            Function<? super T, V> valueMapper) throws NullPointerException {
+        
+        requireNonNull(keyMapper);
+        requireNonNull(valueMapper);
+        
+        return instrument( "toImmutableListMultimap", Collector.of(
+                () -> new MultimapBuffer<K, V, List<V>>( ArrayList<V>::new ), 
+                (buffer, t) -> buffer.put( keyMapper.apply(t), valueMapper.apply(t) ), 
+                MultimapBuffer::merge, 
+                (buffer) -> ImmutableListMultimap.copyOf( buffer.asMultimap() ), 
+                Collector.Characteristics.CONCURRENT
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into an 
+     * {@link com.google.common.collect.ImmutableListMultimap} instance, presizing its accumulation 
+     * containers for the given number of elements.
+     * 
+     * The key map of every container is presized for as many keys as the given number of 
+     * elements, which bounds the number of the distinct keys. As the collector is concurrent, all 
+     * the elements of an unordered parallel stream go into a single container, which should then 
+     * be presized for the whole stream; an ordered parallel stream is accumulated into a 
+     * container per leaf task, so the hint should be the expected number of elements per leaf.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <K> the type of the keys of the result multimap
+     * @param <V> the type of the elements of the result multimap's collection-values
+     * @param keyMapper a function to be used to map the elements of the stream to the keys of the
+     * result multimap
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result multimap
+     * @param expectedSize the expected number of elements per accumulation container
+     * @return a collector that reduces a stream of elements into a 
+     * {@link com.google.common.collect.ImmutableListMultimap} instance
+     * @throws NullPointerException if either of the passed mappers is a null reference
+     * @throws IllegalArgumentException if the expected size is negative
+     */
+    public static <T, K, V> Collector<T, ?, ImmutableListMultimap<K, V>> toImmutableListMultimap(
+            Function<? super T, K> keyMapper,
+            Function<? super T, V> valueMapper, 
+            int expectedSize) throws NullPointerException, IllegalArgumentException {
+        
+        requireNonNull(keyMapper);
+        requireNonNull(valueMapper);
+        checkArgument(expectedSize >= 0, "The expected size must not be negative.");
+        
+        return instrument( "toImmutableListMultimap", Collector.of(
+                () -> new MultimapBuffer<K, V, List<V>>( ArrayList<V>::new, expectedSize ), 
+                (buffer, t) -> buffer.put( keyMapper.apply(t), valueMapper.apply(t) ), 
+                MultimapBuffer::merge, 
+                (buffer) -> ImmutableListMultimap.copyOf( buffer.asMultimap() ), 
+                Collector.Characteristics.CONCURRENT
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into an 
+     * {@link com.google.common.collect.ImmutableSetMultimap} instance.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <K> the type of the keys of the result multimap
+     * @param <V> the type of the elements of the result multimap's collection-values
+     * @param keyMapper a function to be used to map the elements of the stream to the keys of the
+     * result multimap
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result multimap
+     * @return a collector that reduces a stream of elements into a 
+     * {@link com.google.common.collect.ImmutableSetMultimap} instance
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    public static <T, K, V> Collector<T, ?, ImmutableSetMultimap<K, V>> toImmutableSetMultimap(
+            Function<? super T, K> keyMapper,
+            Function<? super T, V> valueMapper) throws NullPointerException {
+        
+        requireNonNull(keyMapper);
+        requireNonNull(valueMapper);
+        
+        return instrument( "toImmutableSetMultimap", Collector.of(
+                () -> new MultimapBuffer<K, V, Set<V>>( HashSet<V>::new ), 
+                (buffer, t) -> buffer.put( keyMapper.apply(t), valueMapper.apply(t) ), 
+                MultimapBuffer::merge, 
+                (buffer) -> ImmutableSetMultimap.copyOf( buffer.asMultimap() ), 
+                Collector.Characteristics.CONCURRENT, 
+                Collector.Characteristics.UNORDERED
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into an 
+     * {@link com.google.common.collect.ImmutableSetMultimap} instance, presizing its accumulation 
+     * containers for the given number of elements.
+     * 
+     * The key map of every container is presized for as many keys as the given number of 
+     * elements, which bounds the number of the distinct keys. As the collector is concurrent and 
+     * unordered, all the elements of a parallel stream go into a single container too, so the hint 
+     * should be the expected number of elements in the whole stream rather than the leaf size 
+     * {@link Streams#collectPresized(java.util.stream.Stream, java.util.function.IntFunction)} 
+     * hands to the collectors of parallel streams.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <K> the type of the keys of the result multimap
+     * @param <V> the type of the elements of the result multimap's collection-values
+     * @param keyMapper a function to be used to map the elements of the stream to the keys of the
+     * result multimap
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result multimap
+     * @param expectedSize the expected number of elements per accumulation container
+     * @return a collector that reduces a stream of elements into a 
+     * {@link com.google.common.collect.ImmutableSetMultimap} instance
+     * @throws NullPointerException if either of the passed mappers is a null reference
+     * @throws IllegalArgumentException if the expected size is negative
+     */
+    public static <T, K, V> Collector<T, ?, ImmutableSetMultimap<K, V>> toImmutableSetMultimap(
+            Function<? super T, K> keyMapper,
+            Function<? super T, V> valueMapper, 
+            int expectedSize) throws NullPointerException, IllegalArgumentException {
+        
+        requireNonNull(keyMapper);
+        requireNonNull(valueMapper);
+        checkArgument(expectedSize >= 0, "The expected size must not be negative.");
+        
+        return instrument( "toImmutableSetMultimap", Collector.of(
+                () -> new MultimapBuffer<K, V, Set<V>>( HashSet<V>::new, expectedSize ), 
+                (buffer, t) -> buffer.put( keyMapper.apply(t), valueMapper.apply(t) ), 
+                MultimapBuffer::merge, 
+                (buffer) -> ImmutableSetMultimap.copyOf( buffer.asMultimap() ), 
+                Collector.Characteristics.CONCURRENT, 
+                Collector.Characteristics.UNORDERED
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into an 
+     * {@link com.google.common.collect.Table} instance, the type of which depends on the given 
+     * table factory.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <R> the type of the table's rows
+     * @param <C> the type of the table's columns
+     * @param <V> the type of the table's values
+     * @param rowMapper a function to be used to map the elements of the stream to the row keys of 
+     * the result table
+     * @param columnMapper a function to be used to map the elements of the stream to the column 
+     * keys of the result table
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result table
+     * @param tableFactory a table factory to be used to construct the result table
+     * @return a collector that reduces a stream of elements into a 
+     * {@link com.google.common.collect.Table} instance
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    public static <T, R, C, V> Collector<T, ?, Table<R, C, V>> toTable(
+            Function<? super T, R> rowMapper, 
+            Function<? super T, C> columnMapper,
+            Function<? super T, V> valueMapper,
+            Supplier<Table<R, C, V>> tableFactory) throws NullPointerException {
+        return instrument( "toTable", toTableImpl(rowMapper, columnMapper, valueMapper, tableFactory) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into a 
+     * {@link com.google.common.collect.Table} instance, the type of which depends on the given 
+     * table factory, running the mappers on the given executor (see 
+     * {@link #onExecutor(Collector, Executor, int, int)}), which suits mappers that block.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <R> the type of the table's rows
+     * @param <C> the type of the table's columns
+     * @param <V> the type of the table's values
+     * @param rowMapper a function to be used to map the elements of the stream to the row keys of 
+     * the result table
+     * @param columnMapper a function to be used to map the elements of the stream to the column 
+     * keys of the result table
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result table
+     * @param tableFactory a table factory to be used to construct the result table
+     * @param executor an executor to run the mappers on, e.g. one of virtual threads
+     * @param maxInFlightBatches the maximum number of batches submitted to the executor by an 
+     * accumulation container and not yet combined
+     * @param batchSize the number of elements per batch
+     * @return a collector that reduces a stream of elements into a 
+     * {@link com.google.common.collect.Table} instance
+     * @throws NullPointerException if either of the passed references is a null reference
+     * @throws IllegalArgumentException if either the maximum number of batches in flight or the 
+     * batch size is not positive
+     */
+    public static <T, R, C, V> Collector<T, ?, Table<R, C, V>> toTable(
+            Function<? super T, R> rowMapper, 
+            Function<? super T, C> columnMapper,
+            Function<? super T, V> valueMapper,
+            Supplier<Table<R, C, V>> tableFactory, 
+            Executor executor, 
+            int maxInFlightBatches, 
+            int batchSize) throws NullPointerException, IllegalArgumentException {
+        
+        return instrument( "toTable", onExecutorImpl( 
+                toTableImpl(rowMapper, columnMapper, valueMapper, tableFactory), executor, maxInFlightBatches, batchSize 
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into an 
+     * {@link com.google.common.collect.ImmutableTable} view over the table constructed with the 
+     * given table factory method.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <R> the type of the table's rows
+     * @param <C> the type of the table's columns
+     * @param <V> the type of the table's values
+     * @param rowMapper a function to be used to map the elements of the stream to the row keys of 
+     * the result table
+     * @param columnMapper a function to be used to map the elements of the stream to the column 
+     * keys of the result table
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result table
+     * @param tableFactory a table factory to be used to construct the result table
+     * @return a collector that reduces a stream of elements into a 
+     * {@link com.google.common.collect.ImmutableTable} instance
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    public static <T, R, C, V> Collector<T, ?, ImmutableTable<R, C, V>> toImmutableTable(
+            Function<? super T, R> rowMapper, 
+            Function<? super T, C> columnMapper,
+            Function<? super T, V> valueMapper,
+            Supplier<Table<R, C, V>> tableFactory) throws NullPointerException {
+        return instrument( "toImmutableTable", toImmutableTableImpl(rowMapper, columnMapper, valueMapper, tableFactory) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into an 
+     * {@link com.google.common.collect.ImmutableTable} view over the table constructed with the 
+     * given table factory method, running the mappers on the given executor (see 
+     * {@link #onExecutor(Collector, Executor, int, int)}), which suits mappers that block.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <R> the type of the table's rows
+     * @param <C> the type of the table's columns
+     * @param <V> the type of the table's values
+     * @param rowMapper a function to be used to map the elements of the stream to the row keys of 
+     * the result table
+     * @param columnMapper a function to be used to map the elements of the stream to the column 
+     * keys of the result table
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result table
+     * @param tableFactory a table factory to be used to construct the result table
+     * @param executor an executor to run the mappers on, e.g. one of virtual threads
+     * @param maxInFlightBatches the maximum number of batches submitted to the executor by an 
+     * accumulation container and not yet combined
+     * @param batchSize the number of elements per batch
+     * @return a collector that reduces a stream of elements into a 
+     * {@link com.google.common.collect.ImmutableTable} instance
+     * @throws NullPointerException if either of the passed references is a null reference
+     * @throws IllegalArgumentException if either the maximum number of batches in flight or the 
+     * batch size is not positive
+     */
+    public static <T, R, C, V> Collector<T, ?, ImmutableTable<R, C, V>> toImmutableTable(
+            Function<? super T, R> rowMapper, 
+            Function<? super T, C> columnMapper,
+            Function<? super T, V> valueMapper,
+            Supplier<Table<R, C, V>> tableFactory, 
+            Executor executor, 
+            int maxInFlightBatches, 
+            int batchSize) throws NullPointerException, IllegalArgumentException {
+        
+        return instrument( "toImmutableTable", onExecutorImpl( 
+                toImmutableTableImpl(rowMapper, columnMapper, valueMapper, tableFactory), 
+                executor, 
+                maxInFlightBatches, 
+                batchSize 
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into an 
+     * {@link com.google.common.collect.ArrayTable} instance with the given row and column keys. 
+     * 
+     * The cells are accumulated into flat arrays indexed by the positions of the keys, which makes 
+     * the collector a fit for dense tables of known dimensions.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <R> the type of the table's rows
+     * @param <C> the type of the table's columns
+     * @param <V> the type of the table's values
+     * @param rowMapper a function to be used to map the elements of the stream to the row keys of 
+     * the result table
+     * @param columnMapper a function to be used to map the elements of the stream to the column 
+     * keys of the result table
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result table
+     * @param rowKeys the row keys of the result table
+     * @param columnKeys the column keys of the result table
+     * @return a collector that reduces a stream of elements into a 
+     * {@link com.google.common.collect.ArrayTable} instance
+     * @throws NullPointerException if either of the passed arguments is a null reference or either 
+     * of the key iterables contains a null reference
+     * @throws IllegalArgumentException if either of the key iterables contains duplicates; the 
+     * collector throws it as well for an element mapped to a key missing from the key iterables
+     */
+    public static <T, R, C, V> Collector<T, ?, ArrayTable<R, C, V>> toArrayTable(
+            Function<? super T, R> rowMapper, 
+            Function<? super T, C> columnMapper,
+            Function<? super T, V> valueMapper,
+            Iterable<? extends R> rowKeys,
+            Iterable<? extends C> columnKeys) throws NullPointerException, IllegalArgumentException {
+        
+        requireNonNull(rowMapper);
+        requireNonNull(columnMapper);
+        requireNonNull(valueMapper);
+        
+        final ArrayTableBuffer.Layout<R, C> layout = new ArrayTableBuffer.Layout<>(rowKeys, columnKeys);
+        
+        return instrument( "toArrayTable", Collector.of(
+                () -> new ArrayTableBuffer<R, C, V>(layout), 
+                (buffer, t) -> buffer.put( rowMapper.apply(t), columnMapper.apply(t), valueMapper.apply(t) ), 
+                ArrayTableBuffer::merge, 
+                ArrayTableBuffer::toArrayTable
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into a 
+     * {@link com.enfernuz.util.dense.DenseTable}, a compact alternative to 
+     * {@link #toImmutableTable(Function, Function, Function, Supplier)} for the tables of 
+     * low-cardinality row and column keys, like enum constants or codes. A cell mapped more than 
+     * once holds the value of the last element in the encounter order.
+     * 
+     * Each accumulation container dictionary-encodes the keys to ints and buffers the cells in 
+     * flat arrays; the dictionaries of the containers are remapped when they are combined, and the 
+     * finisher sorts the cells into the compressed row layout of the table, with no map entry per 
+     * cell.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <R> the type of the table's rows
+     * @param <C> the type of the table's columns
+     * @param <V> the type of the table's values
+     * @param rowMapper a function to be used to map the elements of the stream to the row keys of 
+     * the result table
+     * @param columnMapper a function to be used to map the elements of the stream to the column 
+     * keys of the result table
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result table
+     * @return a collector that reduces a stream of elements into a 
+     * {@link com.enfernuz.util.dense.DenseTable}
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    public static <T, R, C, V> Collector<T, ?, DenseTable<R, C, V>> toDenseTable(
+            Function<? super T, R> rowMapper, 
+            Function<? super T, C> columnMapper,
+            Function<? super T, V> valueMapper) throws NullPointerException {
+        
+        requireNonNull(rowMapper);
+        requireNonNull(columnMapper);
+        requireNonNull(valueMapper);
+        
+        return instrument( "toDenseTable", Collector.of(
+                DenseTable::<R, C, V>builder, 
+                (builder, t) -> builder.put( rowMapper.apply(t), columnMapper.apply(t), valueMapper.apply(t) ), 
+                DenseTable.Builder::putAll, 
+                DenseTable.Builder::build
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into a 
+     * {@link com.enfernuz.util.dense.DenseSetMultimap}, a compact alternative to 
+     * {@link #toImmutableSetMultimap(Function, Function)} for the multimaps of low-cardinality 
+     * keys and values, like enum constants or codes.
+     * 
+     * Each accumulation container dictionary-encodes the keys and values to ints and buffers the 
+     * entries in a flat array, dropping the duplicates whenever the array fills up; the 
+     * dictionaries of the containers are remapped when they are combined, and the finisher sorts 
+     * the entries into the compressed row layout of the multimap, with no hash set per key.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <K> the type of the keys of the result multimap
+     * @param <V> the type of the elements of the result multimap's collection-values
+     * @param keyMapper a function to be used to map the elements of the stream to the keys of the
+     * result multimap
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result multimap
+     * @return a collector that reduces a stream of elements into a 
+     * {@link com.enfernuz.util.dense.DenseSetMultimap}
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    public static <T, K, V> Collector<T, ?, DenseSetMultimap<K, V>> toDenseSetMultimap(
+            Function<? super T, K> keyMapper,
+            Function<? super T, V> valueMapper) throws NullPointerException {
+        
+        requireNonNull(keyMapper);
+        requireNonNull(valueMapper);
+        
+        return instrument( "toDenseSetMultimap", Collector.of(
+                DenseSetMultimap::<K, V>builder, 
+                (builder, t) -> builder.put( keyMapper.apply(t), valueMapper.apply(t) ), 
+                DenseSetMultimap.Builder::putAll, 
+                DenseSetMultimap.Builder::build, 
+                Collector.Characteristics.UNORDERED
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into an 
+     * {@link com.google.common.collect.ImmutableList} of the first {@code k} elements in the order 
+     * of the given comparator, sorted by it. The order of equal elements is not defined.
+     * 
+     * Unlike sorting the whole stream and taking its head, the collector keeps no more than 
+     * {@code k} elements per worker in a bounded heap, so its memory footprint is O(k) however 
+     * long the stream is.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param k the maximum number of elements to be collected
+     * @param comparator a comparator defining which elements come first
+     * @return a collector that reduces a stream of elements into an immutable list of its first 
+     * {@code k} elements
+     * @throws NullPointerException if the passed comparator is a null reference
+     * @throws IllegalArgumentException if {@code k} is negative
+     */
+    public static <T> Collector<T, ?, ImmutableList<T>> topK(int k, Comparator<? super T> comparator) 
+            throws NullPointerException, IllegalArgumentException {
+        
+        checkArgument(k >= 0, "The k must not be negative.");
+        requireNonNull(comparator);
+        
+        return instrument( "topK", Collector.of(
+                () -> new BoundedHeap<T>(k, comparator), 
+                BoundedHeap::offer, 
+                BoundedHeap::merge, 
+                BoundedHeap::toSortedList, 
+                Collector.Characteristics.UNORDERED
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into an 
+     * {@link com.google.common.collect.ImmutableSortedSet} of the first {@code k} distinct 
+     * elements in the order of the given comparator. Elements are distinct if the comparator does 
+     * not consider them equal; the first of the equal elements is kept.
+     * 
+     * The collector keeps no more than {@code k} elements per worker, so its memory footprint is 
+     * O(k) however long the stream is.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param k the maximum number of elements to be collected
+     * @param comparator a comparator defining which elements come first
+     * @return a collector that reduces a stream of elements into an immutable sorted set of its 
+     * first {@code k} distinct elements
+     * @throws NullPointerException if the passed comparator is a null reference
+     * @throws IllegalArgumentException if {@code k} is negative
+     */
+    public static <T> Collector<T, ?, ImmutableSortedSet<T>> distinctTopK(
+            int k, Comparator<? super T> comparator) 
+            throws NullPointerException, IllegalArgumentException {
+        
+        checkArgument(k >= 0, "The k must not be negative.");
+        requireNonNull(comparator);
+        
+        return instrument( "distinctTopK", Collector.of(
+                () -> new TreeSet<T>(comparator), 
+                (set, t) -> addBounded(set, t, k), 
+                (set1, set2) -> mergeBounded(set1, set2, k), 
+                ImmutableSortedSet::copyOfSorted
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into an 
+     * {@link com.google.common.collect.ImmutableList} of {@code k} elements sampled uniformly at 
+     * random without replacement, or of all the elements if there are no more than {@code k} of 
+     * them. The order of the sampled elements is random.
+     * 
+     * Every element gets a random priority and the {@code k} elements of the lowest priorities 
+     * are kept in a bounded heap per worker. Unlike the sequential reservoir algorithm, such 
+     * samples of disjoint parts of the stream are merged into a uniform sample of the whole 
+     * stream, and the memory footprint stays O(k) however long the stream is.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param k the size of the sample
+     * @return a collector that reduces a stream of elements into an immutable list of its random 
+     * sample
+     * @throws IllegalArgumentException if {@code k} is negative
+     */
+    public static <T> Collector<T, ?, ImmutableList<T>> sample(int k) throws IllegalArgumentException {
+        
+        checkArgument(k >= 0, "The k must not be negative.");
+        
+        return instrument( "sample", Collector.of(
+                () -> new BoundedHeap<Sample<T>>(k, Sample.BY_PRIORITY), 
+                (heap, t) -> heap.offer( new Sample<>(ThreadLocalRandom.current().nextDouble(), t) ), 
+                BoundedHeap::merge, 
+                Collectors::elementsOf, 
+                Collector.Characteristics.UNORDERED
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into an 
+     * {@link com.google.common.collect.ImmutableList} of {@code k} elements sampled at random 
+     * without replacement, each element being drawn with the probability proportional to its 
+     * weight, or of all the elements if there are no more than {@code k} of them. The order of 
+     * the sampled elements is random.
+     * 
+     * The collector implements the Efraimidis-Spirakis weighted sampling: every element gets the 
+     * random priority of {@code -ln(u) / weight}, where {@code u} is uniform in (0, 1], and the 
+     * {@code k} elements of the lowest priorities are kept in a bounded heap per worker, so the 
+     * memory footprint stays O(k) however long the stream is.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param k the size of the sample
+     * @param weigher a function to be used to map the elements of the stream to their weights
+     * @return a collector that reduces a stream of elements into an immutable list of its weighted 
+     * random sample
+     * @throws NullPointerException if the passed weigher is a null reference
+     * @throws IllegalArgumentException if {@code k} is negative; the collector throws it as well 
+     * for an element of a weight which is not positive and finite
+     */
+    public static <T> Collector<T, ?, ImmutableList<T>> weightedSample(
+            int k, ToDoubleFunction<? super T> weigher) 
+            throws NullPointerException, IllegalArgumentException {
+        
+        checkArgument(k >= 0, "The k must not be negative.");
+        requireNonNull(weigher);
+        
+        return instrument( "weightedSample", Collector.of(
+                () -> new BoundedHeap<Sample<T>>(k, Sample.BY_PRIORITY), 
+                (heap, t) -> heap.offer( weightedSampleOf(t, weigher.applyAsDouble(t)) ), 
+                BoundedHeap::merge, 
+                Collectors::elementsOf, 
+                Collector.Characteristics.UNORDERED
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into a 
+     * {@link com.enfernuz.util.sketch.HyperLogLog} sketch estimating the number of its distinct 
+     * elements.
+     * 
+     * Each worker puts the elements into a sketch of its own, and the sketches are merged register 
+     * by register, so the memory footprint is fixed by the required error: about 16 KiB per worker 
+     * for an error of 1%.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param funnel a funnel of the elements
+     * @param relativeError the required relative standard error of the estimate, e.g. 0.01
+     * @return a collector that reduces a stream of elements into a HyperLogLog sketch
+     * @throws NullPointerException if the passed funnel is a null reference
+     * @throws IllegalArgumentException if the relative error is not in (0, 1)
+     */
+    public static <T> Collector<T, ?, HyperLogLog<T>> toHyperLogLog(
+            Funnel<? super T> funnel, double relativeError) 
+            throws NullPointerException, IllegalArgumentException {
+        return instrument( "toHyperLogLog", toHyperLogLogImpl(funnel, relativeError) );
+    }
+    
+    /**
+     * Creates a collector that estimates the number of the distinct elements of a stream with a 
+     * {@link com.enfernuz.util.sketch.HyperLogLog} sketch, instead of collecting the elements into a 
+     * set and taking its size.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param funnel a funnel of the elements
+     * @param relativeError the required relative standard error of the estimate, e.g. 0.01
+     * @return a collector that reduces a stream of elements into the estimated number of its 
+     * distinct elements
+     * @throws NullPointerException if the passed funnel is a null reference
+     * @throws IllegalArgumentException if the relative error is not in (0, 1)
+     */
+    public static <T> Collector<T, ?, Long> approximateDistinctCount(
+            Funnel<? super T> funnel, double relativeError) 
+            throws NullPointerException, IllegalArgumentException {
+        
+        return instrument( "approximateDistinctCount", java.util.stream.Collectors.collectingAndThen(
+                Collectors.<T>toHyperLogLogImpl(funnel, relativeError), 
+                HyperLogLog::cardinality
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into a 
+     * {@link com.enfernuz.util.sketch.CountMinSketch} estimating the number of occurrences of each 
+     * element.
+     * 
+     * Each worker counts the elements in a sketch of its own, and the sketches are merged counter 
+     * by counter, so the memory footprint is fixed by the error bounds, whatever the number of the 
+     * distinct elements is.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param funnel a funnel of the elements
+     * @param epsilon the relative error bound of the estimates, e.g. 0.001
+     * @param delta the probability of an estimate exceeding the error bound, e.g. 0.01
+     * @return a collector that reduces a stream of elements into a Count-Min sketch
+     * @throws NullPointerException if the passed funnel is a null reference
+     * @throws IllegalArgumentException if either {@code epsilon} or {@code delta} is not in 
+     * (0, 1), or the sketch would be too large
+     */
+    public static <T> Collector<T, ?, CountMinSketch<T>> toCountMinSketch(
+            Funnel<? super T> funnel, double epsilon, double delta) 
+            throws NullPointerException, IllegalArgumentException {
+        
+        final CountMinSketch<T> prototype = CountMinSketch.create(funnel, epsilon, delta);
+        
+        return instrument( "toCountMinSketch", Collector.of(
+                prototype::copy, 
+                CountMinSketch::add, 
+                (sketch1, sketch2) -> { sketch1.putAll(sketch2); return sketch1; }, 
+                Collector.Characteristics.UNORDERED, 
+                Collector.Characteristics.IDENTITY_FINISH
+        ) );
+    }
+    
+    /**
+     * Creates a collector that reduces a stream of elements into a 
+     * {@link com.google.common.hash.BloomFilter}.
+     * 
+     * Each worker puts the elements into a filter of its own, and the filters are merged bit by 
+     * bit, so the memory footprint is fixed by the expected number of insertions and the false 
+     * positive probability.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param funnel a funnel of the elements
+     * @param expectedInsertions the expected number of the distinct elements
+     * @param fpp the desired false positive probability
+     * @return a collector that reduces a stream of elements into a Bloom filter
+     * @throws NullPointerException if the passed funnel is a null reference
+     * @throws IllegalArgumentException if the expected number of insertions is negative or the 
+     * false positive probability is not in (0, 1)
+     */
+    public static <T> Collector<T, ?, BloomFilter<T>> toBloomFilter(
+            Funnel<? super T> funnel, long expectedInsertions, double fpp) 
+            throws NullPointerException, IllegalArgumentException {
+        
+        final BloomFilter<T> prototype = BloomFilter.create(funnel, expectedInsertions, fpp);
+        
+        return instrument( "toBloomFilter", Collector.of(
+                prototype::copy, 
+                BloomFilter::put, 
+                (filter1, filter2) -> { filter1.putAll(filter2); return filter1; }, 
+                Collector.Characteristics.UNORDERED, 
+                Collector.Characteristics.IDENTITY_FINISH
+        ) );
+    }
+    
+    /**
+     * Wraps a collector into a collector that measures its phases and reports the measurements of 
+     * each reduction, named after the class of the given collector, to the given sink. 
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <R> the type of the result of the reduction
+     * @param collector a collector to be measured
+     * @param sink a sink of the measurements
+     * @return a collector that reduces a stream of elements the way the given collector does
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     * @see #instrumented(String, Collector, CollectorMetricsSink)
+     */
+    public static <T, R> Collector<T, ?, R> instrumented(
+            Collector<T, ?, R> collector, 
+            CollectorMetricsSink sink) throws NullPointerException {
+        
+        return instrumented( requireNonNull(collector).getClass().getSimpleName(), collector, sink );
+    }
+    
+    /**
+     * Wraps a collector into a collector that measures its phases and reports the measurements of 
+     * each reduction to the given sink as a {@link CollectorMetrics} instance: the numbers of the 
+     * elements and of the accumulation containers, the peak container size, the time spent in 
+     * each of the supplier, the accumulator, the combiner and the finisher, the heap allocation of 
+     * the finisher and an estimate of the time the accumulator has spent waiting for locks.
+     * 
+     * The measuring costs two {@link System#nanoTime()} calls and a couple of counter updates per 
+     * element, so it is meant for finding out where the time of a reduction goes rather than for 
+     * benchmarking it. The wrapping collector has the characteristics of the given one except for 
+     * {@link Collector.Characteristics#IDENTITY_FINISH}, as it reports from within its finisher.
+     * 
+     * All the other factory methods of this class return collectors instrumented this way, named 
+     * after the factory method, whenever a {@link CollectorMetricsSink} provider is registered 
+     * with {@link java.util.ServiceLoader}; otherwise they return bare collectors.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <R> the type of the result of the reduction
+     * @param name the name of the collector to be reported
+     * @param collector a collector to be measured
+     * @param sink a sink of the measurements
+     * @return a collector that reduces a stream of elements the way the given collector does
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    public static <T, R> Collector<T, ?, R> instrumented(
+            String name, 
+            Collector<T, ?, R> collector, 
+            CollectorMetricsSink sink) throws NullPointerException {
+        
+        return new InstrumentedCollector<>( requireNonNull(name), requireNonNull(collector), requireNonNull(sink) );
+    }
+    
+    /**
+     * Wraps a collector into a collector that runs its accumulator, and thus the mappers the 
+     * accumulator applies, on the given executor rather than on the threads of the stream, so 
+     * that blocking mappers (e.g. cache or disk lookups) neither hold up the workers of the 
+     * fork-join pool nor are limited by their number.
+     * 
+     * The threads of the stream cut the elements into batches of the given size and submit each 
+     * batch to the executor, which accumulates it into a container of the given collector of its 
+     * own. Each accumulation container of the returned collector combines the containers of its 
+     * finished batches in the encounter order as it goes, and once the given number of its 
+     * batches are submitted and not yet combined, the next submission waits for the oldest one. 
+     * The bound applies per accumulation container, i.e. per leaf task of a parallel stream, and 
+     * bounds both the concurrency and the memory held by the pending elements and the containers 
+     * of the batches; reductions run with the returned collector at once do not share it. The 
+     * finisher waits for the last batches, so the result is the one the given collector would 
+     * have made; a failure of the accumulator is rethrown by the thread which combines the batch.
+     * 
+     * The threads of the stream wait for the batches through 
+     * {@link java.util.concurrent.ForkJoinPool#managedBlock(java.util.concurrent.ForkJoinPool.ManagedBlocker)}, 
+     * so a fork-join pool running the stream makes up for its waiting workers. Waiting for a 
+     * batch ignores interrupts.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param <R> the type of the result of the reduction
+     * @param collector a collector to be run on the executor
+     * @param executor an executor, e.g. one of virtual threads
+     * @param maxInFlightBatches the maximum number of batches submitted to the executor by an 
+     * accumulation container and not yet combined
+     * @param batchSize the number of elements per batch
+     * @return a collector that reduces a stream of elements the way the given collector does
+     * @throws NullPointerException if either of the passed references is a null reference
+     * @throws IllegalArgumentException if either the maximum number of batches in flight or the 
+     * batch size is not positive
+     */
+    public static <T, R> Collector<T, ?, R> onExecutor(
+            Collector<T, ?, R> collector, 
+            Executor executor, 
+            int maxInFlightBatches, 
+            int batchSize) throws NullPointerException, IllegalArgumentException {
+        
+        return instrument( "onExecutor", onExecutorImpl(collector, executor, maxInFlightBatches, batchSize) );
+    }
+    
+    /**
+     * Creates a collector that hands the elements of a stream to the given consumer in batches of 
+     * the given size, instead of collecting them, and reduces the stream into the summary of the 
+     * batches. The last batch may be smaller than the rest.
+     * 
+     * The elements are put into fixed-size chunks, which are handed to the consumer as lists and 
+     * then refilled, so the memory held by the reduction does not depend on the number of 
+     * elements. The consumer is called by the threads of the stream, one call at a time; the time 
+     * the threads wait for their turn is reported as the backpressure. The batches are handed over 
+     * as soon as they are full, so on a parallel stream their order, as well as the order of the 
+     * elements across them, is unspecified.
+     * 
+     * The consumer must not keep the lists it is given, as they are refilled once it returns. The 
+     * returned collector keeps the batches and the statistics in its accumulation containers, so it 
+     * may run any number of reductions at once; the consumer is called one call at a time across 
+     * all of them.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param batchSize the number of elements per batch
+     * @param consumer a consumer of the batches, e.g. one writing them to a database or a file
+     * @return a collector that reduces a stream of elements into the summary of its batches
+     * @throws NullPointerException if the passed consumer is a null reference
+     * @throws IllegalArgumentException if the batch size is not positive
+     */
+    public static <T> Collector<T, ?, BatchSummary> toBatches(int batchSize, Consumer<? super List<T>> consumer) 
+            throws NullPointerException, IllegalArgumentException {
+        
+        checkArgument(batchSize > 0, "The batch size must be positive.");
+        requireNonNull(consumer);
+        
+        final Object consumerLock = new Object();
+        
+        return toBatches( () -> ChunkedSink.<T>synchronous(batchSize, consumer, consumerLock) );
+    }
+    
+    /**
+     * Creates a collector that hands the elements of a stream to the given consumer in batches of 
+     * the given size, calling the consumer on the given executor, and reduces the stream into the 
+     * summary of the batches (see {@link #toBatches(int, Consumer)}).
+     * 
+     * Each accumulation container puts its full batches into a bounded queue of its own, drained by 
+     * a single task at a time run on the executor, while the thread of the stream goes on filling 
+     * other batches; the consumer is never called concurrently. Once the given number of batches 
+     * of a container are queued, its thread blocks until the consumer takes one of them; the time 
+     * it waits is reported as the backpressure. The combiner and the finisher wait until the 
+     * batches of the containers they merge or finish have been consumed, so the executor must not 
+     * be the pool running the stream. After a failure of the consumer the batches queued after it 
+     * are dropped, and the failure is rethrown by the finisher. Queueing a batch ignores 
+     * interrupts.
+     * 
+     * The consumer must not keep the lists it is given, as they are refilled once it returns. The 
+     * returned collector keeps the batches and the statistics in its accumulation containers, so it 
+     * may run any number of reductions at once.
+     * @param <T> the type of elements in the stream to be reduced by the collector
+     * @param batchSize the number of elements per batch
+     * @param consumer a consumer of the batches, e.g. one writing them to a database or a file
+     * @param executor an executor to call the consumer on
+     * @param maxQueuedBatches the maximum number of full batches waiting for the consumer
+     * @return a collector that reduces a stream of elements into the summary of its batches
+     * @throws NullPointerException if either of the passed references is a null reference
+     * @throws IllegalArgumentException if either the batch size or the maximum number of queued 
+     * batches is not positive
+     */
+    public static <T> Collector<T, ?, BatchSummary> toBatches(
+            int batchSize, 
+            Consumer<? super List<T>> consumer, 
+            Executor executor, 
+            int maxQueuedBatches) throws NullPointerException, IllegalArgumentException {
+        
+        checkArgument(batchSize > 0, "The batch size must be positive.");
+        checkArgument(maxQueuedBatches > 0, "The maximum number of queued batches must be positive.");
+        requireNonNull(consumer);
+        requireNonNull(executor);
+        
+        final Object consumerLock = new Object();
+        
+        return toBatches( () -> ChunkedSink.<T>queued(batchSize, consumer, consumerLock, executor, maxQueuedBatches) );
+    }
+    
+    private static <T> Collector<T, ?, BatchSummary> toBatches(Supplier<ChunkedSink<T>> sinkFactory) {
+        
+        return instrument( "toBatches", Collector.of(
+                sinkFactory, 
+                ChunkedSink::add, 
+                ChunkedSink::append, 
+                ChunkedSink::finish, 
+                Collector.Characteristics.UNORDERED
+        ) );
+    }
+    
+    private static <T, R> Collector<T, ?, R> onExecutorImpl(
+            Collector<T, ?, R> collector, 
+            Executor executor, 
+            int maxInFlightBatches, 
+            int batchSize) throws NullPointerException, IllegalArgumentException {
+        
+        requireNonNull(collector);
+        requireNonNull(executor);
+        checkArgument(maxInFlightBatches > 0, "The maximum number of batches in flight must be positive.");
+        checkArgument(batchSize > 0, "The batch size must be positive.");
+        
+        return new ExecutorCollector<>(collector, executor, maxInFlightBatches, batchSize);
+    }
+    
+    private static <T> Collector<T, ?, ImmutableSortedSet<T>> toImmutableSortedSetBySortingImpl(
+                Comparator<T> comparator) throws NullPointerException {
+        
+        requireNonNull(comparator);
+        
+        return Collector.of(
+                ElementBuffer<T>::new, 
+                ElementBuffer::add, 
+                ElementBuffer::append, 
+                (elements) -> sortedSetOf(elements, comparator), 
+                Collector.Characteristics.UNORDERED
+        );
+    }
+    
+    private static <T, K, V> Collector<T, ?, ImmutableMap<K, V>> toImmutableMapImpl(
+            Function<? super T, K> keyMapper,
+            Function<? super T, V> valueMapper) throws NullPointerException {
+        
+        requireNonNull(keyMapper);
+        requireNonNull(valueMapper);
+        
+        return Collector.of(
+                EntryBuffer<K, V>::new, 
+                (entries, t) -> entries.put(keyMapper.apply(t), valueMapper.apply(t)), 
+                EntryBuffer::append, 
+                (entries) -> buildImmutableMap( entries, ImmutableMap::<K, V>builder ), 
+                Collector.Characteristics.UNORDERED
+        );
+    }
+    
+    private static <T, K, V> Collector<T, ?, ImmutableSortedMap<K, V>> toImmutableSortedMapBySortingImpl(
+            Function<? super T, K> keyMapper,
+            Function<? super T, V> valueMapper,
+            Comparator<K> comparator) throws NullPointerException {
+        
+        requireNonNull(keyMapper);
+        requireNonNull(valueMapper);
+        requireNonNull(comparator);
+        
+        return Collector.of(
+                EntryBuffer<K, V>::new, 
+                (entries, t) -> entries.put(keyMapper.apply(t), valueMapper.apply(t)), 
+                EntryBuffer::append, 
+                (entries) -> sortedMapOf(entries, comparator)
+        );
+    }
+    
+    private static <T, K, V> Collector<T, ?, OffHeapMap<K, V>> toOffHeapMapImpl(
+            Function<? super T, K> keyMapper, 
+            Function<? super T, V> valueMapper, 
+            Serializer<K> keySerializer, 
+            Serializer<V> valueSerializer) throws NullPointerException {
+        
+        requireNonNull(keyMapper);
+        requireNonNull(valueMapper);
+        requireNonNull(keySerializer);
+        requireNonNull(valueSerializer);
+        
+        return Collector.of(
+                () -> OffHeapMap.builder(keySerializer, valueSerializer), 
+                (builder, t) -> builder.put( keyMapper.apply(t), valueMapper.apply(t) ), 
+                OffHeapMap.Builder::combine, 
+                OffHeapMap.Builder::build
+        );
+    }
+    
+    private static <T, K, V> Collector<T, ?, Multimap<K, V>> toMultimapImpl(
+            Function<? super T, K> keyMapper, 
+            Function<? super T, V> valueMapper, 
+            Supplier<Multimap<K,V>> multimapFactory) throws NullPointerException {
+        
+        requireNonNull(keyMapper);
+        requireNonNull(valueMapper);
+        requireNonNull(multimapFactory);
+        
+        return Collector.of(
+                multimapFactory, 
+                (multimap, t) -> multimap.put( keyMapper.apply(t), valueMapper.apply(t) ), 
+                (multimap1, multimap2) -> { multimap1.putAll(multimap2); return multimap1; }, 
+                Collector.Characteristics.IDENTITY_FINISH
+        );
+    }
+    
+    private static <T, R, C, V> Collector<T, ?, Table<R, C, V>> toTableImpl(
+            Function<? super T, R> rowMapper, 
+            Function<? super T, C> columnMapper,
+            Function<? super T, V> valueMapper,
+            Supplier<Table<R, C, V>> tableFactory) throws NullPointerException {
+        
+        requireNonNull(rowMapper);
+        requireNonNull(columnMapper);
         requireNonNull(valueMapper);
+        requireNonNull(tableFactory);
         
         return Collector.of(
                 tableFactory, 
-                (table, t) -> {
-                    final R row = rowMapper.apply(t);
-                    final C column = columnMapper.apply(t);
-                    final V value = valueMapper.apply(t);
-                    table.put(row, column, value);
-                }, 
-                (table1, table2) -> { table1.putAll(table2); return table1; }, 
-                ImmutableTable::<R, C, V>copyOf 
+                (table, t) -> table.put( rowMapper.apply(t), columnMapper.apply(t), valueMapper.apply(t) ), 
+                Collectors::<R, C, V, Table<R, C, V>>mergeTables, 
+                Collector.Characteristics.IDENTITY_FINISH
+        );
+    }
+    
+    private static <T, R, C, V> Collector<T, ?, ImmutableTable<R, C, V>> toImmutableTableImpl(
+            Function<? super T, R> rowMapper, 
+            Function<? super T, C> columnMapper,
+            Function<? super T, V> valueMapper,
+            Supplier<Table<R, C, V>> tableFactory) throws NullPointerException {
+        
+        requireNonNull(rowMapper);
+        requireNonNull(columnMapper);
+        requireNonNull(valueMapper);
+        requireNonNull(tableFactory);
+        
+        return Collector.of(
+                tableFactory, 
+                (table, t) -> table.put( rowMapper.apply(t), columnMapper.apply(t), valueMapper.apply(t) ), 
+                Collectors::<R, C, V, Table<R, C, V>>mergeTables, 
+                ImmutableTable::<R, C, V>copyOf
+        );
+    }
+    
+    private static <T> Collector<T, ?, HyperLogLog<T>> toHyperLogLogImpl(
+            Funnel<? super T> funnel, double relativeError) 
+            throws NullPointerException, IllegalArgumentException {
+        
+        final HyperLogLog<T> prototype = HyperLogLog.create(funnel, relativeError);
+        
+        return Collector.of(
+                prototype::copy, 
+                HyperLogLog::put, 
+                (sketch1, sketch2) -> { sketch1.putAll(sketch2); return sketch1; }, 
+                Collector.Characteristics.UNORDERED, 
+                Collector.Characteristics.IDENTITY_FINISH
+        );
+    }
+    
+    // The sink is looked up once: with none registered the factory methods return their collectors 
+    // as they are, so the instrumentation costs nothing unless it is asked for.
+    private static <T, R> Collector<T, ?, R> instrument(String name, Collector<T, ?, R> collector) {
+        return DEFAULT_SINK == null ? collector : new InstrumentedCollector<>(name, collector, DEFAULT_SINK);
+    }
+    
+    private static CollectorMetricsSink loadDefaultSink() {
+        
+        final Iterator<CollectorMetricsSink> sinks = ServiceLoader.load(CollectorMetricsSink.class).iterator();
+        
+        return sinks.hasNext() ? sinks.next() : null;
+    }
+    
+    private static <T, K, V> void putSkippingNulls(
+            EntryBuffer<K, V> entries, 
+            T element, 
+            Function<? super T, K> keyMapper, 
+            Function<? super T, V> valueMapper, 
+            SkippedNulls skipped) {
+        
+        if (element == null) {
+            skipped.skipElement();
+            return;
+        }
+        
+        final K key = keyMapper.apply(element);
+        if (key == null) {
+            skipped.skipKey();
+            return;
+        }
+        
+        final V value = valueMapper.apply(element);
+        if (value == null) {
+            skipped.skipValue();
+            return;
+        }
+        
+        entries.put(key, value);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <K, V> void applyUpdate(PersistentHashMap.Builder<K, V> builder, K key, Object value) {
+        
+        if (value == REMOVAL) {
+            builder.remove(key);
+        } else {
+            builder.put(key, (V) value);
+        }
+    }
+    
+    // Each worker of a parallel stream accumulates into its own unsynchronized container, so the 
+    // only shared work left is the merge: adding the smaller container into the larger one keeps 
+    // the number of rehashed elements down to the size of the smaller side.
+    private static <T, C extends Collection<T>> C mergeIntoLarger(C collection1, C collection2) {
+        
+        if ( collection1.size() < collection2.size() ) {
+            collection2.addAll(collection1);
+            return collection2;
+        }
+        
+        collection1.addAll(collection2);
+        return collection1;
+    }
+    
+    // The buffered pairs go straight into the builder of the result map, so the keys are hashed 
+    // once and the only map ever built is the final one. Guava builders reject duplicate keys, 
+    // whereas the map collectors let the last written value win, so only once the builder has 
+    // rejected the pairs are the duplicates collapsed within the buffer and the map built anew. 
+    // If no keys have been collapsed, the builder has rejected something else, e.g. a duplicate 
+    // value of a bimap.
+    @SuppressWarnings("unchecked")
+    private static <K, V, M extends ImmutableMap<K, V>> M buildImmutableMap(
+            EntryBuffer<K, V> entries, 
+            Supplier<? extends ImmutableMap.Builder<K, V>> builderFactory) {
+        
+        try {
+            return (M) buildFrom( entries, builderFactory.get() );
+        } catch (IllegalArgumentException e) {
+            if ( !entries.collapseDuplicateKeys() ) {
+                throw e;
+            }
+        }
+        
+        return (M) buildFrom( entries, builderFactory.get() );
+    }
+    
+    private static <K, V> ImmutableMap<K, V> buildFrom(EntryBuffer<K, V> entries, ImmutableMap.Builder<K, V> builder) {
+        
+        entries.forEach(builder::put);
+        
+        return builder.build();
+    }
+    
+    // Merges the later map into the earlier one, or the other way round if the later map is 
+    // larger, keeping the argument order of the merge function in line with the encounter order.
+    private static <K, V, M extends Map<K, V>> M mergeMaps(
+            M earlier, M later, BinaryOperator<V> mergeFunction) {
+        
+        if ( earlier.size() >= later.size() ) {
+            later.forEach( (key, value) -> earlier.merge(key, value, mergeFunction) );
+            return earlier;
+        }
+        
+        earlier.forEach( 
+                (key, value) -> later.merge( key, value, (laterValue, earlierValue) -> mergeFunction.apply(earlierValue, laterValue) ) 
+        );
+        return later;
+    }
+    
+    // Merges the smaller table into the larger one, letting the values of the later table win, so 
+    // a merge costs the size of the smaller table whichever side it is on. The cells are merged 
+    // row by row, so each row of the smaller table is looked up in the larger one once, and each 
+    // of its cells takes a single put, or a single putIfAbsent when the later values must stay.
+    private static <R, C, V, M extends Table<R, C, V>> M mergeTables(M earlier, M later) {
+        
+        if ( earlier.size() >= later.size() ) {
+            later.rowMap().forEach( (row, cells) -> earlier.row(row).putAll(cells) );
+            return earlier;
+        }
+        
+        earlier.rowMap().forEach( (row, cells) -> {
+            final Map<C, V> laterCells = later.row(row);
+            cells.forEach(laterCells::putIfAbsent);
+        } );
+        
+        return later;
+    }
+    
+    // Appends the value lists of the later map to the ones of the earlier map, relinking the lists 
+    // of the keys missing from the earlier map as they are.
+    private static <K, V> HashMap<K, List<V>> mergeValueLists(HashMap<K, List<V>> earlier, HashMap<K, List<V>> later) {
+        
+        later.forEach( 
+                (key, values) -> earlier.merge( key, values, (earlierValues, laterValues) -> { earlierValues.addAll(laterValues); return earlierValues; } ) 
+        );
+        return earlier;
+    }
+    
+    private static <K, V> void mergeIntoBiMap(
+            BiMap<K, V> biMap, K key, V value, BinaryOperator<V> mergeFunction) {
+        
+        requireNonNull(key);
+        requireNonNull(value);
+        
+        final V previousValue = biMap.get(key);
+        final V newValue = previousValue == null ? value : requireNonNull( mergeFunction.apply(previousValue, value) );
+        
+        if ( !newValue.equals(previousValue) ) {
+            final K boundKey = biMap.inverse().get(newValue);
+            if (boundKey != null) {
+                throw conflictingEntries("value", key, newValue, boundKey, newValue);
+            }
+        }
+        
+        biMap.put(key, newValue);
+    }
+    
+    // A BiMap passed here rejects duplicate values by itself, with an IllegalArgumentException.
+    private static <K, V> void putUniqueKey(Map<K, V> map, K key, V value) {
+        
+        requireNonNull(key);
+        requireNonNull(value);
+        
+        final V previousValue = map.putIfAbsent(key, value);
+        if (previousValue != null) {
+            throw conflictingEntries("key", key, previousValue, key, value);
+        }
+    }
+    
+    private static <K, V, M extends Map<K, V>> M mergeUniqueKeys(M map1, M map2) {
+        
+        if ( map1.size() < map2.size() ) {
+            map1.forEach( (key, value) -> putUniqueKey(map2, key, value) );
+            return map2;
+        }
+        
+        map2.forEach( (key, value) -> putUniqueKey(map1, key, value) );
+        return map1;
+    }
+    
+    private static IllegalArgumentException conflictingEntries(
+            String conflictingPart, Object key1, Object value1, Object key2, Object value2) {
+        
+        return new IllegalArgumentException(
+                String.format(
+                        "Multiple entries with same %s: %s=%s and %s=%s", 
+                        conflictingPart, key1, value1, key2, value2
+                )
+        );
+    }
+    
+    // Arrays.parallelSort is a stable parallel merge sort, so the first of the equal elements 
+    // stays first; ImmutableSortedSet.copyOf keeps the first one as well. The copy made by the 
+    // latter sorts the already sorted array in linear time.
+    @SuppressWarnings("unchecked")
+    private static <T> ImmutableSortedSet<T> sortedSetOf(
+            ElementBuffer<T> elements, Comparator<? super T> comparator) {
+        
+        final T[] array = (T[]) elements.toArray();
+        Arrays.parallelSort(array, comparator);
+        
+        int size = 0;
+        for (int i = 0; i < array.length; i++) {
+            if ( size == 0 || comparator.compare(array[size - 1], array[i]) != 0 ) {
+                array[size++] = array[i];
+            }
+        }
+        
+        return ImmutableSortedSet.copyOf( comparator, Arrays.asList(array).subList(0, size) );
+    }
+    
+    // The stable sort keeps the entries of the same key in the encounter order, so the last entry 
+    // of each run of equal keys is the one to keep. The kept entries are copied as they are: a 
+    // builder would wrap each of them into an entry of its own, and its sort of the already sorted 
+    // entries, unlike the one of ImmutableSortedMap.copyOf, would not be linear.
+    private static <K, V> ImmutableSortedMap<K, V> sortedMapOf(
+            EntryBuffer<K, V> entries, Comparator<? super K> comparator) {
+        
+        final Map.Entry<K, V>[] array = entries.toEntryArray();
+        Arrays.parallelSort( array, (entry1, entry2) -> comparator.compare(entry1.getKey(), entry2.getKey()) );
+        
+        int size = 0;
+        for (int i = 0; i < array.length; i++) {
+            if ( i + 1 == array.length || comparator.compare(array[i].getKey(), array[i + 1].getKey()) != 0 ) {
+                array[size++] = array[i];
+            }
+        }
+        
+        final List<Map.Entry<K, V>> sorted = Arrays.asList(array).subList(0, size);
+        
+        return ImmutableSortedMap.copyOf( new AbstractMap<K, V>() {
+            
+            @Override
+            public Set<Map.Entry<K, V>> entrySet() {
+                
+                return new AbstractSet<Map.Entry<K, V>>() {
+                    
+                    @Override
+                    public Iterator<Map.Entry<K, V>> iterator() {
+                        return sorted.iterator();
+                    }
+                    
+                    @Override
+                    public int size() {
+                        return sorted.size();
+                    }
+                };
+            }
+        }, comparator );
+    }
+    
+    // Keeps the set within the bound by evicting its last element; an element which would be 
+    // evicted right away is not added at all.
+    private static <T> void addBounded(TreeSet<T> set, T element, int k) {
+        
+        if ( set.size() < k ) {
+            set.add(element);
+        } else if ( k > 0 && set.comparator().compare(element, set.last()) < 0 && set.add(element) ) {
+            set.pollLast();
+        }
+    }
+    
+    // The elements of the earlier set are kept in case of ties, as they would be by sequential 
+    // adds, so the later set is added to the earlier one whatever their sizes are; either of them 
+    // is bounded by k anyway.
+    private static <T> TreeSet<T> mergeBounded(TreeSet<T> earlier, TreeSet<T> later, int k) {
+        
+        for (final T element : later) {
+            if ( earlier.size() == k && earlier.comparator().compare(element, earlier.last()) >= 0 ) {
+                break;
+            }
+            addBounded(earlier, element, k);
+        }
+        
+        return earlier;
+    }
+    
+    private static <T> Sample<T> weightedSampleOf(T element, double weight) {
+        
+        checkArgument(
+                weight > 0 && weight < Double.POSITIVE_INFINITY, 
+                "The weight must be positive and finite, got %s for %s.", weight, element
         );
+        
+        // 1 - nextDouble() is in (0, 1], so the logarithm is finite
+        final double u = 1.0 - ThreadLocalRandom.current().nextDouble();
+        
+        return new Sample<>(-Math.log(u) / weight, element);
+    }
+    
+    private static <T> ImmutableList<T> elementsOf(BoundedHeap<Sample<T>> heap) {
+        
+        final ImmutableList.Builder<T> builder = ImmutableList.builder();
+        heap.forEach( sample -> builder.add(sample.element) );
+        
+        return builder.build();
+    }
+    
+    // An element of the stream paired with the random priority of its sampling.
+    private static final class Sample<T> {
+        
+        static final Comparator<Sample<?>> BY_PRIORITY = 
+                (sample1, sample2) -> Double.compare(sample1.priority, sample2.priority);
+        
+        final double priority;
+        final T element;
+        
+        Sample(double priority, T element) {
+            this.priority = priority;
+            this.element = element;
+        }
     }
     
 }
\ No newline at end of file
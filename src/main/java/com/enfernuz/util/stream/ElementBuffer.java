@@ -0,0 +1,168 @@
+package com.enfernuz.util.stream;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ *
+ * An append-only, order-preserving buffer of elements used as the accumulation container of the
+ * list collectors.
+ *
+ * The elements are stored in a chain of array segments, so appending never copies the already
+ * buffered elements and two buffers are concatenated in constant time by linking their segment
+ * chains. {@link #toArray()} flattens the chain into a new array, which is the only copy of the
+ * elements ever made.
+ *
+ * Instances are not thread-safe.
+ *
+ * Created by A. Nerushev
+ */
+final class ElementBuffer<T> extends AbstractCollection<T> {
+
+    static final int DEFAULT_FIRST_SEGMENT_CAPACITY = 16;
+    private static final int MAX_SEGMENT_CAPACITY = 1 << 16;
+
+    private static final class Segment {
+
+        final Object[] elements;
+        int size;
+        Segment next;
+
+        Segment(int capacity) {
+            this.elements = new Object[capacity];
+        }
+    }
+
+    private final int firstSegmentCapacity;
+
+    private Segment head;
+    private Segment tail;
+    private int size;
+
+    /**
+     * Constructs an empty buffer.
+     */
+    ElementBuffer() {
+        this(DEFAULT_FIRST_SEGMENT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty buffer, the first segment of which will have the given capacity. The
+     * segment is allocated lazily, upon the first append.
+     * @param firstSegmentCapacity the capacity of the first segment
+     * @throws IllegalArgumentException if the passed argument is negative
+     */
+    ElementBuffer(int firstSegmentCapacity) throws IllegalArgumentException {
+
+        checkArgument(firstSegmentCapacity >= 0, "The capacity must not be negative.");
+
+        this.firstSegmentCapacity = Math.max(firstSegmentCapacity, 1);
+    }
+
+    /**
+     * Appends an element to the buffer.
+     * @param element an element to be appended; may be a null reference
+     * @return {@code true}
+     */
+    @Override
+    public boolean add(T element) {
+
+        if (tail == null) {
+            head = tail = new Segment(firstSegmentCapacity);
+        } else if (tail.size == tail.elements.length) {
+            final Segment segment = new Segment( Math.min(size, MAX_SEGMENT_CAPACITY) );
+            tail.next = segment;
+            tail = segment;
+        }
+
+        tail.elements[tail.size++] = element;
+        size++;
+
+        return true;
+    }
+
+    /**
+     * Moves all the elements of the given buffer to the end of this buffer. The given buffer must
+     * not be used afterwards.
+     * @param other a buffer to be appended to this buffer
+     * @return this buffer
+     */
+    ElementBuffer<T> append(ElementBuffer<T> other) {
+
+        if (other.head == null) {
+            return this;
+        }
+
+        if (head == null) {
+            head = other.head;
+        } else {
+            tail.next = other.head;
+        }
+
+        tail = other.tail;
+        size += other.size;
+
+        return this;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Object[] toArray() {
+
+        // the presized sequential case
+        if (head != null && head == tail) {
+            return Arrays.copyOf(head.elements, size);
+        }
+
+        final Object[] array = new Object[size];
+
+        int offset = 0;
+        for (Segment segment = head; segment != null; segment = segment.next) {
+            System.arraycopy(segment.elements, 0, array, offset, segment.size);
+            offset += segment.size;
+        }
+
+        return array;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+
+        return new Iterator<T>() {
+
+            private Segment segment = head;
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+
+                while (segment != null && index == segment.size) {
+                    segment = segment.next;
+                    index = 0;
+                }
+
+                return segment != null;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+
+                if ( !hasNext() ) {
+                    throw new NoSuchElementException();
+                }
+
+                return (T) segment.elements[index++];
+            }
+        };
+    }
+
+}
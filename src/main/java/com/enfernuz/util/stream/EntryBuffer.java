@@ -0,0 +1,245 @@
+package com.enfernuz.util.stream;
+
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ *
+ * An append-only buffer of key-value pairs used as the accumulation container of the immutable map
+ * collectors.
+ *
+ * The pairs are stored interleaved in a chain of array segments, so appending never copies the
+ * already buffered pairs and two buffers are concatenated in constant time by linking their
+ * segment chains. No hashing is done on the way in: the keys are hashed by the builder of the
+ * result map, and only if the builder finds duplicate keys are they hashed once more, by
+ * {@link #collapseDuplicateKeys()}, which indexes the pairs in place instead of copying them into a
+ * map.
+ *
+ * Instances are not thread-safe.
+ *
+ * Created by A. Nerushev
+ */
+final class EntryBuffer<K, V> {
+
+    private static final int FIRST_SEGMENT_CAPACITY = 16;
+    private static final int MAX_SEGMENT_CAPACITY = 1 << 16;
+    private static final int MAX_INDEX_SIZE = 1 << 30;
+
+    private static final class Segment {
+
+        final Object[] slots;
+        int size;
+        Segment next;
+
+        Segment(int capacity) {
+            this.slots = new Object[capacity << 1];
+        }
+
+        boolean isFull() {
+            return (size << 1) == slots.length;
+        }
+    }
+
+    private final int firstSegmentCapacity;
+
+    private Segment head;
+    private Segment tail;
+    private int size;
+
+    /**
+     * Constructs an empty buffer.
+     */
+    EntryBuffer() {
+        this(FIRST_SEGMENT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty buffer, the first segment of which will hold the given number of pairs.
+     * The segment is allocated lazily, upon the first put.
+     * @param firstSegmentCapacity the number of pairs the first segment will hold
+     * @throws IllegalArgumentException if the passed argument is negative
+     */
+    EntryBuffer(int firstSegmentCapacity) throws IllegalArgumentException {
+
+        checkArgument(firstSegmentCapacity >= 0, "The capacity must not be negative.");
+
+        this.firstSegmentCapacity = Math.max(firstSegmentCapacity, 1);
+    }
+
+    /**
+     * Appends a key-value pair to the buffer.
+     * @param key a key
+     * @param value a value
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    void put(K key, V value) throws NullPointerException {
+
+        requireNonNull(key);
+        requireNonNull(value);
+
+        if (tail == null) {
+            head = tail = new Segment(firstSegmentCapacity);
+        } else if ( tail.isFull() ) {
+            final Segment segment = new Segment( Math.min(tail.size << 1, MAX_SEGMENT_CAPACITY) );
+            tail.next = segment;
+            tail = segment;
+        }
+
+        final int index = tail.size << 1;
+        tail.slots[index] = key;
+        tail.slots[index + 1] = value;
+        tail.size++;
+        size++;
+    }
+
+    /**
+     * Moves all the pairs of the given buffer to the end of this buffer. The given buffer must not
+     * be used afterwards.
+     * @param other a buffer to be appended to this buffer
+     * @return this buffer
+     */
+    EntryBuffer<K, V> append(EntryBuffer<K, V> other) {
+
+        if (other.head == null) {
+            return this;
+        }
+
+        if (head == null) {
+            head = other.head;
+        } else {
+            tail.next = other.head;
+        }
+
+        tail = other.tail;
+        size += other.size;
+
+        return this;
+    }
+
+    /**
+     * Collapses the pairs of equal keys into a single pair, which takes the position of the first
+     * of them and the value of the last, just as with sequential puts into a
+     * {@code java.util.LinkedHashMap}. The pairs are indexed by a temporary open-addressing table
+     * of references to the segments and offsets in them, so no entry objects are allocated.
+     * @return {@code true} if any pairs have been collapsed, {@code false} otherwise
+     * @throws IllegalStateException if the buffer holds more pairs than the table can index
+     */
+    boolean collapseDuplicateKeys() throws IllegalStateException {
+
+        if (size < 2) {
+            return false;
+        }
+
+        if (size >= MAX_INDEX_SIZE) {
+            throw new IllegalStateException("Too many pairs to index: " + size + ".");
+        }
+
+        // a power of two larger than the number of pairs, at least twice as large unless capped
+        final int tableSize = (int) Math.min(Long.highestOneBit(size) << 2, MAX_INDEX_SIZE);
+        final int mask = tableSize - 1;
+        final Object[][] tableSlots = new Object[tableSize][];
+        final int[] tableOffsets = new int[tableSize];
+
+        boolean collapsed = false;
+        for (Segment segment = head; segment != null; segment = segment.next) {
+
+            final Object[] slots = segment.slots;
+            final int length = segment.size << 1;
+            for (int i = 0; i < length; i += 2) {
+
+                final Object key = slots[i];
+                if (key == null) {
+                    continue;
+                }
+
+                for (int t = smear( key.hashCode() ) & mask; ; t = (t + 1) & mask) {
+
+                    final Object[] firstSlots = tableSlots[t];
+                    if (firstSlots == null) {
+                        tableSlots[t] = slots;
+                        tableOffsets[t] = i;
+                        break;
+                    }
+
+                    final int first = tableOffsets[t];
+                    if ( firstSlots[first].equals(key) ) {
+                        firstSlots[first + 1] = slots[i + 1];
+                        slots[i] = null;
+                        slots[i + 1] = null;
+                        size--;
+                        collapsed = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        return collapsed;
+    }
+
+    /**
+     * Returns the number of pairs in the buffer.
+     * @return the number of pairs in the buffer
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Performs the given action on each pair of the buffer in the order of their appending. The
+     * pairs collapsed by {@link #collapseDuplicateKeys()} are skipped.
+     * @param action an action to be performed
+     */
+    @SuppressWarnings("unchecked")
+    void forEach(BiConsumer<? super K, ? super V> action) {
+
+        for (Segment segment = head; segment != null; segment = segment.next) {
+
+            final Object[] slots = segment.slots;
+            final int length = segment.size << 1;
+            for (int i = 0; i < length; i += 2) {
+                if (slots[i] != null) {
+                    action.accept( (K) slots[i], (V) slots[i + 1] );
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a new array of the pairs of the buffer in the order of their appending.
+     * @return a new array of the pairs of the buffer
+     */
+    @SuppressWarnings("unchecked")
+    Map.Entry<K, V>[] toEntryArray() {
+
+        final Map.Entry<K, V>[] entries = (Map.Entry<K, V>[]) new Map.Entry<?, ?>[size];
+
+        int index = 0;
+        for (Segment segment = head; segment != null; segment = segment.next) {
+
+            final Object[] slots = segment.slots;
+            final int length = segment.size << 1;
+            for (int i = 0; i < length; i += 2) {
+                if (slots[i] != null) {
+                    entries[index++] = Maps.immutableEntry( (K) slots[i], (V) slots[i + 1] );
+                }
+            }
+        }
+
+        return entries;
+    }
+
+    // spreads the higher bits of the hash codes over the lower ones the table is indexed by
+    private static int smear(int hashCode) {
+
+        final int h = hashCode * 0x9E3779B9;
+
+        return h ^ (h >>> 16);
+    }
+
+}
@@ -0,0 +1,220 @@
+package com.enfernuz.util.stream;
+
+import java.util.ArrayDeque;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+
+/**
+ *
+ * A collector running the accumulator of the collector it wraps on an executor, so that blocking
+ * mappers do not hold up the threads of the stream.
+ *
+ * The stream threads only cut the elements into batches and hand each full batch to the executor,
+ * which accumulates it into a container of the wrapped collector of its own. Each accumulation
+ * container keeps the batches it has submitted in the encounter order and folds the containers of
+ * the finished ones into a single container of the wrapped collector as it goes. A batch counts
+ * against the bound of the batches in flight until it is folded, so once the bound is reached the
+ * stream thread waits for the oldest batch, and neither the pending elements nor the containers
+ * of the batches pile up when the executor falls behind. The finisher waits for the last batches,
+ * so the result is the same as the one of the wrapped collector.
+ *
+ * All the state of a reduction lives in its containers, so concurrent reductions with the same
+ * collector do not hold up each other.
+ *
+ * Created by A. Nerushev
+ */
+final class ExecutorCollector<T, A, R> implements Collector<T, ExecutorCollector.Batches<T, A>, R> {
+
+    private final Collector<T, A, R> collector;
+    private final BinaryOperator<A> combiner;
+    private final Executor executor;
+    private final int maxInFlightBatches;
+    private final int batchSize;
+    private final Set<Characteristics> characteristics;
+
+    /**
+     * Constructs a collector wrapping the given one.
+     * @param collector a collector, the accumulator of which is to be run on the executor
+     * @param executor an executor
+     * @param maxInFlightBatches the maximum number of batches submitted to the executor by an
+     * accumulation container and not yet folded
+     * @param batchSize the number of elements per batch
+     */
+    ExecutorCollector(Collector<T, A, R> collector, Executor executor, int maxInFlightBatches, int batchSize) {
+
+        this.collector = collector;
+        this.combiner = collector.combiner();
+        this.executor = executor;
+        this.maxInFlightBatches = maxInFlightBatches;
+        this.batchSize = batchSize;
+
+        // the batches are accumulated into containers of their own, and the result is always
+        // made by the finisher of the wrapped collector
+        final EnumSet<Characteristics> characteristics = EnumSet.noneOf(Characteristics.class);
+        if ( collector.characteristics().contains(Characteristics.UNORDERED) ) {
+            characteristics.add(Characteristics.UNORDERED);
+        }
+        this.characteristics = characteristics;
+    }
+
+    @Override
+    public Supplier<Batches<T, A>> supplier() {
+        return () -> new Batches<>(this);
+    }
+
+    @Override
+    public BiConsumer<Batches<T, A>, T> accumulator() {
+        return Batches::add;
+    }
+
+    @Override
+    public BinaryOperator<Batches<T, A>> combiner() {
+        return Batches::append;
+    }
+
+    @Override
+    public Function<Batches<T, A>, R> finisher() {
+
+        final Function<A, R> finisher = collector.finisher();
+
+        return batches -> {
+
+            batches.flush();
+            batches.foldAll();
+
+            return finisher.apply( batches.folded == null ? collector.supplier().get() : batches.folded );
+        };
+    }
+
+    @Override
+    public Set<Characteristics> characteristics() {
+        return characteristics;
+    }
+
+    private CompletableFuture<A> submit(Object[] elements, int count) {
+
+        final Supplier<A> supplier = collector.supplier();
+        final BiConsumer<A, T> accumulator = collector.accumulator();
+
+        return CompletableFuture.supplyAsync( () -> accumulate(supplier, accumulator, elements, count), executor );
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T, A> A accumulate(Supplier<A> supplier, BiConsumer<A, T> accumulator, Object[] elements, int count) {
+
+        final A container = supplier.get();
+        for (int i = 0; i < count; i++) {
+            accumulator.accept( container, (T) elements[i] );
+        }
+
+        return container;
+    }
+
+    // CompletableFuture waits through ForkJoinPool.managedBlock, so a fork-join pool running the
+    // stream makes up for the worker waiting here; the failure of the accumulator is rethrown as
+    // it is, as the wrapped collector would have
+    private static <A> A join(CompletableFuture<A> batch) {
+
+        try {
+            return batch.join();
+        } catch (CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * An accumulation container: the container of the wrapped collector the finished batches have
+     * been folded into, the batches submitted to the executor and not yet folded, in the encounter
+     * order, and the batch being filled.
+     */
+    static final class Batches<T, A> {
+
+        private final ExecutorCollector<T, A, ?> owner;
+        private final ArrayDeque<CompletableFuture<A>> inFlight = new ArrayDeque<>();
+
+        private A folded;
+
+        private Object[] pending;
+        private int pendingCount;
+
+        private Batches(ExecutorCollector<T, A, ?> owner) {
+            this.owner = owner;
+        }
+
+        private void add(T element) {
+
+            if (pending == null) {
+                pending = new Object[owner.batchSize];
+            }
+
+            pending[pendingCount++] = element;
+            if (pendingCount == pending.length) {
+                flush();
+            }
+        }
+
+        private void flush() {
+
+            if (pendingCount == 0) {
+                return;
+            }
+
+            // folds the batches finished so far, then waits for the oldest one while at the bound
+            while ( !inFlight.isEmpty() && inFlight.peekFirst().isDone() ) {
+                foldFirst();
+            }
+            while (inFlight.size() >= owner.maxInFlightBatches) {
+                foldFirst();
+            }
+
+            inFlight.addLast( owner.submit(pending, pendingCount) );
+            pending = null;
+            pendingCount = 0;
+        }
+
+        private void foldFirst() {
+
+            final A container = join( inFlight.pollFirst() );
+            folded = folded == null ? container : owner.combiner.apply(folded, container);
+        }
+
+        private void foldAll() {
+
+            while ( !inFlight.isEmpty() ) {
+                foldFirst();
+            }
+        }
+
+        // the batches of this container precede the ones of the later container, so they are
+        // folded first, and the later container is adopted with its batches still in flight
+        private Batches<T, A> append(Batches<T, A> later) {
+
+            flush();
+            foldAll();
+
+            if (later.folded != null) {
+                folded = folded == null ? later.folded : owner.combiner.apply(folded, later.folded);
+            }
+            inFlight.addAll(later.inFlight);
+            pending = later.pending;
+            pendingCount = later.pendingCount;
+
+            return this;
+        }
+    }
+
+}
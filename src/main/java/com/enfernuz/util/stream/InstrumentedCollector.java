@@ -0,0 +1,231 @@
+package com.enfernuz.util.stream;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+
+/**
+ *
+ * A collector measuring the phases of the collector it wraps and reporting the measurements of
+ * each reduction to a {@link CollectorMetricsSink} once the reduction is finished.
+ *
+ * The measurements travel with the accumulation containers: each container of the wrapped
+ * collector is paired with the counters of its own, the counters of two containers are added up
+ * by the combiner, and the container reaching the finisher carries the counters of the whole
+ * reduction. So a collector instance may run any number of reductions at once, and a concurrent
+ * collector, whose single container is updated by many threads, counts its elements and times its
+ * accumulator with {@link LongAdder}s.
+ *
+ * The accumulator is timed on every call, which costs two {@link System#nanoTime()} calls per
+ * element. Its lock wait is only sampled: one call in {@value #LOCK_WAIT_SAMPLING_RATE} also
+ * reads the CPU time of the current thread, and the wall time of the call the thread has not
+ * spent on CPU, scaled by the sampling rate, is taken for the time spent waiting for a monitor.
+ *
+ * Created by A. Nerushev
+ */
+final class InstrumentedCollector<T, A, R> implements Collector<T, InstrumentedCollector.Container<A>, R> {
+
+    private static final int LOCK_WAIT_SAMPLING_RATE = 1024;
+
+    private final String name;
+    private final Collector<T, A, R> collector;
+    private final CollectorMetricsSink sink;
+    private final Set<Characteristics> characteristics;
+
+    /**
+     * Constructs a collector wrapping the given one.
+     * @param name the name of the collector to be reported
+     * @param collector a collector to be measured
+     * @param sink a sink of the measurements
+     */
+    InstrumentedCollector(String name, Collector<T, A, R> collector, CollectorMetricsSink sink) {
+
+        this.name = name;
+        this.collector = collector;
+        this.sink = sink;
+
+        // the finisher reports the measurements, so it has to be called even for an identity one
+        final EnumSet<Characteristics> characteristics = EnumSet.noneOf(Characteristics.class);
+        characteristics.addAll( collector.characteristics() );
+        characteristics.remove(Characteristics.IDENTITY_FINISH);
+        this.characteristics = characteristics;
+    }
+
+    @Override
+    public Supplier<Container<A>> supplier() {
+
+        final Supplier<A> supplier = collector.supplier();
+
+        return () -> {
+
+            final long start = System.nanoTime();
+            final A container = supplier.get();
+
+            return new Container<>( container, System.nanoTime() - start );
+        };
+    }
+
+    @Override
+    public BiConsumer<Container<A>, T> accumulator() {
+
+        final BiConsumer<A, T> accumulator = collector.accumulator();
+
+        return (container, t) -> {
+
+            if ( Threads.CPU_TIME_MEASURED && ThreadLocalRandom.current().nextInt(LOCK_WAIT_SAMPLING_RATE) == 0 ) {
+
+                final long cpuStart = Threads.MX_BEAN.getCurrentThreadCpuTime();
+                final long start = System.nanoTime();
+                accumulator.accept(container.container, t);
+                final long elapsed = System.nanoTime() - start;
+                final long offCpu = elapsed - ( Threads.MX_BEAN.getCurrentThreadCpuTime() - cpuStart );
+
+                container.accumulatorNanos.add(elapsed);
+                if (offCpu > 0) {
+                    container.lockWaitNanos.add(offCpu * LOCK_WAIT_SAMPLING_RATE);
+                }
+            } else {
+
+                final long start = System.nanoTime();
+                accumulator.accept(container.container, t);
+                container.accumulatorNanos.add( System.nanoTime() - start );
+            }
+
+            container.elements.increment();
+        };
+    }
+
+    @Override
+    public BinaryOperator<Container<A>> combiner() {
+
+        final BinaryOperator<A> combiner = collector.combiner();
+
+        return (container1, container2) -> {
+
+            final long start = System.nanoTime();
+            final A combined = combiner.apply(container1.container, container2.container);
+            final long elapsed = System.nanoTime() - start;
+
+            return container1.combine(container2, combined, elapsed);
+        };
+    }
+
+    @Override
+    public Function<Container<A>, R> finisher() {
+
+        final Function<A, R> finisher = collector.finisher();
+
+        return container -> {
+
+            final long allocationStart = Threads.allocatedBytes();
+            final long start = System.nanoTime();
+            final R result = finisher.apply(container.container);
+            final long elapsed = System.nanoTime() - start;
+            final long allocated = Threads.ALLOCATION_MEASURED ? Threads.allocatedBytes() - allocationStart : -1;
+
+            final long elements = container.elements.sum();
+            sink.record(
+                    new CollectorMetrics(
+                            name,
+                            elements,
+                            container.containerCount,
+                            Math.max(container.peakSize, elements),
+                            container.supplierNanos,
+                            container.accumulatorNanos.sum(),
+                            container.combinerNanos,
+                            elapsed,
+                            allocated,
+                            container.lockWaitNanos.sum()
+                    )
+            );
+
+            return result;
+        };
+    }
+
+    @Override
+    public Set<Characteristics> characteristics() {
+        return characteristics;
+    }
+
+    /**
+     * The thread MXBean and the measurements it supports, initialized by the first reduction run
+     * with an instrumented collector rather than along with the collectors.
+     */
+    private static final class Threads {
+
+        static final ThreadMXBean MX_BEAN = ManagementFactory.getThreadMXBean();
+
+        static final boolean CPU_TIME_MEASURED =
+                MX_BEAN.isCurrentThreadCpuTimeSupported() && MX_BEAN.isThreadCpuTimeEnabled();
+
+        static final boolean ALLOCATION_MEASURED = isAllocationMeasured();
+
+        private static boolean isAllocationMeasured() {
+
+            if ( !(MX_BEAN instanceof com.sun.management.ThreadMXBean) ) {
+                return false;
+            }
+
+            final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) MX_BEAN;
+
+            return threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled();
+        }
+
+        static long allocatedBytes() {
+
+            return ALLOCATION_MEASURED
+                    ? ( (com.sun.management.ThreadMXBean) MX_BEAN ).getThreadAllocatedBytes( Thread.currentThread().getId() )
+                    : 0;
+        }
+    }
+
+    /**
+     * An accumulation container of the wrapped collector paired with its measurements.
+     */
+    static final class Container<A> {
+
+        private A container;
+
+        private final LongAdder elements = new LongAdder();
+        private final LongAdder accumulatorNanos = new LongAdder();
+        private final LongAdder lockWaitNanos = new LongAdder();
+
+        // only ever updated by the combiner, which is never called concurrently on a container
+        private long containerCount = 1;
+        private long supplierNanos;
+        private long combinerNanos;
+        private long peakSize;
+
+        private Container(A container, long supplierNanos) {
+            this.container = container;
+            this.supplierNanos = supplierNanos;
+        }
+
+        private Container<A> combine(Container<A> other, A combined, long combinerNanos) {
+
+            final long size = elements.sum();
+            final long otherSize = other.elements.sum();
+
+            container = combined;
+            elements.add(otherSize);
+            accumulatorNanos.add( other.accumulatorNanos.sum() );
+            lockWaitNanos.add( other.lockWaitNanos.sum() );
+            containerCount += other.containerCount;
+            supplierNanos += other.supplierNanos;
+            this.combinerNanos += other.combinerNanos + combinerNanos;
+            peakSize = Math.max( Math.max(peakSize, other.peakSize), Math.max(size, otherSize) );
+
+            return this;
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.enfernuz.util.stream;
+
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+import java.util.stream.LongStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *
+ * The {@code long} counterpart of {@code java.util.stream.Collector}: a mutable reduction of a
+ * {@link java.util.stream.LongStream} which never boxes the elements of the stream.
+ *
+ * The supplier, the accumulator and the combiner are exactly the arguments expected by
+ * {@link java.util.stream.LongStream#collect(Supplier, ObjLongConsumer, BiConsumer)}, so the
+ * reduction is done by the stream framework and works on parallel streams the same way.
+ *
+ * Created by A. Nerushev
+ * @param <A> the mutable accumulation type of the reduction operation
+ * @param <R> the result type of the reduction operation
+ */
+public interface LongCollector<A, R> {
+
+    /**
+     * Returns a function that creates a new mutable result container.
+     * @return a function that creates a new mutable result container
+     */
+    Supplier<A> supplier();
+
+    /**
+     * Returns a function that folds a value into a mutable result container.
+     * @return a function that folds a value into a mutable result container
+     */
+    ObjLongConsumer<A> accumulator();
+
+    /**
+     * Returns a function that folds the second of two partial result containers into the first.
+     * @return a function that folds two partial result containers into one
+     */
+    BiConsumer<A, A> combiner();
+
+    /**
+     * Returns a function that transforms the final result container into the result.
+     * @return a function that transforms the final result container into the result
+     */
+    Function<A, R> finisher();
+
+    /**
+     * Performs the reduction of the given stream.
+     * @param stream a stream to be reduced
+     * @return the result of the reduction
+     * @throws NullPointerException if the passed argument is a null reference
+     */
+    default R collect(LongStream stream) throws NullPointerException {
+        return finisher().apply( stream.collect(supplier(), accumulator(), combiner()) );
+    }
+
+    /**
+     * Creates a collector from the given functions.
+     * @param <A> the mutable accumulation type of the reduction operation
+     * @param <R> the result type of the reduction operation
+     * @param supplier the supplier function of the collector
+     * @param accumulator the accumulator function of the collector
+     * @param combiner the combiner function of the collector
+     * @param finisher the finisher function of the collector
+     * @return a new collector
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    static <A, R> LongCollector<A, R> of(
+            Supplier<A> supplier,
+            ObjLongConsumer<A> accumulator,
+            BiConsumer<A, A> combiner,
+            Function<A, R> finisher) throws NullPointerException {
+
+        requireNonNull(supplier);
+        requireNonNull(accumulator);
+        requireNonNull(combiner);
+        requireNonNull(finisher);
+
+        return new LongCollector<A, R>() {
+
+            @Override
+            public Supplier<A> supplier() {
+                return supplier;
+            }
+
+            @Override
+            public ObjLongConsumer<A> accumulator() {
+                return accumulator;
+            }
+
+            @Override
+            public BiConsumer<A, A> combiner() {
+                return combiner;
+            }
+
+            @Override
+            public Function<A, R> finisher() {
+                return finisher;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,260 @@
+package com.enfernuz.util.stream;
+
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multiset;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *
+ * A concurrent accumulation container of the immutable multimap collectors: a
+ * {@link ConcurrentHashMap} of keys to value collections, each collection guarded by its own
+ * monitor.
+ *
+ * Threads putting values of different keys never contend, so a concurrent collection only
+ * serializes the puts of the same key. When the stream framework gives each worker a buffer of
+ * its own instead, the monitors are never contended at all, and merging two buffers relinks the
+ * value collections of the keys missing from the earlier buffer instead of copying them.
+ *
+ * The buffer is finished through a read-only multimap view over the value collections: the
+ * {@code copyOf} methods of the immutable multimaps copy the value collections of a multimap
+ * which is not immutable key by key, so each value is copied once, whereas an immutable multimap
+ * builder would collect the values into lists of its own first and copy those again.
+ *
+ * Created by A. Nerushev
+ */
+final class MultimapBuffer<K, V, C extends Collection<V>> {
+
+    private final ConcurrentHashMap<K, C> map;
+    private final Supplier<? extends C> valuesFactory;
+
+    /**
+     * Constructs an empty buffer.
+     * @param valuesFactory a factory of the value collections of the keys
+     */
+    MultimapBuffer(Supplier<? extends C> valuesFactory) {
+        this.map = new ConcurrentHashMap<>();
+        this.valuesFactory = valuesFactory;
+    }
+
+    /**
+     * Constructs an empty buffer, the map of which is presized for the given number of keys, so
+     * that it is never resized while that many keys are put.
+     * @param valuesFactory a factory of the value collections of the keys
+     * @param expectedKeys the expected number of the distinct keys
+     * @throws IllegalArgumentException if the expected number of keys is negative
+     */
+    MultimapBuffer(Supplier<? extends C> valuesFactory, int expectedKeys) throws IllegalArgumentException {
+        this.map = new ConcurrentHashMap<>(expectedKeys);
+        this.valuesFactory = valuesFactory;
+    }
+
+    /**
+     * Puts a key-value pair into the buffer. May be called concurrently.
+     * @param key a key
+     * @param value a value
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    void put(K key, V value) throws NullPointerException {
+
+        requireNonNull(value);
+
+        C values = map.get(key);
+        if (values == null) {
+            values = map.computeIfAbsent( key, k -> valuesFactory.get() );
+        }
+
+        synchronized (values) {
+            values.add(value);
+        }
+    }
+
+    /**
+     * Merges the pairs of the given buffer, which follows this buffer in the encounter order, into
+     * this buffer. The given buffer must not be used afterwards.
+     * @param later a buffer to be merged into this buffer
+     * @return this buffer
+     */
+    MultimapBuffer<K, V, C> merge(MultimapBuffer<K, V, C> later) {
+
+        later.map.forEach( (key, values) ->
+                map.merge( key, values, (earlierValues, laterValues) -> { earlierValues.addAll(laterValues); return earlierValues; } )
+        );
+
+        return this;
+    }
+
+    /**
+     * Returns a read-only multimap view over the pairs of the buffer, to be copied into an
+     * immutable multimap once the accumulation is over.
+     * @return a read-only multimap view over the pairs of the buffer
+     */
+    Multimap<K, V> asMultimap() {
+        return new View();
+    }
+
+    private final class View implements Multimap<K, V> {
+
+        @Override
+        public int size() {
+
+            int size = 0;
+            for (final C values : map.values()) {
+                size += values.size();
+            }
+
+            return size;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            // a key is only ever put along with a value
+            return map.isEmpty();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key != null && map.containsKey(key);
+        }
+
+        @Override
+        public boolean containsValue(Object value) {
+            return values().contains(value);
+        }
+
+        @Override
+        public boolean containsEntry(Object key, Object value) {
+
+            final C values = key == null ? null : map.get(key);
+
+            return values != null && values.contains(value);
+        }
+
+        @Override
+        public boolean put(K key, V value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean remove(Object key, Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean putAll(K key, Iterable<? extends V> values) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean putAll(Multimap<? extends K, ? extends V> multimap) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Collection<V> replaceValues(K key, Iterable<? extends V> values) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Collection<V> removeAll(Object key) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void clear() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Collection<V> get(K key) {
+            return Collections.unmodifiableCollection( containsKey(key) ? map.get(key) : valuesFactory.get() );
+        }
+
+        @Override
+        public Set<K> keySet() {
+            return Collections.unmodifiableSet( map.keySet() );
+        }
+
+        @Override
+        public Multiset<K> keys() {
+
+            final ImmutableMultiset.Builder<K> keys = ImmutableMultiset.builder();
+            map.forEach( (key, values) -> keys.addCopies( key, values.size() ) );
+
+            return keys.build();
+        }
+
+        @Override
+        public Collection<V> values() {
+
+            return new AbstractCollection<V>() {
+
+                @Override
+                public Iterator<V> iterator() {
+                    return Iterators.unmodifiableIterator( Iterables.concat( map.values() ).iterator() );
+                }
+
+                @Override
+                public int size() {
+                    return View.this.size();
+                }
+            };
+        }
+
+        @Override
+        public Collection<Map.Entry<K, V>> entries() {
+
+            return new AbstractCollection<Map.Entry<K, V>>() {
+
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return Iterables.concat( Iterables.transform(
+                            map.entrySet(),
+                            (Map.Entry<K, C> keyValues) -> Iterables.transform(
+                                    keyValues.getValue(), value -> Maps.immutableEntry( keyValues.getKey(), value )
+                            )
+                    ) ).iterator();
+                }
+
+                @Override
+                public int size() {
+                    return View.this.size();
+                }
+            };
+        }
+
+        @Override
+        public Map<K, Collection<V>> asMap() {
+            return Collections.unmodifiableMap( Maps.transformValues(map, Collections::<V>unmodifiableCollection) );
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj == this || obj instanceof Multimap && asMap().equals( ((Multimap<?, ?>) obj).asMap() );
+        }
+
+        @Override
+        public int hashCode() {
+            return asMap().hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return map.toString();
+        }
+    }
+
+}
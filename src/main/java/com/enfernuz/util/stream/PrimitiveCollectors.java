@@ -0,0 +1,155 @@
+package com.enfernuz.util.stream;
+
+import java.util.function.LongFunction;
+import java.util.function.LongUnaryOperator;
+
+import com.enfernuz.util.primitives.*;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *
+ * A collection of collector factory methods for the streams of primitive values. The collectors
+ * reduce an {@link java.util.stream.IntStream}, a {@link java.util.stream.LongStream} or a
+ * {@link java.util.stream.DoubleStream} into the immutable primitive collections of the
+ * {@code com.enfernuz.util.primitives} package without boxing a single element, e.g.:
+ * {@code PrimitiveCollectors.toImmutableLongSet().collect(longStream)}.
+ *
+ * The accumulation containers are not shared between the workers of a parallel stream, so the
+ * collectors need no synchronization.
+ *
+ * Created by A. Nerushev
+ */
+public final class PrimitiveCollectors {
+
+    private PrimitiveCollectors() {
+        throw new AssertionError("The class is uninstantiable.");
+    }
+
+    /**
+     * Creates a collector that reduces a stream of {@code int} values into an immutable array,
+     * keeping the encounter order.
+     * @return a collector that reduces a stream of {@code int} values into an immutable array
+     */
+    public static IntCollector<?, ImmutableIntArray> toImmutableIntArray() {
+
+        return IntCollector.of(
+                ImmutableIntArray::builder, 
+                ImmutableIntArray.Builder::add, 
+                ImmutableIntArray.Builder::addAll, 
+                ImmutableIntArray.Builder::build
+        );
+    }
+
+    /**
+     * Creates a collector that reduces a stream of {@code long} values into an immutable array,
+     * keeping the encounter order.
+     * @return a collector that reduces a stream of {@code long} values into an immutable array
+     */
+    public static LongCollector<?, ImmutableLongArray> toImmutableLongArray() {
+
+        return LongCollector.of(
+                ImmutableLongArray::builder, 
+                ImmutableLongArray.Builder::add, 
+                ImmutableLongArray.Builder::addAll, 
+                ImmutableLongArray.Builder::build
+        );
+    }
+
+    /**
+     * Creates a collector that reduces a stream of {@code double} values into an immutable array,
+     * keeping the encounter order.
+     * @return a collector that reduces a stream of {@code double} values into an immutable array
+     */
+    public static DoubleCollector<?, ImmutableDoubleArray> toImmutableDoubleArray() {
+
+        return DoubleCollector.of(
+                ImmutableDoubleArray::builder, 
+                ImmutableDoubleArray.Builder::add, 
+                ImmutableDoubleArray.Builder::addAll, 
+                ImmutableDoubleArray.Builder::build
+        );
+    }
+
+    /**
+     * Creates a collector that reduces a stream of {@code int} values into an immutable set.
+     * @return a collector that reduces a stream of {@code int} values into an immutable set
+     */
+    public static IntCollector<?, ImmutableIntSet> toImmutableIntSet() {
+
+        return IntCollector.of(
+                ImmutableIntSet::builder, 
+                ImmutableIntSet.Builder::add, 
+                ImmutableIntSet.Builder::addAll, 
+                ImmutableIntSet.Builder::build
+        );
+    }
+
+    /**
+     * Creates a collector that reduces a stream of {@code long} values into an immutable set.
+     * @return a collector that reduces a stream of {@code long} values into an immutable set
+     */
+    public static LongCollector<?, ImmutableLongSet> toImmutableLongSet() {
+
+        return LongCollector.of(
+                ImmutableLongSet::builder, 
+                ImmutableLongSet.Builder::add, 
+                ImmutableLongSet.Builder::addAll, 
+                ImmutableLongSet.Builder::build
+        );
+    }
+
+    /**
+     * Creates a collector that reduces a stream of {@code long} values into an immutable map of
+     * {@code long} keys to {@code long} values. A key mapped more than once is mapped to the value
+     * of the last element in the encounter order.
+     * @param keyMapper a function to be used to map the elements of the stream to the keys of the
+     * result map
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result map
+     * @return a collector that reduces a stream of {@code long} values into an immutable map
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    public static LongCollector<?, ImmutableLongLongMap> toImmutableLongLongMap(
+            LongUnaryOperator keyMapper,
+            LongUnaryOperator valueMapper) throws NullPointerException {
+
+        requireNonNull(keyMapper);
+        requireNonNull(valueMapper);
+
+        return LongCollector.of(
+                ImmutableLongLongMap::builder, 
+                (builder, value) -> builder.put( keyMapper.applyAsLong(value), valueMapper.applyAsLong(value) ), 
+                ImmutableLongLongMap.Builder::putAll, 
+                ImmutableLongLongMap.Builder::build
+        );
+    }
+
+    /**
+     * Creates a collector that reduces a stream of {@code long} values into an immutable map of
+     * {@code long} keys to object values. A key mapped more than once is mapped to the value of
+     * the last element in the encounter order.
+     * @param <V> the type of the values of the result map
+     * @param keyMapper a function to be used to map the elements of the stream to the keys of the
+     * result map
+     * @param valueMapper a function to be used to map the elements of the stream to the values of 
+     * the result map
+     * @return a collector that reduces a stream of {@code long} values into an immutable map
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     */
+    public static <V> LongCollector<?, ImmutableLongObjectMap<V>> toImmutableLongObjectMap(
+            LongUnaryOperator keyMapper,
+            LongFunction<? extends V> valueMapper) throws NullPointerException {
+
+        requireNonNull(keyMapper);
+        requireNonNull(valueMapper);
+
+        return LongCollector.of(
+                ImmutableLongObjectMap::<V>builder, 
+                (builder, value) -> builder.put( keyMapper.applyAsLong(value), valueMapper.apply(value) ), 
+                ImmutableLongObjectMap.Builder::putAll, 
+                ImmutableLongObjectMap.Builder::build
+        );
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.enfernuz.util.stream;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * The counters of the nulls skipped by the null-skipping collectors of {@link Collectors}, e.g.
+ * {@link Collectors#toImmutableMapSkippingNulls(java.util.function.Function, java.util.function.Function, SkippedNulls)}.
+ *
+ * An instance may be shared by any number of collectors and reductions, including parallel ones;
+ * the counters only ever grow.
+ *
+ * Created by A. Nerushev
+ */
+public final class SkippedNulls {
+
+    private final LongAdder elements = new LongAdder();
+    private final LongAdder keys = new LongAdder();
+    private final LongAdder values = new LongAdder();
+
+    /**
+     * Returns the number of the null elements skipped.
+     * @return the number of the null elements
+     */
+    public long elements() {
+        return elements.sum();
+    }
+
+    /**
+     * Returns the number of the elements skipped because they have been mapped to a null key.
+     * @return the number of the elements of null keys
+     */
+    public long keys() {
+        return keys.sum();
+    }
+
+    /**
+     * Returns the number of the elements skipped because they have been mapped to a null value.
+     * @return the number of the elements of null values
+     */
+    public long values() {
+        return values.sum();
+    }
+
+    /**
+     * Returns the number of all the skipped elements.
+     * @return the number of the skipped elements
+     */
+    public long total() {
+        return elements() + keys() + values();
+    }
+
+    void skipElement() {
+        elements.increment();
+    }
+
+    void skipKey() {
+        keys.increment();
+    }
+
+    void skipValue() {
+        values.increment();
+    }
+
+    @Override
+    public String toString() {
+        return "SkippedNulls{elements=" + elements() + ", keys=" + keys() + ", values=" + values() + "}";
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.enfernuz.util.stream;
+
+import com.google.common.primitives.Ints;
+
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ *
+ * A collection of various {@code java.util.stream.Stream} utility methods.
+ *
+ * Created by A. Nerushev
+ */
+public final class Streams {
+
+    private Streams() {
+        throw new AssertionError("The class is uninstantiable.");
+    }
+
+    /**
+     * Performs a mutable reduction of a stream with a collector presized for the size of the
+     * stream, e.g. {@code collectPresized(stream, Collectors::toImmutableSet)}.
+     *
+     * The collector factory is called once, with the number of elements expected per accumulation
+     * container, or with zero when the size of the stream is unknown, i.e. its spliterator is not
+     * {@link Spliterator#SIZED}. For a sequential stream that is the size of the stream, which goes
+     * into a single container. For a parallel stream it is the size of the leaf tasks of the
+     * stream framework, each of which accumulates into a container of its own: the framework
+     * splits the stream until the parts are no larger than the size of the stream divided by four
+     * times the parallelism of the common fork-join pool, whichever pool runs the stream. A
+     * spliterator splitting in halves leaves parts of between half that size and that size, so
+     * the leaf containers never grow, but may be up to twice as large as needed. The containers
+     * merged by the combiner are not presized: depending on the collector they are linked
+     * together or the smaller one is added to the larger one, which then grows.
+     *
+     * A concurrent collector reducing a parallel stream into a single container, e.g.
+     * {@link Collectors#toImmutableSetMultimap(java.util.function.Function, java.util.function.Function, int)},
+     * gets the leaf size as well, so the container grows past it; such a collector is better
+     * presized for the whole stream directly.
+     * @param <T> the type of elements in the stream
+     * @param <R> the type of the result of the reduction
+     * @param stream a stream to be reduced; the stream is consumed
+     * @param presizedCollectorFactory a factory of collectors presized for the given number of
+     * elements per container
+     * @return the result of the reduction
+     * @throws NullPointerException if either of the passed arguments is a null reference
+     * @throws IllegalStateException if the stream has already been operated upon or closed
+     */
+    public static <T, R> R collectPresized(
+            Stream<T> stream,
+            IntFunction<? extends Collector<? super T, ?, R>> presizedCollectorFactory)
+            throws NullPointerException, IllegalStateException {
+
+        requireNonNull(presizedCollectorFactory);
+
+        final boolean parallel = stream.isParallel();
+        final Spliterator<T> spliterator = stream.spliterator();
+        final int size = Ints.saturatedCast( Math.max(spliterator.getExactSizeIfKnown(), 0) );
+        final Stream<T> source = StreamSupport.stream(spliterator, parallel).onClose(stream::close);
+
+        return source.collect( presizedCollectorFactory.apply( parallel && size > 0 ? leafSize(size) : size ) );
+    }
+
+    // mirrors the splitting threshold of java.util.stream.AbstractTask, which is derived from the
+    // parallelism of the common pool even when the stream runs in another pool
+    private static int leafSize(int size) {
+        return Math.max( size / (ForkJoinPool.getCommonPoolParallelism() << 2), 1 );
+    }
+
+}
@@ -1,16 +1,39 @@
 package com.enfernuz.util.stream.test;
 
 import com.google.common.collect.*;
+import com.google.common.hash.*;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.stream.Collector;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import org.junit.*;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import com.enfernuz.util.dense.DenseSetMultimap;
+import com.enfernuz.util.dense.DenseTable;
+import com.enfernuz.util.offheap.*;
+import com.enfernuz.util.persistent.PersistentHashMap;
+import com.enfernuz.util.persistent.PersistentHashSet;
+import com.enfernuz.util.sketch.CountMinSketch;
+import com.enfernuz.util.stream.BatchSummary;
+import com.enfernuz.util.stream.CollectorMetrics;
+import com.enfernuz.util.stream.CollectorMetricsSink;
 import com.enfernuz.util.stream.Collectors;
+import com.enfernuz.util.stream.SkippedNulls;
+import com.enfernuz.util.stream.Streams;
 
 import static java.util.stream.Collectors.*;
 
@@ -27,6 +50,9 @@ public class CollectorsTest {
     @Rule
     public ExpectedException thrown;
     
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
     private static final ImmutableCollection<String> STRINGS = 
             ImmutableList.of("a", "abcde", "abc", "abcdef", "ab");
     
@@ -50,6 +76,19 @@ public class CollectorsTest {
         assertEquals(set, immutableSet);
     }
     
+    @Test
+    public void testImmutableSetCollectorOnLargeParallelStream() {
+        
+        final Set<Integer> set = IntStream.range(0, 100_000).parallel()
+                .mapToObj(i -> i % 1000)
+                .collect( toSet() );
+        final ImmutableSet<Integer> immutableSet = IntStream.range(0, 100_000).parallel()
+                .mapToObj(i -> i % 1000)
+                .collect( Collectors.toImmutableSet() );
+        
+        assertEquals(set, immutableSet);
+    }
+    
     @Test
     public void testImmutableSortedSetCollector() {
         
@@ -73,6 +112,17 @@ public class CollectorsTest {
         assertEquals(STRINGS, immutableList);
     }
     
+    @Test
+    public void testImmutableListCollectorKeepsEncounterOrder() {
+        
+        final List<Integer> list = IntStream.range(0, 100_000).boxed().collect( toList() );
+        
+        assertEquals(list, list.parallelStream().collect( Collectors.toImmutableList() ));
+        assertEquals(list, list.parallelStream().collect( Collectors.toImmutableList(list.size()) ));
+        assertEquals(list, list.stream().collect( Collectors.toImmutableList(list.size()) ));
+        assertEquals(list, list.stream().collect( Collectors.toImmutableList(10) ));
+    }
+    
     @Test
     public void testImmutableBiMapCollector() {
         
@@ -101,6 +151,106 @@ public class CollectorsTest {
         assertEquals(map, immutableMap);
     }
     
+    @Test
+    public void testImmutableMapCollectorOnDuplicateKeys() {
+        
+        final ImmutableMap<Integer, String> immutableMap = 
+                STRINGS.stream().collect(
+                        Collectors.toImmutableMap(str -> str.length() % 2, Function.identity())
+                );
+        
+        assertEquals(ImmutableMap.of(1, "abc", 0, "ab"), immutableMap);
+        
+        // the duplicates span many segments of the buffer; the first position and the last value win
+        final Map<Integer, Integer> expected = new LinkedHashMap<>();
+        IntStream.range(0, 100_000).forEach( i -> expected.put(i % 1_000, i) );
+        
+        final ImmutableMap<Integer, Integer> map = IntStream.range(0, 100_000).boxed().collect(
+                Collectors.toImmutableMap(i -> i % 1_000, Function.identity())
+        );
+        assertEquals(expected, map);
+        assertEquals(ImmutableList.copyOf( expected.keySet() ), map.keySet().asList());
+        
+        // the values of a bimap only have to be unique once the duplicate keys are collapsed
+        assertEquals(
+                ImmutableBiMap.of(0, 3, 1, 4, 2, 5), 
+                IntStream.range(0, 6).boxed().collect( Collectors.toImmutableBiMap(i -> i % 3, Function.identity()) )
+        );
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testImmutableBiMapCollectorOnDuplicateValues() {
+        
+        STRINGS.parallelStream().collect(
+                Collectors.toImmutableBiMap(Function.identity(), str -> str.length() % 2)
+        );
+    }
+    
+    @Test
+    public void testImmutableMapCollectorWithMergeFunction() {
+        
+        final Map<Integer, String> map = STRINGS.stream().collect(
+                toMap(String::length, Function.identity(), String::concat)
+        );
+        final Map<Integer, String> mapOfParity = IntStream.range(0, 100_000).boxed().collect(
+                toMap(i -> i % 2, String::valueOf, (str1, str2) -> str1.length() >= str2.length() ? str1 : str2)
+        );
+        
+        assertEquals(
+                map, 
+                STRINGS.parallelStream().collect( 
+                        Collectors.toImmutableMap(String::length, Function.identity(), String::concat) 
+                )
+        );
+        assertEquals(
+                mapOfParity, 
+                IntStream.range(0, 100_000).boxed().parallel().collect( 
+                        Collectors.toImmutableMap(
+                                i -> i % 2, 
+                                String::valueOf, 
+                                (str1, str2) -> str1.length() >= str2.length() ? str1 : str2
+                        ) 
+                )
+        );
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testFailFastImmutableMapCollectorOnDuplicateKeys() {
+        
+        IntStream.range(0, 100_000).boxed().parallel().collect(
+                Collectors.toImmutableMapFailFast(i -> i % 50_000, Function.identity())
+        );
+    }
+    
+    @Test
+    public void testFailFastImmutableBiMapCollector() {
+        
+        final ImmutableBiMap<String, Integer> immutableBiMap = STRINGS.parallelStream().collect(
+                Collectors.toImmutableBiMapFailFast(Function.identity(), String::length)
+        );
+        
+        assertEquals(Integer.valueOf(5), immutableBiMap.get("abcde"));
+        assertEquals("ab", immutableBiMap.inverse().get(2));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testFailFastImmutableBiMapCollectorOnDuplicateValues() {
+        
+        STRINGS.parallelStream().collect(
+                Collectors.toImmutableBiMapFailFast(Function.identity(), str -> str.length() % 2)
+        );
+    }
+    
+    @Test
+    public void testImmutableBiMapCollectorWithMergeFunction() {
+        
+        final ImmutableBiMap<Integer, String> immutableBiMap = STRINGS.stream().collect(
+                Collectors.toImmutableBiMap(str -> str.length() % 2, Function.identity(), (str1, str2) -> str2)
+        );
+        
+        assertEquals(ImmutableBiMap.of(1, "abc", 0, "ab"), immutableBiMap);
+    }
+    
     @Test
     public void testImmutableSortedMapCollector() {
         
@@ -120,5 +270,780 @@ public class CollectorsTest {
                 .forEach( str -> sortedMap.put(str, str.length()) );
         
         assertEquals(sortedMap, immutableSortedMap);
+        
+        assertEquals(
+                ImmutableSortedMap.of(0, "ab", 1, "abc"), 
+                STRINGS.stream().collect( Collectors.toImmutableSortedMap(str -> str.length() % 2, Function.identity(), Comparator.<Integer>naturalOrder()) )
+        );
+    }
+    
+    @Test
+    public void testMultimapCollectors() {
+        
+        final List<Integer> elements = IntStream.range(0, 100_000).boxed().collect( toList() );
+        final Map<Integer, List<Integer>> groups = elements.stream().collect( groupingBy(i -> i % 1_000) );
+        
+        final Multimap<Integer, Integer> multimap = elements.parallelStream().collect(
+                Collectors.toMultimap(i -> i % 1_000, Function.identity(), ArrayListMultimap::create)
+        );
+        final ImmutableListMultimap<Integer, Integer> listMultimap = elements.parallelStream().collect(
+                Collectors.toImmutableListMultimap(i -> i % 1_000, Function.identity())
+        );
+        final ImmutableSetMultimap<Integer, Integer> setMultimap = elements.parallelStream().collect(
+                Collectors.toImmutableSetMultimap(i -> i % 1_000, i -> i % 10_000)
+        );
+        
+        assertEquals(groups, multimap.asMap());
+        assertEquals(groups, listMultimap.asMap());
+        assertEquals(10_000, setMultimap.size());
+        groups.forEach( (key, values) -> 
+                assertEquals(values.stream().map(i -> i % 10_000).collect( toSet() ), setMultimap.get(key))
+        );
+        
+        // the null keys and values are up to the factory multimap
+        final Multimap<Integer, String> nullFriendlyMultimap = Stream.of("a", null, "bb", "ab").collect(
+                Collectors.toMultimap(str -> str == null ? null : str.length(), str -> str, ArrayListMultimap::create)
+        );
+        assertEquals(ImmutableList.of("bb", "ab"), nullFriendlyMultimap.get(2));
+        assertEquals(Arrays.asList((String) null), nullFriendlyMultimap.get(null));
+        assertEquals(
+                nullFriendlyMultimap, 
+                Stream.of("a", null, "bb", "ab").parallel().collect(
+                        Collectors.toMultimap(str -> str == null ? null : str.length(), str -> str, ArrayListMultimap::create, 4)
+                )
+        );
+    }
+    
+    @Test
+    public void testTableCollectors() {
+        
+        final Table<Integer, Integer, Integer> table = HashBasedTable.create();
+        IntStream.range(0, 100_000).forEach( i -> table.put(i % 100, i % 7, i) );
+        
+        final Table<Integer, Integer, Integer> collectedTable = 
+                IntStream.range(0, 100_000).boxed().parallel().collect(
+                        Collectors.toTable(i -> i % 100, i -> i % 7, Function.identity(), HashBasedTable::create)
+                );
+        final ImmutableTable<Integer, Integer, Integer> immutableTable = 
+                IntStream.range(0, 100_000).boxed().parallel().collect(
+                        Collectors.toImmutableTable(i -> i % 100, i -> i % 7, Function.identity(), HashBasedTable::create)
+                );
+        
+        assertEquals(table, collectedTable);
+        assertEquals(table, immutableTable);
+        
+        // the later parts of the stream make the larger tables, so the earlier ones are merged into them
+        final Function<Integer, Integer> row = i -> i < 50_000 ? i % 10 : i % 1_000;
+        final Table<Integer, Integer, Integer> unevenTable = HashBasedTable.create();
+        IntStream.range(0, 100_000).forEach( i -> unevenTable.put(row.apply(i), i % 7, i) );
+        assertEquals(
+                unevenTable, 
+                IntStream.range(0, 100_000).boxed().parallel().collect(
+                        Collectors.toTable(row, i -> i % 7, Function.identity(), HashBasedTable::create)
+                )
+        );
+        
+        // the null values are up to the factory table
+        final Table<Integer, Integer, String> arrayTable = Stream.of("a", "bb", "ccc").collect(
+                Collectors.toTable(
+                        String::length, 
+                        str -> 0, 
+                        str -> str.length() == 2 ? null : str, 
+                        () -> ArrayTable.<Integer, Integer, String>create( ImmutableList.of(1, 2, 3), ImmutableList.of(0) )
+                )
+        );
+        assertTrue( arrayTable.contains(2, 0) );
+        assertNull( arrayTable.get(2, 0) );
+        assertEquals( "ccc", arrayTable.get(3, 0) );
+    }
+    
+    @Test
+    public void testArrayTableCollector() {
+        
+        final ArrayTable<String, Integer, String> arrayTable = 
+                STRINGS.parallelStream().collect(
+                        Collectors.toArrayTable(
+                                str -> str.substring(0, 1), 
+                                String::length, 
+                                Function.identity(), 
+                                ImmutableList.of("a", "b"), 
+                                ImmutableList.of(1, 2, 3, 4, 5, 6)
+                        )
+                );
+        
+        assertEquals("abcde", arrayTable.get("a", 5));
+        assertNull( arrayTable.get("a", 4) );
+        assertNull( arrayTable.get("b", 1) );
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testArrayTableCollectorOnUnknownKey() {
+        
+        STRINGS.stream().collect(
+                Collectors.toArrayTable(
+                        Function.identity(), 
+                        String::length, 
+                        Function.identity(), 
+                        ImmutableList.of("a"), 
+                        ImmutableList.of(1)
+                )
+        );
+    }
+    
+    @Test
+    public void testSortingCollectors() {
+        
+        final Comparator<Integer> comparator = Comparator.<Integer>reverseOrder();
+        
+        final SortedSet<Integer> sortedSet = new TreeSet<>(comparator);
+        final SortedMap<Integer, Integer> sortedMap = new TreeMap<>(comparator);
+        IntStream.range(0, 100_000).forEach(i -> {
+            sortedSet.add(i % 30_000);
+            sortedMap.put(i % 30_000, i);
+        });
+        
+        final ImmutableSortedSet<Integer> immutableSortedSet = 
+                IntStream.range(0, 100_000).boxed().parallel().map(i -> i % 30_000).collect(
+                        Collectors.toImmutableSortedSetBySorting(comparator)
+                );
+        final ImmutableSortedMap<Integer, Integer> immutableSortedMap = 
+                IntStream.range(0, 100_000).boxed().parallel().collect(
+                        Collectors.toImmutableSortedMapBySorting(i -> i % 30_000, Function.identity(), comparator)
+                );
+        
+        assertEquals(ImmutableList.copyOf(sortedSet), immutableSortedSet.asList());
+        assertEquals(comparator, immutableSortedSet.comparator());
+        assertEquals(ImmutableList.copyOf( sortedMap.entrySet() ), immutableSortedMap.entrySet().asList());
+    }
+    
+    @Test
+    public void testTopKCollectors() {
+        
+        final List<Integer> elements = IntStream.range(0, 100_000).map(i -> (i * 7_919) % 100_000).boxed().collect( toList() );
+        final Comparator<Integer> comparator = Comparator.<Integer>reverseOrder();
+        
+        assertEquals(
+                elements.stream().sorted(comparator).limit(100).collect( toList() ), 
+                elements.parallelStream().collect( Collectors.topK(100, comparator) )
+        );
+        assertEquals(
+                elements.stream().map(i -> i % 1_000).distinct().sorted(comparator).limit(100).collect( toList() ), 
+                elements.parallelStream().map(i -> i % 1_000).collect( Collectors.distinctTopK(100, comparator) ).asList()
+        );
+        assertEquals(ImmutableList.of(1, 2, 3), Stream.of(3, 1, 2).collect( Collectors.topK(10, Comparator.<Integer>naturalOrder()) ));
+        assertTrue( elements.stream().collect( Collectors.topK(0, comparator) ).isEmpty() );
+    }
+    
+    @Test
+    public void testSamplingCollectors() {
+        
+        final ImmutableList<Integer> sample = 
+                IntStream.range(0, 100_000).boxed().parallel().collect( Collectors.sample(1_000) );
+        
+        assertEquals(1_000, sample.size());
+        assertEquals(1_000, ImmutableSet.copyOf(sample).size());
+        assertTrue( sample.stream().allMatch(i -> i >= 0 && i < 100_000) );
+        assertEquals(ImmutableSet.of(1, 2, 3), ImmutableSet.copyOf( Stream.of(1, 2, 3).collect(Collectors.sample(5)) ));
+        
+        // the heavy elements outweigh the light ones a million to one
+        final ImmutableList<Integer> weightedSample = IntStream.range(0, 100_000).boxed().parallel().collect(
+                Collectors.weightedSample(10, i -> i < 10 ? 1e6 : 1.0)
+        );
+        
+        assertEquals(10, weightedSample.size());
+        assertTrue( weightedSample.stream().filter(i -> i < 10).count() >= 8 );
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testWeightedSamplingCollectorOnNonPositiveWeight() {
+        Stream.of(1, 2, 3).collect( Collectors.weightedSample(2, i -> i - 1.0) );
+    }
+    
+    @Test
+    public void testSketchCollectors() {
+        
+        final Funnel<Integer> funnel = Funnels.integerFunnel();
+        
+        final long distinctCount = IntStream.range(0, 1_000_000).map(i -> i % 300_000).boxed().parallel().collect(
+                Collectors.approximateDistinctCount(funnel, 0.01)
+        );
+        assertEquals(300_000, distinctCount, 300_000 * 0.04);
+        assertEquals(0L, Stream.<Integer>empty().collect( Collectors.approximateDistinctCount(funnel, 0.01) ).longValue());
+        assertEquals(3L, Stream.of(1, 2, 3, 2, 1).collect( Collectors.approximateDistinctCount(funnel, 0.01) ).longValue());
+        
+        final CountMinSketch<Integer> sketch = IntStream.range(0, 100_000).map(i -> i % 1_000 == 0 ? 7 : i).boxed().parallel().collect(
+                Collectors.toCountMinSketch(funnel, 0.001, 0.01)
+        );
+        assertEquals(100_000, sketch.totalCount());
+        assertTrue( sketch.estimateCount(7) >= 101 );
+        assertTrue( sketch.estimateCount(7) <= 101 + 100_000 * 0.001 );
+        assertTrue( sketch.estimateCount(8) >= 1 );
+        
+        final BloomFilter<Integer> filter = IntStream.range(0, 10_000).boxed().parallel().collect(
+                Collectors.toBloomFilter(funnel, 10_000, 0.01)
+        );
+        assertTrue( IntStream.range(0, 10_000).allMatch(filter::mightContain) );
+        assertTrue( IntStream.range(10_000, 20_000).filter(filter::mightContain).count() < 300 );
+    }
+    
+    @Test
+    public void testOffHeapCollectors() {
+        
+        final Map<Integer, String> expectedMap = new HashMap<>();
+        IntStream.range(0, 100_000).forEach(i -> expectedMap.put(i % 30_000, "value" + i));
+        
+        final OffHeapMap<Integer, String> map = IntStream.range(0, 100_000).boxed().parallel().collect(
+                Collectors.toOffHeapMap(i -> i % 30_000, i -> "value" + i, Serializers.integers(), Serializers.strings())
+        );
+        
+        assertEquals(expectedMap, map);
+        assertEquals(30_000L, map.sizeAsLong());
+        assertNull( map.get(30_000) );
+        assertNull( map.get("foreign key") );
+        
+        final OffHeapSet<String> set = STRINGS.parallelStream().collect( Collectors.toOffHeapSet(Serializers.strings()) );
+        
+        assertEquals(ImmutableSet.copyOf(STRINGS), set);
+        assertFalse( set.contains(42) );
+        assertTrue( Stream.<Long>empty().collect( Collectors.toOffHeapSet(Serializers.longs()) ).isEmpty() );
+    }
+    
+    @Test
+    public void testMappedSnapshotCollectors() throws IOException {
+        
+        final Map<Integer, String> expectedMap = new HashMap<>();
+        IntStream.range(0, 100_000).forEach(i -> expectedMap.put(i % 30_000, "value" + i));
+        
+        final Path mapFile = folder.newFile().toPath();
+        final OffHeapMap<Integer, String> map = IntStream.range(0, 100_000).boxed().parallel().collect(
+                Collectors.toMappedMap(i -> i % 30_000, i -> "value" + i, Serializers.integers(), Serializers.strings(), mapFile)
+        );
+        
+        assertEquals(expectedMap, map);
+        assertEquals(expectedMap, OffHeapMap.open(mapFile, Serializers.integers(), Serializers.strings()));
+        
+        final Comparator<Integer> comparator = Comparator.<Integer>reverseOrder();
+        final SortedMap<Integer, String> expectedSortedMap = new TreeMap<>(comparator);
+        expectedSortedMap.putAll(expectedMap);
+        
+        final Path sortedMapFile = folder.newFile().toPath();
+        final MappedSortedMap<Integer, String> sortedMap = IntStream.range(0, 100_000).boxed().parallel().collect(
+                Collectors.toMappedSortedMap(
+                        i -> i % 30_000, i -> "value" + i, comparator, Serializers.integers(), Serializers.strings(), sortedMapFile
+                )
+        );
+        final MappedSortedMap<Integer, String> reopenedSortedMap = 
+                MappedSortedMap.open(sortedMapFile, Serializers.integers(), Serializers.strings(), comparator);
+        
+        assertEquals(ImmutableList.copyOf( expectedSortedMap.entrySet() ), ImmutableList.copyOf( sortedMap.entrySet() ));
+        assertEquals(ImmutableList.copyOf( expectedSortedMap.entrySet() ), ImmutableList.copyOf( reopenedSortedMap.entrySet() ));
+        assertEquals(expectedSortedMap.subMap(20_000, 10_000), reopenedSortedMap.subMap(20_000, 10_000));
+        assertEquals(expectedSortedMap.headMap(100), reopenedSortedMap.headMap(100));
+        assertEquals(Integer.valueOf(29_999), reopenedSortedMap.firstKey());
+        assertEquals(Integer.valueOf(0), reopenedSortedMap.lastKey());
+        assertEquals("value99999", reopenedSortedMap.get(9_999));
+        assertNull( reopenedSortedMap.get(30_000) );
+        
+        final Path sortedSetFile = folder.newFile().toPath();
+        final MappedSortedSet<String> sortedSet = STRINGS.stream().collect(
+                Collectors.toMappedSortedSet(Comparator.<String>naturalOrder(), Serializers.strings(), sortedSetFile)
+        );
+        
+        assertEquals(ImmutableSortedSet.copyOf(STRINGS).asList(), ImmutableList.copyOf(sortedSet));
+        assertEquals(ImmutableSet.of("ab", "abc"), sortedSet.subSet("ab", "abcd"));
+        assertTrue( sortedSet.contains("abcde") );
+        assertFalse( sortedSet.contains("b") );
+    }
+    
+    @Test(expected = IOException.class)
+    public void testOpeningSnapshotOfWrongKind() throws IOException {
+        
+        final Path file = folder.newFile().toPath();
+        STRINGS.stream().collect( Collectors.toMappedSortedSet(Comparator.<String>naturalOrder(), Serializers.strings(), file) );
+        
+        OffHeapSet.open(file, Serializers.strings());
+    }
+    
+    @Test
+    public void testInstrumentedCollector() {
+        
+        final List<CollectorMetrics> reported = new ArrayList<>();
+        final Collector<Integer, ?, ImmutableSet<Integer>> collector = 
+                Collectors.instrumented("set", Collectors.<Integer>toImmutableSet(), reported::add);
+        
+        final ImmutableSet<Integer> set = IntStream.range(0, 100_000).boxed().parallel().collect(collector);
+        
+        assertEquals(100_000, set.size());
+        assertEquals(1, reported.size());
+        
+        final CollectorMetrics metrics = reported.get(0);
+        assertEquals("set", metrics.name());
+        assertEquals(100_000L, metrics.elementCount());
+        assertEquals(100_000L, metrics.peakContainerSize());
+        assertTrue( metrics.containerCount() >= 1 );
+        assertTrue( metrics.accumulatorNanos() > 0 );
+        assertTrue( metrics.finisherNanos() > 0 );
+        assertFalse( collector.characteristics().contains(Collector.Characteristics.IDENTITY_FINISH) );
+        
+        reported.clear();
+        final ImmutableList<Integer> list = Stream.of(1, 2, 3).collect(
+                Collectors.instrumented( "list", Collectors.<Integer>toImmutableList(), reported::add )
+        );
+        
+        assertEquals(ImmutableList.of(1, 2, 3), list);
+        assertEquals("list", reported.get(0).name());
+        assertEquals(1L, reported.get(0).containerCount());
+        assertEquals(3L, reported.get(0).elementCount());
+        assertEquals( list, Stream.of(1, 2, 3).collect(
+                Collectors.instrumented( "list", Collectors.<Integer>toImmutableList(), CollectorMetricsSink.noOp() )
+        ) );
+        
+        // unnamed collectors are reported after their class
+        reported.clear();
+        final Collector<Integer, ?, ImmutableList<Integer>> unnamed = Collectors.toImmutableList();
+        assertEquals( list, Stream.of(1, 2, 3).collect( Collectors.instrumented(unnamed, reported::add) ) );
+        assertEquals(unnamed.getClass().getSimpleName(), reported.get(0).name());
+    }
+    
+    @Test
+    public void testPresizedCollectors() {
+        
+        final List<Integer> list = IntStream.range(0, 100_000).boxed().collect( toList() );
+        final Set<Integer> expectedSet = new HashSet<>(list);
+        final Map<Integer, Integer> expectedMap = list.stream().collect( toMap(i -> i, i -> -i) );
+        
+        assertEquals(expectedSet, list.parallelStream().collect( Collectors.toImmutableSet(list.size()) ));
+        assertEquals(expectedSet, Streams.collectPresized( list.parallelStream(), Collectors::<Integer>toImmutableSet ));
+        assertEquals(expectedSet, Streams.collectPresized( list.stream(), Collectors::<Integer>toImmutableSet ));
+        assertEquals(list, Streams.collectPresized( list.parallelStream(), Collectors::<Integer>toImmutableList ));
+        assertEquals(
+                ImmutableList.of(0, 2, 4), 
+                Streams.collectPresized( Stream.of(0, 1, 2, 3, 4).filter(i -> i % 2 == 0), Collectors::<Integer>toImmutableList )
+        );
+        
+        assertEquals(expectedMap, Streams.collectPresized( 
+                list.parallelStream(), size -> Collectors.toImmutableMap(i -> i, i -> -i, size) 
+        ));
+        assertEquals(expectedMap, list.parallelStream().collect( 
+                Collectors.toImmutableMap(i -> i, i -> -i, (v1, v2) -> v2, 10) 
+        ));
+        assertEquals(expectedMap, list.parallelStream().collect( 
+                Collectors.toImmutableMapFailFast(i -> i, i -> -i, 0) 
+        ));
+        
+        final ImmutableListMultimap<Integer, Integer> listMultimap = Streams.collectPresized( 
+                list.parallelStream(), size -> Collectors.toImmutableListMultimap(i -> i % 10, i -> i, size) 
+        );
+        assertEquals(list.size(), listMultimap.size());
+        assertEquals(list.stream().filter(i -> i % 10 == 3).collect( toList() ), listMultimap.get(3));
+        
+        final ImmutableSetMultimap<Integer, Integer> setMultimap = Streams.collectPresized( 
+                list.parallelStream().unordered(), size -> Collectors.toImmutableSetMultimap(i -> i % 10, i -> i % 100, size) 
+        );
+        assertEquals(100, setMultimap.size());
+        
+        final Multimap<Integer, Integer> multimap = list.stream().collect( 
+                Collectors.toMultimap(i -> i % 10, i -> i, ArrayListMultimap::create, list.size()) 
+        );
+        assertEquals(listMultimap, multimap);
+
+        // a presized collector keeps no state between the reductions it is used for, failed ones included
+        final Collector<Integer, ?, ImmutableList<Integer>> presizedListCollector = Collectors.toImmutableList(list.size());
+        assertEquals(list, list.parallelStream().collect(presizedListCollector));
+        try {
+            Stream.of(1, null, 3).collect(presizedListCollector);
+            fail();
+        } catch (NullPointerException expected) {
+            // the reduction is abandoned midway
+        }
+        assertEquals(list, list.stream().collect(presizedListCollector));
+        assertEquals(list, list.parallelStream().collect(presizedListCollector));
+    }
+    
+    @Test
+    public void testPersistentCollectors() {
+        
+        final Map<Integer, String> expectedMap = new HashMap<>();
+        IntStream.range(0, 100_000).forEach(i -> expectedMap.put(i % 30_000, "value" + i));
+        
+        final PersistentHashMap<Integer, String> snapshot = IntStream.range(0, 100_000).boxed().parallel().collect(
+                Collectors.toPersistentMap(i -> i % 30_000, i -> "value" + i)
+        );
+        assertEquals(expectedMap, snapshot);
+        
+        // a delta of upserts of the even keys and removals of the keys divisible by 3
+        final List<Integer> delta = IntStream.range(0, 3_000).boxed().collect( toList() );
+        final PersistentHashMap<Integer, String> updated = delta.parallelStream().collect(
+                Collectors.toPersistentMap(snapshot, i -> i, i -> "updated" + i, i -> i % 3 == 0)
+        );
+        
+        final Map<Integer, String> expectedUpdatedMap = new HashMap<>(expectedMap);
+        delta.forEach(i -> {
+            if (i % 3 == 0) {
+                expectedUpdatedMap.remove(i);
+            } else {
+                expectedUpdatedMap.put(i, "updated" + i);
+            }
+        });
+        assertEquals(expectedUpdatedMap, updated);
+        assertEquals(expectedMap, snapshot);
+        assertSame( snapshot, Stream.<Integer>empty().collect(Collectors.toPersistentMap(snapshot, i -> i, i -> "", i -> false)) );
+        
+        final PersistentHashMap<Integer, String> emptied = snapshot.keySet().stream().collect(
+                Collectors.toPersistentMap(snapshot, i -> i, i -> "", i -> true)
+        );
+        assertTrue( emptied.isEmpty() );
+        assertSame( PersistentHashMap.of(), emptied );
+        
+        final PersistentHashSet<String> set = STRINGS.parallelStream().collect( Collectors.toPersistentSet() );
+        assertEquals(ImmutableSet.copyOf(STRINGS), set);
+        assertEquals(
+                ImmutableSet.of("a", "abcdef", "ab", "b"),
+                Stream.of("abc", "b", "abcde").collect( Collectors.toPersistentSet(set, s -> s, s -> s.startsWith("abc") && s.length() != 6) )
+        );
+        assertEquals(ImmutableSet.copyOf(STRINGS), set);
     }
+    
+    @Test
+    public void testPersistentMapWithCollidingKeys() {
+        
+        // the keys collide in pairs and all share the low bits of their hash codes
+        final class Key {
+            
+            final int id;
+            
+            Key(int id) {
+                this.id = id;
+            }
+            
+            @Override
+            public boolean equals(Object o) {
+                return o instanceof Key && ((Key) o).id == id;
+            }
+            
+            @Override
+            public int hashCode() {
+                return (id >>> 1) << 16;
+            }
+        }
+        
+        final Map<Key, Integer> expectedMap = new HashMap<>();
+        PersistentHashMap<Key, Integer> map = PersistentHashMap.of();
+        final Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            
+            final Key key = new Key( random.nextInt(2_000) );
+            if ( random.nextInt(3) == 0 ) {
+                expectedMap.remove(key);
+                map = map.without(key);
+            } else {
+                expectedMap.put(key, i);
+                map = map.with(key, i);
+            }
+            
+            assertEquals(expectedMap.size(), map.size());
+        }
+        
+        assertEquals(expectedMap, map);
+        assertEquals(expectedMap, PersistentHashMap.copyOf(expectedMap));
+        assertNull( map.get("foreign key") );
+    }
+    
+    @Test
+    public void testExecutorCollectors() throws InterruptedException {
+        
+        final ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            final AtomicInteger running = new AtomicInteger();
+            final AtomicInteger maxRunning = new AtomicInteger();
+            final Set<String> mapperThreads = ConcurrentHashMap.newKeySet();
+            
+            // a blocking lookup
+            final Function<Integer, String> lookup = i -> {
+                maxRunning.accumulateAndGet( running.incrementAndGet(), Math::max );
+                mapperThreads.add( Thread.currentThread().getName() );
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    running.decrementAndGet();
+                }
+                return "value" + i;
+            };
+            
+            final List<Integer> list = IntStream.range(0, 500).boxed().collect( toList() );
+            
+            final Collector<Integer, ?, ImmutableMap<Integer, String>> collector = Collectors.toImmutableMap(i -> i, lookup, executor, 4, 10);
+            final Map<Integer, String> expectedMap = list.stream().collect( toMap(i -> i, i -> "value" + i) );
+            
+            // the bound applies per accumulation container, of which a sequential stream has one
+            assertEquals(expectedMap, list.stream().collect(collector));
+            assertTrue( maxRunning.get() <= 4 );
+            
+            assertEquals(expectedMap, list.parallelStream().collect(collector));
+            assertTrue( mapperThreads.stream().allMatch(name -> name.startsWith("pool-")) );
+            
+            final Multimap<Integer, String> multimap = list.stream().collect(
+                    Collectors.toMultimap(i -> i % 10, lookup, ArrayListMultimap::create, executor, 8, 7)
+            );
+            assertEquals(
+                    list.stream().filter(i -> i % 10 == 3).map(i -> "value" + i).collect( toList() ), 
+                    multimap.get(3)
+            );
+            
+            final ImmutableTable<Integer, Integer, String> table = list.parallelStream().collect(
+                    Collectors.toImmutableTable(i -> i % 10, i -> i / 10, lookup, HashBasedTable::create, executor, 8, 16)
+            );
+            assertEquals(list.size(), table.size());
+            assertEquals("value123", table.get(3, 12));
+            
+            assertTrue( Stream.<Integer>empty().collect(Collectors.toImmutableMap(i -> i, lookup, executor, 1, 1)).isEmpty() );
+            
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+    
+    @Test
+    public void testExecutorCollectorCombiningBatchesAsTheyFinish() throws InterruptedException {
+        
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final AtomicInteger live = new AtomicInteger();
+            final AtomicInteger maxLive = new AtomicInteger();
+            
+            // counts the containers of the batches not yet combined
+            final Collector<Integer, List<Integer>, List<Integer>> counting = Collector.of(
+                    () -> { maxLive.accumulateAndGet( live.incrementAndGet(), Math::max ); return new ArrayList<>(); }, 
+                    List::add, 
+                    (list1, list2) -> { live.decrementAndGet(); list1.addAll(list2); return list1; }
+            );
+            
+            final List<Integer> list = IntStream.range(0, 10_000).boxed().collect( toList() );
+            
+            assertEquals(list, list.stream().collect( Collectors.onExecutor(counting, executor, 4, 10) ));
+            // the batches in flight and the container they are combined into
+            assertTrue( maxLive.get() <= 5 );
+            
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void testExecutorCollectorRethrowingMapperFailure() throws InterruptedException {
+        
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            IntStream.range(0, 500).boxed().parallel().collect(
+                    Collectors.toImmutableMap(
+                            i -> i, 
+                            i -> { if (i == 250) throw new IllegalStateException(); return i; }, 
+                            executor, 
+                            4, 
+                            10
+                    )
+            );
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+    
+    @Test
+    public void testNullSkippingCollectors() {
+        
+        final List<String> strings = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            strings.add(i % 10 == 0 ? null : "s" + i);
+        }
+        
+        final SkippedNulls skipped = new SkippedNulls();
+        final ImmutableList<String> list = strings.parallelStream().collect( Collectors.toImmutableListSkippingNulls(skipped) );
+        
+        assertEquals(strings.stream().filter(Objects::nonNull).collect( toList() ), list);
+        assertEquals(1_000L, skipped.elements());
+        
+        final SkippedNulls skippedEntries = new SkippedNulls();
+        final ImmutableMap<String, Integer> map = strings.parallelStream().collect(
+                Collectors.toImmutableMapSkippingNulls(
+                        s -> s.endsWith("1") ? null : s, 
+                        s -> s.endsWith("2") ? null : s.length(), 
+                        skippedEntries
+                )
+        );
+        
+        assertEquals(7_000, map.size());
+        assertEquals(Integer.valueOf(3), map.get("s13"));
+        assertEquals(1_000L, skippedEntries.elements());
+        assertEquals(1_000L, skippedEntries.keys());
+        assertEquals(1_000L, skippedEntries.values());
+        assertEquals(3_000L, skippedEntries.total());
+    }
+    
+    @Test(expected = NullPointerException.class)
+    public void testImmutableListCollectorOnNullElement() {
+        Stream.of("a", null, "b").collect( Collectors.toImmutableList() );
+    }
+    
+    @Test
+    public void testBatchingCollectors() throws InterruptedException {
+        
+        final List<Integer> list = IntStream.range(0, 10_000).boxed().collect( toList() );
+        
+        final List<Integer> written = new ArrayList<>();
+        final List<Integer> batchSizes = new ArrayList<>();
+        final BatchSummary summary = list.stream().collect(
+                Collectors.toBatches(
+                        128, 
+                        batch -> {
+                            written.addAll(batch);
+                            batchSizes.add( batch.size() );
+                        }
+                )
+        );
+        assertEquals(list, written);
+        assertEquals(10_000L, summary.elementCount());
+        assertEquals(79L, summary.batchCount());
+        assertTrue( batchSizes.subList(0, 78).stream().allMatch(size -> size == 128) );
+        assertEquals(Integer.valueOf(10_000 % 128), batchSizes.get(78));
+        
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Set<Integer> writtenConcurrently = ConcurrentHashMap.newKeySet();
+            final Collector<Integer, ?, BatchSummary> collector = Collectors.toBatches(
+                    100, 
+                    batch -> {
+                        assertTrue( batch.size() <= 100 );
+                        writtenConcurrently.addAll(batch);
+                    }, 
+                    executor, 
+                    2
+            );
+            
+            final BatchSummary parallelSummary = list.parallelStream().collect(collector);
+            assertEquals(new HashSet<>(list), writtenConcurrently);
+            assertEquals(10_000L, parallelSummary.elementCount());
+            assertTrue( parallelSummary.batchCount() >= 100 );
+            
+            // the collector may be reused once the previous reduction has finished
+            writtenConcurrently.clear();
+            assertEquals(10_000L, list.parallelStream().collect(collector).elementCount());
+            assertEquals(new HashSet<>(list), writtenConcurrently);
+            
+            assertEquals(0L, Stream.<Integer>empty().collect(collector).batchCount());
+            
+            // a reduction abandoned midway leaves nothing behind for the next one
+            try {
+                list.parallelStream()
+                        .map( i -> { if (i == 7_000) throw new ArithmeticException(); return i; } )
+                        .collect(collector);
+                fail();
+            } catch (ArithmeticException expected) {
+            }
+            assertEquals(10_000L, list.parallelStream().collect(collector).elementCount());
+            
+            // as well as reductions running at once
+            final List<BatchSummary> summaries = IntStream.range(0, 4).parallel()
+                    .mapToObj( r -> list.parallelStream().collect(collector) )
+                    .collect( toList() );
+            assertTrue( summaries.stream().allMatch(s -> s.elementCount() == 10_000L) );
+            
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void testBatchingCollectorRethrowingConsumerFailure() throws InterruptedException {
+        
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            IntStream.range(0, 10_000).boxed().parallel().collect(
+                    Collectors.toBatches(
+                            100, 
+                            batch -> { if ( batch.contains(5_000) ) throw new IllegalStateException(); }, 
+                            executor, 
+                            2
+                    )
+            );
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+    
+    @Test
+    public void testDenseTableCollector() {
+        
+        final List<Integer> list = IntStream.range(0, 20_000).boxed().collect( toList() );
+        
+        // 7 x 5 cells, each put many times; the last value put wins
+        final Table<Integer, String, Integer> expected = HashBasedTable.create();
+        list.forEach( i -> expected.put(i % 7, "c" + i % 5, i) );
+        
+        final DenseTable<Integer, String, Integer> table = list.parallelStream().collect(
+                Collectors.toDenseTable(i -> i % 7, i -> "c" + i % 5, i -> i)
+        );
+        assertEquals(expected, table);
+        assertEquals(expected.hashCode(), table.hashCode());
+        assertEquals(35, table.size());
+        assertEquals(Integer.valueOf(19_998), table.get(6, "c3"));
+        assertNull( table.get(6, "c9") );
+        assertEquals(expected.row(3), table.row(3));
+        assertEquals(expected.column("c2"), table.column("c2"));
+        assertEquals(expected.rowMap(), table.rowMap());
+        assertEquals(expected.columnMap(), table.columnMap());
+        assertEquals(ImmutableList.of(0, 1, 2, 3, 4, 5, 6), ImmutableList.copyOf( table.rowKeySet() ));
+        assertTrue( table.containsValue(19_999) );
+        assertFalse( table.containsValue(0) );
+        
+        // a sparse table
+        final DenseTable<Integer, Integer, String> sparse = list.stream().collect(
+                Collectors.toDenseTable(i -> i / 100, i -> i, String::valueOf)
+        );
+        assertEquals(20_000, sparse.size());
+        assertEquals("12345", sparse.get(123, 12_345));
+        assertEquals(100, sparse.row(123).size());
+        assertEquals(ImmutableMap.of(123, "12345"), sparse.column(12_345));
+        assertEquals(ImmutableTable.copyOf(sparse), DenseTable.copyOf( ImmutableTable.copyOf(sparse) ));
+        
+        assertTrue( Stream.<Integer>empty().collect( Collectors.toDenseTable(i -> i, i -> i, i -> i) ).isEmpty() );
+    }
+    
+    @Test
+    public void testDenseSetMultimapCollector() {
+        
+        final List<Integer> list = IntStream.range(0, 50_000).boxed().collect( toList() );
+        
+        final SetMultimap<String, Integer> expected = HashMultimap.create();
+        list.forEach( i -> expected.put("k" + i % 10, i % 37) );
+        
+        final DenseSetMultimap<String, Integer> multimap = list.parallelStream().collect(
+                Collectors.toDenseSetMultimap(i -> "k" + i % 10, i -> i % 37)
+        );
+        assertEquals(expected, multimap);
+        assertEquals(expected.hashCode(), multimap.hashCode());
+        assertEquals(expected.size(), multimap.size());
+        assertEquals(expected.get("k3"), multimap.get("k3"));
+        assertEquals(ImmutableSet.copyOf( expected.entries() ), ImmutableSet.copyOf( multimap.entries() ));
+        assertEquals(ImmutableMultiset.copyOf( expected.keys() ), multimap.keys());
+        assertTrue( multimap.containsEntry("k3", 3) );
+        assertFalse( multimap.containsEntry("k3", 40) );
+        assertTrue( multimap.get("k42").isEmpty() );
+        
+        // the values of a key in the order they have first been put
+        final DenseSetMultimap<String, Integer> sequential = list.stream().collect(
+                Collectors.toDenseSetMultimap(i -> "k" + i % 10, i -> i % 37)
+        );
+        assertEquals(ImmutableList.of(0, 1, 2, 3, 4), ImmutableList.copyOf( sequential.get("k0") ).subList(0, 5));
+        
+        final ImmutableSetMultimap<String, Integer> copy = ImmutableSetMultimap.copyOf(multimap);
+        assertEquals(copy, DenseSetMultimap.copyOf(copy));
+    }
+    
 }
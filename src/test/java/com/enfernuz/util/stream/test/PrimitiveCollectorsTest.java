@@ -0,0 +1,98 @@
+package com.enfernuz.util.stream.test;
+
+import java.util.*;
+import java.util.stream.*;
+
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.enfernuz.util.primitives.*;
+import com.enfernuz.util.stream.PrimitiveCollectors;
+
+import static java.util.stream.Collectors.*;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * Created by A. Nerushev
+ */
+
+@RunWith(JUnit4.class)
+public class PrimitiveCollectorsTest {
+    
+    private static final int SIZE = 100_000;
+    
+    @Test
+    public void testImmutableIntArrayCollector() {
+        
+        final ImmutableIntArray array = 
+                PrimitiveCollectors.toImmutableIntArray().collect( IntStream.range(0, SIZE).parallel() );
+        
+        assertArrayEquals(IntStream.range(0, SIZE).toArray(), array.toArray());
+        assertEquals(ImmutableIntArray.of(), PrimitiveCollectors.toImmutableIntArray().collect( IntStream.empty() ));
+    }
+    
+    @Test
+    public void testImmutableDoubleArrayCollector() {
+        
+        final ImmutableDoubleArray array = 
+                PrimitiveCollectors.toImmutableDoubleArray().collect( DoubleStream.of(1.5, Double.NaN, -0.0) );
+        
+        assertEquals(ImmutableDoubleArray.of(1.5, Double.NaN, -0.0), array);
+        assertTrue( array.contains(Double.NaN) );
+        assertFalse( array.contains(0.0) );
+    }
+    
+    @Test
+    public void testImmutableLongSetCollector() {
+        
+        final Set<Long> set = LongStream.range(-SIZE, SIZE).map(i -> i % 1000).boxed().collect( toSet() );
+        
+        final ImmutableLongSet immutableSet = PrimitiveCollectors.toImmutableLongSet()
+                .collect( LongStream.range(-SIZE, SIZE).parallel().map(i -> i % 1000) );
+        
+        assertEquals(set.size(), immutableSet.size());
+        assertEquals(set.hashCode(), immutableSet.hashCode());
+        assertEquals(set, immutableSet.stream().boxed().collect( toSet() ));
+        assertTrue( immutableSet.contains(0) );
+        assertFalse( immutableSet.contains(1000) );
+    }
+    
+    @Test
+    public void testImmutableIntSetCollector() {
+        
+        final ImmutableIntSet immutableSet = 
+                PrimitiveCollectors.toImmutableIntSet().collect( IntStream.of(3, 1, 3, 0, 1) );
+        
+        assertEquals(ImmutableIntSet.of(0, 1, 3), immutableSet);
+        assertEquals(3, immutableSet.size());
+    }
+    
+    @Test
+    public void testImmutableLongLongMapCollector() {
+        
+        final ImmutableLongLongMap map = PrimitiveCollectors.toImmutableLongLongMap(i -> i % 10, i -> i)
+                .collect( LongStream.range(0, SIZE).parallel() );
+        
+        assertEquals(10, map.size());
+        for (long key = 0; key < 10; key++) {
+            assertEquals(SIZE - 10 + key, map.getOrDefault(key, -1));
+        }
+        assertEquals(-1, map.getOrDefault(10, -1));
+    }
+    
+    @Test
+    public void testImmutableLongObjectMapCollector() {
+        
+        final ImmutableLongObjectMap<String> map = 
+                PrimitiveCollectors.toImmutableLongObjectMap(i -> i, Long::toString)
+                        .collect( LongStream.range(0, SIZE).parallel() );
+        
+        assertEquals(SIZE, map.size());
+        assertEquals("0", map.get(0));
+        assertEquals("12345", map.get(12345));
+        assertNull( map.get(SIZE) );
+    }
+}
@@ -0,0 +1,110 @@
+package com.enfernuz.util.test;
+
+import com.google.common.collect.*;
+
+import java.util.*;
+
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.enfernuz.util.BatchIterator;
+import com.enfernuz.util.SkipNullsIterator;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * Created by A. Nerushev
+ */
+
+@RunWith(JUnit4.class)
+public class SkipNullsIteratorTest {
+    
+    private static final String[] SPARSE_ARRAY = {null, "a", null, null, "b", "c", null, "d", null};
+    
+    private static final List<String> EXPECTED = ImmutableList.of("a", "b", "c", "d");
+    
+    private static List<BatchIterator<String>> iterators() {
+        
+        final List<String> list = Arrays.asList(SPARSE_ARRAY);
+        
+        return ImmutableList.of(
+                SkipNullsIterator.of(SPARSE_ARRAY), 
+                SkipNullsIterator.of(list), 
+                SkipNullsIterator.of( new LinkedList<>(list) ), 
+                SkipNullsIterator.of( () -> list.iterator() ), 
+                new SkipNullsIterator<>(list)
+        );
+    }
+    
+    @Test
+    public void testIteration() {
+        
+        for (final BatchIterator<String> iterator : iterators()) {
+            assertEquals(EXPECTED, ImmutableList.copyOf(iterator));
+            assertFalse( iterator.hasNext() );
+        }
+    }
+    
+    @Test
+    public void testBatches() {
+        
+        for (final BatchIterator<String> iterator : iterators()) {
+            
+            final String[] batch = new String[3];
+            
+            assertEquals("a", iterator.next());
+            assertEquals(3, iterator.nextBatch(batch));
+            assertArrayEquals(new String[] {"b", "c", "d"}, batch);
+            assertEquals(0, iterator.nextBatch(batch));
+        }
+    }
+    
+    @Test(expected = NoSuchElementException.class)
+    public void testExhaustedArrayIterator() {
+        
+        final Iterator<String> iterator = SkipNullsIterator.of(new String[] {null, null});
+        
+        assertFalse( iterator.hasNext() );
+        iterator.next();
+    }
+    
+    @Test
+    public void testConcurrentCollections() {
+        
+        final List<String> list = Arrays.asList(SPARSE_ARRAY);
+        final List<String> nonNulls = new ArrayList<>(EXPECTED);
+        
+        // the elements removed after the iterator has been created end the iteration early rather 
+        // than with an exception
+        final java.util.concurrent.CopyOnWriteArrayList<String> copyOnWriteList = 
+                new java.util.concurrent.CopyOnWriteArrayList<>(nonNulls);
+        final Iterator<String> listIterator = SkipNullsIterator.of(copyOnWriteList);
+        copyOnWriteList.clear();
+        assertEquals( EXPECTED, ImmutableList.copyOf(listIterator) );
+        
+        final java.util.concurrent.ConcurrentLinkedQueue<String> queue = 
+                new java.util.concurrent.ConcurrentLinkedQueue<>(nonNulls);
+        final Iterator<String> queueIterator = SkipNullsIterator.of(queue);
+        queue.poll();
+        queue.poll();
+        assertEquals( EXPECTED.subList(2, 4), ImmutableList.copyOf(queueIterator).stream()
+                .filter(queue::contains)
+                .collect( java.util.stream.Collectors.toList() ) 
+        );
+        
+        final java.util.concurrent.ConcurrentHashMap<String, String> map = new java.util.concurrent.ConcurrentHashMap<>();
+        nonNulls.forEach(s -> map.put(s, s));
+        final Iterator<String> keyIterator = SkipNullsIterator.of( map.keySet() );
+        map.remove("a");
+        map.remove("d");
+        assertTrue( ImmutableSet.copyOf(keyIterator).containsAll( ImmutableSet.of("b", "c") ) );
+        
+        assertEquals( EXPECTED, ImmutableList.copyOf( SkipNullsIterator.of( new ArrayDeque<>(nonNulls) ) ) );
+        assertEquals( EXPECTED, ImmutableList.copyOf( SkipNullsIterator.of( ImmutableList.copyOf(nonNulls) ) ) );
+        assertEquals( EXPECTED, ImmutableList.copyOf( SkipNullsIterator.of( new TreeSet<>(nonNulls) ) ) );
+        assertEquals( EXPECTED, ImmutableList.copyOf( SkipNullsIterator.of( new ArrayList<>(list) ) ) );
+    }
+    
+}
@@ -0,0 +1,82 @@
+package com.enfernuz.util.test;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.enfernuz.util.SkipNullsSpliterator;
+
+import static java.util.stream.Collectors.*;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * Created by A. Nerushev
+ */
+
+@RunWith(JUnit4.class)
+public class SkipNullsSpliteratorTest {
+    
+    private static final int SIZE = 100_000;
+    
+    // 70% of the elements are nulls
+    private static final Integer[] SPARSE_ARRAY = IntStream.range(0, SIZE)
+            .mapToObj(i -> i % 10 < 7 ? null : i)
+            .toArray(Integer[]::new);
+    
+    private static final List<Integer> EXPECTED = Arrays.stream(SPARSE_ARRAY)
+            .filter(Objects::nonNull)
+            .collect( toList() );
+    
+    @Test
+    public void testArrayStream() {
+        
+        assertEquals(EXPECTED, SkipNullsSpliterator.stream(SPARSE_ARRAY, false).collect( toList() ));
+        assertEquals(EXPECTED, SkipNullsSpliterator.stream(SPARSE_ARRAY, true).collect( toList() ));
+    }
+    
+    @Test
+    public void testCollectionStreams() {
+        
+        final List<Integer> arrayList = new ArrayList<>( Arrays.asList(SPARSE_ARRAY) );
+        final List<Integer> linkedList = new LinkedList<>( Arrays.asList(SPARSE_ARRAY) );
+        
+        assertEquals(EXPECTED, SkipNullsSpliterator.stream(arrayList, true).collect( toList() ));
+        assertEquals(EXPECTED, SkipNullsSpliterator.stream(linkedList, true).collect( toList() ));
+    }
+    
+    @Test
+    public void testTryAdvance() {
+        
+        final Spliterator<Integer> spliterator = 
+                SkipNullsSpliterator.of(new Integer[] {null, 1, null, null, 2, null});
+        
+        final List<Integer> elements = new ArrayList<>();
+        while ( spliterator.tryAdvance(elements::add) ) {
+        }
+        
+        assertEquals(Arrays.asList(1, 2), elements);
+        assertTrue( spliterator.hasCharacteristics(Spliterator.NONNULL) );
+        assertFalse( spliterator.hasCharacteristics(Spliterator.SIZED) );
+    }
+    
+    @Test
+    public void testSplitIsBalanced() {
+        
+        final Spliterator<Integer> spliterator = SkipNullsSpliterator.of(SPARSE_ARRAY);
+        final Spliterator<Integer> prefix = spliterator.trySplit();
+        
+        assertNotNull(prefix);
+        assertEquals(SIZE / 2, prefix.estimateSize());
+        assertEquals(SIZE / 2, spliterator.estimateSize());
+    }
+    
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testArrayRangeOutOfBounds() {
+        SkipNullsSpliterator.of(SPARSE_ARRAY, 1, SIZE + 1);
+    }
+}